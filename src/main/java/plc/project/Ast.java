@@ -7,17 +7,50 @@ import java.util.Optional;
 /**
  * See the Parser assignment specification for specific notes on each AST class
  * and how to use it.
+ *
+ * AST nodes are immutable, including the lists passed to their constructors,
+ * which must not be modified afterwards. Each node computes its hash code when
+ * it is constructed from the (already cached) hash codes of its children, so
+ * nodes can be used as map keys and {@code equals} can reject most unequal
+ * nodes without comparing their subtrees. See {@link AstInterner} for sharing
+ * identical subtrees.
  */
 public abstract class Ast {
 
+    // The kinds of nodes, for dispatch in Visitor#visit(Ast).
+    private static final int SOURCE = 0;
+    private static final int FIELD = 1;
+    private static final int METHOD = 2;
+    private static final int EXPRESSION = 3;
+    private static final int DECLARATION = 4;
+    private static final int ASSIGNMENT = 5;
+    private static final int IF = 6;
+    private static final int FOR = 7;
+    private static final int WHILE = 8;
+    private static final int RETURN = 9;
+    private static final int LITERAL = 10;
+    private static final int GROUP = 11;
+    private static final int BINARY = 12;
+    private static final int ACCESS = 13;
+    private static final int FUNCTION = 14;
+
+    private final int kind;
+
+    private Ast(int kind) {
+        this.kind = kind;
+    }
+
     public static final class Source extends Ast {
 
         private final List<Field> fields;
         private final List<Method> methods;
+        private final int hash;
 
         public Source(List<Field> fields, List<Method> methods) {
+            super(SOURCE);
             this.fields = fields;
             this.methods = methods;
+            this.hash = 31 * fields.hashCode() + methods.hashCode();
         }
 
         public List<Field> getFields() {
@@ -30,11 +63,17 @@ public abstract class Ast {
 
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Source &&
+            return this == obj || obj instanceof Source &&
+                    hash == ((Source) obj).hash &&
                     fields.equals(((Source) obj).fields) &&
                     methods.equals(((Source) obj).methods);
         }
 
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
         @Override
         public String toString() {
             return "Ast.Source{" +
@@ -49,10 +88,13 @@ public abstract class Ast {
 
         private final String name;
         private final Optional<Expr> value;
+        private final int hash;
 
         public Field(String name, Optional<Expr> value) {
+            super(FIELD);
             this.name = name;
             this.value = value;
+            this.hash = 31 * name.hashCode() + value.hashCode();
         }
 
         public String getName() {
@@ -65,11 +107,17 @@ public abstract class Ast {
 
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Field &&
+            return this == obj || obj instanceof Field &&
+                    hash == ((Field) obj).hash &&
                     name.equals(((Field) obj).name) &&
                     value.equals(((Field) obj).value);
         }
 
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
         @Override
         public String toString() {
             return "Ast.Field{" +
@@ -85,11 +133,14 @@ public abstract class Ast {
         private final String name;
         private final List<String> parameters;
         private final List<Stmt> statements;
+        private final int hash;
 
         public Method(String name, List<String> parameters, List<Stmt> statements) {
+            super(METHOD);
             this.name = name;
             this.parameters = parameters;
             this.statements = statements;
+            this.hash = 31 * (31 * name.hashCode() + parameters.hashCode()) + statements.hashCode();
         }
 
         public String getName() {
@@ -106,12 +157,18 @@ public abstract class Ast {
 
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Method &&
+            return this == obj || obj instanceof Method &&
+                    hash == ((Method) obj).hash &&
                     name.equals(((Method) obj).name) &&
                     parameters.equals(((Method) obj).parameters) &&
                     statements.equals(((Method) obj).statements);
         }
 
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
         @Override
         public String toString() {
             return "Ast.Method{" +
@@ -125,12 +182,19 @@ public abstract class Ast {
 
     public static abstract class Stmt extends Ast {
 
+        private Stmt(int kind) {
+            super(kind);
+        }
+
         public static final class Expression extends Stmt {
 
             private final Expr expression;
+            private final int hash;
 
             public Expression(Expr expression) {
+                super(EXPRESSION);
                 this.expression = expression;
+                this.hash = expression.hashCode();
             }
 
             public Expr getExpression() {
@@ -139,10 +203,16 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Expression &&
+                return this == obj || obj instanceof Expression &&
+                        hash == ((Expression) obj).hash &&
                         expression.equals(((Expression) obj).expression);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.Expression{" +
@@ -154,12 +224,15 @@ public abstract class Ast {
 
         public static final class Declaration extends Stmt {
 
-            private String name;
-            private Optional<Expr> value;
+            private final String name;
+            private final Optional<Expr> value;
+            private final int hash;
 
             public Declaration(String name, Optional<Expr> value) {
+                super(DECLARATION);
                 this.name = name;
                 this.value = value;
+                this.hash = 31 * name.hashCode() + value.hashCode();
             }
 
             public String getName() {
@@ -172,11 +245,17 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Declaration &&
+                return this == obj || obj instanceof Declaration &&
+                        hash == ((Declaration) obj).hash &&
                         name.equals(((Declaration) obj).name) &&
                         value.equals(((Declaration) obj).value);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.Declaration{" +
@@ -191,10 +270,13 @@ public abstract class Ast {
 
             private final Expr receiver;
             private final Expr value;
+            private final int hash;
 
             public Assignment(Expr receiver, Expr value) {
+                super(ASSIGNMENT);
                 this.receiver = receiver;
                 this.value = value;
+                this.hash = 31 * receiver.hashCode() + value.hashCode();
             }
 
             public Expr getReceiver() {
@@ -207,11 +289,17 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Assignment &&
+                return this == obj || obj instanceof Assignment &&
+                        hash == ((Assignment) obj).hash &&
                         receiver.equals(((Assignment) obj).receiver) &&
                         value.equals(((Assignment) obj).value);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public final String toString() {
                 return "Ast.Stmt.Assignment{" +
@@ -227,12 +315,15 @@ public abstract class Ast {
             private final Expr condition;
             private final List<Stmt> thenStatements;
             private final List<Stmt> elseStatements;
+            private final int hash;
 
 
             public If(Expr condition, List<Stmt> thenStatements, List<Stmt> elseStatements) {
+                super(IF);
                 this.condition = condition;
                 this.thenStatements = thenStatements;
                 this.elseStatements = elseStatements;
+                this.hash = 31 * (31 * condition.hashCode() + thenStatements.hashCode()) + elseStatements.hashCode();
             }
 
             public Expr getCondition() {
@@ -249,12 +340,18 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof If &&
+                return this == obj || obj instanceof If &&
+                        hash == ((If) obj).hash &&
                         condition.equals(((If) obj).condition) &&
                         thenStatements.equals(((If) obj).thenStatements) &&
                         elseStatements.equals(((If) obj).elseStatements);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.If{" +
@@ -271,11 +368,14 @@ public abstract class Ast {
             private final String name;
             private final Expr value;
             private final List<Stmt> statements;
+            private final int hash;
 
             public For(String name, Expr value, List<Stmt> statements) {
+                super(FOR);
                 this.name = name;
                 this.value = value;
                 this.statements = statements;
+                this.hash = 31 * (31 * name.hashCode() + value.hashCode()) + statements.hashCode();
             }
 
             public String getName() {
@@ -292,12 +392,18 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof For &&
+                return this == obj || obj instanceof For &&
+                        hash == ((For) obj).hash &&
                         name.equals(((For) obj).name) &&
                         value.equals(((For) obj).value) &&
                         statements.equals(((For) obj).statements);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "For{" +
@@ -313,10 +419,13 @@ public abstract class Ast {
 
             private final Expr condition;
             private final List<Stmt> statements;
+            private final int hash;
 
             public While(Expr condition, List<Stmt> statements) {
+                super(WHILE);
                 this.condition = condition;
                 this.statements = statements;
+                this.hash = 31 * condition.hashCode() + statements.hashCode();
             }
 
             public Expr getCondition() {
@@ -329,11 +438,17 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof While &&
+                return this == obj || obj instanceof While &&
+                        hash == ((While) obj).hash &&
                         condition.equals(((While) obj).condition) &&
                         statements.equals(((While) obj).statements);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.While{" +
@@ -347,9 +462,12 @@ public abstract class Ast {
         public static final class Return extends Stmt {
 
             private final Expr value;
+            private final int hash;
 
             public Return(Expr value) {
+                super(RETURN);
                 this.value = value;
+                this.hash = value.hashCode();
             }
 
             public Expr getValue() {
@@ -358,10 +476,16 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Return &&
+                return this == obj || obj instanceof Return &&
+                        hash == ((Return) obj).hash &&
                         value.equals(((Return) obj).value);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.Return{" +
@@ -375,12 +499,19 @@ public abstract class Ast {
 
     public static abstract class Expr extends Ast {
 
+        private Expr(int kind) {
+            super(kind);
+        }
+
         public static final class Literal extends Expr {
 
             private final Object literal;
+            private final int hash;
 
             public Literal(Object literal) {
+                super(LITERAL);
                 this.literal = literal;
+                this.hash = Objects.hashCode(literal);
             }
 
             public Object getLiteral() {
@@ -389,10 +520,16 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Literal &&
+                return this == obj || obj instanceof Literal &&
+                        hash == ((Literal) obj).hash &&
                         Objects.equals(literal, ((Literal) obj).literal);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Literal{" +
@@ -405,9 +542,12 @@ public abstract class Ast {
         public static final class Group extends Expr {
 
             private final Expr expression;
+            private final int hash;
 
             public Group(Expr expression) {
+                super(GROUP);
                 this.expression = expression;
+                this.hash = expression.hashCode();
             }
 
             public Expr getExpression() {
@@ -416,10 +556,16 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Group &&
+                return this == obj || obj instanceof Group &&
+                        hash == ((Group) obj).hash &&
                         expression.equals(((Group) obj).expression);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Group{" +
@@ -434,11 +580,14 @@ public abstract class Ast {
             private final String operator;
             private final Expr left;
             private final Expr right;
+            private final int hash;
 
             public Binary(String operator, Expr left, Expr right) {
+                super(BINARY);
                 this.operator = operator;
                 this.left = left;
                 this.right = right;
+                this.hash = 31 * (31 * operator.hashCode() + left.hashCode()) + right.hashCode();
             }
 
             public String getOperator() {
@@ -455,12 +604,18 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Binary &&
+                return this == obj || obj instanceof Binary &&
+                        hash == ((Binary) obj).hash &&
                         operator.equals(((Binary) obj).operator) &&
                         left.equals(((Binary) obj).left) &&
                         right.equals(((Binary) obj).right);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Binary{" +
@@ -475,11 +630,18 @@ public abstract class Ast {
         public static final class Access extends Expr {
 
             private final Optional<Expr> receiver;
-            private final String name;
+            private final Symbol name;
+            private final int hash;
 
             public Access(Optional<Expr> receiver, String name) {
+                this(receiver, Symbol.of(name));
+            }
+
+            public Access(Optional<Expr> receiver, Symbol name) {
+                super(ACCESS);
                 this.receiver = receiver;
                 this.name = name;
+                this.hash = 31 * receiver.hashCode() + name.hashCode();
             }
 
             public Optional<Expr> getReceiver() {
@@ -487,14 +649,24 @@ public abstract class Ast {
             }
 
             public String getName() {
+                return name.getName();
+            }
+
+            public Symbol getSymbol() {
                 return name;
             }
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Access &&
+                return this == obj || obj instanceof Access &&
+                        hash == ((Access) obj).hash &&
                         receiver.equals(((Access) obj).receiver) &&
-                        name.equals(((Access) obj).name);
+                        name == ((Access) obj).name;
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
             }
 
             @Override
@@ -510,13 +682,20 @@ public abstract class Ast {
         public static final class Function extends Expr {
 
             private final Optional<Expr> receiver;
-            private final String name;
+            private final Symbol name;
             private final List<Expr> arguments;
+            private final int hash;
 
             public Function(Optional<Expr> receiver, String name, List<Expr> arguments) {
+                this(receiver, Symbol.of(name), arguments);
+            }
+
+            public Function(Optional<Expr> receiver, Symbol name, List<Expr> arguments) {
+                super(FUNCTION);
                 this.receiver = receiver;
                 this.name = name;
                 this.arguments = arguments;
+                this.hash = 31 * (31 * receiver.hashCode() + name.hashCode()) + arguments.hashCode();
             }
 
             public Optional<Expr> getReceiver() {
@@ -524,6 +703,10 @@ public abstract class Ast {
             }
 
             public String getName() {
+                return name.getName();
+            }
+
+            public Symbol getSymbol() {
                 return name;
             }
 
@@ -533,12 +716,18 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Function &&
+                return this == obj || obj instanceof Function &&
+                        hash == ((Function) obj).hash &&
                         receiver.equals(((Function) obj).receiver) &&
-                        name.equals(((Function) obj).name) &&
+                        name == ((Function) obj).name &&
                         arguments.equals(((Function) obj).arguments);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Function{" +
@@ -554,39 +743,46 @@ public abstract class Ast {
 
     public interface Visitor<T> {
 
+        /**
+         * Dispatches to the method for the node's class with a switch on its
+         * kind, which takes the same time for every class (unlike a chain of
+         * {@code instanceof} checks) and, unlike a virtual {@code accept}
+         * method, stays fast when the call site sees many classes.
+         */
         default T visit(Ast ast) {
-            if (ast instanceof Source) {
-                return visit((Source) ast);
-            } else if (ast instanceof Field) {
-                return visit((Field) ast);
-            } else if (ast instanceof Method) {
-                return visit((Method) ast);
-            } else if (ast instanceof Stmt.Expression) {
-                return visit((Stmt.Expression) ast);
-            } else if (ast instanceof Stmt.Declaration) {
-                return visit((Stmt.Declaration) ast);
-            } else if (ast instanceof Stmt.Assignment) {
-                return visit((Stmt.Assignment) ast);
-            } else if (ast instanceof Stmt.If) {
-                return visit((Stmt.If) ast);
-            } else if (ast instanceof Stmt.For) {
-                return visit((Stmt.For) ast);
-            } else if (ast instanceof Stmt.While) {
-                return visit((Stmt.While) ast);
-            } else if (ast instanceof Stmt.Return) {
-                return visit((Stmt.Return) ast);
-            } else if (ast instanceof Expr.Literal) {
-                return visit((Expr.Literal) ast);
-            } else if (ast instanceof Expr.Group) {
-                return visit((Expr.Group) ast);
-            } else if (ast instanceof Expr.Binary) {
-                return visit((Expr.Binary) ast);
-            } else if (ast instanceof Expr.Access) {
-                return visit((Expr.Access) ast);
-            } else if (ast instanceof Expr.Function) {
-                return visit((Expr.Function) ast);
-            } else {
-                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            switch (ast.kind) {
+                case SOURCE:
+                    return visit((Source) ast);
+                case FIELD:
+                    return visit((Field) ast);
+                case METHOD:
+                    return visit((Method) ast);
+                case EXPRESSION:
+                    return visit((Stmt.Expression) ast);
+                case DECLARATION:
+                    return visit((Stmt.Declaration) ast);
+                case ASSIGNMENT:
+                    return visit((Stmt.Assignment) ast);
+                case IF:
+                    return visit((Stmt.If) ast);
+                case FOR:
+                    return visit((Stmt.For) ast);
+                case WHILE:
+                    return visit((Stmt.While) ast);
+                case RETURN:
+                    return visit((Stmt.Return) ast);
+                case LITERAL:
+                    return visit((Expr.Literal) ast);
+                case GROUP:
+                    return visit((Expr.Group) ast);
+                case BINARY:
+                    return visit((Expr.Binary) ast);
+                case ACCESS:
+                    return visit((Expr.Access) ast);
+                case FUNCTION:
+                    return visit((Expr.Function) ast);
+                default:
+                    throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
             }
         }
 
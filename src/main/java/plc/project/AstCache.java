@@ -0,0 +1,96 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A directory of parsed sources encoded with {@link AstCodec}, keyed by the
+ * SHA-256 hash of the source text. {@link #parse(String)} loads a cached AST
+ * by memory-mapping its file, so unchanged sources skip the {@link Lexer} and
+ * {@link Parser} entirely; otherwise the source is parsed and the result is
+ * stored for next time.
+ *
+ * Files are written to a temporary file and then moved into place, so
+ * concurrent processes sharing a directory never see a partial entry. An
+ * unreadable or invalid entry is treated as a miss and overwritten.
+ */
+public final class AstCache {
+
+    private final Path directory;
+
+    public AstCache(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the AST of the source, from the cache if possible. Sources which
+     * fail to parse are not cached, and the {@link ParseException} is thrown
+     * as from {@link Parser#parseSource()}.
+     */
+    public Ast.Source parse(String input) throws ParseException {
+        Path path = getPath(input);
+        Ast.Source source = load(path);
+        if (source == null) {
+            source = new Parser(new Lexer(input).lex()).parseSource();
+            store(path, AstCodec.encode(source));
+        }
+        return source;
+    }
+
+    /**
+     * Returns the path of the cache entry for the source.
+     */
+    Path getPath(String input) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is required to be supported.", e);
+        }
+        byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
+        StringBuilder name = new StringBuilder(hash.length * 2 + 4);
+        for (byte b : hash) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return directory.resolve(name.append(".ast").toString());
+    }
+
+    private static Ast.Source load(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return AstCodec.decode(buffer);
+        } catch (IOException | IllegalArgumentException e) {
+            // missing, unreadable, truncated or from another codec version
+            return null;
+        }
+    }
+
+    private void store(Path path, byte[] bytes) {
+        try {
+            Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temporary, bytes);
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
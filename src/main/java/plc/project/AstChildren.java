@@ -0,0 +1,115 @@
+package plc.project;
+
+import java.util.List;
+
+/**
+ * Adds the children of a node to a list, left-to-right. Used as a stack, this
+ * walks an AST without recursion, so it works for arbitrarily deep
+ * expressions.
+ */
+final class AstChildren implements Ast.Visitor<Void> {
+
+    private final List<Ast> pending;
+
+    AstChildren(List<Ast> pending) {
+        this.pending = pending;
+    }
+
+    @Override
+    public Void visit(Ast.Source ast) {
+        pending.addAll(ast.getFields());
+        pending.addAll(ast.getMethods());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Field ast) {
+        ast.getValue().ifPresent(pending::add);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Method ast) {
+        pending.addAll(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Expression ast) {
+        pending.add(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Declaration ast) {
+        ast.getValue().ifPresent(pending::add);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Assignment ast) {
+        pending.add(ast.getReceiver());
+        pending.add(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.If ast) {
+        pending.add(ast.getCondition());
+        pending.addAll(ast.getThenStatements());
+        pending.addAll(ast.getElseStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.For ast) {
+        pending.add(ast.getValue());
+        pending.addAll(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.While ast) {
+        pending.add(ast.getCondition());
+        pending.addAll(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Return ast) {
+        pending.add(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Literal ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Group ast) {
+        pending.add(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Binary ast) {
+        pending.add(ast.getLeft());
+        pending.add(ast.getRight());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Access ast) {
+        ast.getReceiver().ifPresent(pending::add);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Function ast) {
+        ast.getReceiver().ifPresent(pending::add);
+        pending.addAll(ast.getArguments());
+        return null;
+    }
+
+}
@@ -0,0 +1,515 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact binary encoding of an {@link Ast.Source}, used by {@link AstCache}
+ * to skip lexing and parsing of unchanged sources.
+ *
+ * The encoding is a header, a table of every distinct name, operator and
+ * string literal, and then the nodes in post-order. Each node is a one byte
+ * tag followed by its strings (as table indices), literal value and the sizes
+ * of its child lists, with all integers as unsigned varints. Since children
+ * come before their parent, both encoding and decoding use an explicit stack
+ * and work for arbitrarily deep expressions.
+ */
+public final class AstCodec {
+
+    private static final int MAGIC = 0x504C4341; // "PLCA"
+    private static final int VERSION = 1;
+
+    private static final int SOURCE = 1;
+    private static final int FIELD = 2;
+    private static final int METHOD = 3;
+    private static final int EXPRESSION = 4;
+    private static final int DECLARATION = 5;
+    private static final int ASSIGNMENT = 6;
+    private static final int IF = 7;
+    private static final int FOR = 8;
+    private static final int WHILE = 9;
+    private static final int RETURN = 10;
+    private static final int NIL = 11;
+    private static final int TRUE = 12;
+    private static final int FALSE = 13;
+    private static final int CHARACTER = 14;
+    private static final int STRING = 15;
+    private static final int INTEGER = 16;
+    private static final int DECIMAL = 17;
+    private static final int GROUP = 18;
+    private static final int BINARY = 19;
+    private static final int ACCESS = 20;
+    private static final int FUNCTION = 21;
+
+    private AstCodec() {}
+
+    /**
+     * Encodes the source. Throws an {@link IllegalArgumentException} if the
+     * AST contains a literal which the parser could not have produced.
+     */
+    public static byte[] encode(Ast.Source source) {
+        // Visiting each node before its children right-to-left and then
+        // reversing gives post-order with children left-to-right.
+        List<Ast> order = new ArrayList<>();
+        List<Ast> pending = new ArrayList<>();
+        pending.add(source);
+        AstChildren children = new AstChildren(pending);
+        while (!pending.isEmpty()) {
+            Ast ast = pending.remove(pending.size() - 1);
+            order.add(ast);
+            children.visit(ast);
+        }
+        Writer writer = new Writer();
+        for (int i = order.size() - 1; i >= 0; i--) {
+            writer.visit(order.get(i));
+        }
+        Output output = new Output();
+        output.writeInt(MAGIC);
+        output.writeVarint(VERSION);
+        output.writeVarint(writer.strings.size());
+        for (String string : writer.strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            output.writeVarint(bytes.length);
+            output.write(bytes, 0, bytes.length);
+        }
+        output.write(writer.output.bytes, 0, writer.output.size);
+        return Arrays.copyOf(output.bytes, output.size);
+    }
+
+    /**
+     * Decodes a source from the remaining bytes of the buffer. Throws an
+     * {@link IllegalArgumentException} if the bytes are not a valid encoding
+     * from this version of the codec.
+     */
+    public static Ast.Source decode(ByteBuffer buffer) {
+        try {
+            return new Reader(buffer).read();
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Unexpected end of AST data.", e);
+        }
+    }
+
+    /**
+     * Writes the record of a single node, assuming its children have already
+     * been written.
+     */
+    private static final class Writer implements Ast.Visitor<Void> {
+
+        private final Output output = new Output();
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        private void writeString(String string) {
+            Integer index = indices.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                indices.put(string, index);
+            }
+            output.writeVarint(index);
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            output.write(SOURCE);
+            output.writeVarint(ast.getFields().size());
+            output.writeVarint(ast.getMethods().size());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            output.write(FIELD);
+            writeString(ast.getName());
+            output.write(ast.getValue().isPresent() ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            output.write(METHOD);
+            writeString(ast.getName());
+            output.writeVarint(ast.getParameters().size());
+            for (String parameter : ast.getParameters()) {
+                writeString(parameter);
+            }
+            output.writeVarint(ast.getStatements().size());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            output.write(EXPRESSION);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            output.write(DECLARATION);
+            writeString(ast.getName());
+            output.write(ast.getValue().isPresent() ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            output.write(ASSIGNMENT);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            output.write(IF);
+            output.writeVarint(ast.getThenStatements().size());
+            output.writeVarint(ast.getElseStatements().size());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            output.write(FOR);
+            writeString(ast.getName());
+            output.writeVarint(ast.getStatements().size());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            output.write(WHILE);
+            output.writeVarint(ast.getStatements().size());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            output.write(RETURN);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            Object literal = ast.getLiteral();
+            if (literal == null) {
+                output.write(NIL);
+            } else if (literal instanceof Boolean) {
+                output.write((Boolean) literal ? TRUE : FALSE);
+            } else if (literal instanceof Character) {
+                output.write(CHARACTER);
+                output.writeVarint((Character) literal);
+            } else if (literal instanceof String) {
+                output.write(STRING);
+                writeString((String) literal);
+            } else if (literal instanceof BigInteger) {
+                output.write(INTEGER);
+                output.writeBigInteger((BigInteger) literal);
+            } else if (literal instanceof BigDecimal) {
+                output.write(DECIMAL);
+                output.writeBigInteger(((BigDecimal) literal).unscaledValue());
+                int scale = ((BigDecimal) literal).scale();
+                output.writeVarint((scale << 1) ^ (scale >> 31));
+            } else {
+                throw new IllegalArgumentException("Unsupported literal type: " + literal.getClass().getName() + ".");
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            output.write(GROUP);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            output.write(BINARY);
+            writeString(ast.getOperator());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            output.write(ACCESS);
+            writeString(ast.getName());
+            output.write(ast.getReceiver().isPresent() ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            output.write(FUNCTION);
+            writeString(ast.getName());
+            output.write(ast.getReceiver().isPresent() ? 1 : 0);
+            output.writeVarint(ast.getArguments().size());
+            return null;
+        }
+
+    }
+
+    /**
+     * A growable byte array, since {@link java.io.ByteArrayOutputStream} is
+     * synchronized and copies on every {@code toByteArray()}.
+     */
+    private static final class Output {
+
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        private void write(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        private void write(byte[] source, int offset, int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size * 2, size + length));
+            }
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        private void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        private void writeBigInteger(BigInteger value) {
+            byte[] magnitude = value.toByteArray();
+            writeVarint(magnitude.length);
+            write(magnitude, 0, magnitude.length);
+        }
+
+    }
+
+    private static final class Reader {
+
+        private final ByteBuffer buffer;
+        private String[] strings;
+        private Symbol[] symbols;
+        private Ast[] stack = new Ast[64];
+        private int size;
+
+        private Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private Ast.Source read() {
+            if (buffer.getInt() != MAGIC || readVarint() != VERSION) {
+                throw new IllegalArgumentException("Unrecognized AST data header.");
+            }
+            strings = new String[readLength()];
+            symbols = new Symbol[strings.length];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[readLength()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            while (buffer.hasRemaining()) {
+                push(readNode());
+            }
+            if (size != 1 || !(stack[0] instanceof Ast.Source)) {
+                throw new IllegalArgumentException("AST data does not contain exactly one source.");
+            }
+            return (Ast.Source) stack[0];
+        }
+
+        private Ast readNode() {
+            int tag = buffer.get();
+            switch (tag) {
+                case SOURCE: {
+                    int fields = readVarint();
+                    int methods = readVarint();
+                    List<Ast.Method> methodList = pop(Ast.Method.class, methods);
+                    return new Ast.Source(pop(Ast.Field.class, fields), methodList);
+                }
+                case FIELD:
+                    return new Ast.Field(readString(), popOptional());
+                case METHOD: {
+                    String name = readString();
+                    List<String> parameters = new ArrayList<>();
+                    for (int i = readLength(); i > 0; i--) {
+                        parameters.add(readString());
+                    }
+                    return new Ast.Method(name, parameters, pop(Ast.Stmt.class, readVarint()));
+                }
+                case EXPRESSION:
+                    return new Ast.Stmt.Expression(pop(Ast.Expr.class));
+                case DECLARATION:
+                    return new Ast.Stmt.Declaration(readString(), popOptional());
+                case ASSIGNMENT: {
+                    Ast.Expr value = pop(Ast.Expr.class);
+                    return new Ast.Stmt.Assignment(pop(Ast.Expr.class), value);
+                }
+                case IF: {
+                    int thenSize = readVarint();
+                    List<Ast.Stmt> elseStatements = pop(Ast.Stmt.class, readVarint());
+                    List<Ast.Stmt> thenStatements = pop(Ast.Stmt.class, thenSize);
+                    return new Ast.Stmt.If(pop(Ast.Expr.class), thenStatements, elseStatements);
+                }
+                case FOR: {
+                    String name = readString();
+                    List<Ast.Stmt> statements = pop(Ast.Stmt.class, readVarint());
+                    return new Ast.Stmt.For(name, pop(Ast.Expr.class), statements);
+                }
+                case WHILE: {
+                    List<Ast.Stmt> statements = pop(Ast.Stmt.class, readVarint());
+                    return new Ast.Stmt.While(pop(Ast.Expr.class), statements);
+                }
+                case RETURN:
+                    return new Ast.Stmt.Return(pop(Ast.Expr.class));
+                case NIL:
+                    return new Ast.Expr.Literal(null);
+                case TRUE:
+                    return new Ast.Expr.Literal(Boolean.TRUE);
+                case FALSE:
+                    return new Ast.Expr.Literal(Boolean.FALSE);
+                case CHARACTER:
+                    return new Ast.Expr.Literal((char) readVarint());
+                case STRING:
+                    return new Ast.Expr.Literal(readString());
+                case INTEGER:
+                    return new Ast.Expr.Literal(readBigInteger());
+                case DECIMAL: {
+                    BigInteger unscaled = readBigInteger();
+                    int scale = readVarint();
+                    return new Ast.Expr.Literal(new BigDecimal(unscaled, (scale >>> 1) ^ -(scale & 1)));
+                }
+                case GROUP:
+                    return new Ast.Expr.Group(pop(Ast.Expr.class));
+                case BINARY: {
+                    String operator = readString();
+                    Ast.Expr right = pop(Ast.Expr.class);
+                    return new Ast.Expr.Binary(operator, pop(Ast.Expr.class), right);
+                }
+                case ACCESS: {
+                    Symbol name = readSymbol();
+                    return new Ast.Expr.Access(popOptional(), name);
+                }
+                case FUNCTION: {
+                    Symbol name = readSymbol();
+                    boolean receiver = readFlag();
+                    List<Ast.Expr> arguments = pop(Ast.Expr.class, readVarint());
+                    return new Ast.Expr.Function(receiver ? Optional.of(pop(Ast.Expr.class)) : Optional.empty(), name, arguments);
+                }
+                default:
+                    throw new IllegalArgumentException("Unrecognized AST node tag " + tag + ".");
+            }
+        }
+
+        private void push(Ast ast) {
+            if (size == stack.length) {
+                stack = Arrays.copyOf(stack, size * 2);
+            }
+            stack[size++] = ast;
+        }
+
+        private <T extends Ast> T pop(Class<T> type) {
+            if (size == 0 || !type.isInstance(stack[size - 1])) {
+                throw new IllegalArgumentException("Expected " + type.getSimpleName() + " in AST data.");
+            }
+            T ast = type.cast(stack[--size]);
+            stack[size] = null;
+            return ast;
+        }
+
+        private <T extends Ast> List<T> pop(Class<T> type, int count) {
+            if (count < 0 || count > size) {
+                throw new IllegalArgumentException("Expected " + count + " children in AST data.");
+            }
+            List<T> list = new ArrayList<>(count);
+            for (int i = size - count; i < size; i++) {
+                if (!type.isInstance(stack[i])) {
+                    throw new IllegalArgumentException("Expected " + type.getSimpleName() + " in AST data.");
+                }
+                list.add(type.cast(stack[i]));
+            }
+            Arrays.fill(stack, size - count, size, null);
+            size -= count;
+            return list;
+        }
+
+        private Optional<Ast.Expr> popOptional() {
+            return readFlag() ? Optional.of(pop(Ast.Expr.class)) : Optional.empty();
+        }
+
+        private boolean readFlag() {
+            int flag = buffer.get();
+            if (flag != 0 && flag != 1) {
+                throw new IllegalArgumentException("Invalid flag " + flag + " in AST data.");
+            }
+            return flag == 1;
+        }
+
+        private String readString() {
+            return strings[readIndex()];
+        }
+
+        private Symbol readSymbol() {
+            int index = readIndex();
+            if (symbols[index] == null) {
+                symbols[index] = Symbol.of(strings[index]);
+            }
+            return symbols[index];
+        }
+
+        private int readIndex() {
+            int index = readVarint();
+            if (index < 0 || index >= strings.length) {
+                throw new IllegalArgumentException("Invalid string index " + index + " in AST data.");
+            }
+            return index;
+        }
+
+        private BigInteger readBigInteger() {
+            byte[] bytes = new byte[readLength()];
+            buffer.get(bytes);
+            return new BigInteger(bytes);
+        }
+
+        /**
+         * Reads a varint used as a number of bytes or strings, which can't be
+         * larger than the remaining data.
+         */
+        private int readLength() {
+            int length = readVarint();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("Invalid length " + length + " in AST data.");
+            }
+            return length;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Invalid varint in AST data.");
+        }
+
+    }
+
+}
@@ -0,0 +1,40 @@
+package plc.project;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A hash-consing table of AST nodes. Passing an interner to {@link
+ * Parser#Parser(java.util.List, AstInterner)} makes the parser return the
+ * canonical instance of every structurally identical statement and
+ * expression, so repetitive sources (such as generated code) share subtrees
+ * instead of duplicating them.
+ *
+ * Since nodes are interned bottom-up, the children of a node being interned
+ * are already canonical and the {@code equals} check of a lookup stops at
+ * their identity. An interner may be shared by any number of parsers,
+ * including across threads, to share subtrees between sources.
+ */
+public final class AstInterner {
+
+    private final ConcurrentMap<Ast, Ast> table = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the canonical node equal to the given node, interning it if
+     * this is the first time it has been seen.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Ast> T intern(T ast) {
+        // equal nodes are always the same class, so the cast is safe
+        Ast canonical = table.putIfAbsent(ast, ast);
+        return canonical != null ? (T) canonical : ast;
+    }
+
+    /**
+     * Returns the number of distinct nodes interned.
+     */
+    public int size() {
+        return table.size();
+    }
+
+}
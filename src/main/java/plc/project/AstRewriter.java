@@ -0,0 +1,255 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Rebuilds an AST bottom-up, giving subclasses the chance to replace each
+ * expression and statement once its children have been rewritten by
+ * overriding {@link #leave(Ast.Expr)}, {@link #leave(Ast.Stmt)} and {@link
+ * #leaveBlock(List)}. A statement may be replaced by any number of statements,
+ * which are spliced into the enclosing block.
+ *
+ * Nodes (and lists) with unchanged children are kept as the same instance, so
+ * a rewrite which changes nothing returns its input and callers can detect a
+ * fixed point by identity. Expressions are rewritten with an explicit stack,
+ * so this works for arbitrarily deep expressions.
+ */
+public abstract class AstRewriter {
+
+    public Ast.Source rewrite(Ast.Source ast) {
+        List<Ast.Field> fields = ast.getFields();
+        List<Ast.Field> rewrittenFields = null;
+        for (int i = 0; i < fields.size(); i++) {
+            rewrittenFields = update(rewrittenFields, fields, i, rewrite(fields.get(i)));
+        }
+        List<Ast.Method> methods = ast.getMethods();
+        List<Ast.Method> rewrittenMethods = null;
+        for (int i = 0; i < methods.size(); i++) {
+            rewrittenMethods = update(rewrittenMethods, methods, i, rewrite(methods.get(i)));
+        }
+        if (rewrittenFields == null && rewrittenMethods == null) {
+            return ast;
+        }
+        return new Ast.Source(rewrittenFields != null ? rewrittenFields : fields,
+                rewrittenMethods != null ? rewrittenMethods : methods);
+    }
+
+    public Ast.Field rewrite(Ast.Field ast) {
+        Optional<Ast.Expr> value = rewrite(ast.getValue());
+        return value == ast.getValue() ? ast : new Ast.Field(ast.getName(), value);
+    }
+
+    public Ast.Method rewrite(Ast.Method ast) {
+        List<Ast.Stmt> statements = rewrite(ast.getStatements());
+        return statements == ast.getStatements() ? ast : new Ast.Method(ast.getName(), ast.getParameters(), statements);
+    }
+
+    /**
+     * Rewrites each statement of a block, splicing in their replacements, and
+     * then returns {@link #leaveBlock(List)} of the result.
+     */
+    public List<Ast.Stmt> rewrite(List<Ast.Stmt> statements) {
+        List<Ast.Stmt> rewritten = null;
+        for (int i = 0; i < statements.size(); i++) {
+            List<Ast.Stmt> replacement = rewrite(statements.get(i));
+            if (rewritten == null && (replacement.size() != 1 || replacement.get(0) != statements.get(i))) {
+                rewritten = new ArrayList<>(statements.subList(0, i));
+            }
+            if (rewritten != null) {
+                rewritten.addAll(replacement);
+            }
+        }
+        return leaveBlock(rewritten != null ? rewritten : statements);
+    }
+
+    /**
+     * Rewrites the children of a statement and returns {@link
+     * #leave(Ast.Stmt)} of the result.
+     */
+    public List<Ast.Stmt> rewrite(Ast.Stmt ast) {
+        Ast.Stmt stmt = ast;
+        if (ast instanceof Ast.Stmt.Expression) {
+            Ast.Expr expression = rewrite(((Ast.Stmt.Expression) ast).getExpression());
+            if (expression != ((Ast.Stmt.Expression) ast).getExpression()) {
+                stmt = new Ast.Stmt.Expression(expression);
+            }
+        } else if (ast instanceof Ast.Stmt.Declaration) {
+            Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+            Optional<Ast.Expr> value = rewrite(declaration.getValue());
+            if (value != declaration.getValue()) {
+                stmt = new Ast.Stmt.Declaration(declaration.getName(), value);
+            }
+        } else if (ast instanceof Ast.Stmt.Assignment) {
+            Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) ast;
+            Ast.Expr receiver = rewrite(assignment.getReceiver());
+            Ast.Expr value = rewrite(assignment.getValue());
+            if (receiver != assignment.getReceiver() || value != assignment.getValue()) {
+                stmt = new Ast.Stmt.Assignment(receiver, value);
+            }
+        } else if (ast instanceof Ast.Stmt.If) {
+            Ast.Stmt.If ifStmt = (Ast.Stmt.If) ast;
+            Ast.Expr condition = rewrite(ifStmt.getCondition());
+            List<Ast.Stmt> thenStatements = rewrite(ifStmt.getThenStatements());
+            List<Ast.Stmt> elseStatements = rewrite(ifStmt.getElseStatements());
+            if (condition != ifStmt.getCondition() || thenStatements != ifStmt.getThenStatements() || elseStatements != ifStmt.getElseStatements()) {
+                stmt = new Ast.Stmt.If(condition, thenStatements, elseStatements);
+            }
+        } else if (ast instanceof Ast.Stmt.For) {
+            Ast.Stmt.For forStmt = (Ast.Stmt.For) ast;
+            Ast.Expr value = rewrite(forStmt.getValue());
+            List<Ast.Stmt> statements = rewrite(forStmt.getStatements());
+            if (value != forStmt.getValue() || statements != forStmt.getStatements()) {
+                stmt = new Ast.Stmt.For(forStmt.getName(), value, statements);
+            }
+        } else if (ast instanceof Ast.Stmt.While) {
+            Ast.Stmt.While whileStmt = (Ast.Stmt.While) ast;
+            Ast.Expr condition = rewrite(whileStmt.getCondition());
+            List<Ast.Stmt> statements = rewrite(whileStmt.getStatements());
+            if (condition != whileStmt.getCondition() || statements != whileStmt.getStatements()) {
+                stmt = new Ast.Stmt.While(condition, statements);
+            }
+        } else if (ast instanceof Ast.Stmt.Return) {
+            Ast.Expr value = rewrite(((Ast.Stmt.Return) ast).getValue());
+            if (value != ((Ast.Stmt.Return) ast).getValue()) {
+                stmt = new Ast.Stmt.Return(value);
+            }
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+        return leave(stmt);
+    }
+
+    public Optional<Ast.Expr> rewrite(Optional<Ast.Expr> ast) {
+        if (ast.isPresent()) {
+            Ast.Expr expr = rewrite(ast.get());
+            return expr != ast.get() ? Optional.of(expr) : ast;
+        }
+        return ast;
+    }
+
+    /**
+     * Rewrites the subexpressions of an expression, bottom-up, and returns
+     * {@link #leave(Ast.Expr)} of the result.
+     */
+    public Ast.Expr rewrite(Ast.Expr ast) {
+        if (ast instanceof Ast.Expr.Literal) {
+            return leave(ast);
+        }
+        // As in AstCodec, reversing a walk of each node before its children
+        // right-to-left gives post-order with children left-to-right.
+        List<Ast> order = new ArrayList<>();
+        List<Ast> pending = new ArrayList<>();
+        pending.add(ast);
+        AstChildren walker = new AstChildren(pending);
+        while (!pending.isEmpty()) {
+            Ast next = pending.remove(pending.size() - 1);
+            order.add(next);
+            walker.visit(next);
+        }
+        List<Ast.Expr> results = new ArrayList<>();
+        for (int i = order.size() - 1; i >= 0; i--) {
+            results.add(leave(rebuild((Ast.Expr) order.get(i), results)));
+        }
+        return results.get(0);
+    }
+
+    /**
+     * Returns the expression with its children replaced by their rewritten
+     * versions, which are popped from the end of the results.
+     */
+    private static Ast.Expr rebuild(Ast.Expr ast, List<Ast.Expr> results) {
+        if (ast instanceof Ast.Expr.Literal) {
+            return ast;
+        } else if (ast instanceof Ast.Expr.Group) {
+            Ast.Expr expression = pop(results);
+            return expression == ((Ast.Expr.Group) ast).getExpression() ? ast : new Ast.Expr.Group(expression);
+        } else if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            Ast.Expr right = pop(results);
+            Ast.Expr left = pop(results);
+            return left == binary.getLeft() && right == binary.getRight() ? ast : new Ast.Expr.Binary(binary.getOperator(), left, right);
+        } else if (ast instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) ast;
+            if (!access.getReceiver().isPresent()) {
+                return ast;
+            }
+            Ast.Expr receiver = pop(results);
+            return receiver == access.getReceiver().get() ? ast : new Ast.Expr.Access(Optional.of(receiver), access.getSymbol());
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            List<Ast.Expr> arguments = function.getArguments();
+            List<Ast.Expr> rewritten = results.subList(results.size() - arguments.size(), results.size());
+            boolean changed = !identical(arguments, rewritten);
+            if (changed) {
+                arguments = new ArrayList<>(rewritten);
+            }
+            rewritten.clear();
+            Optional<Ast.Expr> receiver = function.getReceiver();
+            if (receiver.isPresent()) {
+                Ast.Expr expr = pop(results);
+                if (expr != receiver.get()) {
+                    receiver = Optional.of(expr);
+                    changed = true;
+                }
+            }
+            return changed ? new Ast.Expr.Function(receiver, function.getSymbol(), arguments) : ast;
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    private static Ast.Expr pop(List<Ast.Expr> results) {
+        return results.remove(results.size() - 1);
+    }
+
+    private static boolean identical(List<Ast.Expr> first, List<Ast.Expr> second) {
+        for (int i = 0; i < first.size(); i++) {
+            if (first.get(i) != second.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a copy of the list with the element at the index replaced, if
+     * it changed, starting the copy from the original list the first time.
+     */
+    private static <T> List<T> update(List<T> rewritten, List<T> original, int index, T element) {
+        if (rewritten == null && element != original.get(index)) {
+            rewritten = new ArrayList<>(original);
+        }
+        if (rewritten != null) {
+            rewritten.set(index, element);
+        }
+        return rewritten;
+    }
+
+    /**
+     * Returns the replacement for an expression whose children have already
+     * been rewritten. By default, the expression itself.
+     */
+    protected Ast.Expr leave(Ast.Expr ast) {
+        return ast;
+    }
+
+    /**
+     * Returns the replacement statements for a statement whose children have
+     * already been rewritten. By default, the statement itself.
+     */
+    protected List<Ast.Stmt> leave(Ast.Stmt ast) {
+        return Collections.singletonList(ast);
+    }
+
+    /**
+     * Returns the replacement for a block whose statements have already been
+     * rewritten. By default, the block itself.
+     */
+    protected List<Ast.Stmt> leaveBlock(List<Ast.Stmt> statements) {
+        return statements;
+    }
+
+}
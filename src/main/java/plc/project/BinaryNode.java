@@ -0,0 +1,207 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * The executable node of a binary expression (other than AND and OR), which
+ * rewrites itself for the types of operands it sees, like the nodes of a
+ * self-optimizing AST interpreter.
+ *
+ * Each expression an interpreter evaluates has a {@link Site}, which starts
+ * out {@link #UNINITIALIZED}. On its first evaluation the node applies the
+ * operator like {@link Interpreter#applyBinary}, and replaces itself with a
+ * node specialized for the types of the operands, if there is one. A
+ * specialized node checks its operands have those types before computing the
+ * result directly; if they don't, it deoptimizes, replacing itself with the
+ * {@link #GENERIC} node for good so that a site seeing mixed types doesn't
+ * keep being rewritten.
+ *
+ * The sites are kept by the interpreter, keyed by the identity of the
+ * expression, so the AST stays immutable and interpreters on different
+ * threads don't see each other's feedback. An expression used in several
+ * places of a tree, through an {@link AstInterner} or {@link
+ * Optimizer.Inlining}, still has a single site in each interpreter.
+ */
+abstract class BinaryNode {
+
+    private static final Environment.PlcObject TRUE = Environment.create(true);
+    private static final Environment.PlcObject FALSE = Environment.create(false);
+
+    /** The node of an expression which hasn't been evaluated yet. */
+    static final BinaryNode UNINITIALIZED = new BinaryNode("uninitialized") {
+        @Override
+        Environment.PlcObject execute(Site site, Environment.PlcObject left, Environment.PlcObject right) {
+            Environment.PlcObject result = Interpreter.applyBinary(site.operator, left, right);
+            site.node = specialize(site.operator, left.getValue(), right.getValue());
+            return result;
+        }
+    };
+
+    /** The node of an expression whose operands have no single type. */
+    static final BinaryNode GENERIC = new BinaryNode("generic") {
+        @Override
+        Environment.PlcObject execute(Site site, Environment.PlcObject left, Environment.PlcObject right) {
+            return Interpreter.applyBinary(site.operator, left, right);
+        }
+    };
+
+    private static final BinaryNode INTEGER_ADD = new Guarded("integer +", BigInteger.class) {
+        @Override
+        Environment.PlcObject apply(Object left, Object right) {
+            return Environment.create(((BigInteger) left).add((BigInteger) right));
+        }
+    };
+
+    private static final BinaryNode INTEGER_SUBTRACT = new Guarded("integer -", BigInteger.class) {
+        @Override
+        Environment.PlcObject apply(Object left, Object right) {
+            return Environment.create(((BigInteger) left).subtract((BigInteger) right));
+        }
+    };
+
+    private static final BinaryNode INTEGER_MULTIPLY = new Guarded("integer *", BigInteger.class) {
+        @Override
+        Environment.PlcObject apply(Object left, Object right) {
+            return Environment.create(((BigInteger) left).multiply((BigInteger) right));
+        }
+    };
+
+    private static final BinaryNode INTEGER_LESS = new Guarded("integer <", BigInteger.class) {
+        @Override
+        Environment.PlcObject apply(Object left, Object right) {
+            return ((BigInteger) left).compareTo((BigInteger) right) < 0 ? TRUE : FALSE;
+        }
+    };
+
+    private static final BinaryNode INTEGER_GREATER_EQUAL = new Guarded("integer >=", BigInteger.class) {
+        @Override
+        Environment.PlcObject apply(Object left, Object right) {
+            return ((BigInteger) left).compareTo((BigInteger) right) >= 0 ? TRUE : FALSE;
+        }
+    };
+
+    private static final BinaryNode DECIMAL_ADD = new Guarded("decimal +", BigDecimal.class) {
+        @Override
+        Environment.PlcObject apply(Object left, Object right) {
+            return Environment.create(((BigDecimal) left).add((BigDecimal) right));
+        }
+    };
+
+    private static final BinaryNode DECIMAL_SUBTRACT = new Guarded("decimal -", BigDecimal.class) {
+        @Override
+        Environment.PlcObject apply(Object left, Object right) {
+            return Environment.create(((BigDecimal) left).subtract((BigDecimal) right));
+        }
+    };
+
+    private static final BinaryNode DECIMAL_MULTIPLY = new Guarded("decimal *", BigDecimal.class) {
+        @Override
+        Environment.PlcObject apply(Object left, Object right) {
+            return Environment.create(((BigDecimal) left).multiply((BigDecimal) right));
+        }
+    };
+
+    private static final BinaryNode STRING_ADD = new Guarded("string +", String.class) {
+        @Override
+        Environment.PlcObject apply(Object left, Object right) {
+            return Environment.create((String) left + right);
+        }
+    };
+
+    /** Equality needs no guard, since it's defined for any operands. */
+    private static final BinaryNode EQUAL = new BinaryNode("==") {
+        @Override
+        Environment.PlcObject execute(Site site, Environment.PlcObject left, Environment.PlcObject right) {
+            return left.getValue().equals(right.getValue()) ? TRUE : FALSE;
+        }
+    };
+
+    private final String name;
+
+    private BinaryNode(String name) {
+        this.name = name;
+    }
+
+    abstract Environment.PlcObject execute(Site site, Environment.PlcObject left, Environment.PlcObject right);
+
+    /**
+     * Returns the node specialized for the operator and the observed values
+     * of the operands, or the generic node if there's none.
+     */
+    static BinaryNode specialize(String operator, Object left, Object right) {
+        if (operator.equals("==")) {
+            return EQUAL;
+        }
+        Class<?> type = left != null && right != null && left.getClass() == right.getClass() ? left.getClass() : null;
+        switch (operator) {
+            case "+":
+                return type == BigInteger.class ? INTEGER_ADD : type == BigDecimal.class ? DECIMAL_ADD : type == String.class ? STRING_ADD : GENERIC;
+            case "-":
+                return type == BigInteger.class ? INTEGER_SUBTRACT : type == BigDecimal.class ? DECIMAL_SUBTRACT : GENERIC;
+            case "*":
+                return type == BigInteger.class ? INTEGER_MULTIPLY : type == BigDecimal.class ? DECIMAL_MULTIPLY : GENERIC;
+            case "<":
+                return type == BigInteger.class ? INTEGER_LESS : GENERIC;
+            case ">=":
+                return type == BigInteger.class ? INTEGER_GREATER_EQUAL : GENERIC;
+            default:
+                return GENERIC;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * The node an interpreter evaluates an expression with.
+     */
+    static final class Site {
+
+        private final String operator;
+        private BinaryNode node = UNINITIALIZED;
+
+        Site(Ast.Expr.Binary ast) {
+            this.operator = ast.getOperator();
+        }
+
+        Environment.PlcObject execute(Environment.PlcObject left, Environment.PlcObject right) {
+            return node.execute(this, left, right);
+        }
+
+        BinaryNode getNode() {
+            return node;
+        }
+
+    }
+
+    /**
+     * A node specialized for both operands having the same type.
+     */
+    private abstract static class Guarded extends BinaryNode {
+
+        private final Class<?> type;
+
+        private Guarded(String name, Class<?> type) {
+            super(name);
+            this.type = type;
+        }
+
+        @Override
+        final Environment.PlcObject execute(Site site, Environment.PlcObject left, Environment.PlcObject right) {
+            Object first = left.getValue();
+            Object second = right.getValue();
+            if (first != null && second != null && first.getClass() == type && second.getClass() == type) {
+                return apply(first, second);
+            }
+            site.node = GENERIC;
+            return GENERIC.execute(site, left, right);
+        }
+
+        abstract Environment.PlcObject apply(Object left, Object right);
+
+    }
+
+}
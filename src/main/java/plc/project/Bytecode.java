@@ -0,0 +1,595 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A register-based instruction set for programs compiled by {@link
+ * BytecodeCompiler} and run by {@link BytecodeInterpreter}, and a binary
+ * format for them so they can be loaded without lexing or parsing.
+ *
+ * The code of a method is an array of ints: each instruction is an opcode
+ * followed by its operands, which are registers of the method, indices into
+ * the program's string table (names and operators) or constant pool, jump
+ * targets in the code, or a count followed by that many registers (see
+ * {@link #FORMATS}). Registers hold values and also the variables and
+ * iterators which statements work on.
+ */
+public final class Bytecode {
+
+    /** register, constant: loads a constant. */
+    public static final int CONSTANT = 0;
+    /** register, register: copies the second register to the first. */
+    public static final int MOVE = 1;
+    /** register, name: loads the value of a variable in the current scope. */
+    public static final int LOAD = 2;
+    /** register, name: loads a variable in the current scope, to {@link #SET}. */
+    public static final int VARIABLE = 3;
+    /** register, register, name: loads the value of a field of an object. */
+    public static final int FIELD = 4;
+    /** register, register, name: loads a field of an object, to {@link #SET}. */
+    public static final int FIELD_VARIABLE = 5;
+    /** register, register: sets the variable in the first register. */
+    public static final int SET = 6;
+    /** name, register: defines a variable in the current scope. */
+    public static final int DECLARE = 7;
+    /** register, register, register: arithmetic and comparisons. */
+    public static final int ADD = 8, SUBTRACT = 9, MULTIPLY = 10, LESS = 11, GREATER_EQUAL = 12, EQUAL = 13;
+    /** register, operator, register, register: any other binary operator. */
+    public static final int BINARY = 14;
+    /** register, register: copies a value, checked to be a boolean. */
+    public static final int BOOLEAN = 15;
+    /** target: jumps. */
+    public static final int JUMP = 16;
+    /** register, target: jumps if a value (checked to be a boolean) is false. */
+    public static final int JUMP_IF_FALSE = 17;
+    /** register, target: jumps if a value (checked to be a boolean) is true. */
+    public static final int JUMP_IF_TRUE = 18;
+    /** register, name, arguments: calls a function of the current scope. */
+    public static final int CALL = 19;
+    /** register, name, register, arguments: calls a method of an object. */
+    public static final int CALL_METHOD = 20;
+    /** register, register: loads an iterator over a value, checked to be a list. */
+    public static final int ITERATE = 21;
+    /** register, register, target: loads the next element, or jumps if there isn't one. */
+    public static final int NEXT = 22;
+    /** Enters a new scope of the current scope. */
+    public static final int ENTER = 23;
+    /** Exits to the parent of the current scope. */
+    public static final int EXIT = 24;
+    /** register: returns a value. */
+    public static final int RETURN = 25;
+    /** constant: throws a {@link RuntimeException} with a message. */
+    public static final int FAIL = 26;
+
+    /**
+     * The operands of each opcode: a Register, Name (or operator), Constant,
+     * Target, or a count followed by that many registers (Arguments).
+     */
+    static final String[] FORMATS = {
+            "RC", "RR", "RN", "RN", "RRN", "RRN", "RR", "NR",
+            "RRR", "RRR", "RRR", "RRR", "RRR", "RRR", "RNRR", "RR",
+            "T", "RT", "RT", "RNA", "RNRA", "RR", "RRT", "", "", "R", "C",
+    };
+
+    private static final int MAGIC = 0x504C4342; // "PLCB"
+    private static final int VERSION = 1;
+
+    private static final int NIL = 0, TRUE = 1, FALSE = 2, CHARACTER = 3, STRING = 4, INTEGER = 5, DECIMAL = 6;
+
+    private Bytecode() {}
+
+    public static final class Program {
+
+        private final String[] strings;
+        private final Object[] constants;
+        private final Method initializer;
+        private final List<Method> methods;
+
+        /**
+         * Creates a program from its string table, its constants (where null
+         * is NIL), the code which defines its fields and its methods.
+         */
+        public Program(String[] strings, Object[] constants, Method initializer, List<Method> methods) {
+            this.strings = strings;
+            this.constants = constants;
+            this.initializer = initializer;
+            this.methods = methods;
+        }
+
+        public String[] getStrings() {
+            return strings;
+        }
+
+        public Object[] getConstants() {
+            return constants;
+        }
+
+        /**
+         * The code which evaluates and defines the fields, in the scope the
+         * program is loaded into.
+         */
+        public Method getInitializer() {
+            return initializer;
+        }
+
+        public List<Method> getMethods() {
+            return methods;
+        }
+
+    }
+
+    public static final class Method {
+
+        private final String name;
+        private final int registers;
+        private final int[] parameters;
+        private final boolean scoped;
+        private final int[] code;
+
+        /**
+         * Creates a method with the given names of its parameters (in the
+         * string table) and number of registers.
+         *
+         * A scoped method runs in a new scope, in which its parameters are
+         * defined, like a method run by the {@link Interpreter}. Otherwise,
+         * its arguments are in its first registers and it runs in the scope
+         * it was called from, which is only possible if nothing else could
+         * have seen its variables.
+         */
+        public Method(String name, int registers, int[] parameters, boolean scoped, int[] code) {
+            this.name = name;
+            this.registers = registers;
+            this.parameters = parameters;
+            this.scoped = scoped;
+            this.code = code;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getArity() {
+            return parameters.length;
+        }
+
+        public int getRegisters() {
+            return registers;
+        }
+
+        public int[] getParameters() {
+            return parameters;
+        }
+
+        public boolean isScoped() {
+            return scoped;
+        }
+
+        public int[] getCode() {
+            return code;
+        }
+
+    }
+
+    /**
+     * Returns the size of the instruction at the index in the code.
+     */
+    static int size(int[] code, int pc) {
+        String format = FORMATS[code[pc]];
+        int size = 1 + format.length();
+        if (format.endsWith("A")) {
+            size += code[pc + format.length()];
+        }
+        return size;
+    }
+
+    public static byte[] encode(Program program) {
+        Output output = new Output();
+        output.writeInt(MAGIC);
+        output.writeVarint(VERSION);
+        output.writeVarint(program.strings.length);
+        for (String string : program.strings) {
+            output.writeString(string);
+        }
+        output.writeVarint(program.constants.length);
+        for (Object constant : program.constants) {
+            if (constant == null) {
+                output.write(NIL);
+            } else if (constant instanceof Boolean) {
+                output.write((Boolean) constant ? TRUE : FALSE);
+            } else if (constant instanceof Character) {
+                output.write(CHARACTER);
+                output.writeVarint((Character) constant);
+            } else if (constant instanceof String) {
+                output.write(STRING);
+                output.writeString((String) constant);
+            } else if (constant instanceof BigInteger) {
+                output.write(INTEGER);
+                output.writeBigInteger((BigInteger) constant);
+            } else if (constant instanceof BigDecimal) {
+                output.write(DECIMAL);
+                output.writeBigInteger(((BigDecimal) constant).unscaledValue());
+                int scale = ((BigDecimal) constant).scale();
+                output.writeVarint((scale << 1) ^ (scale >> 31));
+            } else {
+                throw new IllegalArgumentException("Unsupported constant type: " + constant.getClass().getName() + ".");
+            }
+        }
+        writeMethod(output, program.initializer);
+        output.writeVarint(program.methods.size());
+        for (Method method : program.methods) {
+            writeMethod(output, method);
+        }
+        return Arrays.copyOf(output.bytes, output.size);
+    }
+
+    private static void writeMethod(Output output, Method method) {
+        output.writeString(method.name);
+        output.writeVarint(method.registers);
+        output.write(method.scoped ? 1 : 0);
+        output.writeVarint(method.parameters.length);
+        for (int parameter : method.parameters) {
+            output.writeVarint(parameter);
+        }
+        output.writeVarint(method.code.length);
+        for (int value : method.code) {
+            output.writeVarint(value);
+        }
+    }
+
+    /**
+     * Decodes a program from the remaining bytes of the buffer. Throws an
+     * {@link IllegalArgumentException} if the bytes are not a valid program
+     * from this version of the format, including if any instruction refers
+     * to a register, string, constant or target which doesn't exist, or may
+     * read a register which doesn't hold the kind of thing it expects.
+     */
+    public static Program decode(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC || readVarint(buffer) != VERSION) {
+                throw new IllegalArgumentException("Not a compiled program of this version.");
+            }
+            String[] strings = new String[readCount(buffer)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(buffer);
+            }
+            Object[] constants = new Object[readCount(buffer)];
+            for (int i = 0; i < constants.length; i++) {
+                int tag = buffer.get();
+                switch (tag) {
+                    case NIL:
+                        break;
+                    case TRUE:
+                    case FALSE:
+                        constants[i] = tag == TRUE;
+                        break;
+                    case CHARACTER:
+                        constants[i] = (char) readVarint(buffer);
+                        break;
+                    case STRING:
+                        constants[i] = readString(buffer);
+                        break;
+                    case INTEGER:
+                        constants[i] = readBigInteger(buffer);
+                        break;
+                    case DECIMAL: {
+                        BigInteger unscaled = readBigInteger(buffer);
+                        int scale = readVarint(buffer);
+                        constants[i] = new BigDecimal(unscaled, (scale >>> 1) ^ -(scale & 1));
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Unrecognized constant tag " + tag + ".");
+                }
+            }
+            Method initializer = readMethod(buffer, strings.length, constants);
+            Method[] methods = new Method[readCount(buffer)];
+            for (int i = 0; i < methods.length; i++) {
+                methods[i] = readMethod(buffer, strings.length, constants);
+            }
+            return new Program(strings, constants, initializer, Arrays.asList(methods));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Unexpected end of program data.", e);
+        }
+    }
+
+    private static Method readMethod(ByteBuffer buffer, int strings, Object[] constants) {
+        String name = readString(buffer);
+        int registers = readVarint(buffer);
+        int scoped = buffer.get();
+        if (scoped != 0 && scoped != 1) {
+            throw new IllegalArgumentException("Invalid flag " + scoped + " in program data.");
+        }
+        int[] parameters = new int[readCount(buffer)];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = check(readVarint(buffer), strings, "string");
+        }
+        if (scoped == 0 && parameters.length > registers) {
+            throw new IllegalArgumentException("Method " + name + " has too few registers for its parameters.");
+        }
+        int[] code = new int[readCount(buffer)];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = readVarint(buffer);
+        }
+        verify(name, code, registers, strings, constants);
+        verifyKinds(name, code, registers, scoped == 1 ? 0 : parameters.length);
+        return new Method(name, registers, parameters, scoped == 1, code);
+    }
+
+    /**
+     * Checks the operands of each instruction, including that FAIL's message
+     * is a string, and that the code can't run past its end.
+     */
+    private static void verify(String name, int[] code, int registers, int strings, Object[] constants) {
+        boolean[] starts = new boolean[code.length + 1];
+        int pc = 0;
+        while (pc < code.length) {
+            starts[pc] = true;
+            if (code[pc] < 0 || code[pc] >= FORMATS.length) {
+                throw new IllegalArgumentException("Invalid opcode " + code[pc] + " in method " + name + ".");
+            }
+            String format = FORMATS[code[pc]];
+            if (pc + format.length() >= code.length) {
+                throw new IllegalArgumentException("Truncated instruction in method " + name + ".");
+            }
+            for (int i = 0; i < format.length(); i++) {
+                int operand = code[pc + 1 + i];
+                switch (format.charAt(i)) {
+                    case 'R':
+                        check(operand, registers, "register");
+                        break;
+                    case 'N':
+                        check(operand, strings, "string");
+                        break;
+                    case 'C':
+                        check(operand, constants.length, "constant");
+                        if (code[pc] == FAIL && !(constants[operand] instanceof String)) {
+                            throw new IllegalArgumentException("The message of a FAIL in method " + name + " isn't a string.");
+                        }
+                        break;
+                    case 'T':
+                        check(operand, code.length, "target");
+                        break;
+                    case 'A':
+                        if (operand < 0 || pc + 1 + i + operand >= code.length) {
+                            throw new IllegalArgumentException("Truncated instruction in method " + name + ".");
+                        }
+                        for (int j = 1; j <= operand; j++) {
+                            check(code[pc + 1 + i + j], registers, "register");
+                        }
+                        break;
+                    default:
+                        throw new AssertionError("Invalid operand format: " + format + ".");
+                }
+            }
+            pc += size(code, pc);
+        }
+        int last = code.length;
+        for (pc = 0; pc < code.length; pc += size(code, pc)) {
+            String format = FORMATS[code[pc]];
+            int target = format.indexOf('T');
+            if (target >= 0 && !starts[code[pc + 1 + target]]) {
+                throw new IllegalArgumentException("Jump into an instruction in method " + name + ".");
+            }
+            last = pc;
+        }
+        int op = last < code.length ? code[last] : -1;
+        if (op != RETURN && op != JUMP && op != FAIL) {
+            throw new IllegalArgumentException("Method " + name + " runs past the end of its code.");
+        }
+    }
+
+    /** The kinds of things a register may hold, as bits of a set. */
+    private static final int UNSET_KIND = 1, VALUE_KIND = 2, VARIABLE_KIND = 4, ITERATOR_KIND = 8;
+
+    /**
+     * Checks that each instruction reads registers holding the kind of thing
+     * it expects (a value, a variable or an iterator) on every path to it, so
+     * a valid program can't fail a cast in the interpreter. The first given
+     * number of registers start out holding the arguments. This should only
+     * be called once the code passed {@link #verify}.
+     */
+    private static void verifyKinds(String name, int[] code, int registers, int arguments) {
+        int[][] states = new int[code.length][];
+        int[] entry = new int[registers];
+        Arrays.fill(entry, UNSET_KIND);
+        Arrays.fill(entry, 0, arguments, VALUE_KIND);
+        states[0] = entry;
+        int[] pending = new int[code.length];
+        boolean[] queued = new boolean[code.length];
+        int count = 0;
+        pending[count++] = 0;
+        queued[0] = true;
+        while (count > 0) {
+            int pc = pending[--count];
+            queued[pc] = false;
+            int[] state = states[pc].clone();
+            int op = code[pc];
+            String format = FORMATS[op];
+            int next = pc + size(code, pc);
+            switch (op) {
+                case MOVE:
+                    state[code[pc + 1]] = state[code[pc + 2]];
+                    break;
+                case VARIABLE:
+                    state[code[pc + 1]] = VARIABLE_KIND;
+                    break;
+                case FIELD_VARIABLE:
+                    expect(state, code[pc + 2], VALUE_KIND, pc, name);
+                    state[code[pc + 1]] = VARIABLE_KIND;
+                    break;
+                case SET:
+                    expect(state, code[pc + 1], VARIABLE_KIND, pc, name);
+                    expect(state, code[pc + 2], VALUE_KIND, pc, name);
+                    break;
+                case ITERATE:
+                    expect(state, code[pc + 2], VALUE_KIND, pc, name);
+                    state[code[pc + 1]] = ITERATOR_KIND;
+                    break;
+                case NEXT:
+                    expect(state, code[pc + 2], ITERATOR_KIND, pc, name);
+                    // the element is only loaded when it doesn't jump
+                    count = merge(states, queued, pending, count, code[pc + 3], state);
+                    state = state.clone();
+                    state[code[pc + 1]] = VALUE_KIND;
+                    break;
+                default:
+                    // every other register operand is a value, and the first
+                    // is written if the instruction produces one
+                    boolean writes = format.startsWith("R") && op != JUMP_IF_FALSE && op != JUMP_IF_TRUE && op != RETURN;
+                    for (int i = writes ? 1 : 0; i < format.length(); i++) {
+                        if (format.charAt(i) == 'R') {
+                            expect(state, code[pc + 1 + i], VALUE_KIND, pc, name);
+                        } else if (format.charAt(i) == 'A') {
+                            for (int j = 1; j <= code[pc + 1 + i]; j++) {
+                                expect(state, code[pc + 1 + i + j], VALUE_KIND, pc, name);
+                            }
+                        }
+                    }
+                    if (writes) {
+                        state[code[pc + 1]] = VALUE_KIND;
+                    }
+            }
+            if (op == JUMP || op == JUMP_IF_FALSE || op == JUMP_IF_TRUE) {
+                count = merge(states, queued, pending, count, code[pc + format.length()], state);
+            }
+            if (op != JUMP && op != RETURN && op != FAIL && next < code.length) {
+                count = merge(states, queued, pending, count, next, state);
+            }
+        }
+    }
+
+    private static void expect(int[] state, int register, int kind, int pc, String name) {
+        if (state[register] != kind) {
+            throw new IllegalArgumentException("Register " + register + " may not hold a "
+                    + (kind == VALUE_KIND ? "value" : kind == VARIABLE_KIND ? "variable" : "iterator")
+                    + " at " + pc + " in method " + name + ".");
+        }
+    }
+
+    /**
+     * Merges the state of the registers flowing into an instruction with its
+     * known state, queueing the instruction if that changed its state and it
+     * isn't queued already. Returns the new number of pending instructions.
+     */
+    private static int merge(int[][] states, boolean[] queued, int[] pending, int count, int pc, int[] state) {
+        int[] known = states[pc];
+        if (known == null) {
+            states[pc] = state.clone();
+        } else {
+            boolean changed = false;
+            for (int i = 0; i < state.length; i++) {
+                if ((known[i] | state[i]) != known[i]) {
+                    known[i] |= state[i];
+                    changed = true;
+                }
+            }
+            if (!changed || queued[pc]) {
+                return count;
+            }
+        }
+        queued[pc] = true;
+        pending[count] = pc;
+        return count + 1;
+    }
+
+    private static int check(int operand, int limit, String kind) {
+        if (operand < 0 || operand >= limit) {
+            throw new IllegalArgumentException("Invalid " + kind + " " + operand + " in program data.");
+        }
+        return operand;
+    }
+
+    private static int readCount(ByteBuffer buffer) {
+        int count = readVarint(buffer);
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid count " + count + " in program data.");
+        }
+        return count;
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid varint in program data.");
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readCount(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static BigInteger readBigInteger(ByteBuffer buffer) {
+        byte[] magnitude = new byte[readCount(buffer)];
+        if (magnitude.length == 0) {
+            throw new IllegalArgumentException("Invalid integer in program data.");
+        }
+        buffer.get(magnitude);
+        return new BigInteger(magnitude);
+    }
+
+    /**
+     * A growable byte array, as in {@link AstCodec}.
+     */
+    private static final class Output {
+
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        private void write(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        private void write(byte[] source) {
+            if (size + source.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size * 2, size + source.length));
+            }
+            System.arraycopy(source, 0, bytes, size, source.length);
+            size += source.length;
+        }
+
+        private void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        private void writeString(String string) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes);
+        }
+
+        private void writeBigInteger(BigInteger value) {
+            byte[] magnitude = value.toByteArray();
+            writeVarint(magnitude.length);
+            write(magnitude);
+        }
+
+    }
+
+}
@@ -0,0 +1,417 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles an {@link Ast.Source} to a {@link Bytecode.Program}, evaluating
+ * everything in the same order as the {@link Interpreter}.
+ *
+ * The locals of a method which {@link IrBuilder} can lower are known to be
+ * invisible to any other method and always declared before they're used, so
+ * they're kept in registers and the method runs without a scope of its own.
+ * Any other method is compiled to run in scopes like the interpreter's, with
+ * its variables looked up by name. Values of expressions are kept in
+ * temporary registers above the locals.
+ */
+public final class BytecodeCompiler {
+
+    /**
+     * The depth of expressions the compiler recurses to before giving up,
+     * since unlike the interpreters it has no explicit stack to fall back to.
+     */
+    private static final int MAX_DEPTH = 1000;
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+
+    // the method being compiled
+    private int[] code;
+    private int size;
+    private boolean scoped;
+    /** The locals in registers, innermost scope last. */
+    private final List<Map<String, Integer>> frames = new ArrayList<>();
+    /** The number of registers holding locals (and loop iterators). */
+    private int locals;
+    /** The first register which isn't a local or a temporary in use. */
+    private int next;
+    private int registers;
+    private int depth;
+
+    private BytecodeCompiler() {}
+
+    /**
+     * Compiles the source. Throws an {@link IllegalArgumentException} if it
+     * has an expression nested more deeply than {@link #MAX_DEPTH}.
+     */
+    public static Bytecode.Program compile(Ast.Source source) {
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        Set<Ast.Method> unscoped = IrBuilder.lower(source).keySet();
+        Bytecode.Method initializer = compiler.compileFields(source.getFields());
+        List<Bytecode.Method> methods = new ArrayList<>();
+        for (Ast.Method method : source.getMethods()) {
+            methods.add(compiler.compileMethod(method, !unscoped.contains(method)));
+        }
+        return new Bytecode.Program(compiler.strings.toArray(new String[0]), compiler.constants.toArray(), initializer, methods);
+    }
+
+    private Bytecode.Method compileFields(List<Ast.Field> fields) {
+        start(true);
+        for (Ast.Field field : fields) {
+            int value = field.getValue().isPresent() ? compile(field.getValue().get()) : constant(null);
+            emit(Bytecode.DECLARE, string(field.getName()), value);
+            next = locals;
+        }
+        return finish("", new int[0]);
+    }
+
+    private Bytecode.Method compileMethod(Ast.Method method, boolean scoped) {
+        start(scoped);
+        int[] parameters = new int[method.getParameters().size()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = string(method.getParameters().get(i));
+            if (!scoped) {
+                frames.get(0).put(method.getParameters().get(i), local());
+            }
+        }
+        compile(method.getStatements());
+        return finish(method.getName(), parameters);
+    }
+
+    private void start(boolean scoped) {
+        this.scoped = scoped;
+        code = new int[64];
+        size = 0;
+        frames.clear();
+        frames.add(new HashMap<>());
+        locals = 0;
+        next = 0;
+        registers = 0;
+    }
+
+    private Bytecode.Method finish(String name, int[] parameters) {
+        emit(Bytecode.RETURN, constant(null));
+        return new Bytecode.Method(name, registers, parameters, scoped, Arrays.copyOf(code, size));
+    }
+
+    private void compile(List<Ast.Stmt> statements) {
+        for (Ast.Stmt stmt : statements) {
+            compile(stmt);
+            // temporaries are only used within a statement
+            next = locals;
+        }
+    }
+
+    private void compile(Ast.Stmt ast) {
+        if (ast instanceof Ast.Stmt.Expression) {
+            compile(((Ast.Stmt.Expression) ast).getExpression());
+        } else if (ast instanceof Ast.Stmt.Declaration) {
+            Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+            int value = declaration.getValue().isPresent() ? compile(declaration.getValue().get()) : constant(null);
+            if (scoped) {
+                emit(Bytecode.DECLARE, string(declaration.getName()), value);
+            } else {
+                // declared in either branch of an if, a local has one register
+                Map<String, Integer> frame = frames.get(frames.size() - 1);
+                Integer local = frame.get(declaration.getName());
+                if (local == null) {
+                    // the value is either in an older local or in the first
+                    // temporary, which becomes the new local
+                    local = local();
+                    frame.put(declaration.getName(), local);
+                }
+                move(local, value);
+            }
+        } else if (ast instanceof Ast.Stmt.Assignment) {
+            compileAssignment((Ast.Stmt.Assignment) ast);
+        } else if (ast instanceof Ast.Stmt.If) {
+            Ast.Stmt.If ifStmt = (Ast.Stmt.If) ast;
+            int condition = compile(ifStmt.getCondition());
+            int otherwise = emit(Bytecode.JUMP_IF_FALSE, condition, -1);
+            compile(ifStmt.getThenStatements());
+            if (ifStmt.getElseStatements().isEmpty()) {
+                patch(otherwise);
+            } else {
+                int end = emit(Bytecode.JUMP, -1);
+                patch(otherwise);
+                compile(ifStmt.getElseStatements());
+                patch(end);
+            }
+        } else if (ast instanceof Ast.Stmt.For) {
+            compileFor((Ast.Stmt.For) ast);
+        } else if (ast instanceof Ast.Stmt.While) {
+            Ast.Stmt.While whileStmt = (Ast.Stmt.While) ast;
+            int top = size;
+            int end = emit(Bytecode.JUMP_IF_FALSE, compile(whileStmt.getCondition()), -1);
+            next = locals;
+            compile(whileStmt.getStatements());
+            emit(Bytecode.JUMP, top);
+            patch(end);
+        } else if (ast instanceof Ast.Stmt.Return) {
+            emit(Bytecode.RETURN, compile(((Ast.Stmt.Return) ast).getValue()));
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    /**
+     * Compiles an assignment, which finds the variable (or field) it assigns
+     * before evaluating the value.
+     */
+    private void compileAssignment(Ast.Stmt.Assignment ast) {
+        if (!(ast.getReceiver() instanceof Ast.Expr.Access)) {
+            emit(Bytecode.FAIL, constantIndex("Receiver is not a valid access expression."));
+            return;
+        }
+        Ast.Expr.Access access = (Ast.Expr.Access) ast.getReceiver();
+        if (access.getReceiver().isPresent()) {
+            int receiver = compile(access.getReceiver().get());
+            int variable = temporary();
+            emit(Bytecode.FIELD_VARIABLE, variable, receiver, string(access.getName()));
+            emit(Bytecode.SET, variable, compile(ast.getValue()));
+            return;
+        }
+        Integer local = local(access.getName());
+        if (local != null) {
+            move(local, compile(ast.getValue()));
+        } else {
+            int variable = temporary();
+            emit(Bytecode.VARIABLE, variable, string(access.getName()));
+            emit(Bytecode.SET, variable, compile(ast.getValue()));
+        }
+    }
+
+    private void compileFor(Ast.Stmt.For ast) {
+        int base = locals;
+        int value = compile(ast.getValue());
+        // the iterator and element are kept for the whole loop, like locals
+        int iterator = local();
+        emit(Bytecode.ITERATE, iterator, value);
+        int element = local();
+        int top = emit(Bytecode.NEXT, element, iterator, -1);
+        if (scoped) {
+            emit(Bytecode.ENTER);
+            emit(Bytecode.DECLARE, string(ast.getName()), element);
+        } else {
+            Map<String, Integer> frame = new HashMap<>();
+            frame.put(ast.getName(), element);
+            frames.add(frame);
+        }
+        compile(ast.getStatements());
+        if (scoped) {
+            emit(Bytecode.EXIT);
+        } else {
+            frames.remove(frames.size() - 1);
+        }
+        emit(Bytecode.JUMP, top);
+        patch(top);
+        locals = base;
+        next = locals;
+    }
+
+    /**
+     * Compiles an expression and returns the register holding its value,
+     * which is a local's register or the first temporary allocated for it.
+     */
+    private int compile(Ast.Expr ast) {
+        if (depth >= MAX_DEPTH) {
+            throw new IllegalArgumentException("Expression nested too deeply to compile.");
+        }
+        depth++;
+        try {
+            return compileExpr(ast);
+        } finally {
+            depth--;
+        }
+    }
+
+    private int compileExpr(Ast.Expr ast) {
+        int base = next;
+        if (ast instanceof Ast.Expr.Literal) {
+            return constant(((Ast.Expr.Literal) ast).getLiteral());
+        } else if (ast instanceof Ast.Expr.Group) {
+            return compile(((Ast.Expr.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            String operator = binary.getOperator();
+            boolean and = operator.equals("AND") || operator.equals("&&");
+            if (and || operator.equals("OR") || operator.equals("||")) {
+                int left = compile(binary.getLeft());
+                int shortCircuit = emit(and ? Bytecode.JUMP_IF_FALSE : Bytecode.JUMP_IF_TRUE, left, -1);
+                int right = compile(binary.getRight());
+                next = base;
+                int result = temporary();
+                emit(Bytecode.BOOLEAN, result, right);
+                int end = emit(Bytecode.JUMP, -1);
+                patch(shortCircuit);
+                emit(Bytecode.CONSTANT, result, constantIndex(!and));
+                patch(end);
+                return result;
+            }
+            int left = compile(binary.getLeft());
+            int right = compile(binary.getRight());
+            next = base;
+            int result = temporary();
+            int opcode = opcode(operator);
+            if (opcode == Bytecode.BINARY) {
+                emit(Bytecode.BINARY, result, string(operator), left, right);
+            } else {
+                emit(opcode, result, left, right);
+            }
+            return result;
+        } else if (ast instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) ast;
+            if (access.getReceiver().isPresent()) {
+                int receiver = compile(access.getReceiver().get());
+                next = base;
+                int result = temporary();
+                emit(Bytecode.FIELD, result, receiver, string(access.getName()));
+                return result;
+            }
+            Integer local = local(access.getName());
+            if (local != null) {
+                return local;
+            }
+            int result = temporary();
+            emit(Bytecode.LOAD, result, string(access.getName()));
+            return result;
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            int[] arguments = new int[function.getArguments().size()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = compile(function.getArguments().get(i));
+            }
+            int receiver = function.getReceiver().isPresent() ? compile(function.getReceiver().get()) : -1;
+            next = base;
+            int result = temporary();
+            // the arguments are read before the result is written
+            if (receiver >= 0) {
+                emit(Bytecode.CALL_METHOD, result, string(function.getName()), receiver, arguments.length);
+            } else {
+                emit(Bytecode.CALL, result, string(function.getName()), arguments.length);
+            }
+            for (int argument : arguments) {
+                emit(argument);
+            }
+            return result;
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    private static int opcode(String operator) {
+        switch (operator) {
+            case "+":
+                return Bytecode.ADD;
+            case "-":
+                return Bytecode.SUBTRACT;
+            case "*":
+                return Bytecode.MULTIPLY;
+            case "<":
+                return Bytecode.LESS;
+            case ">=":
+                return Bytecode.GREATER_EQUAL;
+            case "==":
+                return Bytecode.EQUAL;
+            default:
+                return Bytecode.BINARY;
+        }
+    }
+
+    /**
+     * Returns the register of a local, or null if the name isn't one (or the
+     * method is scoped).
+     */
+    private Integer local(String name) {
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            Integer register = frames.get(i).get(name);
+            if (register != null) {
+                return register;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Allocates a register for a local, which lives until the end of the
+     * method or for loop it's declared in. This is the first temporary of
+     * the statement declaring it, if any.
+     */
+    private int local() {
+        int register = locals++;
+        next = Math.max(next, locals);
+        registers = Math.max(registers, locals);
+        return register;
+    }
+
+    private int temporary() {
+        registers = Math.max(registers, next + 1);
+        return next++;
+    }
+
+    /**
+     * Loads a constant into a new temporary.
+     */
+    private int constant(Object value) {
+        int register = temporary();
+        emit(Bytecode.CONSTANT, register, constantIndex(value));
+        return register;
+    }
+
+    private int constantIndex(Object value) {
+        // a character and a string (or an integer and a decimal) can be
+        // equal as keys in no case, but keep their classes apart anyway
+        List<Object> key = Arrays.asList(value == null ? null : value.getClass(), value);
+        Integer index = constantIndices.get(key);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndices.put(key, index);
+        }
+        return index;
+    }
+
+    private int string(String string) {
+        Integer index = stringIndices.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndices.put(string, index);
+        }
+        return index;
+    }
+
+    private void move(int target, int source) {
+        if (target != source) {
+            emit(Bytecode.MOVE, target, source);
+        }
+    }
+
+    /**
+     * Emits an instruction and returns its index.
+     */
+    private int emit(int... values) {
+        if (size + values.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + values.length));
+        }
+        int start = size;
+        System.arraycopy(values, 0, code, size, values.length);
+        size += values.length;
+        return start;
+    }
+
+    /**
+     * Sets the target of the jump at the index (its last operand) to the end
+     * of the code.
+     */
+    private void patch(int jump) {
+        code[jump + Bytecode.FORMATS[code[jump]].length()] = size;
+    }
+
+}
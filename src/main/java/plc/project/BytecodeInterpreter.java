@@ -0,0 +1,301 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs {@link Bytecode.Program}s, with the same semantics as running their
+ * sources with the {@link Interpreter}. Each method call gets an array of
+ * registers, and the instructions of its code are dispatched by a switch in
+ * a single loop.
+ */
+public final class BytecodeInterpreter {
+
+    private static final Environment.PlcObject TRUE = Environment.create(true);
+    private static final Environment.PlcObject FALSE = Environment.create(false);
+
+    private Scope scope;
+
+    public BytecodeInterpreter(Scope parent) {
+        scope = new Scope(parent);
+        scope.defineFunction("print", 1, Interpreter.PRINT);
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Evaluates the fields of the program and defines its methods in the
+     * interpreter's scope, like {@link Interpreter#visit(Ast.Source)}.
+     */
+    public void load(Bytecode.Program program) {
+        Symbol[] symbols = new Symbol[program.getStrings().length];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = Symbol.of(program.getStrings()[i]);
+        }
+        Environment.PlcObject[] constants = new Environment.PlcObject[program.getConstants().length];
+        for (int i = 0; i < constants.length; i++) {
+            Object constant = program.getConstants()[i];
+            constants[i] = constant == null ? Environment.NIL : Environment.create(constant);
+        }
+        Code initializer = new Code(program.getInitializer(), program.getStrings(), symbols, constants);
+        run(initializer, new Object[initializer.registers]);
+        for (Bytecode.Method method : program.getMethods()) {
+            Code code = new Code(method, program.getStrings(), symbols, constants);
+            scope.defineFunction(method.getName(), method.getArity(), new Environment.Body() {
+                @Override
+                public Environment.PlcObject call(Environment.PlcObject[] arguments) {
+                    return invoke(code, arguments);
+                }
+            });
+        }
+    }
+
+    private Environment.PlcObject invoke(Code code, Environment.PlcObject[] arguments) {
+        Object[] registers = new Object[code.registers];
+        Scope caller = scope;
+        if (code.scoped) {
+            Scope methodScope = new Scope(scope);
+            for (int i = 0; i < arguments.length; i++) {
+                methodScope.defineVariable(code.parameters[i], arguments[i]);
+            }
+            scope = methodScope;
+        } else {
+            System.arraycopy(arguments, 0, registers, 0, arguments.length);
+        }
+        try {
+            return run(code, registers);
+        } finally {
+            scope = caller;
+        }
+    }
+
+    private Environment.PlcObject run(Code method, Object[] registers) {
+        int[] code = method.code;
+        Symbol[] symbols = method.symbols;
+        Environment.PlcObject[] constants = method.constants;
+        int pc = 0;
+        while (true) {
+            switch (code[pc]) {
+                case Bytecode.CONSTANT:
+                    registers[code[pc + 1]] = constants[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case Bytecode.MOVE:
+                    registers[code[pc + 1]] = registers[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case Bytecode.LOAD:
+                    registers[code[pc + 1]] = scope.lookupVariable(symbols[code[pc + 2]]).getValue();
+                    pc += 3;
+                    break;
+                case Bytecode.VARIABLE:
+                    registers[code[pc + 1]] = scope.lookupVariable(symbols[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case Bytecode.FIELD:
+                    registers[code[pc + 1]] = ((Environment.PlcObject) registers[code[pc + 2]]).getField(symbols[code[pc + 3]]).getValue();
+                    pc += 4;
+                    break;
+                case Bytecode.FIELD_VARIABLE:
+                    registers[code[pc + 1]] = ((Environment.PlcObject) registers[code[pc + 2]]).getField(symbols[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case Bytecode.SET:
+                    ((Environment.Variable) registers[code[pc + 1]]).setValue((Environment.PlcObject) registers[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case Bytecode.DECLARE:
+                    scope.defineVariable(symbols[code[pc + 1]], (Environment.PlcObject) registers[code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case Bytecode.ADD:
+                case Bytecode.SUBTRACT:
+                case Bytecode.MULTIPLY:
+                case Bytecode.LESS:
+                case Bytecode.GREATER_EQUAL:
+                case Bytecode.EQUAL:
+                    registers[code[pc + 1]] = arithmetic(code[pc], (Environment.PlcObject) registers[code[pc + 2]], (Environment.PlcObject) registers[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case Bytecode.BINARY:
+                    registers[code[pc + 1]] = Interpreter.applyBinary(method.strings[code[pc + 2]],
+                            (Environment.PlcObject) registers[code[pc + 3]], (Environment.PlcObject) registers[code[pc + 4]]);
+                    pc += 5;
+                    break;
+                case Bytecode.BOOLEAN:
+                    registers[code[pc + 1]] = Interpreter.requireType(Boolean.class, (Environment.PlcObject) registers[code[pc + 2]]) ? TRUE : FALSE;
+                    pc += 3;
+                    break;
+                case Bytecode.JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case Bytecode.JUMP_IF_FALSE:
+                    pc = Interpreter.requireType(Boolean.class, (Environment.PlcObject) registers[code[pc + 1]]) ? pc + 3 : code[pc + 2];
+                    break;
+                case Bytecode.JUMP_IF_TRUE:
+                    pc = Interpreter.requireType(Boolean.class, (Environment.PlcObject) registers[code[pc + 1]]) ? code[pc + 2] : pc + 3;
+                    break;
+                case Bytecode.CALL: {
+                    int count = code[pc + 3];
+                    Environment.Function function = scope.lookupFunction(symbols[code[pc + 2]], count);
+                    registers[code[pc + 1]] = call(function, code, pc + 4, count, registers);
+                    pc += 4 + count;
+                    break;
+                }
+                case Bytecode.CALL_METHOD: {
+                    int count = code[pc + 4];
+                    Environment.PlcObject receiver = (Environment.PlcObject) registers[code[pc + 3]];
+                    registers[code[pc + 1]] = callMethod(receiver, symbols[code[pc + 2]], code, pc + 5, count, registers);
+                    pc += 5 + count;
+                    break;
+                }
+                case Bytecode.ITERATE:
+                    registers[code[pc + 1]] = Interpreter.requireType(List.class, (Environment.PlcObject) registers[code[pc + 2]]).iterator();
+                    pc += 3;
+                    break;
+                case Bytecode.NEXT: {
+                    Iterator<?> iterator = (Iterator<?>) registers[code[pc + 2]];
+                    if (iterator.hasNext()) {
+                        registers[code[pc + 1]] = iterator.next();
+                        pc += 4;
+                    } else {
+                        pc = code[pc + 3];
+                    }
+                    break;
+                }
+                case Bytecode.ENTER:
+                    scope = new Scope(scope);
+                    pc++;
+                    break;
+                case Bytecode.EXIT:
+                    scope = scope.getParent();
+                    pc++;
+                    break;
+                case Bytecode.RETURN:
+                    return (Environment.PlcObject) registers[code[pc + 1]];
+                case Bytecode.FAIL:
+                    throw new RuntimeException((String) constants[code[pc + 1]].getValue());
+                default:
+                    throw new AssertionError("Invalid opcode: " + code[pc] + ".");
+            }
+        }
+    }
+
+    /**
+     * Applies an arithmetic or comparison opcode, directly if both operands
+     * are integers and otherwise like the interpreter.
+     */
+    private static Environment.PlcObject arithmetic(int opcode, Environment.PlcObject left, Environment.PlcObject right) {
+        if (opcode == Bytecode.EQUAL) {
+            return left.getValue().equals(right.getValue()) ? TRUE : FALSE;
+        }
+        if (left.getValue() instanceof BigInteger && right.getValue() instanceof BigInteger) {
+            BigInteger first = (BigInteger) left.getValue();
+            BigInteger second = (BigInteger) right.getValue();
+            switch (opcode) {
+                case Bytecode.ADD:
+                    return Environment.create(first.add(second));
+                case Bytecode.SUBTRACT:
+                    return Environment.create(first.subtract(second));
+                case Bytecode.MULTIPLY:
+                    return Environment.create(first.multiply(second));
+                case Bytecode.LESS:
+                    return first.compareTo(second) < 0 ? TRUE : FALSE;
+                default:
+                    return first.compareTo(second) >= 0 ? TRUE : FALSE;
+            }
+        }
+        switch (opcode) {
+            case Bytecode.ADD:
+                return Interpreter.applyBinary("+", left, right);
+            case Bytecode.SUBTRACT:
+                return Interpreter.applyBinary("-", left, right);
+            case Bytecode.MULTIPLY:
+                return Interpreter.applyBinary("*", left, right);
+            case Bytecode.LESS:
+                return Interpreter.applyBinary("<", left, right);
+            default:
+                return Interpreter.applyBinary(">=", left, right);
+        }
+    }
+
+    /**
+     * Invokes a function with the values of the registers listed in the
+     * code, directly if there are at most four of them.
+     */
+    private static Environment.PlcObject call(Environment.Function function, int[] code, int start, int count, Object[] registers) {
+        switch (count) {
+            case 0:
+                return function.invoke();
+            case 1:
+                return function.invoke((Environment.PlcObject) registers[code[start]]);
+            case 2:
+                return function.invoke((Environment.PlcObject) registers[code[start]], (Environment.PlcObject) registers[code[start + 1]]);
+            case 3:
+                return function.invoke((Environment.PlcObject) registers[code[start]], (Environment.PlcObject) registers[code[start + 1]],
+                        (Environment.PlcObject) registers[code[start + 2]]);
+            case 4:
+                return function.invoke((Environment.PlcObject) registers[code[start]], (Environment.PlcObject) registers[code[start + 1]],
+                        (Environment.PlcObject) registers[code[start + 2]], (Environment.PlcObject) registers[code[start + 3]]);
+            default:
+                return function.invoke(arguments(code, start, count, registers));
+        }
+    }
+
+    private static Environment.PlcObject callMethod(Environment.PlcObject receiver, Symbol name, int[] code, int start, int count, Object[] registers) {
+        switch (count) {
+            case 0:
+                return receiver.callMethod(name);
+            case 1:
+                return receiver.callMethod(name, (Environment.PlcObject) registers[code[start]]);
+            case 2:
+                return receiver.callMethod(name, (Environment.PlcObject) registers[code[start]], (Environment.PlcObject) registers[code[start + 1]]);
+            case 3:
+                return receiver.callMethod(name, (Environment.PlcObject) registers[code[start]], (Environment.PlcObject) registers[code[start + 1]],
+                        (Environment.PlcObject) registers[code[start + 2]]);
+            default:
+                return receiver.callMethod(name, arguments(code, start, count, registers));
+        }
+    }
+
+    private static Environment.PlcObject[] arguments(int[] code, int start, int count, Object[] registers) {
+        Environment.PlcObject[] arguments = new Environment.PlcObject[count];
+        for (int i = 0; i < count; i++) {
+            arguments[i] = (Environment.PlcObject) registers[code[start + i]];
+        }
+        return arguments;
+    }
+
+    /**
+     * A method of a loaded program, with the symbols and constants of the
+     * program resolved.
+     */
+    private static final class Code {
+
+        private final int[] code;
+        private final int registers;
+        private final boolean scoped;
+        private final Symbol[] parameters;
+        private final String[] strings;
+        private final Symbol[] symbols;
+        private final Environment.PlcObject[] constants;
+
+        private Code(Bytecode.Method method, String[] strings, Symbol[] symbols, Environment.PlcObject[] constants) {
+            this.code = method.getCode();
+            this.registers = method.getRegisters();
+            this.scoped = method.isScoped();
+            this.parameters = new Symbol[method.getArity()];
+            for (int i = 0; i < parameters.length; i++) {
+                parameters[i] = symbols[method.getParameters()[i]];
+            }
+            this.strings = strings;
+            this.symbols = symbols;
+            this.constants = constants;
+        }
+
+    }
+
+}
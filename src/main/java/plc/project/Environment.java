@@ -1,6 +1,6 @@
 package plc.project;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Environment {
@@ -29,6 +29,10 @@ public class Environment {
         }
 
         public Variable getField(String name) {
+            return getField(Symbol.of(name));
+        }
+
+        public Variable getField(Symbol name) {
             return scope.lookupVariable(name);
         }
 
@@ -37,10 +41,70 @@ public class Environment {
         }
 
         public PlcObject callMethod(String name, List<PlcObject> arguments) {
-            Function function = scope.lookupFunction(name, arguments.size() + 1);
-            arguments = new ArrayList<>(arguments);
-            arguments.add(0, this);
-            return function.invoke(arguments);
+            return callMethod(Symbol.of(name), arguments);
+        }
+
+        public PlcObject callMethod(Symbol name, List<PlcObject> arguments) {
+            PlcObject[] values = new PlcObject[arguments.size() + 1];
+            values[0] = this;
+            for (int i = 0; i < arguments.size(); i++) {
+                values[i + 1] = arguments.get(i);
+            }
+            return scope.lookupFunction(name, values.length).invoke(values);
+        }
+
+        /*
+         * The receiver is passed to the method as its first argument, so the
+         * methods with up to three more arguments are invoked with fixed arity.
+         */
+
+        public PlcObject callMethod(Symbol name) {
+            return scope.lookupFunction(name, 1).invoke(this);
+        }
+
+        public PlcObject callMethod(Symbol name, PlcObject first) {
+            return scope.lookupFunction(name, 2).invoke(this, first);
+        }
+
+        public PlcObject callMethod(Symbol name, PlcObject first, PlcObject second) {
+            return scope.lookupFunction(name, 3).invoke(this, first, second);
+        }
+
+        public PlcObject callMethod(Symbol name, PlcObject first, PlcObject second, PlcObject third) {
+            return scope.lookupFunction(name, 4).invoke(this, first, second, third);
+        }
+
+        /**
+         * Calls a method with count arguments from the array, starting at
+         * the index, without copying them if there are at most three.
+         */
+        public PlcObject callMethod(Symbol name, PlcObject[] values, int start, int count) {
+            switch (count) {
+                case 0:
+                    return callMethod(name);
+                case 1:
+                    return callMethod(name, values[start]);
+                case 2:
+                    return callMethod(name, values[start], values[start + 1]);
+                case 3:
+                    return callMethod(name, values[start], values[start + 1], values[start + 2]);
+                default:
+                    PlcObject[] arguments = new PlcObject[count + 1];
+                    arguments[0] = this;
+                    System.arraycopy(values, start, arguments, 1, count);
+                    return scope.lookupFunction(name, arguments.length).invoke(arguments);
+            }
+        }
+
+        /**
+         * Calls a method with the arguments in an array, which must not be
+         * changed by the caller afterwards.
+         */
+        public PlcObject callMethod(Symbol name, PlcObject[] arguments) {
+            PlcObject[] values = new PlcObject[arguments.length + 1];
+            values[0] = this;
+            System.arraycopy(arguments, 0, values, 1, arguments.length);
+            return scope.lookupFunction(name, values.length).invoke(values);
         }
 
         public Object getValue() {
@@ -93,12 +157,16 @@ public class Environment {
 
         private final String name;
         private final int arity;
-        private final java.util.function.Function<List<PlcObject>, PlcObject> function;
+        private final Body body;
 
         public Function(String name, int arity, java.util.function.Function<List<PlcObject>, PlcObject> function) {
+            this(name, arity, new ListBody(function));
+        }
+
+        public Function(String name, int arity, Body body) {
             this.name = name;
             this.arity = arity;
-            this.function = function;
+            this.body = body;
         }
 
         public String getName() {
@@ -110,7 +178,56 @@ public class Environment {
         }
 
         public PlcObject invoke(List<PlcObject> arguments) {
-            return function.apply(arguments);
+            return body.call(arguments);
+        }
+
+        public PlcObject invoke() {
+            return body.call();
+        }
+
+        public PlcObject invoke(PlcObject first) {
+            return body.call(first);
+        }
+
+        public PlcObject invoke(PlcObject first, PlcObject second) {
+            return body.call(first, second);
+        }
+
+        public PlcObject invoke(PlcObject first, PlcObject second, PlcObject third) {
+            return body.call(first, second, third);
+        }
+
+        public PlcObject invoke(PlcObject first, PlcObject second, PlcObject third, PlcObject fourth) {
+            return body.call(first, second, third, fourth);
+        }
+
+        /**
+         * Invokes the function with the arguments in an array, which must not
+         * be changed by the caller afterwards.
+         */
+        public PlcObject invoke(PlcObject[] arguments) {
+            return body.call(arguments);
+        }
+
+        /**
+         * Invokes the function with count arguments from the array, starting
+         * at the index, without copying them if there are at most four.
+         */
+        public PlcObject invoke(PlcObject[] values, int start, int count) {
+            switch (count) {
+                case 0:
+                    return body.call();
+                case 1:
+                    return body.call(values[start]);
+                case 2:
+                    return body.call(values[start], values[start + 1]);
+                case 3:
+                    return body.call(values[start], values[start + 1], values[start + 2]);
+                case 4:
+                    return body.call(values[start], values[start + 1], values[start + 2], values[start + 3]);
+                default:
+                    return body.call(Arrays.copyOfRange(values, start, start + count));
+            }
         }
 
         @Override
@@ -118,10 +235,77 @@ public class Environment {
             return "Function{" +
                     "name='" + name + '\'' +
                     ", arity=" + arity +
-                    ", function=" + function +
+                    ", function=" + body +
                     '}';
         }
 
     }
 
+    /**
+     * The implementation of a {@link Function}. Only {@link
+     * #call(PlcObject[])} has to be implemented; the fixed-arity calls, for
+     * functions of up to four arguments, are overridden to take the arguments
+     * without an array being allocated for them.
+     */
+    public abstract static class Body {
+
+        private static final PlcObject[] NO_ARGUMENTS = new PlcObject[0];
+
+        public abstract PlcObject call(PlcObject[] arguments);
+
+        public PlcObject call(List<PlcObject> arguments) {
+            return call(arguments.toArray(new PlcObject[arguments.size()]));
+        }
+
+        public PlcObject call() {
+            return call(NO_ARGUMENTS);
+        }
+
+        public PlcObject call(PlcObject first) {
+            return call(new PlcObject[] {first});
+        }
+
+        public PlcObject call(PlcObject first, PlcObject second) {
+            return call(new PlcObject[] {first, second});
+        }
+
+        public PlcObject call(PlcObject first, PlcObject second, PlcObject third) {
+            return call(new PlcObject[] {first, second, third});
+        }
+
+        public PlcObject call(PlcObject first, PlcObject second, PlcObject third, PlcObject fourth) {
+            return call(new PlcObject[] {first, second, third, fourth});
+        }
+
+    }
+
+    /**
+     * The body of a function taking its arguments as a list, which is passed
+     * the list it's invoked with as is.
+     */
+    private static final class ListBody extends Body {
+
+        private final java.util.function.Function<List<PlcObject>, PlcObject> function;
+
+        private ListBody(java.util.function.Function<List<PlcObject>, PlcObject> function) {
+            this.function = function;
+        }
+
+        @Override
+        public PlcObject call(PlcObject[] arguments) {
+            return function.apply(Arrays.asList(arguments));
+        }
+
+        @Override
+        public PlcObject call(List<PlcObject> arguments) {
+            return function.apply(arguments);
+        }
+
+        @Override
+        public String toString() {
+            return function.toString();
+        }
+
+    }
+
 }
@@ -0,0 +1,431 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An alternative representation of an {@link Ast.Source} as a handful of
+ * arrays instead of a graph of objects, for analyses over very large
+ * programs. Each node is an {@code int} id, and its kind, value and children
+ * are read through the accessors of this class rather than from node objects.
+ *
+ * Ids are assigned in post-order, so every node comes after its children and
+ * the source is the last node. A loop over {@code 0 <= node < size()}
+ * therefore visits the AST bottom-up in a single linear pass over the arrays,
+ * as {@link #toAst()} does, and a tree walk needs no recursion.
+ *
+ * The value of a node is an index into a table of constants (names,
+ * operators and literal values), which is shared by all equal constants.
+ * The children of a node are a range of the {@code children} array, in the
+ * same order as the getters of the corresponding {@link Ast} class:
+ *
+ * <ul>
+ *     <li>{@code SOURCE}: the fields, then the methods (see {@link
+ *     #getFieldCount(int)}).</li>
+ *     <li>{@code FIELD} and {@code DECLARATION}: the value, if present.</li>
+ *     <li>{@code METHOD}, {@code FOR} and {@code WHILE}: the value or
+ *     condition if any, then the statements.</li>
+ *     <li>{@code IF}: the condition, then statements and else statements
+ *     (see {@link #getThenCount(int)}).</li>
+ *     <li>{@code ACCESS} and {@code FUNCTION}: the receiver, if present (see
+ *     {@link #hasReceiver(int)}), then the arguments.</li>
+ *     <li>All others: their expressions, left-to-right.</li>
+ * </ul>
+ */
+public final class FlatAst {
+
+    public enum Kind {
+        SOURCE,
+        FIELD,
+        METHOD,
+        EXPRESSION,
+        DECLARATION,
+        ASSIGNMENT,
+        IF,
+        FOR,
+        WHILE,
+        RETURN,
+        LITERAL,
+        GROUP,
+        BINARY,
+        ACCESS,
+        FUNCTION
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final byte[] kinds;
+    private final int[] values;
+    private final int[] extras; // the field count, parameters, then count or receiver flag
+    private final int[] starts;
+    private final int[] counts;
+    private final int[] children;
+    private final Object[] constants;
+
+    private FlatAst(Builder builder) {
+        this.kinds = Arrays.copyOf(builder.kinds, builder.size);
+        this.values = Arrays.copyOf(builder.values, builder.size);
+        this.extras = Arrays.copyOf(builder.extras, builder.size);
+        this.starts = Arrays.copyOf(builder.starts, builder.size);
+        this.counts = Arrays.copyOf(builder.counts, builder.size);
+        this.children = Arrays.copyOf(builder.children, builder.childCount);
+        this.constants = builder.constants.toArray();
+    }
+
+    /**
+     * Flattens the source. This does not recurse, so it works for arbitrarily
+     * deep expressions.
+     */
+    public static FlatAst from(Ast.Source source) {
+        // As in AstCodec, reversing a walk of each node before its children
+        // right-to-left gives post-order with children left-to-right.
+        List<Ast> order = new ArrayList<>();
+        List<Ast> pending = new ArrayList<>();
+        pending.add(source);
+        AstChildren walker = new AstChildren(pending);
+        while (!pending.isEmpty()) {
+            Ast ast = pending.remove(pending.size() - 1);
+            order.add(ast);
+            walker.visit(ast);
+        }
+        Builder builder = new Builder(order.size());
+        for (int i = order.size() - 1; i >= 0; i--) {
+            builder.visit(order.get(i));
+        }
+        return new FlatAst(builder);
+    }
+
+    /**
+     * Converts back to {@link Ast} objects, equal to the source this was
+     * created from.
+     */
+    public Ast.Source toAst() {
+        Ast[] nodes = new Ast[size()];
+        for (int node = 0; node < nodes.length; node++) {
+            int count = counts[node];
+            switch (getKind(node)) {
+                case SOURCE:
+                    nodes[node] = new Ast.Source(
+                            list(nodes, Ast.Field.class, node, 0, extras[node]),
+                            list(nodes, Ast.Method.class, node, extras[node], count));
+                    break;
+                case FIELD:
+                    nodes[node] = new Ast.Field(getName(node), optional(nodes, node, count == 1));
+                    break;
+                case METHOD:
+                    nodes[node] = new Ast.Method(getName(node), getParameters(node), list(nodes, Ast.Stmt.class, node, 0, count));
+                    break;
+                case EXPRESSION:
+                    nodes[node] = new Ast.Stmt.Expression(expr(nodes, node, 0));
+                    break;
+                case DECLARATION:
+                    nodes[node] = new Ast.Stmt.Declaration(getName(node), optional(nodes, node, count == 1));
+                    break;
+                case ASSIGNMENT:
+                    nodes[node] = new Ast.Stmt.Assignment(expr(nodes, node, 0), expr(nodes, node, 1));
+                    break;
+                case IF:
+                    nodes[node] = new Ast.Stmt.If(expr(nodes, node, 0),
+                            list(nodes, Ast.Stmt.class, node, 1, 1 + extras[node]),
+                            list(nodes, Ast.Stmt.class, node, 1 + extras[node], count));
+                    break;
+                case FOR:
+                    nodes[node] = new Ast.Stmt.For(getName(node), expr(nodes, node, 0), list(nodes, Ast.Stmt.class, node, 1, count));
+                    break;
+                case WHILE:
+                    nodes[node] = new Ast.Stmt.While(expr(nodes, node, 0), list(nodes, Ast.Stmt.class, node, 1, count));
+                    break;
+                case RETURN:
+                    nodes[node] = new Ast.Stmt.Return(expr(nodes, node, 0));
+                    break;
+                case LITERAL:
+                    nodes[node] = new Ast.Expr.Literal(getLiteral(node));
+                    break;
+                case GROUP:
+                    nodes[node] = new Ast.Expr.Group(expr(nodes, node, 0));
+                    break;
+                case BINARY:
+                    nodes[node] = new Ast.Expr.Binary(getOperator(node), expr(nodes, node, 0), expr(nodes, node, 1));
+                    break;
+                case ACCESS:
+                    nodes[node] = new Ast.Expr.Access(optional(nodes, node, count == 1), getSymbol(node));
+                    break;
+                case FUNCTION: {
+                    int receiver = extras[node];
+                    nodes[node] = new Ast.Expr.Function(optional(nodes, node, receiver == 1), getSymbol(node),
+                            list(nodes, Ast.Expr.class, node, receiver, count));
+                    break;
+                }
+                default:
+                    throw new AssertionError("Unimplemented flat AST kind: " + getKind(node) + ".");
+            }
+            // children are only referenced by their parent, so release them
+            for (int i = 0; i < count; i++) {
+                nodes[getChild(node, i)] = null;
+            }
+        }
+        return (Ast.Source) nodes[getRoot()];
+    }
+
+    private <T extends Ast> List<T> list(Ast[] nodes, Class<T> type, int node, int from, int to) {
+        List<T> list = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            list.add(type.cast(nodes[getChild(node, i)]));
+        }
+        return list;
+    }
+
+    private Ast.Expr expr(Ast[] nodes, int node, int index) {
+        return (Ast.Expr) nodes[getChild(node, index)];
+    }
+
+    private Optional<Ast.Expr> optional(Ast[] nodes, int node, boolean present) {
+        return present ? Optional.of(expr(nodes, node, 0)) : Optional.empty();
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int size() {
+        return kinds.length;
+    }
+
+    /**
+     * Returns the id of the {@code SOURCE} node, which is always the last.
+     */
+    public int getRoot() {
+        return kinds.length - 1;
+    }
+
+    public Kind getKind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    public int getChildCount(int node) {
+        return counts[node];
+    }
+
+    public int getChild(int node, int index) {
+        if (index < 0 || index >= counts[node]) {
+            throw new IndexOutOfBoundsException("Child " + index + " of node " + node + " with " + counts[node] + " children.");
+        }
+        return children[starts[node] + index];
+    }
+
+    /**
+     * Returns the name of a field, method, declaration, for loop, access or
+     * function.
+     */
+    public String getName(int node) {
+        return getSymbol(node).getName();
+    }
+
+    public Symbol getSymbol(int node) {
+        return (Symbol) constants[values[node]];
+    }
+
+    public String getOperator(int node) {
+        return (String) constants[values[node]];
+    }
+
+    public Object getLiteral(int node) {
+        return constants[values[node]];
+    }
+
+    /**
+     * Returns the (unmodifiable) parameter names of a method.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getParameters(int node) {
+        return (List<String>) constants[extras[node]];
+    }
+
+    /**
+     * Returns the number of fields of the source, which are followed by the
+     * methods in its children.
+     */
+    public int getFieldCount(int node) {
+        return extras[node];
+    }
+
+    /**
+     * Returns the number of statements of an if statement before its else
+     * statements, after the condition.
+     */
+    public int getThenCount(int node) {
+        return extras[node];
+    }
+
+    /**
+     * Returns true if the access or function has a receiver, which is then its
+     * first child.
+     */
+    public boolean hasReceiver(int node) {
+        return getKind(node) == Kind.ACCESS ? counts[node] == 1 : extras[node] == 1;
+    }
+
+    /**
+     * Appends nodes in post-order. The ids of the children of each node are
+     * on top of the {@code stack} when it is visited.
+     */
+    private static final class Builder implements Ast.Visitor<Void> {
+
+        private final byte[] kinds;
+        private final int[] values;
+        private final int[] extras;
+        private final int[] starts;
+        private final int[] counts;
+        private int size;
+
+        private int[] children;
+        private int childCount;
+
+        private final int[] stack;
+        private int stackSize;
+
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> indices = new HashMap<>();
+
+        private Builder(int nodes) {
+            kinds = new byte[nodes];
+            values = new int[nodes];
+            extras = new int[nodes];
+            starts = new int[nodes];
+            counts = new int[nodes];
+            children = new int[nodes];
+            stack = new int[nodes];
+        }
+
+        /**
+         * Adds a node with the given number of children from the stack.
+         */
+        private void add(Kind kind, int value, int extra, int count) {
+            kinds[size] = (byte) kind.ordinal();
+            values[size] = value;
+            extras[size] = extra;
+            starts[size] = childCount;
+            counts[size] = count;
+            if (childCount + count > children.length) {
+                children = Arrays.copyOf(children, Math.max(children.length * 2, childCount + count));
+            }
+            stackSize -= count;
+            System.arraycopy(stack, stackSize, children, childCount, count);
+            childCount += count;
+            stack[stackSize++] = size++;
+        }
+
+        private int constant(Object constant) {
+            Integer index = indices.get(constant);
+            if (index == null) {
+                index = constants.size();
+                constants.add(constant);
+                indices.put(constant, index);
+            }
+            return index;
+        }
+
+        private int name(String name) {
+            return constant(Symbol.of(name));
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            add(Kind.SOURCE, -1, ast.getFields().size(), ast.getFields().size() + ast.getMethods().size());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            add(Kind.FIELD, name(ast.getName()), 0, ast.getValue().isPresent() ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            int parameters = constant(Collections.unmodifiableList(new ArrayList<>(ast.getParameters())));
+            add(Kind.METHOD, name(ast.getName()), parameters, ast.getStatements().size());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            add(Kind.EXPRESSION, -1, 0, 1);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            add(Kind.DECLARATION, name(ast.getName()), 0, ast.getValue().isPresent() ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            add(Kind.ASSIGNMENT, -1, 0, 2);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            int thenCount = ast.getThenStatements().size();
+            add(Kind.IF, -1, thenCount, 1 + thenCount + ast.getElseStatements().size());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            add(Kind.FOR, name(ast.getName()), 0, 1 + ast.getStatements().size());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            add(Kind.WHILE, -1, 0, 1 + ast.getStatements().size());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            add(Kind.RETURN, -1, 0, 1);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            add(Kind.LITERAL, constant(ast.getLiteral()), 0, 0);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            add(Kind.GROUP, -1, 0, 1);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            add(Kind.BINARY, constant(ast.getOperator()), 0, 2);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            add(Kind.ACCESS, constant(ast.getSymbol()), 0, ast.getReceiver().isPresent() ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            int receiver = ast.getReceiver().isPresent() ? 1 : 0;
+            add(Kind.FUNCTION, constant(ast.getSymbol()), receiver, receiver + ast.getArguments().size());
+            return null;
+        }
+
+    }
+
+}
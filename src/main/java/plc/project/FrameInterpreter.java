@@ -0,0 +1,537 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An interpreter with the same semantics as {@link Interpreter}, which runs
+ * statements, expressions and calls between the methods it defines on
+ * explicit stacks of tasks and values instead of the Java stack. A call
+ * pushes a frame onto the task stack, so the depth of recursion in a script
+ * is limited by the heap and the configured maximum depth, and the Java
+ * stack a thread needs doesn't depend on the script.
+ *
+ * Calls to other functions (and methods of objects) are made directly; if
+ * one of those calls back into a method of this interpreter, that method
+ * runs on the same stacks above the entries of the call in progress.
+ */
+public final class FrameInterpreter implements Ast.Visitor<Environment.PlcObject> {
+
+    public static final int DEFAULT_MAX_DEPTH = 100_000;
+
+    // The kinds of tasks. Each task takes the values its subexpressions left
+    // on the value stack, and EVALUATE leaves the value of an expression.
+    private static final int EXECUTE = 0, BLOCK = 1, DISCARD = 2, DECLARE = 3, ASSIGN_FIELD = 4, SET = 5,
+            IF = 6, FOR = 7, FOR_NEXT = 8, END_SCOPE = 9, WHILE = 10, RETURN = 11,
+            EVALUATE = 12, BINARY = 13, LOGICAL = 14, LOGICAL_RIGHT = 15, ACCESS = 16, CALL = 17, FRAME = 18;
+
+    private final int maxDepth;
+    private Scope scope;
+
+    /**
+     * The methods defined by {@link #visit(Ast.Method)}, which are called by
+     * pushing a frame instead of invoking their function.
+     */
+    private final Map<Environment.Function, Ast.Method> methods = new IdentityHashMap<>();
+
+    // The task stack: the kind of each task, its node (or list of
+    // statements), an index into the statements of a BLOCK (or the size of
+    // the value stack when a FRAME was called), and the variable, iterator
+    // or caller's scope of the task, if any.
+    private int[] kinds = new int[16];
+    private Object[] nodes = new Object[16];
+    private int[] indices = new int[16];
+    private Object[] auxiliaries = new Object[16];
+    private int taskCount = 0;
+    private Environment.PlcObject[] values = new Environment.PlcObject[16];
+    private int valueCount = 0;
+    private int depth = 0;
+
+    public FrameInterpreter(Scope parent) {
+        this(parent, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Creates an interpreter which throws if methods are called more than
+     * maxDepth deep.
+     */
+    public FrameInterpreter(Scope parent, int maxDepth) {
+        this.maxDepth = maxDepth;
+        scope = new Scope(parent);
+        scope.defineFunction("print", 1, Interpreter.PRINT);
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Source ast) {
+        for (Ast.Field field : ast.getFields()) {
+            visit(field);
+        }
+        for (Ast.Method method : ast.getMethods()) {
+            visit(method);
+        }
+        return Environment.NIL;
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Field ast) {
+        Environment.PlcObject value = ast.getValue().isPresent() ? run(EVALUATE, ast.getValue().get()) : Environment.NIL;
+        scope.defineVariable(ast.getName(), value);
+        return Environment.NIL;
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Method ast) {
+        scope.defineFunction(ast.getName(), ast.getParameters().size(), new Environment.Body() {
+            @Override
+            public Environment.PlcObject call(Environment.PlcObject[] arguments) {
+                return invoke(ast, arguments);
+            }
+        });
+        methods.put(scope.lookupFunction(ast.getName(), ast.getParameters().size()), ast);
+        return Environment.NIL;
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Stmt.Expression ast) {
+        return run(EXECUTE, ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Stmt.Declaration ast) {
+        return run(EXECUTE, ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Stmt.Assignment ast) {
+        return run(EXECUTE, ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Stmt.If ast) {
+        return run(EXECUTE, ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Stmt.For ast) {
+        return run(EXECUTE, ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Stmt.While ast) {
+        return run(EXECUTE, ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Stmt.Return ast) {
+        return run(EXECUTE, ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Expr.Literal ast) {
+        return run(EVALUATE, ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Expr.Group ast) {
+        return run(EVALUATE, ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Expr.Binary ast) {
+        return run(EVALUATE, ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Expr.Access ast) {
+        return run(EVALUATE, ast);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Expr.Function ast) {
+        return run(EVALUATE, ast);
+    }
+
+    /**
+     * Calls a method from outside of the interpreter's stacks, such as from
+     * a function called by a script or by the host.
+     */
+    private Environment.PlcObject invoke(Ast.Method method, Environment.PlcObject[] arguments) {
+        int taskBase = taskCount;
+        int valueBase = valueCount;
+        int depthBase = depth;
+        Scope saved = scope;
+        try {
+            call(method, arguments, 0);
+            loop(taskBase);
+            return popValue();
+        } finally {
+            reset(taskBase, valueBase, depthBase, saved);
+        }
+    }
+
+    /**
+     * Runs a statement (leaving NIL) or evaluates an expression.
+     */
+    private Environment.PlcObject run(int kind, Ast ast) {
+        int taskBase = taskCount;
+        int valueBase = valueCount;
+        int depthBase = depth;
+        Scope saved = scope;
+        try {
+            pushTask(kind, ast, 0, null);
+            loop(taskBase);
+            return kind == EVALUATE ? popValue() : Environment.NIL;
+        } finally {
+            reset(taskBase, valueBase, depthBase, saved);
+        }
+    }
+
+    /**
+     * Discards the entries of a run, which are left if it threw.
+     */
+    private void reset(int taskBase, int valueBase, int depthBase, Scope saved) {
+        while (taskCount > taskBase) {
+            taskCount--;
+            nodes[taskCount] = null;
+            auxiliaries[taskCount] = null;
+        }
+        while (valueCount > valueBase) {
+            values[--valueCount] = null;
+        }
+        depth = depthBase;
+        scope = saved;
+    }
+
+    /**
+     * Runs tasks until the stack is back down to the base.
+     */
+    private void loop(int taskBase) {
+        while (taskCount > taskBase) {
+            int top = taskCount - 1;
+            int kind = kinds[top];
+            Object node = nodes[top];
+            if (kind == BLOCK) {
+                // runs the statements in order, keeping the task until the last
+                List<?> statements = (List<?>) node;
+                int index = indices[top]++;
+                if (index + 1 >= statements.size()) {
+                    popTask();
+                }
+                if (index < statements.size()) {
+                    execute((Ast.Stmt) statements.get(index));
+                }
+                continue;
+            }
+            Object auxiliary = auxiliaries[top];
+            popTask();
+            switch (kind) {
+                case EXECUTE:
+                    execute((Ast.Stmt) node);
+                    break;
+                case DISCARD:
+                    popValue();
+                    break;
+                case DECLARE:
+                    scope.defineVariable(((Ast.Stmt.Declaration) node).getName(), popValue());
+                    break;
+                case ASSIGN_FIELD: {
+                    Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) node;
+                    Environment.Variable variable = popValue().getField(((Ast.Expr.Access) assignment.getReceiver()).getSymbol());
+                    pushTask(SET, assignment, 0, variable);
+                    pushTask(EVALUATE, assignment.getValue(), 0, null);
+                    break;
+                }
+                case SET:
+                    ((Environment.Variable) auxiliary).setValue(popValue());
+                    break;
+                case IF: {
+                    Ast.Stmt.If ast = (Ast.Stmt.If) node;
+                    pushBlock(Interpreter.requireType(Boolean.class, popValue()) ? ast.getThenStatements() : ast.getElseStatements());
+                    break;
+                }
+                case FOR:
+                    pushTask(FOR_NEXT, node, 0, Interpreter.requireType(List.class, popValue()).iterator());
+                    break;
+                case FOR_NEXT: {
+                    Iterator<?> iterator = (Iterator<?>) auxiliary;
+                    if (iterator.hasNext()) {
+                        Ast.Stmt.For ast = (Ast.Stmt.For) node;
+                        Scope iterationScope = new Scope(scope);
+                        iterationScope.defineVariable(ast.getName(), (Environment.PlcObject) iterator.next());
+                        scope = iterationScope;
+                        pushTask(FOR_NEXT, ast, 0, iterator);
+                        pushTask(END_SCOPE, null, 0, null);
+                        pushBlock(ast.getStatements());
+                    }
+                    break;
+                }
+                case END_SCOPE:
+                    scope = scope.getParent();
+                    break;
+                case WHILE: {
+                    Ast.Stmt.While ast = (Ast.Stmt.While) node;
+                    if (Interpreter.requireType(Boolean.class, popValue())) {
+                        pushTask(WHILE, ast, 0, null);
+                        pushTask(EVALUATE, ast.getCondition(), 0, null);
+                        pushBlock(ast.getStatements());
+                    }
+                    break;
+                }
+                case RETURN:
+                    unwind(popValue(), taskBase);
+                    break;
+                case EVALUATE:
+                    evaluate((Ast.Expr) node);
+                    break;
+                case BINARY: {
+                    Environment.PlcObject right = popValue();
+                    Environment.PlcObject left = popValue();
+                    pushValue(Interpreter.applyBinary(((Ast.Expr.Binary) node).getOperator(), left, right));
+                    break;
+                }
+                case LOGICAL: {
+                    // Short-circuit: if the left operand decides the result, don't evaluate the right
+                    Ast.Expr.Binary binary = (Ast.Expr.Binary) node;
+                    boolean left = Interpreter.requireType(Boolean.class, popValue());
+                    boolean or = binary.getOperator().equals("OR") || binary.getOperator().equals("||");
+                    if (left == or) {
+                        pushValue(Environment.create(left));
+                    } else {
+                        pushTask(LOGICAL_RIGHT, binary, 0, null);
+                        pushTask(EVALUATE, binary.getRight(), 0, null);
+                    }
+                    break;
+                }
+                case LOGICAL_RIGHT:
+                    pushValue(Environment.create(Interpreter.requireType(Boolean.class, popValue())));
+                    break;
+                case ACCESS:
+                    pushValue(popValue().getField(((Ast.Expr.Access) node).getSymbol()).getValue());
+                    break;
+                case CALL:
+                    call((Ast.Expr.Function) node);
+                    break;
+                case FRAME:
+                    // the method ran to the end without returning
+                    depth--;
+                    scope = (Scope) auxiliary;
+                    pushValue(Environment.NIL);
+                    break;
+                default:
+                    throw new AssertionError("Invalid task: " + kind + ".");
+            }
+        }
+    }
+
+    /**
+     * Pushes the tasks to run a statement, in the order {@link Interpreter}
+     * evaluates its parts.
+     */
+    private void execute(Ast.Stmt ast) {
+        if (ast instanceof Ast.Stmt.Expression) {
+            pushTask(DISCARD, ast, 0, null);
+            pushTask(EVALUATE, ((Ast.Stmt.Expression) ast).getExpression(), 0, null);
+        } else if (ast instanceof Ast.Stmt.Declaration) {
+            Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+            pushTask(DECLARE, declaration, 0, null);
+            if (declaration.getValue().isPresent()) {
+                pushTask(EVALUATE, declaration.getValue().get(), 0, null);
+            } else {
+                pushValue(Environment.NIL);
+            }
+        } else if (ast instanceof Ast.Stmt.Assignment) {
+            Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) ast;
+            if (!(assignment.getReceiver() instanceof Ast.Expr.Access)) {
+                throw new RuntimeException("Receiver is not a valid access expression.");
+            }
+            Ast.Expr.Access access = (Ast.Expr.Access) assignment.getReceiver();
+            if (access.getReceiver().isPresent()) {
+                pushTask(ASSIGN_FIELD, assignment, 0, null);
+                pushTask(EVALUATE, access.getReceiver().get(), 0, null);
+            } else {
+                pushTask(SET, assignment, 0, scope.lookupVariable(access.getSymbol()));
+                pushTask(EVALUATE, assignment.getValue(), 0, null);
+            }
+        } else if (ast instanceof Ast.Stmt.If) {
+            pushTask(IF, ast, 0, null);
+            pushTask(EVALUATE, ((Ast.Stmt.If) ast).getCondition(), 0, null);
+        } else if (ast instanceof Ast.Stmt.For) {
+            pushTask(FOR, ast, 0, null);
+            pushTask(EVALUATE, ((Ast.Stmt.For) ast).getValue(), 0, null);
+        } else if (ast instanceof Ast.Stmt.While) {
+            pushTask(WHILE, ast, 0, null);
+            pushTask(EVALUATE, ((Ast.Stmt.While) ast).getCondition(), 0, null);
+        } else if (ast instanceof Ast.Stmt.Return) {
+            pushTask(RETURN, ast, 0, null);
+            pushTask(EVALUATE, ((Ast.Stmt.Return) ast).getValue(), 0, null);
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    /**
+     * Pushes the value of an expression without subexpressions, or the tasks
+     * to evaluate it. Arguments are evaluated in order, then the receiver.
+     */
+    private void evaluate(Ast.Expr ast) {
+        while (ast instanceof Ast.Expr.Group) {
+            ast = ((Ast.Expr.Group) ast).getExpression();
+        }
+        if (ast instanceof Ast.Expr.Literal) {
+            Object literal = ((Ast.Expr.Literal) ast).getLiteral();
+            pushValue(literal == null ? Environment.NIL : Environment.create(literal));
+        } else if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            String operator = binary.getOperator();
+            if (operator.equals("AND") || operator.equals("OR") || operator.equals("&&") || operator.equals("||")) {
+                pushTask(LOGICAL, binary, 0, null);
+            } else {
+                pushTask(BINARY, binary, 0, null);
+                pushTask(EVALUATE, binary.getRight(), 0, null);
+            }
+            pushTask(EVALUATE, binary.getLeft(), 0, null);
+        } else if (ast instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) ast;
+            if (access.getReceiver().isPresent()) {
+                pushTask(ACCESS, access, 0, null);
+                pushTask(EVALUATE, access.getReceiver().get(), 0, null);
+            } else {
+                pushValue(scope.lookupVariable(access.getSymbol()).getValue());
+            }
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            pushTask(CALL, function, 0, null);
+            if (function.getReceiver().isPresent()) {
+                pushTask(EVALUATE, function.getReceiver().get(), 0, null);
+            }
+            for (int i = function.getArguments().size() - 1; i >= 0; i--) {
+                pushTask(EVALUATE, function.getArguments().get(i), 0, null);
+            }
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    /**
+     * Calls a function once its arguments (and receiver, if any) have been
+     * evaluated onto the value stack, pushing a frame if it's a method of
+     * this interpreter.
+     */
+    private void call(Ast.Expr.Function ast) {
+        Environment.PlcObject receiver = ast.getReceiver().isPresent() ? popValue() : null;
+        int size = ast.getArguments().size();
+        int base = valueCount - size;
+        Environment.Function function = null;
+        if (receiver == null) {
+            function = scope.lookupFunction(ast.getSymbol(), size);
+            Ast.Method method = methods.get(function);
+            if (method != null) {
+                // the arguments are bound straight from the value stack
+                valueCount = base;
+                try {
+                    call(method, values, base);
+                } finally {
+                    Arrays.fill(values, base, base + size, null);
+                }
+                return;
+            }
+        }
+        Environment.PlcObject result;
+        try {
+            result = receiver != null ? receiver.callMethod(ast.getSymbol(), values, base, size) : function.invoke(values, base, size);
+        } finally {
+            Arrays.fill(values, base, valueCount, null);
+            valueCount = base;
+        }
+        pushValue(result);
+    }
+
+    /**
+     * Pushes the frame of a method and the tasks to run its statements in a
+     * new scope of the current one, with the arguments from the array
+     * starting at the index.
+     */
+    private void call(Ast.Method method, Environment.PlcObject[] arguments, int start) {
+        if (depth >= maxDepth) {
+            throw new RuntimeException("Maximum call depth of " + maxDepth + " exceeded calling " + method.getName() + ".");
+        }
+        depth++;
+        pushTask(FRAME, method, valueCount, scope);
+        Scope methodScope = new Scope(scope);
+        for (int i = 0; i < method.getParameters().size(); i++) {
+            methodScope.defineVariable(method.getParameters().get(i), arguments[start + i]);
+        }
+        scope = methodScope;
+        pushBlock(method.getStatements());
+    }
+
+    /**
+     * Returns a value from the innermost method, discarding the tasks and
+     * values above its frame.
+     */
+    private void unwind(Environment.PlcObject value, int taskBase) {
+        while (taskCount > taskBase) {
+            int top = taskCount - 1;
+            int kind = kinds[top];
+            Object auxiliary = auxiliaries[top];
+            int index = indices[top];
+            popTask();
+            if (kind == FRAME) {
+                depth--;
+                scope = (Scope) auxiliary;
+                while (valueCount > index) {
+                    values[--valueCount] = null;
+                }
+                pushValue(value);
+                return;
+            }
+        }
+        throw new RuntimeException("Cannot return outside of a method.");
+    }
+
+    private void pushBlock(List<Ast.Stmt> statements) {
+        if (!statements.isEmpty()) {
+            pushTask(BLOCK, statements, 0, null);
+        }
+    }
+
+    private void pushTask(int kind, Object node, int index, Object auxiliary) {
+        if (taskCount == kinds.length) {
+            kinds = Arrays.copyOf(kinds, taskCount * 2);
+            nodes = Arrays.copyOf(nodes, taskCount * 2);
+            indices = Arrays.copyOf(indices, taskCount * 2);
+            auxiliaries = Arrays.copyOf(auxiliaries, taskCount * 2);
+        }
+        kinds[taskCount] = kind;
+        nodes[taskCount] = node;
+        indices[taskCount] = index;
+        auxiliaries[taskCount++] = auxiliary;
+    }
+
+    private void popTask() {
+        taskCount--;
+        nodes[taskCount] = null;
+        auxiliaries[taskCount] = null;
+    }
+
+    private void pushValue(Environment.PlcObject value) {
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, valueCount * 2);
+        }
+        values[valueCount++] = value;
+    }
+
+    private Environment.PlcObject popValue() {
+        Environment.PlcObject value = values[--valueCount];
+        values[valueCount] = null;
+        return value;
+    }
+
+}
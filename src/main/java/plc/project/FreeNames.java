@@ -0,0 +1,104 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the variables a method declares, and those it may look up outside of
+ * its own scopes: the names it uses where they may not have been declared by
+ * the method yet. Since scoping is dynamic, a method can only see the
+ * variables of the methods calling it through these free names.
+ *
+ * This only looks at names, so it's cheap enough to run over every method of
+ * a source, unlike lowering them with {@link IrBuilder}.
+ */
+final class FreeNames {
+
+    private final Set<String> declared = new HashSet<>();
+    private final Set<String> free = new HashSet<>();
+    private final List<Ast> pending = new ArrayList<>();
+    private final AstChildren children = new AstChildren(pending);
+
+    private FreeNames() {}
+
+    /**
+     * Returns the names the method may look up outside of its own scopes.
+     */
+    static Set<String> of(Ast.Method method) {
+        FreeNames names = new FreeNames();
+        names.statements(method.getStatements(), new HashSet<>(method.getParameters()));
+        return names.free;
+    }
+
+    /**
+     * Returns the names of the parameters of the method and the variables it
+     * declares anywhere.
+     */
+    static Set<String> declared(Ast.Method method) {
+        FreeNames names = new FreeNames();
+        names.statements(method.getStatements(), new HashSet<>(method.getParameters()));
+        names.declared.addAll(method.getParameters());
+        return names.declared;
+    }
+
+    /**
+     * Walks the statements given the names certainly declared before them,
+     * adding those the statements declare. Since IF and WHILE don't create a
+     * scope, the names they declare stay defined after them, but only
+     * certainly so if both branches of an IF declare them.
+     */
+    private void statements(List<Ast.Stmt> statements, Set<String> scope) {
+        for (Ast.Stmt stmt : statements) {
+            if (stmt instanceof Ast.Stmt.Declaration) {
+                Ast.Stmt.Declaration ast = (Ast.Stmt.Declaration) stmt;
+                ast.getValue().ifPresent(value -> expression(value, scope));
+                scope.add(ast.getName());
+                declared.add(ast.getName());
+            } else if (stmt instanceof Ast.Stmt.If) {
+                Ast.Stmt.If ast = (Ast.Stmt.If) stmt;
+                expression(ast.getCondition(), scope);
+                Set<String> then = new HashSet<>(scope);
+                statements(ast.getThenStatements(), then);
+                Set<String> otherwise = new HashSet<>(scope);
+                statements(ast.getElseStatements(), otherwise);
+                then.retainAll(otherwise);
+                scope.addAll(then);
+            } else if (stmt instanceof Ast.Stmt.For) {
+                Ast.Stmt.For ast = (Ast.Stmt.For) stmt;
+                expression(ast.getValue(), scope);
+                Set<String> iteration = new HashSet<>(scope);
+                iteration.add(ast.getName());
+                declared.add(ast.getName());
+                statements(ast.getStatements(), iteration);
+            } else if (stmt instanceof Ast.Stmt.While) {
+                Ast.Stmt.While ast = (Ast.Stmt.While) stmt;
+                expression(ast.getCondition(), scope);
+                statements(ast.getStatements(), new HashSet<>(scope));
+            } else {
+                expression(stmt, scope);
+            }
+        }
+    }
+
+    /**
+     * Adds the names a statement without nested statements, or an
+     * expression, uses that aren't in scope. This walks the tree with a
+     * stack, so it works for arbitrarily deep expressions.
+     */
+    private void expression(Ast ast, Set<String> scope) {
+        pending.add(ast);
+        while (!pending.isEmpty()) {
+            Ast next = pending.remove(pending.size() - 1);
+            if (next instanceof Ast.Expr.Access && !((Ast.Expr.Access) next).getReceiver().isPresent()) {
+                String name = ((Ast.Expr.Access) next).getName();
+                if (!scope.contains(name)) {
+                    free.add(name);
+                }
+            }
+            children.visit(next);
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Maintains the tokens and AST of a source which is being edited, such as in
+ * an editor. Each {@link #edit(int, int, String)} re-lexes only the tokens
+ * around the edited text, shifts the indices of the tokens after it, and
+ * re-parses only the fields and methods containing changed tokens. Fields and
+ * methods outside of the edit are reused as-is.
+ *
+ * The result is always the same as lexing and parsing the new input from
+ * scratch, including the {@link ParseException} thrown for invalid input.
+ */
+public final class IncrementalParser {
+
+    /**
+     * The number of characters past the end of a token the lexer may look at
+     * while lexing it, as in {@code 1} followed by {@code .5}.
+     */
+    private static final int LOOKAHEAD = 2;
+
+    private String input;
+    private List<Token> tokens;
+    private List<Member> members;
+    private Ast.Source source;
+
+    public IncrementalParser(String input) {
+        this.input = input;
+        rebuild();
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public List<Token> getTokens() {
+        return Collections.unmodifiableList(tokens);
+    }
+
+    public Ast.Source getSource() {
+        return source;
+    }
+
+    /**
+     * Replaces {@code removed} characters at {@code offset} with the inserted
+     * text and returns the updated AST. If the new input is invalid, the edit
+     * is still applied to the input and the exception is thrown; the next
+     * edit will then lex and parse the whole input again.
+     */
+    public Ast.Source edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > input.length()) {
+            throw new IndexOutOfBoundsException("Invalid edit of " + removed + " characters at " + offset + ".");
+        }
+        input = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        if (source == null) {
+            rebuild();
+            return source;
+        }
+        try {
+            update(offset, removed, inserted.length());
+        } catch (ParseException e) {
+            tokens = null;
+            members = null;
+            source = null;
+            throw e;
+        }
+        return source;
+    }
+
+    /**
+     * Lexes and parses the whole input.
+     */
+    private void rebuild() {
+        tokens = null;
+        members = null;
+        source = null;
+        List<Token> lexed = new Lexer(input).lex();
+        members = parseMembers(lexed);
+        tokens = lexed;
+        source = assemble(members);
+    }
+
+    private void update(int offset, int removed, int inserted) {
+        int delta = inserted - removed;
+
+        // Re-lex from the end of the last token which can't see the edit,
+        // until a new token starts where an old token after the edit did.
+        int first = firstAffected(offset);
+        int start = first > 0 ? end(tokens.get(first - 1)) : 0;
+        List<Token> relexed = new ArrayList<>();
+        int resume = tokens.size();
+        Lexer lexer = new Lexer(input, start, input.length());
+        for (Token token = lexer.lexNext(); token != null; token = lexer.lexNext()) {
+            if (token.getIndex() >= offset + inserted) {
+                int index = searchIndex(token.getIndex() - delta);
+                if (index < tokens.size() && tokens.get(index).getIndex() == token.getIndex() - delta) {
+                    resume = index;
+                    break;
+                }
+            }
+            relexed.add(token);
+        }
+        List<Token> updated = new ArrayList<>(tokens.size() + relexed.size() - (resume - first));
+        updated.addAll(tokens.subList(0, first));
+        updated.addAll(relexed);
+        for (Token token : tokens.subList(resume, tokens.size())) {
+            updated.add(token.shift(delta));
+        }
+        int tokenDelta = updated.size() - tokens.size();
+
+        // Re-parse from the first member containing a changed token until
+        // reaching the (shifted) start of an old member after the damage.
+        int before = 0;
+        while (before < members.size() && members.get(before).end <= first) {
+            before++;
+        }
+        int next = before;
+        while (next < members.size() && members.get(next).start < resume) {
+            next++;
+        }
+        int position = before < members.size() ? members.get(before).start : first;
+        int damageEnd = first + relexed.size();
+        List<Member> reparsed = new ArrayList<>(members.subList(0, before));
+        boolean methods = before > 0 && reparsed.get(before - 1).ast instanceof Ast.Method;
+        while (position < updated.size()) {
+            while (next < members.size() && members.get(next).start + tokenDelta < position) {
+                next++;
+            }
+            if (position >= damageEnd && next < members.size() && members.get(next).start + tokenDelta == position) {
+                break;
+            }
+            Member member = parseMember(updated, position, methods);
+            methods = member.ast instanceof Ast.Method;
+            reparsed.add(member);
+            position = member.end;
+        }
+        if (position >= updated.size()) {
+            next = members.size();
+        }
+        for (Member member : members.subList(next, members.size())) {
+            if (methods && member.ast instanceof Ast.Field) {
+                throw unexpected(updated, member.start + tokenDelta);
+            }
+            methods = member.ast instanceof Ast.Method;
+            reparsed.add(new Member(member.ast, member.start + tokenDelta, member.end + tokenDelta));
+        }
+        tokens = updated;
+        members = reparsed;
+        source = assemble(reparsed);
+    }
+
+    /**
+     * Returns the index of the first token which may lex differently after an
+     * edit at the given offset.
+     */
+    private int firstAffected(int offset) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (end(tokens.get(middle)) + LOOKAHEAD <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first token starting at or after the given
+     * character index.
+     */
+    private int searchIndex(int index) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tokens.get(middle).getIndex() < index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int end(Token token) {
+        return token.getIndex() + token.getLiteral().length();
+    }
+
+    /**
+     * Parses all fields and methods, as in {@link Parser#parseSource()}.
+     */
+    private static List<Member> parseMembers(List<Token> tokens) {
+        List<Member> members = new ArrayList<>();
+        boolean methods = false;
+        for (int position = 0; position < tokens.size(); ) {
+            Member member = parseMember(tokens, position, methods);
+            methods = member.ast instanceof Ast.Method;
+            members.add(member);
+            position = member.end;
+        }
+        return members;
+    }
+
+    /**
+     * Parses the field or method starting at the given token. As in {@link
+     * Parser#parseSource()}, fields may not follow methods.
+     */
+    private static Member parseMember(List<Token> tokens, int position, boolean methods) {
+        Parser parser = new Parser(tokens, position);
+        Ast ast;
+        if (!methods && tokens.get(position).getLiteral().equals("LET")) {
+            ast = parser.parseField();
+        } else if (tokens.get(position).getLiteral().equals("DEF")) {
+            ast = parser.parseMethod();
+        } else {
+            throw unexpected(tokens, position);
+        }
+        return new Member(ast, position, parser.getIndex());
+    }
+
+    private static ParseException unexpected(List<Token> tokens, int position) {
+        return new ParseException("Unexpected tokens after parsing fields and methods.", tokens.get(position).getIndex());
+    }
+
+    private static Ast.Source assemble(List<Member> members) {
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        for (Member member : members) {
+            if (member.ast instanceof Ast.Field) {
+                fields.add((Ast.Field) member.ast);
+            } else {
+                methods.add((Ast.Method) member.ast);
+            }
+        }
+        return new Ast.Source(fields, methods);
+    }
+
+    /**
+     * A parsed field or method along with its range {@code [start, end)} in
+     * the token list.
+     */
+    private static final class Member {
+
+        private final Ast ast;
+        private final int start;
+        private final int end;
+
+        private Member(Ast ast, int start, int end) {
+            this.ast = ast;
+            this.start = start;
+            this.end = end;
+        }
+
+    }
+
+}
@@ -4,27 +4,151 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     private Scope scope = new Scope(null);
 
+    /**
+     * The expression depth the visit methods recurse to before evaluating the
+     * rest of an expression with {@link #evaluate(Ast.Expr)}.
+     */
+    private static final int MAX_RECURSION_DEPTH = 256;
+
+    private int depth = 0;
+
+    /**
+     * The methods defined by {@link #visit(Ast.Method)}, so a call to one in
+     * tail position can be made by the method invocation it returns from, see
+     * {@link #invoke(Ast.Method, Scope)}.
+     */
+    private final Map<Environment.Function, Ast.Method> methods = new IdentityHashMap<>();
+
+    /**
+     * The methods of the sources visited, whose scope may be replaceable, see
+     * {@link #visit(Ast.Source)}.
+     */
+    private final Set<Ast.Method> loaded = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** The methods of the sources visited since {@link #free} was updated. */
+    private final List<Ast.Method> unindexed = new ArrayList<>();
+
+    /** The free names of all methods of the sources visited. */
+    private final Set<String> free = new HashSet<>();
+
+    /** Whether each method's scope is replaceable, as it's first needed. */
+    private final Map<Ast.Method, Boolean> replaceable = new IdentityHashMap<>();
+
+    /** The binary expressions evaluated, see {@link BinaryNode}. */
+    private final Map<Ast.Expr.Binary, BinaryNode.Site> sites = new IdentityHashMap<>();
+
+    /** The number of method invocations in progress. */
+    private int invocations = 0;
+
+    /**
+     * The number of invocations and loop iterations of a method after which
+     * it's compiled, see {@link Tier}.
+     */
+    static final int PROMOTION_THRESHOLD = 1_000;
+
+    /**
+     * Compiles hot methods one at a time in a daemon thread, shared by all
+     * interpreters.
+     */
+    private static final Executor COMPILER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "plc-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int threshold;
+    private final Executor compiler;
+
+    /** The tiers of the methods of the sources visited, see {@link Tier}. */
+    private final Map<Ast.Method, Tier> tiers = new IdentityHashMap<>();
+
+    /** The tier of the method being invoked, if it has one. */
+    private Tier current;
+
+    /**
+     * The kinds of tasks on the {@link #tasks} stack, see {@link
+     * #evaluate(Ast.Expr)}. Each task (except EVALUATE) combines the values
+     * its subexpressions left on the {@link #values} stack.
+     */
+    private static final int EVALUATE = 0, BINARY = 1, LOGICAL = 2, LOGICAL_RIGHT = 3, ACCESS = 4, CALL = 5;
+
+    private Ast.Expr[] tasks = new Ast.Expr[16];
+    private int[] kinds = new int[16];
+    private int taskCount = 0;
+    private Environment.PlcObject[] values = new Environment.PlcObject[16];
+    private int valueCount = 0;
+
     public Interpreter(Scope parent) {
+        this(parent, PROMOTION_THRESHOLD, COMPILER);
+    }
+
+    /**
+     * Creates an interpreter promoting methods after the given number of
+     * invocations and loop iterations, compiling them with the executor.
+     */
+    Interpreter(Scope parent, int threshold, Executor compiler) {
+        this.threshold = threshold;
+        this.compiler = compiler;
         scope = new Scope(parent);
-        scope.defineFunction("print", 1, args -> {
-            System.out.println(args.get(0).getValue());
-            return Environment.NIL;
-        });
+        scope.defineFunction("print", 1, PRINT);
     }
 
+    /**
+     * The print function defined by each interpreter.
+     */
+    static final Environment.Body PRINT = new Environment.Body() {
+
+        @Override
+        public Environment.PlcObject call(Environment.PlcObject value) {
+            System.out.println(value.getValue());
+            return Environment.NIL;
+        }
+
+        @Override
+        public Environment.PlcObject call(Environment.PlcObject[] arguments) {
+            return call(arguments[0]);
+        }
+
+    };
+
     public Scope getScope() {
         return scope;
     }
 
+    /**
+     * Since scoping is dynamic, a method's scope is the parent of the scopes
+     * of the methods it calls, and is normally kept by its tail calls. It can
+     * be replaced if no method of the sources visited could see its
+     * variables, which is decided when it first makes a tail call, see
+     * {@link #isReplaceable(Ast.Method)}.
+     *
+     * The same methods can be promoted to run with an {@link IrInterpreter}
+     * once they're hot, except those with calls in tail position, since the
+     * calls of compiled code are always nested. That's also only decided when
+     * a method first passes the threshold, so loading a source does no more
+     * than define its fields and methods.
+     */
     @Override
     public Environment.PlcObject visit(Ast.Source ast) {
+        loaded.addAll(ast.getMethods());
+        unindexed.addAll(ast.getMethods());
+        for (Ast.Method method : ast.getMethods()) {
+            tiers.put(method, new Tier(method));
+        }
         for (Ast.Field field : ast.getFields()) {
             visit(field);
         }
@@ -43,26 +167,204 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Method ast) {
-        scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> {
-            Scope methodScope = new Scope(scope);
-            for (int i = 0; i < ast.getParameters().size(); i++) {
-                methodScope.defineVariable(ast.getParameters().get(i), args.get(i));
+        List<String> parameters = ast.getParameters();
+        // the arguments are bound directly into the scope of the method, so
+        // calls with up to four don't allocate an array for them
+        scope.defineFunction(ast.getName(), parameters.size(), new Environment.Body() {
+            @Override
+            public Environment.PlcObject call() {
+                return invoke(ast, new Scope(scope));
             }
-            try {
-                scope = methodScope;
-                for (Ast.Stmt stmt : ast.getStatements()) {
-                    visit(stmt);
-                }
-            } catch (Return returnValue) {
-                return returnValue.value;
-            } finally {
-                scope = scope.getParent();
+
+            @Override
+            public Environment.PlcObject call(Environment.PlcObject first) {
+                Scope methodScope = new Scope(scope);
+                methodScope.defineVariable(parameters.get(0), first);
+                return invoke(ast, methodScope);
+            }
+
+            @Override
+            public Environment.PlcObject call(Environment.PlcObject first, Environment.PlcObject second) {
+                Scope methodScope = new Scope(scope);
+                methodScope.defineVariable(parameters.get(0), first);
+                methodScope.defineVariable(parameters.get(1), second);
+                return invoke(ast, methodScope);
+            }
+
+            @Override
+            public Environment.PlcObject call(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third) {
+                Scope methodScope = new Scope(scope);
+                methodScope.defineVariable(parameters.get(0), first);
+                methodScope.defineVariable(parameters.get(1), second);
+                methodScope.defineVariable(parameters.get(2), third);
+                return invoke(ast, methodScope);
+            }
+
+            @Override
+            public Environment.PlcObject call(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third,
+                                              Environment.PlcObject fourth) {
+                Scope methodScope = new Scope(scope);
+                methodScope.defineVariable(parameters.get(0), first);
+                methodScope.defineVariable(parameters.get(1), second);
+                methodScope.defineVariable(parameters.get(2), third);
+                methodScope.defineVariable(parameters.get(3), fourth);
+                return invoke(ast, methodScope);
+            }
+
+            @Override
+            public Environment.PlcObject call(Environment.PlcObject[] arguments) {
+                Scope methodScope = new Scope(scope);
+                bind(parameters, methodScope, arguments, 0);
+                return invoke(ast, methodScope);
             }
-            return Environment.NIL;
         });
+        methods.put(scope.lookupFunction(ast.getName(), ast.getParameters().size()), ast);
         return Environment.NIL;
     }
 
+    /**
+     * Invokes a method in a new scope of the current scope, with its
+     * parameters already defined, and then each method it calls in tail
+     * position (see
+     * {@link #visit(Ast.Stmt.Return)}) in turn, so tail recursion runs in
+     * constant stack. A tail call is made in a new scope of the scope it was
+     * made in, like any other call, or by clearing and reusing the scope of
+     * the method making it, if that's replaceable. The scope is also reused
+     * if the call was made directly in it and the parameters of the callee
+     * shadow all of its variables, since the callee can't see them then, so
+     * tail recursion passing all its state as arguments runs in constant
+     * space even when other methods can see its variables.
+     *
+     * Otherwise, each tail call still adds a scope to the chain, which is
+     * only freed when the invocation returns.
+     */
+    private Environment.PlcObject invoke(Ast.Method method, Scope methodScope) {
+        Scope caller = scope;
+        Tier tier = current;
+        invocations++;
+        try {
+            while (true) {
+                current = tiers.get(method);
+                IrInterpreter code = current != null ? count(current) : null;
+                scope = methodScope;
+                if (code != null) {
+                    return code.invoke(this, arguments(method, methodScope));
+                }
+                try {
+                    for (Ast.Stmt stmt : method.getStatements()) {
+                        visit(stmt);
+                    }
+                    return Environment.NIL;
+                } catch (Return returnValue) {
+                    return returnValue.value;
+                } catch (TailCall call) {
+                    if (isReplaceable(method) || call.scope == methodScope && methodScope.definesOnly(call.method.getParameters())) {
+                        methodScope.clear();
+                    } else {
+                        methodScope = new Scope(call.scope);
+                    }
+                    method = call.method;
+                    try {
+                        bind(method.getParameters(), methodScope, values, call.base);
+                    } finally {
+                        popValues(call.base);
+                    }
+                }
+            }
+        } finally {
+            scope = caller;
+            current = tier;
+            invocations--;
+        }
+    }
+
+    /**
+     * Defines the parameters of a method in its scope, with the arguments in
+     * the array from the start index.
+     */
+    private static void bind(List<String> parameters, Scope methodScope, Environment.PlcObject[] arguments, int start) {
+        for (int i = 0; i < parameters.size(); i++) {
+            methodScope.defineVariable(parameters.get(i), arguments[start + i]);
+        }
+    }
+
+    /**
+     * Returns the arguments bound in the scope of a method, for running it
+     * with its compiled code.
+     */
+    private static Environment.PlcObject[] arguments(Ast.Method method, Scope methodScope) {
+        Environment.PlcObject[] arguments = new Environment.PlcObject[method.getParameters().size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = methodScope.lookupVariable(method.getParameters().get(i)).getValue();
+        }
+        return arguments;
+    }
+
+    /**
+     * Returns whether the scope of a method of a source can be replaced, when
+     * none of the methods of the sources visited have one of its variables
+     * as a free name (including the method itself, if it may read one before
+     * declaring it). The free names of methods are only collected when this
+     * is first called after a source is visited, and the answer for a method
+     * is kept until then.
+     */
+    private boolean isReplaceable(Ast.Method method) {
+        if (!unindexed.isEmpty()) {
+            for (Ast.Method other : unindexed) {
+                free.addAll(FreeNames.of(other));
+            }
+            unindexed.clear();
+            replaceable.clear();
+        }
+        Boolean result = replaceable.get(method);
+        if (result == null) {
+            result = loaded.contains(method) && Collections.disjoint(FreeNames.declared(method), free);
+            replaceable.put(method, result);
+        }
+        return result;
+    }
+
+    /**
+     * Counts an invocation or loop iteration of the method of the tier,
+     * queueing it to be compiled once it passes the threshold if it can be
+     * promoted. Returns the compiled code, if it's ready.
+     */
+    private IrInterpreter count(Tier tier) {
+        IrInterpreter code = tier.code;
+        if (code == null && ++tier.count >= threshold && !tier.queued) {
+            tier.queued = true;
+            if (isReplaceable(tier.method) && !hasTailCall(tier.method.getStatements())) {
+                compiler.execute(tier::compile);
+            }
+        }
+        return code;
+    }
+
+    private static boolean hasTailCall(List<Ast.Stmt> statements) {
+        for (Ast.Stmt stmt : statements) {
+            if (stmt instanceof Ast.Stmt.Return) {
+                Ast.Expr value = unwrap(((Ast.Stmt.Return) stmt).getValue());
+                if (value instanceof Ast.Expr.Function && !((Ast.Expr.Function) value).getReceiver().isPresent()) {
+                    return true;
+                }
+            } else if (stmt instanceof Ast.Stmt.If) {
+                Ast.Stmt.If ast = (Ast.Stmt.If) stmt;
+                if (hasTailCall(ast.getThenStatements()) || hasTailCall(ast.getElseStatements())) {
+                    return true;
+                }
+            } else if (stmt instanceof Ast.Stmt.For) {
+                if (hasTailCall(((Ast.Stmt.For) stmt).getStatements())) {
+                    return true;
+                }
+            } else if (stmt instanceof Ast.Stmt.While) {
+                if (hasTailCall(((Ast.Stmt.While) stmt).getStatements())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @Override
     public Environment.PlcObject visit(Ast.Stmt.Expression ast) {
         return visit(ast.getExpression());
@@ -86,11 +388,11 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             // Check if receiver is present
             if (access.getReceiver().isPresent()) {
                 Environment.PlcObject receiver = visit(access.getReceiver().get());
-                Environment.Variable variable = receiver.getField(access.getName());
+                Environment.Variable variable = receiver.getField(access.getSymbol());
                 variable.setValue(visit(ast.getValue()));
             } else {
                 // If no receiver, the variable is in the current scope
-                Environment.Variable variable = scope.lookupVariable(access.getName());
+                Environment.Variable variable = scope.lookupVariable(access.getSymbol());
                 if (variable == null) {
                     throw new RuntimeException("Variable '" + access.getName() + "' is not defined.");
                 }
@@ -137,6 +439,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             } finally {
                 scope = scope.getParent();  // Reset the scope back to the parent after iteration
             }
+            if (current != null) {
+                count(current);
+            }
         }
 
         return Environment.NIL;
@@ -156,12 +461,43 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 // Don't reset the scope at the end of each loop iteration
                 //scope = scope.getParent();
             }
+            if (current != null) {
+                count(current);
+            }
         }
         return Environment.NIL;
     }
 
+    /**
+     * Returning the result of calling a method defined by this interpreter
+     * evaluates the arguments and then leaves the call to the method
+     * invocation being returned from, instead of nesting it. The arguments
+     * are left on the value stack for it to bind and pop.
+     */
     @Override
     public Environment.PlcObject visit(Ast.Stmt.Return ast) {
+        Ast.Expr value = unwrap(ast.getValue());
+        if (invocations > 0 && value instanceof Ast.Expr.Function && !((Ast.Expr.Function) value).getReceiver().isPresent()) {
+            Ast.Expr.Function function = (Ast.Expr.Function) value;
+            int base = valueCount;
+            boolean tail = false;
+            try {
+                for (Ast.Expr argument : function.getArguments()) {
+                    pushValue(visit(argument));
+                }
+                Environment.Function callee = scope.lookupFunction(function.getSymbol(), valueCount - base);
+                Ast.Method method = methods.get(callee);
+                if (method != null) {
+                    tail = true;
+                    throw new TailCall(method, base, scope);
+                }
+                throw new Return(callee.invoke(values, base, valueCount - base));
+            } finally {
+                if (!tail) {
+                    popValues(base);
+                }
+            }
+        }
         throw new Return(visit(ast.getValue()));
     }
 
@@ -175,17 +511,308 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expr.Group ast) {
-        return visit(ast.getExpression());
+        if (depth >= MAX_RECURSION_DEPTH) {
+            return evaluate(ast);
+        }
+        depth++;
+        try {
+            return visit(ast.getExpression());
+        } finally {
+            depth--;
+        }
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Expr.Binary ast) {
-        Environment.PlcObject left = visit(ast.getLeft());
-        Environment.PlcObject right =
-                (!Objects.equals(ast.getOperator(), "AND") && !Objects.equals(ast.getOperator(), "OR") &&
-                        !Objects.equals(ast.getOperator(), "&&") && !Objects.equals(ast.getOperator(), "||")) ? visit(ast.getRight()) : left;
+        if (depth >= MAX_RECURSION_DEPTH) {
+            return evaluate(ast);
+        }
+        depth++;
+        try {
+            Environment.PlcObject left = visit(ast.getLeft());
+            switch (ast.getOperator()) {
+                case "OR":
+                case "||":
+                    // Short-circuit: If left is true, return true without evaluating right
+                    if (requireType(Boolean.class, left)) {
+                        return Environment.create(true);
+                    }
+                    return Environment.create(requireType(Boolean.class, visit(ast.getRight())));
+                case "AND":
+                case "&&":
+                    // Short-circuit: If left is false, return false without evaluating right
+                    if (!requireType(Boolean.class, left)) {
+                        return Environment.create(false);
+                    }
+                    return Environment.create(requireType(Boolean.class, visit(ast.getRight())));
+                default:
+                    return binary(ast, left, visit(ast.getRight()));
+            }
+        } finally {
+            depth--;
+        }
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Expr.Access ast) {
+        if (ast.getReceiver().isPresent()) {
+            if (depth >= MAX_RECURSION_DEPTH) {
+                return evaluate(ast);
+            }
+            depth++;
+            try {
+                Environment.PlcObject receiver = visit(ast.getReceiver().get());
+                return receiver.getField(ast.getSymbol()).getValue();
+            } finally {
+                depth--;
+            }
+        } else {
+            return evaluateLeaf(ast);
+        }
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast.Expr.Function ast) {
+        if (depth >= MAX_RECURSION_DEPTH) {
+            return evaluate(ast);
+        }
+        // the arguments are kept on the value stack, so calls with up to
+        // four are made without allocating anything for them
+        int base = valueCount;
+        try {
+            Environment.PlcObject receiver = null;
+            depth++;
+            try {
+                for (Ast.Expr argument : ast.getArguments()) {
+                    pushValue(visit(argument));
+                }
+                if (ast.getReceiver().isPresent()) {
+                    receiver = visit(ast.getReceiver().get());
+                }
+            } finally {
+                depth--;
+            }
+            return call(ast, receiver, base);
+        } finally {
+            popValues(base);
+        }
+    }
+
+    /**
+     * Evaluates an expression using the explicit {@link #tasks} and {@link
+     * #values} stacks instead of recursing into subexpressions, so the nesting
+     * depth of an expression is limited only by the heap. Nested evaluations,
+     * such as of a method called by the expression, work above the entries
+     * they started with and leave the stacks as they found them.
+     *
+     * Recursion is faster for expressions of ordinary depth, so the visit
+     * methods only switch to this past {@link #MAX_RECURSION_DEPTH}.
+     */
+    private Environment.PlcObject evaluate(Ast.Expr ast) {
+        ast = unwrap(ast);
+        if (isLeaf(ast)) {
+            return evaluateLeaf(ast);
+        }
+        int taskBase = taskCount;
+        int valueBase = valueCount;
+        try {
+            pushTask(EVALUATE, ast);
+            while (taskCount > taskBase) {
+                taskCount--;
+                Ast.Expr expr = tasks[taskCount];
+                tasks[taskCount] = null;
+                switch (kinds[taskCount]) {
+                    case EVALUATE:
+                        schedule(expr);
+                        break;
+                    case BINARY: {
+                        Environment.PlcObject right = popValue();
+                        Environment.PlcObject left = popValue();
+                        pushValue(binary((Ast.Expr.Binary) expr, left, right));
+                        break;
+                    }
+                    case LOGICAL: {
+                        // Short-circuit: if the left operand decides the result, don't evaluate the right
+                        Ast.Expr.Binary binary = (Ast.Expr.Binary) expr;
+                        boolean left = requireType(Boolean.class, popValue());
+                        boolean or = binary.getOperator().equals("OR") || binary.getOperator().equals("||");
+                        if (left == or) {
+                            pushValue(Environment.create(left));
+                        } else {
+                            pushTask(LOGICAL_RIGHT, binary);
+                            pushTask(EVALUATE, binary.getRight());
+                        }
+                        break;
+                    }
+                    case LOGICAL_RIGHT:
+                        pushValue(Environment.create(requireType(Boolean.class, popValue())));
+                        break;
+                    case ACCESS:
+                        pushValue(popValue().getField(((Ast.Expr.Access) expr).getSymbol()).getValue());
+                        break;
+                    case CALL:
+                        pushValue(call((Ast.Expr.Function) expr));
+                        break;
+                    default:
+                        throw new AssertionError("Invalid task: " + kinds[taskCount] + ".");
+                }
+            }
+            return popValue();
+        } finally {
+            // discard the entries of an evaluation which threw
+            while (taskCount > taskBase) {
+                tasks[--taskCount] = null;
+            }
+            while (valueCount > valueBase) {
+                values[--valueCount] = null;
+            }
+        }
+    }
+
+    /**
+     * Pushes the tasks to evaluate an expression, or its value if it has no
+     * subexpressions. Tasks run in the reverse order they are pushed, and the
+     * leaf operands of a binary expression are evaluated directly in order.
+     */
+    private void schedule(Ast.Expr ast) {
+        ast = unwrap(ast);
+        if (isLeaf(ast)) {
+            pushValue(evaluateLeaf(ast));
+        } else if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            String operator = binary.getOperator();
+            boolean logical = operator.equals("AND") || operator.equals("OR") || operator.equals("&&") || operator.equals("||");
+            Ast.Expr left = unwrap(binary.getLeft());
+            if (!isLeaf(left)) {
+                pushTask(logical ? LOGICAL : BINARY, binary);
+                if (!logical) {
+                    pushTask(EVALUATE, binary.getRight());
+                }
+                pushTask(EVALUATE, left);
+            } else if (logical) {
+                pushTask(LOGICAL, binary);
+                pushValue(evaluateLeaf(left));
+            } else {
+                Environment.PlcObject value = evaluateLeaf(left);
+                Ast.Expr right = unwrap(binary.getRight());
+                if (isLeaf(right)) {
+                    pushValue(binary(binary, value, evaluateLeaf(right)));
+                } else {
+                    pushTask(BINARY, binary);
+                    pushValue(value);
+                    pushTask(EVALUATE, right);
+                }
+            }
+        } else if (ast instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) ast;
+            pushTask(ACCESS, access);
+            pushTask(EVALUATE, access.getReceiver().get());
+        } else if (ast instanceof Ast.Expr.Function) {
+            // arguments are evaluated in order, then the receiver
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            pushTask(CALL, function);
+            if (function.getReceiver().isPresent()) {
+                pushTask(EVALUATE, function.getReceiver().get());
+            }
+            for (int i = function.getArguments().size() - 1; i >= 0; i--) {
+                pushTask(EVALUATE, function.getArguments().get(i));
+            }
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    private static Ast.Expr unwrap(Ast.Expr ast) {
+        while (ast instanceof Ast.Expr.Group) {
+            ast = ((Ast.Expr.Group) ast).getExpression();
+        }
+        return ast;
+    }
+
+    /**
+     * Returns true for literals and variables, which are evaluated without
+     * evaluating any subexpressions.
+     */
+    private static boolean isLeaf(Ast.Expr ast) {
+        return ast instanceof Ast.Expr.Literal
+                || ast instanceof Ast.Expr.Access && !((Ast.Expr.Access) ast).getReceiver().isPresent();
+    }
+
+    private Environment.PlcObject evaluateLeaf(Ast.Expr ast) {
+        if (ast instanceof Ast.Expr.Literal) {
+            return visit((Ast.Expr.Literal) ast);
+        }
+        Ast.Expr.Access access = (Ast.Expr.Access) ast;
+        Environment.Variable variable = scope.lookupVariable(access.getSymbol());
+        if (variable == null) {
+            throw new RuntimeException("Variable '" + access.getName() + "' is not defined.");
+        }
+        return variable.getValue();
+    }
+
+    /**
+     * Calls a function once its arguments (and receiver, if any) have been
+     * evaluated onto the value stack.
+     */
+    private Environment.PlcObject call(Ast.Expr.Function ast) {
+        Environment.PlcObject receiver = ast.getReceiver().isPresent() ? popValue() : null;
+        int base = valueCount - ast.getArguments().size();
+        try {
+            return call(ast, receiver, base);
+        } finally {
+            popValues(base);
+        }
+    }
+
+    /**
+     * Calls a function with the arguments on the value stack above the base.
+     */
+    private Environment.PlcObject call(Ast.Expr.Function ast, Environment.PlcObject receiver, int base) {
+        int size = valueCount - base;
+        if (receiver != null) {
+            // Instance method call: call the method on the receiver.
+            return receiver.callMethod(ast.getSymbol(), values, base, size);
+        } else {
+            // Regular function call: Lookup the function in the current scope.
+            Environment.Function function = scope.lookupFunction(ast.getSymbol(), size);
+            return function.invoke(values, base, size);
+        }
+    }
+
+    private void pushTask(int kind, Ast.Expr ast) {
+        if (taskCount == tasks.length) {
+            tasks = Arrays.copyOf(tasks, taskCount * 2);
+            kinds = Arrays.copyOf(kinds, taskCount * 2);
+        }
+        tasks[taskCount] = ast;
+        kinds[taskCount++] = kind;
+    }
+
+    private void pushValue(Environment.PlcObject value) {
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, valueCount * 2);
+        }
+        values[valueCount++] = value;
+    }
 
-        switch (ast.getOperator()) {
+    private Environment.PlcObject popValue() {
+        Environment.PlcObject value = values[--valueCount];
+        values[valueCount] = null;
+        return value;
+    }
+
+    private void popValues(int base) {
+        Arrays.fill(values, base, valueCount, null);
+        valueCount = base;
+    }
+
+    /**
+     * Applies a binary operator to its evaluated operands. Logical operators
+     * short-circuit in {@link #evaluate(Ast.Expr)}, so here both operands are
+     * already known.
+     */
+    static Environment.PlcObject applyBinary(String operator, Environment.PlcObject left, Environment.PlcObject right) {
+        switch (operator) {
             case "+":
                 if (left.getValue() instanceof String || right.getValue() instanceof String) {
                     return Environment.create(requireType(String.class, left) + requireType(String.class, right));
@@ -239,19 +866,15 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 return Environment.create(leftDecimal.divide(rightDecimal, 10, RoundingMode.HALF_UP).setScale(1, RoundingMode.HALF_UP));
             case "OR":
             case "||":
-                // Short-circuit: If left is true, return true without evaluating right
                 if (requireType(Boolean.class, left)) {
                     return Environment.create(true);
                 }
-                right = visit(ast.getRight());
                 return Environment.create(requireType(Boolean.class, right));
             case "AND":
             case "&&":
-                // Short-circuit: If left is false, return false without evaluating right
                 if (!requireType(Boolean.class, left)) {
                     return Environment.create(false);
                 }
-                right = visit(ast.getRight());
                 return Environment.create(requireType(Boolean.class, right));
             case "<":
                 return Environment.create(requireType(BigInteger.class, left).compareTo(requireType(BigInteger.class, right)) < 0);
@@ -260,50 +883,36 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             case "==":
                 return Environment.create(left.getValue().equals(right.getValue()));
             default:
-                throw new UnsupportedOperationException("Unsupported operator: " + ast.getOperator());
+                throw new UnsupportedOperationException("Unsupported operator: " + operator);
         }
-        throw new UnsupportedOperationException("Invalid types for operator: " + ast.getOperator());
+        throw new UnsupportedOperationException("Invalid types for operator: " + operator);
     }
 
-    @Override
-    public Environment.PlcObject visit(Ast.Expr.Access ast) {
-        if (ast.getReceiver().isPresent()) {
-            Environment.PlcObject receiver = visit(ast.getReceiver().get());
-            return receiver.getField(ast.getName()).getValue();
-        } else {
-            Environment.Variable variable = scope.lookupVariable(ast.getName());
-            if (variable != null) {
-                return variable.getValue();
-            } else {
-                throw new RuntimeException("Variable '" + ast.getName() + "' is not defined.");
-            }
+    /**
+     * Applies the operator of a binary expression with the node of its site,
+     * which specializes itself for the types of operands it sees.
+     */
+    private Environment.PlcObject binary(Ast.Expr.Binary ast, Environment.PlcObject left, Environment.PlcObject right) {
+        BinaryNode.Site site = sites.get(ast);
+        if (site == null) {
+            site = new BinaryNode.Site(ast);
+            sites.put(ast, site);
         }
+        return site.execute(left, right);
     }
 
-
-
-    @Override
-    public Environment.PlcObject visit(Ast.Expr.Function ast) {
-        List<Environment.PlcObject> arguments = new ArrayList<>();
-        for (Ast.Expr argument : ast.getArguments()) {
-            arguments.add(visit(argument));
-        }
-
-        if (ast.getReceiver().isPresent()) {
-            // Instance method call: Get the receiver and call the method on it.
-            Environment.PlcObject receiver = visit(ast.getReceiver().get());
-            return receiver.callMethod(ast.getName(), arguments);
-        } else {
-            // Regular function call: Lookup the function in the current scope.
-            Environment.Function function = scope.lookupFunction(ast.getName(), arguments.size());
-            return function.invoke(arguments);
-        }
+    /**
+     * Returns the node this interpreter evaluates a binary expression with.
+     */
+    BinaryNode node(Ast.Expr.Binary ast) {
+        BinaryNode.Site site = sites.get(ast);
+        return site != null ? site.getNode() : BinaryNode.UNINITIALIZED;
     }
 
     /**
      * Helper function to ensure an object is of the appropriate type.
      */
-    private static <T> T requireType(Class<T> type, Environment.PlcObject object) {
+    static <T> T requireType(Class<T> type, Environment.PlcObject object) {
         if (type.isInstance(object.getValue())) {
             return type.cast(object.getValue());
         } else {
@@ -319,9 +928,64 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         private final Environment.PlcObject value;
 
         private Return(Environment.PlcObject value) {
+            super(null, null, false, false);
             this.value = value;
         }
 
     }
 
-}
\ No newline at end of file
+    /**
+     * Exception class for calls in tail position, made by the method
+     * invocation they return from.
+     */
+    private static class TailCall extends RuntimeException {
+
+        private final Ast.Method method;
+        /** The index of the first argument on the value stack. */
+        private final int base;
+        /** The scope the call was made in. */
+        private final Scope scope;
+
+        private TailCall(Ast.Method method, int base, Scope scope) {
+            super(null, null, false, false);
+            this.method = method;
+            this.base = base;
+            this.scope = scope;
+        }
+
+    }
+
+    /**
+     * The hotness of a method of a source, counting its invocations and the
+     * iterations of its loops. Past the threshold, a method which can be
+     * promoted is lowered and optimized in the background, and the code is
+     * published to the interpreter's thread through a volatile field, which
+     * swaps it in for all later invocations. Invocations already running
+     * finish in the interpreter.
+     */
+    private static final class Tier {
+
+        private final Ast.Method method;
+        private int count;
+        private boolean queued;
+        private volatile IrInterpreter code;
+
+        private Tier(Ast.Method method) {
+            this.method = method;
+        }
+
+        private void compile() {
+            try {
+                Ir.Function function = IrBuilder.lower(method, new HashSet<>());
+                if (function != null) {
+                    IrOptimizer.optimize(function);
+                    code = new IrInterpreter(function);
+                }
+            } catch (RuntimeException e) {
+                // the method is left to the interpreter
+            }
+        }
+
+    }
+
+}
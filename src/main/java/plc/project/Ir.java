@@ -0,0 +1,453 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An intermediate representation of a method as a control-flow graph of
+ * {@link Block}s in SSA form: each {@link Instruction} is a value which is
+ * defined exactly once, and values which depend on the path taken to a block
+ * are merged by {@link Op#PHI} instructions at its start.
+ *
+ * Local variables of the method are SSA values, while variables from outside
+ * of the method (which the interpreter finds dynamically in the scope of the
+ * caller) are read and written by name. Methods are lowered to this
+ * representation by {@link IrBuilder}, optimized by {@link IrOptimizer} and
+ * executed by {@link IrInterpreter}.
+ */
+public final class Ir {
+
+    private Ir() {}
+
+    public enum Op {
+        /** The argument at {@link Instruction#getIndex()}. */
+        PARAM,
+        /** The value of the named variable in the current scope. */
+        LOAD,
+        /** The named variable in the current scope, to be {@link #SET}. */
+        VARIABLE,
+        /** The value of the named field of the operand. */
+        FIELD,
+        /** The named field of the operand, to be {@link #SET}. */
+        FIELD_VARIABLE,
+        /** Sets a {@link #VARIABLE} or {@link #FIELD_VARIABLE} to a value. */
+        SET,
+        /** Applies {@link Instruction#getOperator()} to the operands. */
+        BINARY,
+        /** The operand, checked to be a boolean. */
+        BOOLEAN,
+        /** Calls the named function with the operands as arguments. */
+        CALL,
+        /** Calls the named method of the first operand with the rest as arguments. */
+        METHOD,
+        /** An iterator over the operand, checked to be a list. */
+        ITERATE,
+        /** Whether the iterator operand has another element. */
+        HAS_NEXT,
+        /** The next element of the iterator operand. */
+        NEXT,
+        /**
+         * The operand, which was computed speculatively; throws the exception
+         * computing it threw, if any.
+         */
+        GUARD,
+        /** The operand for the predecessor the block was entered from. */
+        PHI,
+        JUMP,
+        /** Jumps to the first target if the operand is true, else the second. */
+        BRANCH,
+        RETURN,
+    }
+
+    /**
+     * What is statically known about the type of a value, see {@link
+     * IrTypes}.
+     */
+    public enum Type {
+        ANY,
+        INTEGER,
+        DECIMAL,
+        STRING,
+        BOOLEAN;
+
+        public static Type of(Object value) {
+            return value instanceof BigInteger ? INTEGER : value instanceof BigDecimal ? DECIMAL
+                    : value instanceof String ? STRING : value instanceof Boolean ? BOOLEAN : ANY;
+        }
+
+        public boolean isNumber() {
+            return this == INTEGER || this == DECIMAL;
+        }
+
+    }
+
+    /**
+     * An operand of an instruction: a constant or the result of another
+     * instruction.
+     */
+    public abstract static class Value {
+
+        private final List<Instruction> users = new ArrayList<>();
+
+        public abstract Type getType();
+
+        public List<Instruction> getUsers() {
+            return users;
+        }
+
+        /**
+         * Replaces this value with the given value in all of its users.
+         */
+        public void replaceWith(Value value) {
+            for (Instruction user : new ArrayList<>(users)) {
+                for (int i = 0; i < user.operands.size(); i++) {
+                    if (user.operands.get(i) == this) {
+                        user.setOperand(i, value);
+                    }
+                }
+            }
+        }
+
+    }
+
+    public static final class Constant extends Value {
+
+        private final Environment.PlcObject value;
+
+        public Constant(Environment.PlcObject value) {
+            this.value = value;
+        }
+
+        public Environment.PlcObject getValue() {
+            return value;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.of(value.getValue());
+        }
+
+        @Override
+        public String toString() {
+            return value == Environment.NIL ? "NIL" : value.getValue() instanceof String
+                    ? "\"" + value.getValue() + "\"" : String.valueOf(value.getValue());
+        }
+
+    }
+
+    public static final class Instruction extends Value {
+
+        private final Op op;
+        private final List<Value> operands = new ArrayList<>();
+        private final Symbol name;
+        private final String operator;
+        private final int index;
+        private final List<Block> targets = new ArrayList<>();
+        private Block block;
+        private boolean speculative;
+        private Type type = Type.ANY;
+        private int id;
+
+        private Instruction(Op op, Symbol name, String operator, int index) {
+            this.op = op;
+            this.name = name;
+            this.operator = operator;
+            this.index = index;
+        }
+
+        public Op getOp() {
+            return op;
+        }
+
+        public List<Value> getOperands() {
+            return operands;
+        }
+
+        public Value getOperand(int index) {
+            return operands.get(index);
+        }
+
+        public void setOperand(int index, Value value) {
+            Value previous = operands.set(index, value);
+            if (!operands.contains(previous)) {
+                previous.users.remove(this);
+            }
+            if (!value.users.contains(this)) {
+                value.users.add(this);
+            }
+        }
+
+        void addOperand(Value value) {
+            operands.add(value);
+            if (!value.users.contains(this)) {
+                value.users.add(this);
+            }
+        }
+
+        /**
+         * Removes this instruction as a user of its operands, once it's been
+         * removed from its block.
+         */
+        void clearOperands() {
+            for (Value operand : operands) {
+                operand.users.remove(this);
+            }
+            operands.clear();
+        }
+
+        /**
+         * The name of the variable, field, function or method, if any.
+         */
+        public Symbol getName() {
+            return name;
+        }
+
+        /**
+         * The operator of a {@link Op#BINARY} instruction.
+         */
+        public String getOperator() {
+            return operator;
+        }
+
+        /**
+         * The index of a {@link Op#PARAM} instruction.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * The blocks a {@link Op#JUMP} or {@link Op#BRANCH} instruction may
+         * continue at.
+         */
+        public List<Block> getTargets() {
+            return targets;
+        }
+
+        public Block getBlock() {
+            return block;
+        }
+
+        void setBlock(Block block) {
+            this.block = block;
+        }
+
+        /**
+         * Whether this instruction was moved to where it may run when it
+         * originally would not, so instead of throwing it produces a value
+         * which a {@link Op#GUARD} at the original location throws.
+         */
+        public boolean isSpeculative() {
+            return speculative;
+        }
+
+        void setSpeculative(boolean speculative) {
+            this.speculative = speculative;
+        }
+
+        /**
+         * The type of the instruction's value, if it doesn't throw. This is
+         * {@link Type#ANY} until inferred by {@link IrTypes}.
+         */
+        @Override
+        public Type getType() {
+            return type;
+        }
+
+        void setType(Type type) {
+            this.type = type;
+        }
+
+        /**
+         * A number identifying the instruction within its function, assigned
+         * by {@link Function#number()}.
+         */
+        public int getId() {
+            return id;
+        }
+
+        public boolean isTerminator() {
+            return op == Op.JUMP || op == Op.BRANCH || op == Op.RETURN;
+        }
+
+        /**
+         * Returns true if the instruction has no effect other than computing
+         * its value (or throwing), so it can be removed or reused if its
+         * value is the same.
+         */
+        public boolean isPure() {
+            return op == Op.BINARY || op == Op.BOOLEAN || op == Op.GUARD || op == Op.PHI;
+        }
+
+        @Override
+        public String toString() {
+            return "v" + id;
+        }
+
+        /**
+         * Returns the instruction as a line of {@link Function#toString()}.
+         */
+        public String format() {
+            StringBuilder builder = new StringBuilder();
+            if (!isTerminator() && op != Op.SET) {
+                builder.append(this);
+                if (type != Type.ANY) {
+                    builder.append(": ").append(type.name().toLowerCase());
+                }
+                builder.append(" = ");
+            }
+            builder.append(op.name().toLowerCase());
+            if (speculative) {
+                builder.append('?');
+            }
+            if (op == Op.PARAM) {
+                builder.append(' ').append(index);
+            } else if (op == Op.BINARY) {
+                builder.append(' ').append(operator);
+            } else if (name != null) {
+                builder.append(' ').append(name.getName());
+            }
+            for (int i = 0; i < operands.size(); i++) {
+                builder.append(i == 0 ? " " : ", ").append(operands.get(i));
+                if (op == Op.PHI) {
+                    builder.append(" from ").append(block.getPredecessors().get(i));
+                }
+            }
+            for (Block target : targets) {
+                builder.append(" -> ").append(target);
+            }
+            return builder.toString();
+        }
+
+    }
+
+    public static final class Block {
+
+        private final int id;
+        private final List<Block> predecessors = new ArrayList<>();
+        private final List<Instruction> instructions = new ArrayList<>();
+
+        Block(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public List<Block> getPredecessors() {
+            return predecessors;
+        }
+
+        /**
+         * The instructions of the block: phis first and a terminator last.
+         */
+        public List<Instruction> getInstructions() {
+            return instructions;
+        }
+
+        public Instruction getTerminator() {
+            return instructions.get(instructions.size() - 1);
+        }
+
+        public List<Block> getSuccessors() {
+            return getTerminator().getTargets();
+        }
+
+        /**
+         * Adds an instruction before the terminator, if the block has one.
+         */
+        public void add(Instruction instruction) {
+            int position = !instructions.isEmpty() && getTerminator().isTerminator() ? instructions.size() - 1 : instructions.size();
+            instructions.add(position, instruction);
+            instruction.setBlock(this);
+        }
+
+        @Override
+        public String toString() {
+            return "b" + id;
+        }
+
+    }
+
+    public static final class Function {
+
+        private final String name;
+        private final int arity;
+        private final List<Block> blocks;
+
+        Function(String name, int arity, List<Block> blocks) {
+            this.name = name;
+            this.arity = arity;
+            this.blocks = blocks;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getArity() {
+            return arity;
+        }
+
+        /**
+         * The blocks of the function, starting with the entry block.
+         */
+        public List<Block> getBlocks() {
+            return blocks;
+        }
+
+        public Block getEntry() {
+            return blocks.get(0);
+        }
+
+        /**
+         * Numbers the instructions in order and returns how many there are.
+         */
+        public int number() {
+            int count = 0;
+            for (Block block : blocks) {
+                for (Instruction instruction : block.instructions) {
+                    instruction.id = count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Returns the number of instructions other than phis and terminators.
+         */
+        public int size() {
+            int size = 0;
+            for (Block block : blocks) {
+                for (Instruction instruction : block.instructions) {
+                    if (instruction.op != Op.PHI && !instruction.isTerminator()) {
+                        size++;
+                    }
+                }
+            }
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            number();
+            StringBuilder builder = new StringBuilder(name).append('/').append(arity).append('\n');
+            for (Block block : blocks) {
+                builder.append(block).append(":\n");
+                for (Instruction instruction : block.instructions) {
+                    builder.append("    ").append(instruction.format()).append('\n');
+                }
+            }
+            return builder.toString();
+        }
+
+    }
+
+    static Instruction create(Op op, Symbol name, String operator, int index) {
+        return new Instruction(op, name, operator, index);
+    }
+
+}
@@ -0,0 +1,559 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lowers methods to the {@link Ir}, constructing SSA form directly from the
+ * AST as in Braun et al., "Simple and Efficient Construction of Static Single
+ * Assignment Form": the value of a local variable is looked up through the
+ * predecessors of a block when it's read, adding phis where paths merge, and
+ * blocks are sealed once all of their predecessors are known.
+ *
+ * Since the interpreter's scoping is dynamic, locals can only become SSA
+ * values if nothing else can find them by name. A method isn't lowered
+ * (and {@link #lower(Ast.Method, Set)} returns null) if another method may
+ * read or write one of its locals, if it uses the name of one of its locals
+ * where that local isn't certainly declared, or if a local is declared twice
+ * in the same scope or in a while loop. Expressions nested more deeply than
+ * {@link #MAX_DEPTH} aren't lowered either.
+ */
+public final class IrBuilder {
+
+    private static final int MAX_DEPTH = 256;
+
+    private final Set<String> locals;
+    private final List<Ir.Block> blocks = new ArrayList<>();
+    private final List<Frame> frames = new ArrayList<>();
+    private final Map<Object, Ir.Constant> constants = new HashMap<>();
+    private final Map<Object, Map<Ir.Block, Ir.Value>> definitions = new HashMap<>();
+    private final Map<Ir.Block, Map<Object, Ir.Instruction>> incomplete = new HashMap<>();
+    private final Set<Ir.Block> sealed = new HashSet<>();
+    private final Map<Ir.Value, Ir.Value> replaced = new HashMap<>();
+    private Ir.Block current;
+    private int depth;
+    private int frameCount;
+
+    private IrBuilder(Set<String> locals) {
+        this.locals = locals;
+    }
+
+    /**
+     * Lowers each method of the source which can be lowered. Another method
+     * may only find a method's locals through names it uses without
+     * declaring them first, which for a method that can be lowered is the
+     * names other than its own locals.
+     */
+    public static Map<Ast.Method, Ir.Function> lower(Ast.Source source) {
+        List<Ir.Function> lowered = new ArrayList<>();
+        List<Set<String>> free = new ArrayList<>();
+        for (Ast.Method method : source.getMethods()) {
+            Ir.Function function = lower(method, new HashSet<>());
+            Set<String> names = Names.of(method);
+            if (function != null) {
+                names.removeAll(Names.declared(method));
+            }
+            lowered.add(function);
+            free.add(names);
+        }
+        // the number of methods using each name, so a method's own names can
+        // be discounted without taking the union of all the others
+        Map<String, Integer> users = new HashMap<>();
+        for (Set<String> names : free) {
+            for (String name : names) {
+                users.merge(name, 1, Integer::sum);
+            }
+        }
+        Map<Ast.Method, Ir.Function> functions = new IdentityHashMap<>();
+        for (int i = 0; i < source.getMethods().size(); i++) {
+            if (lowered.get(i) == null) {
+                continue;
+            }
+            boolean shared = false;
+            for (String local : Names.declared(source.getMethods().get(i))) {
+                int others = users.getOrDefault(local, 0) - (free.get(i).contains(local) ? 1 : 0);
+                shared |= others > 0;
+            }
+            if (!shared) {
+                functions.put(source.getMethods().get(i), lowered.get(i));
+            }
+        }
+        return functions;
+    }
+
+    /**
+     * Lowers a method, given the names used by any other method which it may
+     * call, or returns null if it can't be lowered.
+     */
+    public static Ir.Function lower(Ast.Method method, Set<String> shared) {
+        Set<String> locals = Names.declared(method);
+        for (String local : locals) {
+            if (shared.contains(local)) {
+                return null;
+            }
+        }
+        IrBuilder builder = new IrBuilder(locals);
+        try {
+            return builder.lowerMethod(method);
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    private Ir.Function lowerMethod(Ast.Method method) {
+        current = block();
+        seal(current);
+        Frame frame = new Frame(frameCount++);
+        frames.add(frame);
+        List<String> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (!frame.declared.add(parameters.get(i))) {
+                throw new Unsupported();
+            }
+            frame.defined.add(parameters.get(i));
+            write(frame.key(parameters.get(i)), current, emit(Ir.Op.PARAM, null, null, i));
+        }
+        lower(method.getStatements());
+        if (current != null) {
+            terminate(Ir.Op.RETURN, constant(null));
+        }
+        return new Ir.Function(method.getName(), parameters.size(), blocks);
+    }
+
+    private void lower(List<Ast.Stmt> statements) {
+        for (Ast.Stmt stmt : statements) {
+            if (current == null) {
+                // statements after a return never run
+                return;
+            }
+            lower(stmt);
+        }
+    }
+
+    private void lower(Ast.Stmt ast) {
+        Frame frame = frames.get(frames.size() - 1);
+        if (ast instanceof Ast.Stmt.Expression) {
+            lower(((Ast.Stmt.Expression) ast).getExpression());
+        } else if (ast instanceof Ast.Stmt.Declaration) {
+            Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+            if (frame.whiles > 0 || frame.declared.contains(declaration.getName())) {
+                throw new Unsupported();
+            }
+            Ir.Value value = declaration.getValue().isPresent() ? lower(declaration.getValue().get()) : constant(null);
+            frame.declared.add(declaration.getName());
+            frame.defined.add(declaration.getName());
+            write(frame.key(declaration.getName()), current, value);
+        } else if (ast instanceof Ast.Stmt.Assignment) {
+            Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) ast;
+            if (!(assignment.getReceiver() instanceof Ast.Expr.Access)) {
+                throw new Unsupported();
+            }
+            Ast.Expr.Access receiver = (Ast.Expr.Access) assignment.getReceiver();
+            if (receiver.getReceiver().isPresent()) {
+                Ir.Value object = lower(receiver.getReceiver().get());
+                Ir.Value field = emit(Ir.Op.FIELD_VARIABLE, receiver.getSymbol(), null, 0, object);
+                emit(Ir.Op.SET, null, null, 0, field, lower(assignment.getValue()));
+            } else {
+                Object key = resolve(receiver.getName());
+                if (key != null) {
+                    write(key, current, lower(assignment.getValue()));
+                } else {
+                    Ir.Value variable = emit(Ir.Op.VARIABLE, receiver.getSymbol(), null, 0);
+                    emit(Ir.Op.SET, null, null, 0, variable, lower(assignment.getValue()));
+                }
+            }
+        } else if (ast instanceof Ast.Stmt.If) {
+            Ast.Stmt.If ifStmt = (Ast.Stmt.If) ast;
+            Ir.Value condition = emit(Ir.Op.BOOLEAN, null, null, 0, lower(ifStmt.getCondition()));
+            Ir.Block thenBlock = block();
+            Ir.Block elseBlock = block();
+            terminate(Ir.Op.BRANCH, condition, thenBlock, elseBlock);
+            seal(thenBlock);
+            seal(elseBlock);
+            Set<String> declared = new HashSet<>(frame.declared);
+            Set<String> defined = new HashSet<>(frame.defined);
+            current = thenBlock;
+            lower(ifStmt.getThenStatements());
+            Ir.Block thenEnd = current;
+            Set<String> thenDeclared = frame.declared;
+            Set<String> thenDefined = frame.defined;
+            frame.declared = declared;
+            frame.defined = defined;
+            current = elseBlock;
+            lower(ifStmt.getElseStatements());
+            Ir.Block elseEnd = current;
+            frame.declared.addAll(thenDeclared);
+            // a branch which returned doesn't reach the statements after
+            if (thenEnd != null && elseEnd != null) {
+                frame.defined.retainAll(thenDefined);
+            } else if (thenEnd != null) {
+                frame.defined = thenDefined;
+            }
+            if (thenEnd == null && elseEnd == null) {
+                current = null;
+                return;
+            }
+            Ir.Block join = block();
+            for (Ir.Block end : new Ir.Block[] {thenEnd, elseEnd}) {
+                if (end != null) {
+                    current = end;
+                    terminate(Ir.Op.JUMP, null, join);
+                }
+            }
+            seal(join);
+            current = join;
+        } else if (ast instanceof Ast.Stmt.For) {
+            Ast.Stmt.For forStmt = (Ast.Stmt.For) ast;
+            Ir.Value iterator = emit(Ir.Op.ITERATE, null, null, 0, lower(forStmt.getValue()));
+            Ir.Block header = block();
+            terminate(Ir.Op.JUMP, null, header);
+            current = header;
+            Ir.Value hasNext = emit(Ir.Op.HAS_NEXT, null, null, 0, iterator);
+            Ir.Block body = block();
+            Ir.Block exit = block();
+            terminate(Ir.Op.BRANCH, hasNext, body, exit);
+            seal(body);
+            seal(exit);
+            // each iteration has its own scope
+            Frame iteration = new Frame(frameCount++);
+            iteration.declared.add(forStmt.getName());
+            iteration.defined.add(forStmt.getName());
+            frames.add(iteration);
+            current = body;
+            write(iteration.key(forStmt.getName()), current, emit(Ir.Op.NEXT, null, null, 0, iterator));
+            lower(forStmt.getStatements());
+            frames.remove(frames.size() - 1);
+            if (current != null) {
+                terminate(Ir.Op.JUMP, null, header);
+            }
+            seal(header);
+            current = exit;
+        } else if (ast instanceof Ast.Stmt.While) {
+            Ast.Stmt.While whileStmt = (Ast.Stmt.While) ast;
+            Ir.Block header = block();
+            terminate(Ir.Op.JUMP, null, header);
+            current = header;
+            Ir.Value condition = emit(Ir.Op.BOOLEAN, null, null, 0, lower(whileStmt.getCondition()));
+            Ir.Block body = block();
+            Ir.Block exit = block();
+            terminate(Ir.Op.BRANCH, condition, body, exit);
+            seal(body);
+            seal(exit);
+            frame.whiles++;
+            current = body;
+            lower(whileStmt.getStatements());
+            frame.whiles--;
+            if (current != null) {
+                terminate(Ir.Op.JUMP, null, header);
+            }
+            seal(header);
+            current = exit;
+        } else if (ast instanceof Ast.Stmt.Return) {
+            terminate(Ir.Op.RETURN, lower(((Ast.Stmt.Return) ast).getValue()));
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    private Ir.Value lower(Ast.Expr ast) {
+        if (depth >= MAX_DEPTH) {
+            throw new Unsupported();
+        }
+        depth++;
+        try {
+            return lowerExpression(ast);
+        } finally {
+            depth--;
+        }
+    }
+
+    private Ir.Value lowerExpression(Ast.Expr ast) {
+        if (ast instanceof Ast.Expr.Literal) {
+            return constant(((Ast.Expr.Literal) ast).getLiteral());
+        } else if (ast instanceof Ast.Expr.Group) {
+            return lower(((Ast.Expr.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            String operator = binary.getOperator();
+            boolean and = operator.equals("AND") || operator.equals("&&");
+            if (and || operator.equals("OR") || operator.equals("||")) {
+                // the right operand is only evaluated if the left doesn't decide the result
+                Ir.Value left = emit(Ir.Op.BOOLEAN, null, null, 0, lower(binary.getLeft()));
+                Ir.Block right = block();
+                Ir.Block decided = block();
+                terminate(Ir.Op.BRANCH, left, and ? right : decided, and ? decided : right);
+                seal(right);
+                seal(decided);
+                Object result = new Object();
+                write(result, decided, constant(!and));
+                current = right;
+                Ir.Value value = emit(Ir.Op.BOOLEAN, null, null, 0, lower(binary.getRight()));
+                write(result, current, value);
+                Ir.Block join = block();
+                terminate(Ir.Op.JUMP, null, join);
+                current = decided;
+                terminate(Ir.Op.JUMP, null, join);
+                seal(join);
+                current = join;
+                return read(result, join);
+            }
+            Ir.Value left = lower(binary.getLeft());
+            Ir.Value right = lower(binary.getRight());
+            return emit(Ir.Op.BINARY, null, operator, 0, left, right);
+        } else if (ast instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) ast;
+            if (access.getReceiver().isPresent()) {
+                return emit(Ir.Op.FIELD, access.getSymbol(), null, 0, lower(access.getReceiver().get()));
+            }
+            Object key = resolve(access.getName());
+            return key != null ? read(key, current) : emit(Ir.Op.LOAD, access.getSymbol(), null, 0);
+        } else if (ast instanceof Ast.Expr.Function) {
+            // arguments are evaluated in order, then the receiver
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            List<Ir.Value> arguments = new ArrayList<>();
+            for (Ast.Expr argument : function.getArguments()) {
+                arguments.add(lower(argument));
+            }
+            if (function.getReceiver().isPresent()) {
+                arguments.add(0, lower(function.getReceiver().get()));
+                return emit(Ir.Op.METHOD, function.getSymbol(), null, 0, arguments.toArray(new Ir.Value[0]));
+            }
+            return emit(Ir.Op.CALL, function.getSymbol(), null, 0, arguments.toArray(new Ir.Value[0]));
+        } else {
+            throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+        }
+    }
+
+    /**
+     * Returns the key of the local a name refers to, or null if it refers to a
+     * variable outside of the method.
+     */
+    private Object resolve(String name) {
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            Frame frame = frames.get(i);
+            if (frame.declared.contains(name)) {
+                if (!frame.defined.contains(name)) {
+                    throw new Unsupported();
+                }
+                return frame.key(name);
+            }
+        }
+        if (locals.contains(name)) {
+            // the local isn't declared yet, so the name is found dynamically
+            throw new Unsupported();
+        }
+        return null;
+    }
+
+    private Ir.Block block() {
+        Ir.Block block = new Ir.Block(blocks.size());
+        blocks.add(block);
+        return block;
+    }
+
+    private Ir.Constant constant(Object literal) {
+        Ir.Constant constant = constants.get(literal);
+        if (constant == null) {
+            constant = new Ir.Constant(literal == null ? Environment.NIL : Environment.create(literal));
+            constants.put(literal, constant);
+        }
+        return constant;
+    }
+
+    private Ir.Instruction emit(Ir.Op op, Symbol name, String operator, int index, Ir.Value... operands) {
+        Ir.Instruction instruction = Ir.create(op, name, operator, index);
+        for (Ir.Value operand : operands) {
+            instruction.addOperand(operand);
+        }
+        current.add(instruction);
+        return instruction;
+    }
+
+    /**
+     * Ends the current block, which is then unreachable for a return.
+     */
+    private void terminate(Ir.Op op, Ir.Value operand, Ir.Block... targets) {
+        Ir.Instruction instruction = operand != null ? emit(op, null, null, 0, operand) : emit(op, null, null, 0);
+        for (Ir.Block target : targets) {
+            instruction.getTargets().add(target);
+            target.getPredecessors().add(current);
+        }
+        if (op == Ir.Op.RETURN) {
+            current = null;
+        }
+    }
+
+    private void write(Object key, Ir.Block block, Ir.Value value) {
+        definitions.computeIfAbsent(key, k -> new HashMap<>()).put(block, value);
+    }
+
+    private Ir.Value read(Object key, Ir.Block block) {
+        Ir.Value value = definitions.computeIfAbsent(key, k -> new HashMap<>()).get(block);
+        if (value == null) {
+            value = readRecursive(key, block);
+        }
+        while (replaced.containsKey(value)) {
+            value = replaced.get(value);
+        }
+        return value;
+    }
+
+    private Ir.Value readRecursive(Object key, Ir.Block block) {
+        Ir.Value value;
+        if (!sealed.contains(block)) {
+            Ir.Instruction phi = phi(block);
+            incomplete.computeIfAbsent(block, b -> new HashMap<>()).put(key, phi);
+            value = phi;
+        } else if (block.getPredecessors().size() == 1) {
+            value = read(key, block.getPredecessors().get(0));
+        } else if (block.getPredecessors().isEmpty()) {
+            // only reachable if the local isn't declared, which was checked
+            value = constant(null);
+        } else {
+            Ir.Instruction phi = phi(block);
+            write(key, block, phi);
+            value = addOperands(key, phi);
+        }
+        write(key, block, value);
+        return value;
+    }
+
+    private Ir.Instruction phi(Ir.Block block) {
+        Ir.Instruction phi = Ir.create(Ir.Op.PHI, null, null, 0);
+        phi.setBlock(block);
+        block.getInstructions().add(0, phi);
+        return phi;
+    }
+
+    private Ir.Value addOperands(Object key, Ir.Instruction phi) {
+        for (Ir.Block predecessor : phi.getBlock().getPredecessors()) {
+            phi.addOperand(read(key, predecessor));
+        }
+        return removeTrivial(phi);
+    }
+
+    /**
+     * Replaces a phi whose operands are all the same value (or the phi
+     * itself) with that value, then tries the same for the phis using it.
+     */
+    private Ir.Value removeTrivial(Ir.Instruction phi) {
+        Ir.Value same = null;
+        for (Ir.Value operand : phi.getOperands()) {
+            if (operand == same || operand == phi) {
+                continue;
+            } else if (same != null) {
+                return phi;
+            }
+            same = operand;
+        }
+        if (same == null) {
+            same = constant(null);
+        }
+        List<Ir.Instruction> users = new ArrayList<>(phi.getUsers());
+        users.remove(phi);
+        phi.replaceWith(same);
+        phi.getBlock().getInstructions().remove(phi);
+        phi.setBlock(null);
+        phi.clearOperands();
+        replaced.put(phi, same);
+        for (Ir.Instruction user : users) {
+            if (user.getOp() == Ir.Op.PHI && user.getBlock() != null) {
+                removeTrivial(user);
+            }
+        }
+        return same;
+    }
+
+    private void seal(Ir.Block block) {
+        Map<Object, Ir.Instruction> phis = incomplete.remove(block);
+        sealed.add(block);
+        if (phis != null) {
+            for (Map.Entry<Object, Ir.Instruction> entry : phis.entrySet()) {
+                addOperands(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * The locals declared in a scope: the method or an iteration of a for
+     * loop.
+     */
+    private static final class Frame {
+
+        private final int id;
+        private final Map<String, Object> keys = new HashMap<>();
+        private Set<String> declared = new HashSet<>();
+        private Set<String> defined = new HashSet<>();
+        private int whiles;
+
+        private Frame(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Returns the key identifying the local with this name in this
+         * frame, which is the same for declarations in different branches.
+         */
+        private Object key(String name) {
+            return keys.computeIfAbsent(name, n -> n + "@" + id);
+        }
+
+    }
+
+    private static final class Unsupported extends RuntimeException {
+
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+
+    }
+
+    /**
+     * Collects the variable names used by a method.
+     */
+    private static final class Names extends AstRewriter {
+
+        private final Set<String> names = new HashSet<>();
+        private final Set<String> declared = new HashSet<>();
+
+        private static Set<String> of(Ast.Method method) {
+            Names names = new Names();
+            names.rewrite(method);
+            names.names.addAll(method.getParameters());
+            names.names.addAll(names.declared);
+            return names.names;
+        }
+
+        private static Set<String> declared(Ast.Method method) {
+            Names names = new Names();
+            names.rewrite(method);
+            names.declared.addAll(method.getParameters());
+            return names.declared;
+        }
+
+        @Override
+        protected Ast.Expr leave(Ast.Expr ast) {
+            if (ast instanceof Ast.Expr.Access && !((Ast.Expr.Access) ast).getReceiver().isPresent()) {
+                names.add(((Ast.Expr.Access) ast).getName());
+            }
+            return ast;
+        }
+
+        @Override
+        protected List<Ast.Stmt> leave(Ast.Stmt ast) {
+            if (ast instanceof Ast.Stmt.Declaration) {
+                declared.add(((Ast.Stmt.Declaration) ast).getName());
+            } else if (ast instanceof Ast.Stmt.For) {
+                declared.add(((Ast.Stmt.For) ast).getName());
+            }
+            return super.leave(ast);
+        }
+
+    }
+
+}
@@ -0,0 +1,433 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes a function in the {@link Ir}, with its values in an array of
+ * registers. Phis aren't executed themselves; instead, a jump copies the
+ * operands of the phis of its target for the block it jumps from.
+ *
+ * Variables and functions outside of the function are looked up in the
+ * current scope of an {@link Interpreter}, just as the interpreter would if
+ * it were running the method.
+ *
+ * Arithmetic on operands whose types were inferred by {@link IrTypes} is
+ * done directly, without {@link Interpreter#applyBinary} checking the types
+ * of its operands; otherwise it falls back to the interpreter's.
+ */
+public final class IrInterpreter {
+
+    private static final Environment.PlcObject TRUE = Environment.create(true);
+    private static final Environment.PlcObject FALSE = Environment.create(false);
+
+    private final Ir.Function function;
+    private final Step[] steps;
+    /** The initial registers, holding the constants after the instructions. */
+    private final Object[] registers;
+    private final int maxMoves;
+
+    public IrInterpreter(Ir.Function function) {
+        this.function = function;
+        int count = function.number();
+        Map<Ir.Constant, Integer> constants = new IdentityHashMap<>();
+        List<Object> values = new ArrayList<>();
+        Map<Ir.Block, Integer> starts = new IdentityHashMap<>();
+        List<Ir.Instruction> instructions = new ArrayList<>();
+        for (Ir.Block block : function.getBlocks()) {
+            starts.put(block, instructions.size());
+            for (Ir.Instruction instruction : block.getInstructions()) {
+                if (instruction.getOp() != Ir.Op.PHI) {
+                    instructions.add(instruction);
+                }
+                for (Ir.Value operand : instruction.getOperands()) {
+                    if (operand instanceof Ir.Constant && !constants.containsKey(operand)) {
+                        constants.put((Ir.Constant) operand, count + values.size());
+                        values.add(((Ir.Constant) operand).getValue());
+                    }
+                }
+            }
+        }
+        registers = new Object[count + values.size()];
+        for (int i = 0; i < values.size(); i++) {
+            registers[count + i] = values.get(i);
+        }
+        steps = new Step[instructions.size()];
+        int maxMoves = 0;
+        for (int i = 0; i < steps.length; i++) {
+            Ir.Instruction instruction = instructions.get(i);
+            Step step = new Step(instruction);
+            step.arguments = new int[instruction.getOperands().size()];
+            for (int j = 0; j < step.arguments.length; j++) {
+                step.arguments[j] = register(instruction.getOperand(j), constants);
+            }
+            List<Ir.Block> targets = instruction.getTargets();
+            step.targets = new int[targets.size()];
+            step.moves = new int[targets.size()][];
+            for (int j = 0; j < targets.size(); j++) {
+                Ir.Block target = targets.get(j);
+                step.targets[j] = starts.get(target);
+                // the copies for the target's phis, as source and destination pairs
+                int predecessor = target.getPredecessors().indexOf(instruction.getBlock());
+                List<Integer> moves = new ArrayList<>();
+                for (Ir.Instruction phi : target.getInstructions()) {
+                    if (phi.getOp() == Ir.Op.PHI) {
+                        moves.add(register(phi.getOperand(predecessor), constants));
+                        moves.add(phi.getId());
+                    }
+                }
+                step.moves[j] = moves.stream().mapToInt(Integer::intValue).toArray();
+                maxMoves = Math.max(maxMoves, moves.size() / 2);
+            }
+            steps[i] = step;
+        }
+        this.maxMoves = maxMoves;
+    }
+
+    private static int register(Ir.Value value, Map<Ir.Constant, Integer> constants) {
+        return value instanceof Ir.Constant ? constants.get(value) : ((Ir.Instruction) value).getId();
+    }
+
+    public Ir.Function getFunction() {
+        return function;
+    }
+
+    /**
+     * Evaluates the fields of the source and defines its methods in the
+     * interpreter's scope, like {@link Interpreter#visit(Ast.Source)}, but
+     * running the methods which can be lowered with an {@link IrInterpreter}
+     * (optimized and specialized by {@link IrOptimizer}, if requested).
+     */
+    public static void define(Interpreter interpreter, Ast.Source source, boolean optimize) {
+        for (Ast.Field field : source.getFields()) {
+            interpreter.visit(field);
+        }
+        Map<Ast.Method, Ir.Function> functions = IrBuilder.lower(source);
+        for (Ast.Method method : source.getMethods()) {
+            Ir.Function function = functions.get(method);
+            if (function == null) {
+                interpreter.visit(method);
+            } else {
+                if (optimize) {
+                    IrOptimizer.optimize(function);
+                }
+                IrInterpreter code = new IrInterpreter(function);
+                interpreter.getScope().defineFunction(method.getName(), method.getParameters().size(), new Environment.Body() {
+                    @Override
+                    public Environment.PlcObject call(Environment.PlcObject[] arguments) {
+                        return code.invoke(interpreter, arguments);
+                    }
+                });
+            }
+        }
+    }
+
+    public Environment.PlcObject invoke(Interpreter interpreter, List<Environment.PlcObject> arguments) {
+        return invoke(interpreter, arguments.toArray(new Environment.PlcObject[arguments.size()]));
+    }
+
+    public Environment.PlcObject invoke(Interpreter interpreter, Environment.PlcObject[] arguments) {
+        Object[] registers = this.registers.clone();
+        Object[] moved = new Object[maxMoves];
+        int pc = 0;
+        while (true) {
+            Step step = steps[pc++];
+            int[] args = step.arguments;
+            switch (step.op) {
+                case PARAM:
+                    registers[step.id] = arguments[step.index];
+                    break;
+                case LOAD:
+                case FIELD:
+                case BINARY:
+                    registers[step.id] = step.speculative ? speculate(step, registers, interpreter) : compute(step, registers, interpreter);
+                    break;
+                case VARIABLE:
+                    registers[step.id] = interpreter.getScope().lookupVariable(step.name);
+                    break;
+                case FIELD_VARIABLE:
+                    registers[step.id] = ((Environment.PlcObject) registers[args[0]]).getField(step.name);
+                    break;
+                case SET:
+                    ((Environment.Variable) registers[args[0]]).setValue((Environment.PlcObject) registers[args[1]]);
+                    break;
+                case BOOLEAN:
+                    Interpreter.requireType(Boolean.class, (Environment.PlcObject) registers[args[0]]);
+                    registers[step.id] = registers[args[0]];
+                    break;
+                case CALL: {
+                    Environment.Function function = interpreter.getScope().lookupFunction(step.name, args.length);
+                    registers[step.id] = call(function, args, registers);
+                    break;
+                }
+                case METHOD: {
+                    registers[step.id] = callMethod(step.name, args, registers);
+                    break;
+                }
+                case ITERATE:
+                    registers[step.id] = Interpreter.requireType(List.class, (Environment.PlcObject) registers[args[0]]).iterator();
+                    break;
+                case HAS_NEXT:
+                    registers[step.id] = ((Iterator<?>) registers[args[0]]).hasNext() ? TRUE : FALSE;
+                    break;
+                case NEXT:
+                    registers[step.id] = ((Iterator<?>) registers[args[0]]).next();
+                    break;
+                case GUARD: {
+                    Object value = registers[args[0]];
+                    if (value instanceof Deferred) {
+                        throw ((Deferred) value).exception;
+                    }
+                    registers[step.id] = value;
+                    break;
+                }
+                case JUMP:
+                    move(step.moves[0], registers, moved);
+                    pc = step.targets[0];
+                    break;
+                case BRANCH: {
+                    int target = (Boolean) ((Environment.PlcObject) registers[args[0]]).getValue() ? 0 : 1;
+                    move(step.moves[target], registers, moved);
+                    pc = step.targets[target];
+                    break;
+                }
+                case RETURN:
+                    return (Environment.PlcObject) registers[args[0]];
+                default:
+                    throw new AssertionError("Unimplemented IR operation: " + step.op + ".");
+            }
+        }
+    }
+
+    /**
+     * Invokes the function with the values of the registers, directly if
+     * there are at most four of them.
+     */
+    private static Environment.PlcObject call(Environment.Function function, int[] args, Object[] registers) {
+        switch (args.length) {
+            case 0:
+                return function.invoke();
+            case 1:
+                return function.invoke((Environment.PlcObject) registers[args[0]]);
+            case 2:
+                return function.invoke((Environment.PlcObject) registers[args[0]], (Environment.PlcObject) registers[args[1]]);
+            case 3:
+                return function.invoke((Environment.PlcObject) registers[args[0]], (Environment.PlcObject) registers[args[1]],
+                        (Environment.PlcObject) registers[args[2]]);
+            case 4:
+                return function.invoke((Environment.PlcObject) registers[args[0]], (Environment.PlcObject) registers[args[1]],
+                        (Environment.PlcObject) registers[args[2]], (Environment.PlcObject) registers[args[3]]);
+            default:
+                return function.invoke(values(args, 0, registers));
+        }
+    }
+
+    /**
+     * Calls a method of the value of the first register with the values of
+     * the rest, directly if there are at most three of them.
+     */
+    private static Environment.PlcObject callMethod(Symbol name, int[] args, Object[] registers) {
+        Environment.PlcObject receiver = (Environment.PlcObject) registers[args[0]];
+        switch (args.length) {
+            case 1:
+                return receiver.callMethod(name);
+            case 2:
+                return receiver.callMethod(name, (Environment.PlcObject) registers[args[1]]);
+            case 3:
+                return receiver.callMethod(name, (Environment.PlcObject) registers[args[1]], (Environment.PlcObject) registers[args[2]]);
+            case 4:
+                return receiver.callMethod(name, (Environment.PlcObject) registers[args[1]], (Environment.PlcObject) registers[args[2]],
+                        (Environment.PlcObject) registers[args[3]]);
+            default:
+                return receiver.callMethod(name, values(args, 1, registers));
+        }
+    }
+
+    private static Environment.PlcObject[] values(int[] args, int start, Object[] registers) {
+        Environment.PlcObject[] values = new Environment.PlcObject[args.length - start];
+        for (int i = start; i < args.length; i++) {
+            values[i - start] = (Environment.PlcObject) registers[args[i]];
+        }
+        return values;
+    }
+
+    private static Object compute(Step step, Object[] registers, Interpreter interpreter) {
+        int[] args = step.arguments;
+        switch (step.op) {
+            case LOAD:
+                return interpreter.getScope().lookupVariable(step.name).getValue();
+            case FIELD:
+                return ((Environment.PlcObject) registers[args[0]]).getField(step.name).getValue();
+            case BINARY:
+                return binary(step, (Environment.PlcObject) registers[args[0]], (Environment.PlcObject) registers[args[1]]);
+            default:
+                throw new AssertionError("Unimplemented IR operation: " + step.op + ".");
+        }
+    }
+
+    private static Environment.PlcObject binary(Step step, Environment.PlcObject left, Environment.PlcObject right) {
+        switch (step.arithmetic) {
+            case INTEGER_ADD:
+                return Environment.create(((BigInteger) left.getValue()).add((BigInteger) right.getValue()));
+            case INTEGER_SUBTRACT:
+                return Environment.create(((BigInteger) left.getValue()).subtract((BigInteger) right.getValue()));
+            case INTEGER_MULTIPLY:
+                return Environment.create(((BigInteger) left.getValue()).multiply((BigInteger) right.getValue()));
+            case INTEGER_LESS:
+                return ((BigInteger) left.getValue()).compareTo((BigInteger) right.getValue()) < 0 ? TRUE : FALSE;
+            case INTEGER_GREATER_EQUAL:
+                return ((BigInteger) left.getValue()).compareTo((BigInteger) right.getValue()) >= 0 ? TRUE : FALSE;
+            case DECIMAL_ADD:
+                return Environment.create(decimal(left).add(decimal(right)));
+            case DECIMAL_SUBTRACT:
+                return Environment.create(decimal(left).subtract(decimal(right)));
+            case DECIMAL_MULTIPLY:
+                return Environment.create(decimal(left).multiply(decimal(right)));
+            case DECIMAL_DIVIDE: {
+                BigDecimal divisor = decimal(right);
+                if (divisor.signum() == 0) {
+                    throw new ArithmeticException("Division by zero");
+                }
+                return Environment.create(decimal(left).divide(divisor, 10, RoundingMode.HALF_UP).setScale(1, RoundingMode.HALF_UP));
+            }
+            case STRING_ADD:
+                return Environment.create((String) left.getValue() + right.getValue());
+            case EQUAL:
+                return left.getValue().equals(right.getValue()) ? TRUE : FALSE;
+            default:
+                return Interpreter.applyBinary(step.operator, left, right);
+        }
+    }
+
+    private static BigDecimal decimal(Environment.PlcObject object) {
+        return object.getValue() instanceof BigInteger ? new BigDecimal((BigInteger) object.getValue()) : (BigDecimal) object.getValue();
+    }
+
+    /**
+     * Computes a speculative instruction, returning the exception it throws
+     * (or its operands threw) as a {@link Deferred} value.
+     */
+    private static Object speculate(Step step, Object[] registers, Interpreter interpreter) {
+        for (int arg : step.arguments) {
+            if (registers[arg] instanceof Deferred) {
+                return registers[arg];
+            }
+        }
+        try {
+            return compute(step, registers, interpreter);
+        } catch (RuntimeException e) {
+            return new Deferred(e);
+        }
+    }
+
+    /**
+     * Copies the sources to the destinations of the moves all at once, since
+     * a phi may be the source of another phi of the same block.
+     */
+    private static void move(int[] moves, Object[] registers, Object[] moved) {
+        if (moves.length == 2) {
+            registers[moves[1]] = registers[moves[0]];
+            return;
+        }
+        for (int i = 0; i < moves.length; i += 2) {
+            moved[i / 2] = registers[moves[i]];
+        }
+        for (int i = 0; i < moves.length; i += 2) {
+            registers[moves[i + 1]] = moved[i / 2];
+        }
+    }
+
+    private static final class Step {
+
+        private final Ir.Op op;
+        private final int id;
+        private final int index;
+        private final Symbol name;
+        private final String operator;
+        private final boolean speculative;
+        private final Arithmetic arithmetic;
+        private int[] arguments;
+        private int[] targets;
+        private int[][] moves;
+
+        private Step(Ir.Instruction instruction) {
+            this.op = instruction.getOp();
+            this.id = instruction.getId();
+            this.index = instruction.getIndex();
+            this.name = instruction.getName();
+            this.operator = instruction.getOperator();
+            this.speculative = instruction.isSpeculative();
+            this.arithmetic = instruction.getOp() == Ir.Op.BINARY ? Arithmetic.of(instruction) : Arithmetic.GENERIC;
+        }
+
+    }
+
+    /**
+     * The implementation of a {@link Ir.Op#BINARY} instruction, chosen by the
+     * types of its operands.
+     */
+    private enum Arithmetic {
+        GENERIC,
+        INTEGER_ADD,
+        INTEGER_SUBTRACT,
+        INTEGER_MULTIPLY,
+        INTEGER_LESS,
+        INTEGER_GREATER_EQUAL,
+        /** Any numbers, at least one of which is a decimal. */
+        DECIMAL_ADD,
+        DECIMAL_SUBTRACT,
+        DECIMAL_MULTIPLY,
+        /** Any numbers. */
+        DECIMAL_DIVIDE,
+        STRING_ADD,
+        /** Any values. */
+        EQUAL;
+
+        private static Arithmetic of(Ir.Instruction instruction) {
+            Ir.Type left = instruction.getOperand(0).getType();
+            Ir.Type right = instruction.getOperand(1).getType();
+            boolean integers = left == Ir.Type.INTEGER && right == Ir.Type.INTEGER;
+            boolean decimals = !integers && left.isNumber() && right.isNumber();
+            switch (instruction.getOperator()) {
+                case "+":
+                    return integers ? INTEGER_ADD : decimals ? DECIMAL_ADD
+                            : left == Ir.Type.STRING && right == Ir.Type.STRING ? STRING_ADD : GENERIC;
+                case "-":
+                    return integers ? INTEGER_SUBTRACT : decimals ? DECIMAL_SUBTRACT : GENERIC;
+                case "*":
+                    return integers ? INTEGER_MULTIPLY : decimals ? DECIMAL_MULTIPLY : GENERIC;
+                case "/":
+                    return left.isNumber() && right.isNumber() ? DECIMAL_DIVIDE : GENERIC;
+                case "<":
+                    return integers ? INTEGER_LESS : GENERIC;
+                case ">=":
+                    return integers ? INTEGER_GREATER_EQUAL : GENERIC;
+                case "==":
+                    return EQUAL;
+                default:
+                    return GENERIC;
+            }
+        }
+
+    }
+
+    /**
+     * The value of a speculative instruction which threw.
+     */
+    private static final class Deferred {
+
+        private final RuntimeException exception;
+
+        private Deferred(RuntimeException exception) {
+            this.exception = exception;
+        }
+
+    }
+
+}
@@ -0,0 +1,309 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optimizes functions in the {@link Ir} with global value numbering and
+ * loop-invariant code motion, and then infers their types with {@link
+ * IrTypes} so they run with specialized arithmetic.
+ */
+public final class IrOptimizer {
+
+    private IrOptimizer() {}
+
+    public static void optimize(Ir.Function function) {
+        numberValues(function);
+        hoistInvariants(function);
+        IrTypes.infer(function);
+    }
+
+    /**
+     * Replaces each pure instruction with an earlier instruction computing
+     * the same value, if one dominates it, and folds instructions whose
+     * operands are constants. Since the earlier instruction always runs
+     * first, if computing the value throws it does so there.
+     */
+    public static void numberValues(Ir.Function function) {
+        Dominators dominators = new Dominators(function);
+        Map<List<Object>, Ir.Value> values = new HashMap<>();
+        // walks the dominator tree with an explicit stack, undoing the values
+        // numbered in a block once its subtree is done
+        List<Ir.Block> pending = new ArrayList<>();
+        List<List<List<Object>>> added = new ArrayList<>();
+        pending.add(function.getEntry());
+        added.add(null);
+        while (!pending.isEmpty()) {
+            Ir.Block block = pending.remove(pending.size() - 1);
+            List<List<Object>> keys = added.remove(added.size() - 1);
+            if (block == null) {
+                values.keySet().removeAll(keys);
+                continue;
+            }
+            keys = new ArrayList<>();
+            for (Ir.Instruction instruction : new ArrayList<>(block.getInstructions())) {
+                Ir.Value folded = fold(instruction);
+                if (folded != null) {
+                    replace(instruction, folded);
+                } else if (instruction.getOp() == Ir.Op.BINARY || instruction.getOp() == Ir.Op.BOOLEAN || instruction.getOp() == Ir.Op.GUARD) {
+                    List<Object> key = new ArrayList<>();
+                    key.add(instruction.getOp());
+                    key.add(instruction.getOperator());
+                    key.addAll(instruction.getOperands());
+                    Ir.Value value = values.get(key);
+                    if (value != null) {
+                        replace(instruction, value);
+                    } else {
+                        values.put(key, instruction);
+                        keys.add(key);
+                    }
+                }
+            }
+            pending.add(null);
+            added.add(keys);
+            for (Ir.Block child : dominators.getChildren(block)) {
+                pending.add(child);
+                added.add(null);
+            }
+        }
+    }
+
+    /**
+     * Returns the value of an instruction whose result is known without
+     * running it, or null.
+     */
+    private static Ir.Value fold(Ir.Instruction instruction) {
+        if (instruction.getOp() == Ir.Op.BINARY
+                && instruction.getOperand(0) instanceof Ir.Constant && instruction.getOperand(1) instanceof Ir.Constant) {
+            try {
+                return new Ir.Constant(Interpreter.applyBinary(instruction.getOperator(),
+                        ((Ir.Constant) instruction.getOperand(0)).getValue(), ((Ir.Constant) instruction.getOperand(1)).getValue()));
+            } catch (RuntimeException e) {
+                // left to throw at runtime
+                return null;
+            }
+        } else if (instruction.getOp() == Ir.Op.BOOLEAN) {
+            Ir.Value operand = instruction.getOperand(0);
+            if (operand instanceof Ir.Constant && ((Ir.Constant) operand).getValue().getValue() instanceof Boolean
+                    || operand instanceof Ir.Instruction && ((Ir.Instruction) operand).getOp() == Ir.Op.BOOLEAN) {
+                return operand;
+            }
+        }
+        return null;
+    }
+
+    private static void replace(Ir.Instruction instruction, Ir.Value value) {
+        instruction.replaceWith(value);
+        instruction.getBlock().getInstructions().remove(instruction);
+        instruction.setBlock(null);
+        instruction.clearOperands();
+    }
+
+    /**
+     * Moves instructions whose operands don't change in a loop to the block
+     * before the loop (its preheader), innermost loops first.
+     *
+     * Arithmetic, and reading variables and fields in loops which don't call
+     * or assign anything, is moved. Since the loop may not have run it at all
+     * (or may have thrown or printed something first), the moved instruction
+     * is speculative: an exception it throws is kept as its value, and thrown
+     * by a {@link Ir.Op#GUARD} left where the instruction was.
+     */
+    public static void hoistInvariants(Ir.Function function) {
+        Dominators dominators = new Dominators(function);
+        Map<Ir.Block, Set<Ir.Block>> loops = new LinkedHashMap<>();
+        for (Ir.Block block : dominators.order) {
+            for (Ir.Block successor : block.getSuccessors()) {
+                if (dominators.dominates(successor, block)) {
+                    Set<Ir.Block> loop = loops.computeIfAbsent(successor, header -> new HashSet<>(Arrays.asList(header)));
+                    List<Ir.Block> pending = new ArrayList<>(Arrays.asList(block));
+                    while (!pending.isEmpty()) {
+                        Ir.Block next = pending.remove(pending.size() - 1);
+                        if (loop.add(next)) {
+                            pending.addAll(next.getPredecessors());
+                        }
+                    }
+                }
+            }
+        }
+        List<Map.Entry<Ir.Block, Set<Ir.Block>>> sorted = new ArrayList<>(loops.entrySet());
+        sorted.sort((first, second) -> Integer.compare(first.getValue().size(), second.getValue().size()));
+        for (Map.Entry<Ir.Block, Set<Ir.Block>> loop : sorted) {
+            hoist(loop.getKey(), loop.getValue(), dominators);
+        }
+    }
+
+    private static void hoist(Ir.Block header, Set<Ir.Block> loop, Dominators dominators) {
+        Ir.Block preheader = null;
+        for (Ir.Block predecessor : header.getPredecessors()) {
+            if (!loop.contains(predecessor)) {
+                if (preheader != null) {
+                    return;
+                }
+                preheader = predecessor;
+            }
+        }
+        if (preheader == null || preheader.getSuccessors().size() != 1) {
+            return;
+        }
+        List<Ir.Block> blocks = new ArrayList<>();
+        boolean effects = false;
+        for (Ir.Block block : dominators.order) {
+            if (loop.contains(block)) {
+                blocks.add(block);
+                for (Ir.Instruction instruction : block.getInstructions()) {
+                    Ir.Op op = instruction.getOp();
+                    effects |= op == Ir.Op.CALL || op == Ir.Op.METHOD || op == Ir.Op.SET;
+                }
+            }
+        }
+        for (Ir.Block block : blocks) {
+            for (Ir.Instruction instruction : new ArrayList<>(block.getInstructions())) {
+                Ir.Op op = instruction.getOp();
+                if ((op == Ir.Op.BINARY || !effects && (op == Ir.Op.LOAD || op == Ir.Op.FIELD)) && invariant(instruction, loop)) {
+                    move(instruction, preheader);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the operands of the instruction are defined outside of
+     * the loop, or are guards of instructions which are.
+     */
+    private static boolean invariant(Ir.Instruction instruction, Set<Ir.Block> loop) {
+        for (Ir.Value operand : instruction.getOperands()) {
+            if (operand instanceof Ir.Instruction && loop.contains(((Ir.Instruction) operand).getBlock())) {
+                Ir.Instruction definition = (Ir.Instruction) operand;
+                if (definition.getOp() != Ir.Op.GUARD || !(definition.getOperand(0) instanceof Ir.Instruction)
+                        || loop.contains(((Ir.Instruction) definition.getOperand(0)).getBlock())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void move(Ir.Instruction instruction, Ir.Block preheader) {
+        for (int i = 0; i < instruction.getOperands().size(); i++) {
+            Ir.Value operand = instruction.getOperand(i);
+            if (operand instanceof Ir.Instruction && ((Ir.Instruction) operand).getOp() == Ir.Op.GUARD) {
+                // a guard stays where it was, so use the speculative value it checks
+                instruction.setOperand(i, ((Ir.Instruction) operand).getOperand(0));
+            }
+        }
+        Ir.Block block = instruction.getBlock();
+        List<Ir.Instruction> instructions = block.getInstructions();
+        if (instruction.isSpeculative()) {
+            instructions.remove(instruction);
+        } else {
+            Ir.Instruction guard = Ir.create(Ir.Op.GUARD, null, null, 0);
+            instruction.replaceWith(guard);
+            guard.addOperand(instruction);
+            guard.setBlock(block);
+            instructions.set(instructions.indexOf(instruction), guard);
+            instruction.setSpeculative(true);
+        }
+        preheader.add(instruction);
+    }
+
+    /**
+     * The dominator tree of a function, computed as in Cooper, Harvey and
+     * Kennedy, "A Simple, Fast Dominance Algorithm".
+     */
+    private static final class Dominators {
+
+        /** The reachable blocks in reverse postorder. */
+        private final List<Ir.Block> order = new ArrayList<>();
+        private final Map<Ir.Block, Integer> indices = new HashMap<>();
+        private final int[] dominators;
+        private final List<List<Ir.Block>> children = new ArrayList<>();
+
+        private Dominators(Ir.Function function) {
+            List<Ir.Block> postorder = new ArrayList<>();
+            Set<Ir.Block> visited = new HashSet<>();
+            List<Ir.Block> pending = new ArrayList<>();
+            List<Integer> next = new ArrayList<>();
+            pending.add(function.getEntry());
+            next.add(0);
+            visited.add(function.getEntry());
+            while (!pending.isEmpty()) {
+                Ir.Block block = pending.get(pending.size() - 1);
+                int index = next.get(next.size() - 1);
+                if (index < block.getSuccessors().size()) {
+                    next.set(next.size() - 1, index + 1);
+                    Ir.Block successor = block.getSuccessors().get(index);
+                    if (visited.add(successor)) {
+                        pending.add(successor);
+                        next.add(0);
+                    }
+                } else {
+                    postorder.add(block);
+                    pending.remove(pending.size() - 1);
+                    next.remove(next.size() - 1);
+                }
+            }
+            for (int i = postorder.size() - 1; i >= 0; i--) {
+                indices.put(postorder.get(i), order.size());
+                order.add(postorder.get(i));
+                children.add(new ArrayList<>());
+            }
+            dominators = new int[order.size()];
+            Arrays.fill(dominators, -1);
+            dominators[0] = 0;
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int i = 1; i < order.size(); i++) {
+                    int dominator = -1;
+                    for (Ir.Block predecessor : order.get(i).getPredecessors()) {
+                        Integer index = indices.get(predecessor);
+                        if (index != null && dominators[index] != -1) {
+                            dominator = dominator == -1 ? index : intersect(index, dominator);
+                        }
+                    }
+                    if (dominators[i] != dominator) {
+                        dominators[i] = dominator;
+                        changed = true;
+                    }
+                }
+            }
+            for (int i = 1; i < order.size(); i++) {
+                children.get(dominators[i]).add(order.get(i));
+            }
+        }
+
+        private int intersect(int first, int second) {
+            while (first != second) {
+                while (first > second) {
+                    first = dominators[first];
+                }
+                while (second > first) {
+                    second = dominators[second];
+                }
+            }
+            return first;
+        }
+
+        private List<Ir.Block> getChildren(Ir.Block block) {
+            return children.get(indices.get(block));
+        }
+
+        private boolean dominates(Ir.Block dominator, Ir.Block block) {
+            int target = indices.get(dominator);
+            int index = indices.get(block);
+            while (index > target) {
+                index = dominators[index];
+            }
+            return index == target;
+        }
+
+    }
+
+}
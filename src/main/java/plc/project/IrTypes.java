@@ -0,0 +1,133 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Infers the types of the values of functions in the {@link Ir}. Since the
+ * IR is in SSA form, each value has one type wherever it's used, and the
+ * types of values merged by phis are joined; values from outside of the
+ * function (parameters, variables, fields and calls) could be anything.
+ *
+ * The type of an instruction is the type of its value if it doesn't throw,
+ * which is what {@link IrInterpreter} needs to use specialized arithmetic in
+ * place of {@link Interpreter#applyBinary}.
+ */
+public final class IrTypes {
+
+    private IrTypes() {}
+
+    /**
+     * Sets the types of the instructions of the function, and removes
+     * {@link Ir.Op#BOOLEAN} checks of values which are known to be booleans.
+     */
+    public static void infer(Ir.Function function) {
+        // optimistically, an instruction has no type until one of its
+        // definitions is seen, so loop phis get the type of their entry value
+        // if the loop keeps it
+        Map<Ir.Instruction, Ir.Type> types = new IdentityHashMap<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Ir.Block block : function.getBlocks()) {
+                for (Ir.Instruction instruction : block.getInstructions()) {
+                    Ir.Type type = infer(instruction, types);
+                    if (type != null && type != types.get(instruction)) {
+                        types.put(instruction, type);
+                        changed = true;
+                    }
+                }
+            }
+        }
+        List<Ir.Instruction> checks = new ArrayList<>();
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Instruction instruction : block.getInstructions()) {
+                instruction.setType(types.getOrDefault(instruction, Ir.Type.ANY));
+                if (instruction.getOp() == Ir.Op.BOOLEAN && instruction.getOperand(0).getType() == Ir.Type.BOOLEAN) {
+                    checks.add(instruction);
+                }
+            }
+        }
+        for (Ir.Instruction check : checks) {
+            check.replaceWith(check.getOperand(0));
+            check.getBlock().getInstructions().remove(check);
+            check.setBlock(null);
+            check.clearOperands();
+        }
+    }
+
+    /**
+     * Returns the type of the instruction given the types inferred so far, or
+     * null if it depends on instructions which have none yet.
+     */
+    private static Ir.Type infer(Ir.Instruction instruction, Map<Ir.Instruction, Ir.Type> types) {
+        switch (instruction.getOp()) {
+            case BINARY: {
+                Ir.Type left = type(instruction.getOperand(0), types);
+                Ir.Type right = type(instruction.getOperand(1), types);
+                return left == null || right == null ? null : binary(instruction.getOperator(), left, right);
+            }
+            case BOOLEAN:
+            case HAS_NEXT:
+                return Ir.Type.BOOLEAN;
+            case GUARD:
+                return type(instruction.getOperand(0), types);
+            case PHI: {
+                Ir.Type joined = null;
+                for (Ir.Value operand : instruction.getOperands()) {
+                    Ir.Type type = type(operand, types);
+                    if (type != null) {
+                        joined = joined == null || joined == type ? type : Ir.Type.ANY;
+                    }
+                }
+                return joined;
+            }
+            default:
+                return Ir.Type.ANY;
+        }
+    }
+
+    private static Ir.Type type(Ir.Value value, Map<Ir.Instruction, Ir.Type> types) {
+        return value instanceof Ir.Instruction ? types.get(value) : value.getType();
+    }
+
+    /**
+     * Returns the type of the result of {@link Interpreter#applyBinary} with
+     * operands of the given types, if it doesn't throw.
+     */
+    static Ir.Type binary(String operator, Ir.Type left, Ir.Type right) {
+        switch (operator) {
+            case "+":
+                if (left == Ir.Type.STRING || right == Ir.Type.STRING) {
+                    return Ir.Type.STRING;
+                } else if (left == Ir.Type.INTEGER && right == Ir.Type.INTEGER) {
+                    return Ir.Type.INTEGER;
+                }
+                // with an unknown operand, either could be a string
+                return left.isNumber() && right.isNumber() ? Ir.Type.DECIMAL : Ir.Type.ANY;
+            case "-":
+            case "*":
+                if (left == Ir.Type.INTEGER && right == Ir.Type.INTEGER) {
+                    return Ir.Type.INTEGER;
+                }
+                // anything but two integers is converted to decimals
+                return left != Ir.Type.ANY && left != Ir.Type.INTEGER || right != Ir.Type.ANY && right != Ir.Type.INTEGER
+                        ? Ir.Type.DECIMAL : Ir.Type.ANY;
+            case "/":
+                return Ir.Type.DECIMAL;
+            case "<":
+            case ">=":
+            case "==":
+            case "AND":
+            case "&&":
+            case "OR":
+            case "||":
+                return Ir.Type.BOOLEAN;
+            default:
+                return Ir.Type.ANY;
+        }
+    }
+
+}
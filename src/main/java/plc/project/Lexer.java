@@ -1,12 +1,17 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The lexer works through three main functions:
  *
- *  - {@link #lex()}, which repeatedly calls lexToken() and skips whitespace
+ *  - {@link #lex(TokenSink)}, which repeatedly scans tokens and skips whitespace,
+ *    with {@link #lex()} creating a {@link Token} for each one
  *  - {@link #lexToken()}, which lexes the next token
  *  - {@link CharStream}, which manages the state of the lexer and literals
  *
@@ -19,29 +24,167 @@ import java.util.List;
  */
 public final class Lexer {
 
+    /**
+     * The most digits a number literal can have while still being accumulated
+     * into a {@code long} without overflow.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /**
+     * The target number of characters lexed by each task in {@link
+     * #lexParallel(ForkJoinPool)}; smaller inputs are lexed sequentially.
+     */
+    private static final int CHUNK_SIZE = 1 << 15;
+
     private final CharStream chars;
 
+    // The value of the last scanned literal, kept as primitives and a reused
+    // builder so scanning doesn't allocate; see value(Token.Type, int, int).
+    private long number;
+    private int scale;
+    private boolean overflow;
+    private char character;
+    private final StringBuilder string = new StringBuilder();
+
     public Lexer(String input) {
         chars = new CharStream(input);
     }
 
     /**
-     * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
-     * whitespace where appropriate.
+     * Creates a lexer over {@code input[start, end)}, see {@link
+     * CharStream#CharStream(String, int, int)}.
+     */
+    Lexer(String input, int start, int end) {
+        chars = new CharStream(input, start, end);
+    }
+
+    /**
+     * Repeatedly lexes the input using {@link #lex(TokenSink)}, creating a
+     * token (with its literal and value) for each one reported.
      */
     public List<Token> lex() {
         List<Token> tokens = new ArrayList<>();
-        while (chars.has(0)) {
-            if (peek("[\\s\u0008]")) { //check if next char is whitespace
-                chars.advance();  //skip whitespace
-                chars.skip();  // reset length back to 0
-            } else {
-                tokens.add(lexToken());  //call lexToken to identify token
+        lex((type, start, end) -> tokens.add(token(type, start, end)));
+        return tokens;
+    }
+
+    /**
+     * Lexes the remaining input, skipping whitespace and reporting each token
+     * to the sink as its type and range {@code [start, end)} of the input.
+     * Unlike {@link #lex()}, no tokens or substrings are allocated; literal
+     * values are only decoded into state reused across tokens.
+     */
+    public void lex(TokenSink sink) {
+        while (skipWhitespace()) {
+            Token.Type type = scanToken();
+            int start = chars.index - chars.length;
+            chars.skip();
+            sink.token(type, start, chars.index);
+        }
+    }
+
+    /**
+     * Skips whitespace and lexes the next token, returning {@code null} once
+     * the input is exhausted.
+     */
+    Token lexNext() {
+        return skipWhitespace() ? lexToken() : null;
+    }
+
+    /**
+     * Skips the run of whitespace at the current index, returning true if
+     * there is a token after it.
+     */
+    private boolean skipWhitespace() {
+        if (chars.advanceWhile(CharStream.WHITESPACE) > 0) {
+            chars.skip();  // reset length back to 0
+        }
+        return chars.has(0);
+    }
+
+    /**
+     * Lexes the remaining input like {@link #lex()} using the common {@link
+     * ForkJoinPool}.
+     */
+    public List<Token> lexParallel() {
+        return lexParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Lexes the remaining input like {@link #lex()}, but splits it into chunks
+     * at newlines outside of literals and lexes each chunk on the given pool.
+     * Since a token never spans such a newline, the result is the same token
+     * list, and the first chunk (in input order) which fails determines the
+     * {@link ParseException}, matching the sequential lexer.
+     */
+    public List<Token> lexParallel(ForkJoinPool pool) {
+        List<Integer> boundaries = chunkBoundaries(chars.input, chars.index, chars.end);
+        if (boundaries.size() <= 2) {
+            return lex();
+        }
+        List<ForkJoinTask<List<Token>>> tasks = new ArrayList<>();
+        ParseException[] errors = new ParseException[boundaries.size() - 1];
+        for (int i = 0; i < errors.length; i++) {
+            Lexer lexer = new Lexer(chars.input, boundaries.get(i), boundaries.get(i + 1));
+            int chunk = i;
+            tasks.add(pool.submit(() -> {
+                try {
+                    return lexer.lex();
+                } catch (ParseException e) {
+                    errors[chunk] = e;
+                    return null;
+                }
+            }));
+        }
+        List<Token> tokens = new ArrayList<>();
+        for (int i = 0; i < errors.length; i++) {
+            List<Token> chunk = tasks.get(i).join();
+            if (errors[i] != null) {
+                throw errors[i];
             }
+            tokens.addAll(chunk);
         }
+        chars.index = chars.end;
+        chars.skip();
         return tokens;
     }
 
+    /**
+     * Pre-scans {@code input[start, end)} for chunk boundaries, returning a
+     * list of indices beginning with {@code start} and ending with {@code end}.
+     * Each inner boundary is just past a newline at least {@link #CHUNK_SIZE}
+     * characters after the previous boundary which is not inside a string or
+     * character literal. Literals cannot contain newlines, so the literal
+     * state resets at each newline (the lexer would have failed there).
+     */
+    private static List<Integer> chunkBoundaries(String input, int start, int end) {
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(start);
+        char quote = 0; // the quote of the literal being scanned, if any
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '\n') {
+                if (quote == 0 && i + 1 - boundaries.get(boundaries.size() - 1) >= CHUNK_SIZE && i + 1 < end) {
+                    boundaries.add(i + 1);
+                }
+                quote = 0;
+            } else if (quote != 0) {
+                if (c == '\\') {
+                    i++; // skip the escaped character, unless it's a newline
+                    if (i < end && input.charAt(i) == '\n') {
+                        i--;
+                    }
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            }
+        }
+        boundaries.add(end);
+        return boundaries;
+    }
+
     /**
      * This method determines the type of the next token, delegating to the
      * appropriate lex method. As such, it is best for this method to not change
@@ -51,136 +194,251 @@ public final class Lexer {
      * by {@link #lex()}
      */
     public Token lexToken() {
-        if (peek("[A-Za-z_]")) {
-            return lexIdentifier();  // If char is a letter or underscore, call lexIdentifier
-        } else if (peek("[+-]") && chars.has(1) && String.valueOf(chars.get(1)).matches("[0-9]")) {
+        return emit(scanToken());
+    }
+
+    public Token lexIdentifier() {
+        return emit(scanIdentifier());
+    }
+
+    public Token lexNumber() {
+        return emit(scanNumber());
+    }
+
+    public Token lexCharacter() {
+        return emit(scanCharacter());
+    }
+
+    public Token lexString() {
+        return emit(scanString());
+    }
+
+    public Token lexOperator() {
+        return emit(scanOperator());
+    }
+
+    /**
+     * Emits the token matched by the last scan, see {@link #token(Token.Type,
+     * int, int)}.
+     */
+    private Token emit(Token.Type type) {
+        int start = chars.index - chars.length;
+        chars.skip();
+        return token(type, start, chars.index);
+    }
+
+    /**
+     * Creates the token for {@code input[start, end)}, which must be the
+     * range of the last scanned token since its value comes from the state
+     * left by that scan.
+     */
+    private Token token(Token.Type type, int start, int end) {
+        return new Token(type, chars.input.substring(start, end), start, value(type, start, end));
+    }
+
+    private Object value(Token.Type type, int start, int end) {
+        switch (type) {
+            case INTEGER:
+                // past MAX_LONG_DIGITS the accumulated value overflowed, so parse the literal text
+                return overflow ? new BigInteger(chars.input.substring(start, end)) : BigInteger.valueOf(number);
+            case DECIMAL:
+                return overflow ? new BigDecimal(chars.input.substring(start, end)) : BigDecimal.valueOf(number, scale);
+            case CHARACTER:
+                return character;
+            case STRING:
+                return string.toString();
+            default:
+                return null;
+        }
+    }
+
+    /*
+     * The scan methods below advance past the next token and return its type
+     * without allocating, so regexes (and thus peek/match) are avoided in
+     * favor of the char overloads and character classes.
+     */
+
+    private Token.Type scanToken() {
+        if (chars.is(0, CharStream.IDENTIFIER_START)) {
+            return scanIdentifier();  // If char is a letter or underscore, scan an identifier
+        } else if ((peek('+') || peek('-')) && chars.is(1, CharStream.DIGIT)) {
             // Check for a number starting with + or -
-            return lexNumber();
-        } else if (peek("[0-9]")) {
-            return lexNumber();  // If char is a number, call lexNumber
-        } else if (peek("\"")) {
-            return lexString();  // If char is a double quote, call lexString
-        } else if (peek("'")) {
-            return lexCharacter();  // If char is a single quote, call lexCharacter
+            return scanNumber();
+        } else if (chars.is(0, CharStream.DIGIT)) {
+            return scanNumber();  // If char is a number, scan a number
+        } else if (peek('"')) {
+            return scanString();  // If char is a double quote, scan a string
+        } else if (peek('\'')) {
+            return scanCharacter();  // If char is a single quote, scan a character
         } else {
-            return lexOperator();
+            return scanOperator();
         }
     }
 
-    public Token lexIdentifier() {
-        if (!peek("[A-Za-z_]")) {  //throws exception if char doesn't start with a letter or underscore
+    private Token.Type scanIdentifier() {
+        if (!chars.is(0, CharStream.IDENTIFIER_START)) {  //throws exception if char doesn't start with a letter or underscore
             throw new ParseException("Invalid start of identifier", chars.index);
         }
-        while (peek("[A-Za-z0-9_-]")) {
-            chars.advance();
-        }
-        return chars.emit(Token.Type.IDENTIFIER); //creates token of type IDENTIFIER
+        chars.advanceWhile(CharStream.IDENTIFIER);
+        return Token.Type.IDENTIFIER;
     }
 
-    public Token lexNumber() {
+    private Token.Type scanNumber() {
         boolean isDecimal = false;
+        boolean negative = false;
+        long unscaled = 0;  // digits accumulated so far, ignoring the decimal point
+        int digits = 0;
+        int scale = 0;
 
         // handle optional leading + or -
-        if (peek("[+-]")) {
+        if (peek('+') || peek('-')) {
+            negative = chars.get(0) == '-';
             chars.advance();
         }
 
         // handle the number part
-        while (peek("[0-9]")) {
+        while (chars.is(0, CharStream.DIGIT)) {
+            unscaled = unscaled * 10 + (chars.get(0) - '0');
+            digits++;
             chars.advance();
         }
 
-        if (peek("\\.") && chars.has(1) && String.valueOf(chars.get(1)).matches("[0-9]")) {
+        if (peek('.') && chars.is(1, CharStream.DIGIT)) {
             isDecimal = true;
-            match("\\.");  // advance past decimal since we know it exists
-            while (peek("[0-9]")) {
+            chars.advance();  // advance past decimal since we know it exists
+            while (chars.is(0, CharStream.DIGIT)) {
+                unscaled = unscaled * 10 + (chars.get(0) - '0');
+                digits++;
+                scale++;
                 chars.advance();
             }
         }
 
-        // emit a DECIMAL or INTEGER token based on whether a decimal point was found
-        return isDecimal ? chars.emit(Token.Type.DECIMAL) : chars.emit(Token.Type.INTEGER);
+        // a DECIMAL or INTEGER token based on whether a decimal point was found
+        this.number = negative ? -unscaled : unscaled;
+        this.scale = scale;
+        this.overflow = digits > MAX_LONG_DIGITS;
+        return isDecimal ? Token.Type.DECIMAL : Token.Type.INTEGER;
     }
 
-    public Token lexCharacter() {
+    private Token.Type scanCharacter() {
         // check for opening single quote
-        if (!match("'")) {
+        if (!match('\'')) {
             throw new ParseException("Expected opening single quote for character literal", chars.index);
         }
 
         // Handle the character or escape sequence
-        if (peek("\\\\")) {
-            lexEscape(); // handle escape sequences
-        } else if (peek("[^'\n\r]")) {
+        if (peek('\\')) {
+            character = lexEscape(); // handle escape sequences
+        } else if (peekLiteral('\'')) {
+            character = chars.get(0);
             chars.advance();
         } else {
             throw new ParseException("Invalid character in character literal", chars.index);
         }
 
         // Ensure there is only one character
-        if (chars.has(0) && peek("[^'\\n\\r\\\\]")) {
+        if (peekLiteral('\'') && !peek('\\')) {
             // advance to check if another character is present
             chars.advance();
-            if (!peek("'")) {
-                throw new ParseException("Character literal contains more than one character", chars.index);
-            }
-        } else if (peek("\\\\")) {
-            // if we saw an escape sequence, check if another character is present
-            if (!peek("'")) {
+            if (!peek('\'')) {
                 throw new ParseException("Character literal contains more than one character", chars.index);
             }
+        } else if (peek('\\')) {
+            // if we saw an escape sequence, another character is present
+            throw new ParseException("Character literal contains more than one character", chars.index);
         }
 
-        if (!match("'")) {
+        if (!match('\'')) {
             throw new ParseException("Expected closing single quote for character literal", chars.index);
         }
-
-        return chars.emit(Token.Type.CHARACTER);
+        return Token.Type.CHARACTER;
     }
 
-    public Token lexString() {
+    private Token.Type scanString() {
         // check for opening double quote
-        if (!match("\"")) {
+        if (!match('"')) {
             throw new ParseException("Expected opening double quote for string literal", chars.index);
         }
 
-        // Handle the characters in the string
-        while (peek("[^\"\\n\\r]")) {
-            if (peek("\\\\"))
-                lexEscape();
-            else
+        // Handle the characters in the string, decoding escapes as we go
+        string.setLength(0);
+        while (peekLiteral('"')) {
+            if (peek('\\')) {
+                string.append(lexEscape());
+            } else {
+                string.append(chars.get(0));
                 chars.advance();
+            }
         }
 
         // check for closing double quote
-        if (!match("\"")) {
+        if (!match('"')) {
             throw new ParseException("Expected closing double quote for string literal", chars.index);
         }
+        return Token.Type.STRING;
+    }
 
-        return chars.emit(Token.Type.STRING);
+    private Token.Type scanOperator() {
+        if (chars.has(1) && chars.get(1) == '=' && "<>!=".indexOf(chars.get(0)) >= 0) {
+            chars.advance();  // one of <=, >=, !=, or ==
+        }
+        chars.advance();
+        return Token.Type.OPERATOR;
     }
 
-    public void lexEscape() {
-        if (match("\\\\")) {
-            if (!peek("[bnrt'\"\\\\]")) {
+    /**
+     * Lexes an escape sequence, returning the character it represents.
+     */
+    public char lexEscape() {
+        if (match('\\')) {
+            if (!chars.has(0) || "bnrt'\"\\".indexOf(chars.get(0)) < 0) {
                 throw new ParseException("Invalid escape sequence", chars.index);
             }
+            char escaped = unescape(chars.get(0));
             chars.advance();
+            return escaped;
         } else {
             throw new ParseException("Expected escape sequence after backslash", chars.index);
         }
     }
 
-    public Token lexOperator() {
-        if (peek("<", "=") || peek(">", "=") || peek("!", "=") || peek("=", "=")) {
-            if (match("<", "=") || match(">", "=") || match("!", "=") || match("=", "=")) {
-                return chars.emit(Token.Type.OPERATOR);
-            }
-        } else {
+    /**
+     * Returns the character represented by the escape sequence {@code \c},
+     * where {@code c} is one of the valid escape characters.
+     */
+    static char unescape(char c) {
+        switch (c) {
+            case 'b': return '\b';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            default: return c; // ', ", and \ escape to themselves
+        }
+    }
+
+    /**
+     * Returns true if the next character is the given character, like {@link
+     * #peek(String...)} with a single literal pattern but without a regex.
+     */
+    private boolean peek(char c) {
+        return chars.has(0) && chars.get(0) == c;
+    }
+
+    private boolean match(char c) {
+        if (peek(c)) {
             chars.advance();
+            return true;
         }
+        return false;
+    }
 
-        return chars.emit(Token.Type.OPERATOR);
+    /**
+     * Returns true if the next character can appear unescaped in a literal
+     * with the given quote, i.e. {@code [^'\n\r]} for character literals.
+     */
+    private boolean peekLiteral(char quote) {
+        return chars.has(0) && chars.get(0) != quote && chars.get(0) != '\n' && chars.get(0) != '\r';
     }
 
     /**
@@ -221,16 +479,82 @@ public final class Lexer {
      */
     public static final class CharStream {
 
+        /**
+         * Character classes for {@link #is(int, int)} and {@link
+         * #advanceWhile(int)}, matching the regexes {@code [\s\u0008]},
+         * {@code [A-Za-z0-9_-]}, {@code [0-9]}, and {@code [A-Za-z_]}. All are
+         * ASCII-only.
+         */
+        public static final int WHITESPACE = 1, IDENTIFIER = 2, DIGIT = 4, IDENTIFIER_START = 8;
+
+        private static final byte[] CLASSES = new byte[128];
+
+        static {
+            for (char c : " \t\n\u000B\f\r\b".toCharArray()) {
+                CLASSES[c] |= WHITESPACE;
+            }
+            for (char c = 'A'; c <= 'Z'; c++) {
+                CLASSES[c] |= IDENTIFIER | IDENTIFIER_START;
+                CLASSES[Character.toLowerCase(c)] |= IDENTIFIER | IDENTIFIER_START;
+            }
+            for (char c = '0'; c <= '9'; c++) {
+                CLASSES[c] |= IDENTIFIER | DIGIT;
+            }
+            CLASSES['_'] |= IDENTIFIER | IDENTIFIER_START;
+            CLASSES['-'] |= IDENTIFIER;
+        }
+
         private final String input;
-        private int index = 0;
+        private final int end;
+        private int index;
         private int length = 0;
 
         public CharStream(String input) {
+            this(input, 0, input.length());
+        }
+
+        /**
+         * Creates a stream over {@code input[start, end)}. Indices (and thus
+         * token and exception indices) remain relative to the whole input.
+         */
+        public CharStream(String input, int start, int end) {
             this.input = input;
+            this.index = start;
+            this.end = end;
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return index + offset < end;
+        }
+
+        /**
+         * Returns true if there is a character at index + offset belonging to
+         * the given character class.
+         */
+        public boolean is(int offset, int charClass) {
+            if (!has(offset)) {
+                return false;
+            }
+            char c = input.charAt(index + offset);
+            return c < CLASSES.length && (CLASSES[c] & charClass) != 0;
+        }
+
+        /**
+         * Advances past the run of characters belonging to the given character
+         * class, returning the number of characters advanced. This classifies
+         * each character with a table lookup instead of a regex match.
+         */
+        public int advanceWhile(int charClass) {
+            int start = index;
+            while (index < end) {
+                char c = input.charAt(index);
+                if (c >= CLASSES.length || (CLASSES[c] & charClass) == 0) {
+                    break;
+                }
+                index++;
+            }
+            length += index - start;
+            return index - start;
         }
 
         public char get(int offset) {
@@ -246,10 +570,25 @@ public final class Lexer {
             length = 0;
         }
 
+        /**
+         * Returns the text matched so far for the current token.
+         */
+        public String current() {
+            return input.substring(index - length, index);
+        }
+
         public Token emit(Token.Type type) {
+            return emit(type, null);
+        }
+
+        /**
+         * Emits a token with the value computed while lexing it, see {@link
+         * Token#getValue()}.
+         */
+        public Token emit(Token.Type type, Object value) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            return new Token(type, input.substring(start, index), start, value);
         }
 
     }
@@ -0,0 +1,799 @@
+package plc.project;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Simplifies a parsed source before it is interpreted by running a pipeline
+ * of {@link Pass}es until none of them changes the source (or a limit on the
+ * number of rounds is reached). Every pass preserves the behavior of the
+ * source under the {@link Interpreter}, including which errors it throws.
+ *
+ * The default pipeline is {@link Inlining}, {@link ConstantFolding}, {@link
+ * ConstantPropagation} and {@link DeadCodeElimination}.
+ */
+public final class Optimizer {
+
+    private static final int MAX_ROUNDS = 8;
+
+    private final List<Pass> passes;
+    private PrintStream dump;
+
+    public Optimizer() {
+        this(Arrays.asList(new Inlining(), new ConstantFolding(), new ConstantPropagation(), new DeadCodeElimination()));
+    }
+
+    public Optimizer(List<Pass> passes) {
+        this.passes = new ArrayList<>(passes);
+    }
+
+    /**
+     * Sets a stream to print the source to after each pass which changes it,
+     * or {@code null} to not print anything.
+     */
+    public void setDump(PrintStream dump) {
+        this.dump = dump;
+    }
+
+    public Ast.Source optimize(Ast.Source source) {
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            Ast.Source start = source;
+            for (Pass pass : passes) {
+                Ast.Source optimized = pass.apply(source);
+                if (optimized != source && dump != null) {
+                    dump.println("After " + pass.getClass().getSimpleName() + ":");
+                    dump.println(optimized);
+                }
+                source = optimized;
+            }
+            if (source == start) {
+                break;
+            }
+        }
+        return source;
+    }
+
+    /**
+     * A transformation of a whole source. Passes return the same instance if
+     * they did not change anything, which {@link AstRewriter} does
+     * automatically.
+     */
+    public interface Pass {
+
+        Ast.Source apply(Ast.Source source);
+
+    }
+
+    /**
+     * Replaces calls of small, non-recursive methods with the statements of
+     * the method, which saves the interpreter creating an argument list and a
+     * scope for the call and throwing to return from it. Only calls which are
+     * a whole expression statement, declaration value or return value are
+     * inlined, so the arguments can be declared as variables before the
+     * inlined statements without changing the order anything is evaluated in.
+     * Except at a return value, the method may only return at its end.
+     *
+     * Parameters and variables of the inlined method are renamed to names
+     * containing {@code $}, which can't occur in the source, and declared in
+     * the scope of the call. Where the call isn't at the top level of a method
+     * or for loop (and so may run more than once in the same scope), they are
+     * declared at that top level instead and assigned at the call.
+     *
+     * Since the interpreter's scoping is dynamic, the methods called by the
+     * inlined method would have seen its variables, so a method is only
+     * inlined if none of the methods it calls use the name of one of its
+     * variables. Methods which use a variable before it's certainly declared
+     * (which would find a variable of the caller instead), declare one twice
+     * in the same scope or declare one in a while loop aren't inlined either.
+     */
+    public static final class Inlining implements Pass {
+
+        private static final int DEFAULT_BUDGET = 40;
+
+        private final int budget;
+
+        public Inlining() {
+            this(DEFAULT_BUDGET);
+        }
+
+        /**
+         * Creates a pass which inlines methods with at most the given number
+         * of statements and expressions.
+         */
+        public Inlining(int budget) {
+            this.budget = budget;
+        }
+
+        @Override
+        public Ast.Source apply(Ast.Source source) {
+            Map<String, Ast.Method> methods = new HashMap<>();
+            Map<String, References> references = new HashMap<>();
+            Set<String> duplicates = new HashSet<>();
+            Set<String> used = new HashSet<>();
+            for (Ast.Field field : source.getFields()) {
+                used.add(field.getName());
+            }
+            for (Ast.Method method : source.getMethods()) {
+                String key = key(method.getName(), method.getParameters().size());
+                if (methods.put(key, method) != null) {
+                    duplicates.add(key);
+                }
+                References methodReferences = References.of(method);
+                references.put(key, methodReferences);
+                used.addAll(methodReferences.names);
+            }
+            // defining a method twice fails, so neither definition is ever called
+            methods.keySet().removeAll(duplicates);
+            Map<String, Candidate> candidates = new HashMap<>();
+            for (Map.Entry<String, Ast.Method> entry : methods.entrySet()) {
+                Candidate candidate = candidate(entry.getKey(), entry.getValue(), methods, references);
+                if (candidate != null) {
+                    candidates.put(entry.getKey(), candidate);
+                }
+            }
+            if (candidates.isEmpty()) {
+                return source;
+            }
+            Sites sites = new Sites(candidates, used);
+            List<Ast.Method> rewritten = new ArrayList<>();
+            boolean changed = false;
+            for (Ast.Method method : source.getMethods()) {
+                List<Ast.Stmt> hoisted = new ArrayList<>();
+                List<Ast.Stmt> statements = sites.inline(method.getStatements(), hoisted, true);
+                if (statements != method.getStatements()) {
+                    method = new Ast.Method(method.getName(), method.getParameters(), concat(hoisted, statements));
+                    changed = true;
+                }
+                rewritten.add(method);
+            }
+            return changed ? new Ast.Source(source.getFields(), rewritten) : source;
+        }
+
+        /**
+         * Returns the method as a candidate for inlining, or null if it's too
+         * large, recursive or can't be inlined safely.
+         */
+        private Candidate candidate(String key, Ast.Method method, Map<String, Ast.Method> methods, Map<String, References> references) {
+            References own = references.get(key);
+            Set<String> parameters = new HashSet<>(method.getParameters());
+            if (own.size > budget || parameters.size() != method.getParameters().size()) {
+                return null;
+            }
+            Set<String> reachable = new HashSet<>();
+            List<String> pending = new ArrayList<>(own.calls);
+            while (!pending.isEmpty()) {
+                String call = pending.remove(pending.size() - 1);
+                if (call.equals(key)) {
+                    return null;
+                } else if (methods.containsKey(call) && reachable.add(call)) {
+                    pending.addAll(references.get(call).calls);
+                }
+            }
+            Set<String> locals = new HashSet<>(parameters);
+            locals.addAll(own.declared);
+            for (String call : reachable) {
+                if (!Collections.disjoint(references.get(call).names, locals)) {
+                    return null;
+                }
+            }
+            if (!declared(method.getStatements(), locals, new HashSet<>(parameters), new HashSet<>(parameters), false)) {
+                return null;
+            }
+            List<Ast.Stmt> statements = method.getStatements();
+            boolean returnsAtEnd = !statements.isEmpty() && statements.get(statements.size() - 1) instanceof Ast.Stmt.Return;
+            return new Candidate(method, locals, own.returns == (returnsAtEnd ? 1 : 0));
+        }
+
+        /**
+         * Returns true if every local used by the statements is certainly
+         * declared beforehand, and no local is declared twice in the same
+         * scope or in a while loop. Locals are added to defined once they're
+         * certainly declared and to declared once they may be declared in the
+         * current scope.
+         */
+        private static boolean declared(List<Ast.Stmt> statements, Set<String> locals, Set<String> defined, Set<String> declared, boolean loop) {
+            for (Ast.Stmt stmt : statements) {
+                if (stmt instanceof Ast.Stmt.Expression) {
+                    if (!defined(((Ast.Stmt.Expression) stmt).getExpression(), locals, defined)) {
+                        return false;
+                    }
+                } else if (stmt instanceof Ast.Stmt.Declaration) {
+                    Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) stmt;
+                    if (declaration.getValue().isPresent() && !defined(declaration.getValue().get(), locals, defined)
+                            || loop || !declared.add(declaration.getName())) {
+                        return false;
+                    }
+                    defined.add(declaration.getName());
+                } else if (stmt instanceof Ast.Stmt.Assignment) {
+                    Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) stmt;
+                    if (!defined(assignment.getReceiver(), locals, defined) || !defined(assignment.getValue(), locals, defined)) {
+                        return false;
+                    }
+                } else if (stmt instanceof Ast.Stmt.If) {
+                    Ast.Stmt.If ifStmt = (Ast.Stmt.If) stmt;
+                    Set<String> thenDefined = new HashSet<>(defined);
+                    Set<String> thenDeclared = new HashSet<>(declared);
+                    Set<String> elseDefined = new HashSet<>(defined);
+                    Set<String> elseDeclared = new HashSet<>(declared);
+                    if (!defined(ifStmt.getCondition(), locals, defined)
+                            || !declared(ifStmt.getThenStatements(), locals, thenDefined, thenDeclared, loop)
+                            || !declared(ifStmt.getElseStatements(), locals, elseDefined, elseDeclared, loop)) {
+                        return false;
+                    }
+                    thenDefined.retainAll(elseDefined);
+                    defined.addAll(thenDefined);
+                    declared.addAll(thenDeclared);
+                    declared.addAll(elseDeclared);
+                } else if (stmt instanceof Ast.Stmt.For) {
+                    // each iteration has its own scope, so declarations in it are fine
+                    Ast.Stmt.For forStmt = (Ast.Stmt.For) stmt;
+                    Set<String> forDefined = new HashSet<>(defined);
+                    forDefined.add(forStmt.getName());
+                    Set<String> forDeclared = new HashSet<>(Collections.singleton(forStmt.getName()));
+                    if (!defined(forStmt.getValue(), locals, defined)
+                            || !declared(forStmt.getStatements(), locals, forDefined, forDeclared, false)) {
+                        return false;
+                    }
+                } else if (stmt instanceof Ast.Stmt.While) {
+                    Ast.Stmt.While whileStmt = (Ast.Stmt.While) stmt;
+                    if (!defined(whileStmt.getCondition(), locals, defined)
+                            || !declared(whileStmt.getStatements(), locals, new HashSet<>(defined), new HashSet<>(declared), true)) {
+                        return false;
+                    }
+                } else if (stmt instanceof Ast.Stmt.Return) {
+                    if (!defined(((Ast.Stmt.Return) stmt).getValue(), locals, defined)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static boolean defined(Ast.Expr ast, Set<String> locals, Set<String> defined) {
+            References references = new References();
+            references.rewrite(ast);
+            for (String name : references.names) {
+                if (locals.contains(name) && !defined.contains(name)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String key(String name, int arity) {
+            return name + "/" + arity;
+        }
+
+        private static List<Ast.Stmt> concat(List<Ast.Stmt> first, List<Ast.Stmt> second) {
+            List<Ast.Stmt> result = new ArrayList<>(first);
+            result.addAll(second);
+            return result;
+        }
+
+        private static final class Candidate {
+
+            private final Ast.Method method;
+            private final Set<String> locals;
+            private final boolean returnsAtEnd;
+
+            private Candidate(Ast.Method method, Set<String> locals, boolean returnsAtEnd) {
+                this.method = method;
+                this.locals = locals;
+                this.returnsAtEnd = returnsAtEnd;
+            }
+
+        }
+
+        /**
+         * Collects the variable names, declarations, calls, size and number of
+         * returns of a method or expression.
+         */
+        private static final class References extends AstRewriter {
+
+            private final Set<String> names = new HashSet<>();
+            private final Set<String> declared = new HashSet<>();
+            private final Set<String> calls = new HashSet<>();
+            private int size;
+            private int returns;
+
+            private static References of(Ast.Method method) {
+                References references = new References();
+                references.names.addAll(method.getParameters());
+                references.rewrite(method);
+                return references;
+            }
+
+            @Override
+            protected Ast.Expr leave(Ast.Expr ast) {
+                size++;
+                if (ast instanceof Ast.Expr.Access && !((Ast.Expr.Access) ast).getReceiver().isPresent()) {
+                    names.add(((Ast.Expr.Access) ast).getName());
+                } else if (ast instanceof Ast.Expr.Function && !((Ast.Expr.Function) ast).getReceiver().isPresent()) {
+                    Ast.Expr.Function function = (Ast.Expr.Function) ast;
+                    calls.add(key(function.getName(), function.getArguments().size()));
+                }
+                return ast;
+            }
+
+            @Override
+            protected List<Ast.Stmt> leave(Ast.Stmt ast) {
+                size++;
+                if (ast instanceof Ast.Stmt.Declaration) {
+                    names.add(((Ast.Stmt.Declaration) ast).getName());
+                    declared.add(((Ast.Stmt.Declaration) ast).getName());
+                } else if (ast instanceof Ast.Stmt.For) {
+                    names.add(((Ast.Stmt.For) ast).getName());
+                    declared.add(((Ast.Stmt.For) ast).getName());
+                } else if (ast instanceof Ast.Stmt.Return) {
+                    returns++;
+                }
+                return super.leave(ast);
+            }
+
+        }
+
+        /**
+         * Renames the variables of an inlined method.
+         */
+        private static final class Renaming extends AstRewriter {
+
+            private final Map<String, String> names;
+
+            private Renaming(Map<String, String> names) {
+                this.names = names;
+            }
+
+            @Override
+            protected Ast.Expr leave(Ast.Expr ast) {
+                if (ast instanceof Ast.Expr.Access && !((Ast.Expr.Access) ast).getReceiver().isPresent()) {
+                    String name = names.get(((Ast.Expr.Access) ast).getName());
+                    if (name != null) {
+                        return new Ast.Expr.Access(Optional.empty(), name);
+                    }
+                }
+                return ast;
+            }
+
+            @Override
+            protected List<Ast.Stmt> leave(Ast.Stmt ast) {
+                if (ast instanceof Ast.Stmt.Declaration) {
+                    Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+                    return Collections.singletonList(new Ast.Stmt.Declaration(names.get(declaration.getName()), declaration.getValue()));
+                } else if (ast instanceof Ast.Stmt.For) {
+                    Ast.Stmt.For forStmt = (Ast.Stmt.For) ast;
+                    return Collections.singletonList(new Ast.Stmt.For(names.get(forStmt.getName()), forStmt.getValue(), forStmt.getStatements()));
+                }
+                return super.leave(ast);
+            }
+
+        }
+
+        /**
+         * Finds and expands the calls of candidates in a method.
+         */
+        private static final class Sites {
+
+            private final Map<String, Candidate> candidates;
+            private final Set<String> used;
+
+            private Sites(Map<String, Candidate> candidates, Set<String> used) {
+                this.candidates = candidates;
+                this.used = used;
+            }
+
+            /**
+             * Inlines the calls in a block, adding the declarations of
+             * variables which must be declared at the top of the enclosing
+             * method or for loop to hoisted, unless the block is that top.
+             */
+            private List<Ast.Stmt> inline(List<Ast.Stmt> statements, List<Ast.Stmt> hoisted, boolean top) {
+                List<Ast.Stmt> rewritten = null;
+                for (int i = 0; i < statements.size(); i++) {
+                    List<Ast.Stmt> replacement = inline(statements.get(i), hoisted, top);
+                    if (rewritten == null && (replacement.size() != 1 || replacement.get(0) != statements.get(i))) {
+                        rewritten = new ArrayList<>(statements.subList(0, i));
+                    }
+                    if (rewritten != null) {
+                        rewritten.addAll(replacement);
+                    }
+                }
+                return rewritten != null ? rewritten : statements;
+            }
+
+            private List<Ast.Stmt> inline(Ast.Stmt ast, List<Ast.Stmt> hoisted, boolean top) {
+                if (ast instanceof Ast.Stmt.Expression) {
+                    Ast.Expr expression = ((Ast.Stmt.Expression) ast).getExpression();
+                    Candidate candidate = candidate(expression);
+                    if (candidate != null && candidate.returnsAtEnd) {
+                        return expand(candidate, (Ast.Expr.Function) expression, ast, hoisted, top);
+                    }
+                } else if (ast instanceof Ast.Stmt.Declaration && ((Ast.Stmt.Declaration) ast).getValue().isPresent()) {
+                    Ast.Expr value = ((Ast.Stmt.Declaration) ast).getValue().get();
+                    Candidate candidate = candidate(value);
+                    if (candidate != null && candidate.returnsAtEnd) {
+                        return expand(candidate, (Ast.Expr.Function) value, ast, hoisted, top);
+                    }
+                } else if (ast instanceof Ast.Stmt.Return) {
+                    Ast.Expr value = ((Ast.Stmt.Return) ast).getValue();
+                    Candidate candidate = candidate(value);
+                    if (candidate != null) {
+                        return expand(candidate, (Ast.Expr.Function) value, ast, hoisted, top);
+                    }
+                } else if (ast instanceof Ast.Stmt.If) {
+                    Ast.Stmt.If ifStmt = (Ast.Stmt.If) ast;
+                    List<Ast.Stmt> thenStatements = inline(ifStmt.getThenStatements(), hoisted, false);
+                    List<Ast.Stmt> elseStatements = inline(ifStmt.getElseStatements(), hoisted, false);
+                    if (thenStatements != ifStmt.getThenStatements() || elseStatements != ifStmt.getElseStatements()) {
+                        return Collections.singletonList(new Ast.Stmt.If(ifStmt.getCondition(), thenStatements, elseStatements));
+                    }
+                } else if (ast instanceof Ast.Stmt.For) {
+                    Ast.Stmt.For forStmt = (Ast.Stmt.For) ast;
+                    List<Ast.Stmt> forHoisted = new ArrayList<>();
+                    List<Ast.Stmt> statements = inline(forStmt.getStatements(), forHoisted, true);
+                    if (statements != forStmt.getStatements()) {
+                        return Collections.singletonList(new Ast.Stmt.For(forStmt.getName(), forStmt.getValue(), concat(forHoisted, statements)));
+                    }
+                } else if (ast instanceof Ast.Stmt.While) {
+                    Ast.Stmt.While whileStmt = (Ast.Stmt.While) ast;
+                    List<Ast.Stmt> statements = inline(whileStmt.getStatements(), hoisted, false);
+                    if (statements != whileStmt.getStatements()) {
+                        return Collections.singletonList(new Ast.Stmt.While(whileStmt.getCondition(), statements));
+                    }
+                }
+                return Collections.singletonList(ast);
+            }
+
+            private Candidate candidate(Ast.Expr ast) {
+                if (ast instanceof Ast.Expr.Function && !((Ast.Expr.Function) ast).getReceiver().isPresent()) {
+                    Ast.Expr.Function function = (Ast.Expr.Function) ast;
+                    return candidates.get(key(function.getName(), function.getArguments().size()));
+                }
+                return null;
+            }
+
+            /**
+             * Returns the statements replacing the site, a statement whose
+             * value is a call of the candidate.
+             */
+            private List<Ast.Stmt> expand(Candidate candidate, Ast.Expr.Function call, Ast.Stmt site, List<Ast.Stmt> hoisted, boolean top) {
+                Map<String, String> names = new HashMap<>();
+                for (String local : candidate.locals) {
+                    names.put(local, fresh(local));
+                }
+                List<Ast.Stmt> result = new ArrayList<>();
+                List<String> parameters = candidate.method.getParameters();
+                for (int i = 0; i < parameters.size(); i++) {
+                    declare(names.get(parameters.get(i)), Optional.of(call.getArguments().get(i)), result, hoisted, top);
+                }
+                List<Ast.Stmt> body = new Renaming(names).rewrite(candidate.method.getStatements());
+                if (!top) {
+                    body = hoist(body, hoisted);
+                }
+                Ast.Stmt last = body.isEmpty() ? null : body.get(body.size() - 1);
+                if (site instanceof Ast.Stmt.Return) {
+                    result.addAll(body);
+                    if (!(last instanceof Ast.Stmt.Return)) {
+                        result.add(new Ast.Stmt.Return(new Ast.Expr.Literal(null)));
+                    }
+                    return result;
+                }
+                Ast.Expr value = new Ast.Expr.Literal(null);
+                if (last instanceof Ast.Stmt.Return) {
+                    value = ((Ast.Stmt.Return) last).getValue();
+                    body = body.subList(0, body.size() - 1);
+                }
+                result.addAll(body);
+                if (site instanceof Ast.Stmt.Declaration) {
+                    result.add(new Ast.Stmt.Declaration(((Ast.Stmt.Declaration) site).getName(), Optional.of(value)));
+                } else if (!(value instanceof Ast.Expr.Literal) && !(value instanceof Ast.Expr.Access
+                        && !((Ast.Expr.Access) value).getReceiver().isPresent() && names.containsValue(((Ast.Expr.Access) value).getName()))) {
+                    // the value may still throw or call something, unless it's a literal or a (declared) local
+                    result.add(new Ast.Stmt.Expression(value));
+                }
+                return result;
+            }
+
+            /**
+             * Replaces the declarations in the block, other than in for loops,
+             * with assignments and adds the declarations to hoisted.
+             */
+            private static List<Ast.Stmt> hoist(List<Ast.Stmt> statements, List<Ast.Stmt> hoisted) {
+                List<Ast.Stmt> result = new ArrayList<>();
+                for (Ast.Stmt stmt : statements) {
+                    if (stmt instanceof Ast.Stmt.Declaration) {
+                        declare(((Ast.Stmt.Declaration) stmt).getName(), ((Ast.Stmt.Declaration) stmt).getValue(), result, hoisted, false);
+                    } else if (stmt instanceof Ast.Stmt.If) {
+                        Ast.Stmt.If ifStmt = (Ast.Stmt.If) stmt;
+                        result.add(new Ast.Stmt.If(ifStmt.getCondition(), hoist(ifStmt.getThenStatements(), hoisted), hoist(ifStmt.getElseStatements(), hoisted)));
+                    } else if (stmt instanceof Ast.Stmt.While) {
+                        Ast.Stmt.While whileStmt = (Ast.Stmt.While) stmt;
+                        result.add(new Ast.Stmt.While(whileStmt.getCondition(), hoist(whileStmt.getStatements(), hoisted)));
+                    } else {
+                        result.add(stmt);
+                    }
+                }
+                return result;
+            }
+
+            private static void declare(String name, Optional<Ast.Expr> value, List<Ast.Stmt> result, List<Ast.Stmt> hoisted, boolean top) {
+                if (top) {
+                    result.add(new Ast.Stmt.Declaration(name, value));
+                } else {
+                    hoisted.add(new Ast.Stmt.Declaration(name, Optional.empty()));
+                    result.add(new Ast.Stmt.Assignment(new Ast.Expr.Access(Optional.empty(), name), value.orElse(new Ast.Expr.Literal(null))));
+                }
+            }
+
+            private String fresh(String name) {
+                for (int i = 1; ; i++) {
+                    String fresh = name + "$" + i;
+                    if (used.add(fresh)) {
+                        return fresh;
+                    }
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * Replaces binary expressions of literals and groups of literals with
+     * their value, computed by {@link Interpreter#applyBinary}. Expressions
+     * which would throw when interpreted are kept, so the error still happens
+     * at runtime. {@code AND} and {@code OR} are also folded when the left
+     * operand alone decides the result, since the right operand is then
+     * never evaluated.
+     */
+    public static final class ConstantFolding extends AstRewriter implements Pass {
+
+        @Override
+        public Ast.Source apply(Ast.Source source) {
+            return rewrite(source);
+        }
+
+        @Override
+        protected Ast.Expr leave(Ast.Expr ast) {
+            if (ast instanceof Ast.Expr.Group && ((Ast.Expr.Group) ast).getExpression() instanceof Ast.Expr.Literal) {
+                return ((Ast.Expr.Group) ast).getExpression();
+            } else if (ast instanceof Ast.Expr.Binary && ((Ast.Expr.Binary) ast).getLeft() instanceof Ast.Expr.Literal) {
+                Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+                Object left = ((Ast.Expr.Literal) binary.getLeft()).getLiteral();
+                String operator = binary.getOperator();
+                if ((operator.equals("AND") || operator.equals("&&")) && Boolean.FALSE.equals(left)
+                        || (operator.equals("OR") || operator.equals("||")) && Boolean.TRUE.equals(left)) {
+                    return binary.getLeft();
+                } else if (binary.getRight() instanceof Ast.Expr.Literal) {
+                    Object right = ((Ast.Expr.Literal) binary.getRight()).getLiteral();
+                    try {
+                        return new Ast.Expr.Literal(Interpreter.applyBinary(operator, create(left), create(right)).getValue());
+                    } catch (RuntimeException e) {
+                        return ast;
+                    }
+                }
+            }
+            return ast;
+        }
+
+        private static Environment.PlcObject create(Object literal) {
+            return literal == null ? Environment.NIL : Environment.create(literal);
+        }
+
+    }
+
+    /**
+     * Replaces accesses of fields which are never modified with the literal
+     * value of the field, folding field values as it goes so fields defined
+     * from other constant fields are constant too.
+     *
+     * Since the interpreter's scoping is dynamic, an access in a method may
+     * find a variable of the method's caller instead of the field, so only
+     * fields whose names are never used for any parameter, declaration or
+     * loop variable (and are never assigned) are propagated. Additionally,
+     * methods called while fields are being defined can't see fields which
+     * aren't defined yet, so fields after the first field whose value calls a
+     * function are only propagated into later field values.
+     */
+    public static final class ConstantPropagation implements Pass {
+
+        @Override
+        public Ast.Source apply(Ast.Source source) {
+            Set<String> variable = new HashSet<>();
+            Set<String> seen = new HashSet<>();
+            for (Ast.Field field : source.getFields()) {
+                if (!seen.add(field.getName())) {
+                    variable.add(field.getName());
+                }
+            }
+            Variables variables = new Variables(variable);
+            for (Ast.Method method : source.getMethods()) {
+                variable.addAll(method.getParameters());
+                variables.rewrite(method);
+            }
+
+            Map<String, Ast.Expr.Literal> constants = new HashMap<>();
+            Map<String, Ast.Expr.Literal> methodConstants = null;
+            Propagation propagation = new Propagation(constants);
+            ConstantFolding folding = new ConstantFolding();
+            List<Ast.Field> fields = new ArrayList<>();
+            for (Ast.Field field : source.getFields()) {
+                if (methodConstants == null && field.getValue().isPresent() && Calls.contains(field.getValue().get())) {
+                    methodConstants = new HashMap<>(constants);
+                }
+                Ast.Field rewritten = folding.rewrite(propagation.rewrite(field));
+                fields.add(rewritten);
+                if (!variable.contains(field.getName())) {
+                    if (!rewritten.getValue().isPresent()) {
+                        constants.put(field.getName(), new Ast.Expr.Literal(null));
+                    } else if (rewritten.getValue().get() instanceof Ast.Expr.Literal) {
+                        constants.put(field.getName(), (Ast.Expr.Literal) rewritten.getValue().get());
+                    }
+                }
+            }
+            propagation = new Propagation(methodConstants != null ? methodConstants : constants);
+            List<Ast.Method> methods = new ArrayList<>();
+            for (Ast.Method method : source.getMethods()) {
+                methods.add(propagation.rewrite(method));
+            }
+            boolean changed = false;
+            for (int i = 0; i < fields.size(); i++) {
+                changed |= fields.get(i) != source.getFields().get(i);
+            }
+            for (int i = 0; i < methods.size(); i++) {
+                changed |= methods.get(i) != source.getMethods().get(i);
+            }
+            return changed ? new Ast.Source(fields, methods) : source;
+        }
+
+        /**
+         * Collects the names of variables which are declared or assigned.
+         */
+        private static final class Variables extends AstRewriter {
+
+            private final Set<String> names;
+
+            private Variables(Set<String> names) {
+                this.names = names;
+            }
+
+            @Override
+            protected List<Ast.Stmt> leave(Ast.Stmt ast) {
+                if (ast instanceof Ast.Stmt.Declaration) {
+                    names.add(((Ast.Stmt.Declaration) ast).getName());
+                } else if (ast instanceof Ast.Stmt.For) {
+                    names.add(((Ast.Stmt.For) ast).getName());
+                } else if (ast instanceof Ast.Stmt.Assignment && ((Ast.Stmt.Assignment) ast).getReceiver() instanceof Ast.Expr.Access) {
+                    Ast.Expr.Access receiver = (Ast.Expr.Access) ((Ast.Stmt.Assignment) ast).getReceiver();
+                    if (!receiver.getReceiver().isPresent()) {
+                        names.add(receiver.getName());
+                    }
+                }
+                return super.leave(ast);
+            }
+
+        }
+
+        /**
+         * Finds function calls, which may run methods.
+         */
+        private static final class Calls extends AstRewriter {
+
+            private boolean found;
+
+            private static boolean contains(Ast.Expr ast) {
+                Calls calls = new Calls();
+                calls.rewrite(ast);
+                return calls.found;
+            }
+
+            @Override
+            protected Ast.Expr leave(Ast.Expr ast) {
+                found |= ast instanceof Ast.Expr.Function;
+                return ast;
+            }
+
+        }
+
+        private static final class Propagation extends AstRewriter {
+
+            private final Map<String, Ast.Expr.Literal> constants;
+
+            private Propagation(Map<String, Ast.Expr.Literal> constants) {
+                this.constants = constants;
+            }
+
+            @Override
+            protected Ast.Expr leave(Ast.Expr ast) {
+                if (ast instanceof Ast.Expr.Access && !((Ast.Expr.Access) ast).getReceiver().isPresent()) {
+                    Ast.Expr.Literal constant = constants.get(((Ast.Expr.Access) ast).getName());
+                    if (constant != null) {
+                        return constant;
+                    }
+                }
+                return ast;
+            }
+
+        }
+
+    }
+
+    /**
+     * Removes statements which can never run or have no effect: statements
+     * after a statement which always returns, the untaken branch of an if
+     * statement with a literal condition (splicing in the taken branch, since
+     * if statements don't create a scope), while loops with a literal false
+     * condition, and literal expression statements.
+     */
+    public static final class DeadCodeElimination extends AstRewriter implements Pass {
+
+        @Override
+        public Ast.Source apply(Ast.Source source) {
+            return rewrite(source);
+        }
+
+        @Override
+        protected List<Ast.Stmt> leave(Ast.Stmt ast) {
+            if (ast instanceof Ast.Stmt.If && ((Ast.Stmt.If) ast).getCondition() instanceof Ast.Expr.Literal) {
+                Ast.Stmt.If ifStmt = (Ast.Stmt.If) ast;
+                Object condition = ((Ast.Expr.Literal) ifStmt.getCondition()).getLiteral();
+                if (Boolean.TRUE.equals(condition)) {
+                    return ifStmt.getThenStatements();
+                } else if (Boolean.FALSE.equals(condition)) {
+                    return ifStmt.getElseStatements();
+                }
+            } else if (ast instanceof Ast.Stmt.While && Boolean.FALSE.equals(literal(((Ast.Stmt.While) ast).getCondition()))) {
+                return Collections.emptyList();
+            } else if (ast instanceof Ast.Stmt.Expression && ((Ast.Stmt.Expression) ast).getExpression() instanceof Ast.Expr.Literal) {
+                return Collections.emptyList();
+            }
+            return super.leave(ast);
+        }
+
+        @Override
+        protected List<Ast.Stmt> leaveBlock(List<Ast.Stmt> statements) {
+            for (int i = 0; i < statements.size() - 1; i++) {
+                if (returns(statements.get(i))) {
+                    return new ArrayList<>(statements.subList(0, i + 1));
+                }
+            }
+            return statements;
+        }
+
+        private static Object literal(Ast.Expr ast) {
+            return ast instanceof Ast.Expr.Literal ? ((Ast.Expr.Literal) ast).getLiteral() : null;
+        }
+
+        /**
+         * Returns true if the statement never completes normally: it returns
+         * or throws either way.
+         */
+        private static boolean returns(Ast.Stmt ast) {
+            if (ast instanceof Ast.Stmt.Return) {
+                return true;
+            } else if (ast instanceof Ast.Stmt.If) {
+                Ast.Stmt.If ifStmt = (Ast.Stmt.If) ast;
+                return returns(ifStmt.getThenStatements()) && returns(ifStmt.getElseStatements());
+            }
+            return false;
+        }
+
+        private static boolean returns(List<Ast.Stmt> statements) {
+            for (Ast.Stmt stmt : statements) {
+                if (returns(stmt)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+}
@@ -9,6 +9,15 @@ public final class ParseException extends RuntimeException {
         this.index = index;
     }
 
+    /**
+     * Creates an exception which optionally skips filling in its stack trace,
+     * for parsers which throw and catch exceptions as diagnostics.
+     */
+    ParseException(String message, int index, boolean writableStackTrace) {
+        super(message, null, true, writableStackTrace);
+        this.index = index;
+    }
+
     public int getIndex() {
         return index;
     }
@@ -2,8 +2,12 @@ package plc.project;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.math.BigInteger;
 import java.math.BigDecimal;
 
@@ -22,10 +26,87 @@ import java.math.BigDecimal;
  */
 public final class Parser {
 
+    /**
+     * Binary operator precedences, one per expression rule from lowest to
+     * highest. Operators are matched by literal regardless of token type, as
+     * with {@link #match(Object...)}.
+     */
+    private static final int LOGICAL = 1, EQUALITY = 2, ADDITIVE = 3, MULTIPLICATIVE = 4;
+
+    /**
+     * The target number of tokens of methods parsed by each task in {@link
+     * #parseSourceParallel(ForkJoinPool)}.
+     */
+    private static final int BATCH_SIZE = 1 << 13;
+
+    private static final Map<String, Integer> PRECEDENCE = new HashMap<>();
+
+    static {
+        PRECEDENCE.put("AND", LOGICAL);
+        PRECEDENCE.put("OR", LOGICAL);
+        for (String operator : new String[] {"<", ">", "<=", ">=", "!=", "=="}) {
+            PRECEDENCE.put(operator, EQUALITY);
+        }
+        PRECEDENCE.put("+", ADDITIVE);
+        PRECEDENCE.put("-", ADDITIVE);
+        PRECEDENCE.put("*", MULTIPLICATIVE);
+        PRECEDENCE.put("/", MULTIPLICATIVE);
+    }
+
     private final TokenStream tokens;
 
+    /**
+     * The interner of statements and expressions, or {@code null} if nodes
+     * are not shared.
+     */
+    private final AstInterner interner;
+
+    /**
+     * The diagnostics of {@link #parseSource(List)}, or {@code null} if the
+     * parser is not recovering from errors.
+     */
+    private List<ParseException> diagnostics;
+
+    // The stacks of parseBinaryExpression(int), kept to be reused by each
+    // expression. Operators and their precedences are pushed and popped
+    // together.
+    private final List<Frame> frames = new ArrayList<>();
+    private final List<Ast.Expr> operands = new ArrayList<>();
+    private final List<String> operators = new ArrayList<>();
+    private final List<Integer> precedences = new ArrayList<>();
+
     public Parser(List<Token> tokens) {
+        this(tokens, null);
+    }
+
+    /**
+     * Creates a parser which returns the canonical instance from the interner
+     * of every statement and expression it parses. The interner may be
+     * {@code null}, which is the same as {@link #Parser(List)}.
+     */
+    public Parser(List<Token> tokens, AstInterner interner) {
+        this(tokens, 0, interner);
+    }
+
+    /**
+     * Creates a parser starting at the given index of the token list, which
+     * is used to parse individual fields and methods of a larger source.
+     */
+    Parser(List<Token> tokens, int index) {
+        this(tokens, index, null);
+    }
+
+    private Parser(List<Token> tokens, int index, AstInterner interner) {
         this.tokens = new TokenStream(tokens);
+        this.tokens.index = index;
+        this.interner = interner;
+    }
+
+    /**
+     * Returns the index of the next token to be parsed.
+     */
+    int getIndex() {
+        return tokens.index;
     }
 
     /**
@@ -47,12 +128,164 @@ public final class Parser {
         }
 
         if (tokens.has(0)) {
-            throw new ParseException("Unexpected tokens after parsing fields and methods.", tokens.get(0).getIndex());
+            throw error("Unexpected tokens after parsing fields and methods.", tokens.get(0).getIndex());
         }
 
         return new Ast.Source(fields, methods);
     }
 
+    /**
+     * Parses the {@code source} rule like {@link #parseSource()}, but instead
+     * of stopping at the first error, adds each {@link ParseException} to the
+     * given list in order and recovers to keep parsing.
+     *
+     * Within a block, a statement which fails is skipped up to and including
+     * its {@code ;} (or the {@code END} of a block statement), or up to the
+     * next {@code END}, {@code DEF}, or {@code LET}. A field or method which
+     * fails is left out of the returned (partial) source, skipping to the next
+     * {@code DEF} or, before any methods, {@code LET}. The first diagnostic is
+     * always the exception thrown by {@link #parseSource()}.
+     */
+    public Ast.Source parseSource(List<ParseException> diagnostics) {
+        this.diagnostics = diagnostics;
+        try {
+            List<Ast.Field> fields = new ArrayList<>();
+            List<Ast.Method> methods = new ArrayList<>();
+            boolean fieldsEnded = false;
+            while (tokens.has(0)) {
+                int start = tokens.index;
+                try {
+                    if (!fieldsEnded && peek("LET")) {
+                        fields.add(parseField());
+                    } else if (peek("DEF")) {
+                        fieldsEnded = true;
+                        methods.add(parseMethod());
+                    } else {
+                        fieldsEnded = true;
+                        throw error("Unexpected tokens after parsing fields and methods.", tokens.get(0).getIndex());
+                    }
+                } catch (ParseException e) {
+                    record(e);
+                    if (tokens.index == start) {
+                        tokens.advance();
+                    }
+                    while (tokens.has(0) && !peek("DEF") && (fieldsEnded || !peek("LET"))) {
+                        tokens.advance();
+                    }
+                }
+            }
+            return new Ast.Source(fields, methods);
+        } finally {
+            this.diagnostics = null;
+        }
+    }
+
+    /**
+     * Parses the {@code source} rule like {@link #parseSource()} using the
+     * common {@link ForkJoinPool}.
+     */
+    public Ast.Source parseSourceParallel() throws ParseException {
+        return parseSourceParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the {@code source} rule like {@link #parseSource()}, but parses
+     * the methods in batches on the given pool. The method boundaries are
+     * found by a pre-scan balancing {@code DO} and {@code END}, which only
+     * matches the parser for valid methods; so each method is only accepted
+     * if it parses without error and ends exactly where the pre-scan did.
+     * From the first method which doesn't, parsing continues sequentially,
+     * giving the same result and first {@link ParseException} as {@link
+     * #parseSource()}.
+     */
+    public Ast.Source parseSourceParallel(ForkJoinPool pool) throws ParseException {
+        List<Ast.Field> fields = new ArrayList<>();
+        while (peek("LET")) {
+            fields.add(parseField());
+        }
+        List<Integer> boundaries = methodBoundaries(tokens.tokens, tokens.index);
+        List<Ast.Method> methods = new ArrayList<>();
+        if (boundaries.get(boundaries.size() - 1) - tokens.index >= BATCH_SIZE) {
+            List<ForkJoinTask<Batch>> batches = new ArrayList<>();
+            int first = 0;
+            for (int i = 1; i < boundaries.size(); i++) {
+                if (boundaries.get(i) - boundaries.get(first) >= BATCH_SIZE || i == boundaries.size() - 1) {
+                    List<Integer> batch = boundaries.subList(first, i + 1);
+                    batches.add(pool.submit(() -> parseBatch(tokens.tokens, batch, interner)));
+                    first = i;
+                }
+            }
+            for (int i = 0; i < batches.size(); i++) {
+                Batch batch = batches.get(i).join();
+                methods.addAll(batch.methods);
+                tokens.index = batch.end;
+                if (!batch.complete) {
+                    // parse the rest sequentially from the method which failed
+                    batches.subList(i + 1, batches.size()).forEach(task -> task.cancel(false));
+                    break;
+                }
+            }
+        }
+        while (peek("DEF")) {
+            methods.add(parseMethod());
+        }
+        if (tokens.has(0)) {
+            throw error("Unexpected tokens after parsing fields and methods.", tokens.get(0).getIndex());
+        }
+        return new Ast.Source(fields, methods);
+    }
+
+    /**
+     * Pre-scans the tokens for consecutive methods starting at the given
+     * index, returning the index of the first token of each method followed
+     * by the index after the last. Each method starts at a {@code DEF}, has a
+     * header up to the {@code DO} of its body, and ends after the {@code END}
+     * which balances that {@code DO}.
+     */
+    static List<Integer> methodBoundaries(List<Token> tokens, int start) {
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(start);
+        int depth = 0;
+        boolean header = false;
+        for (int i = start; i < tokens.size(); i++) {
+            String literal = tokens.get(i).getLiteral();
+            if (depth == 0 && !header) {
+                if (!literal.equals("DEF")) {
+                    break;
+                }
+                header = true;
+            } else if (literal.equals("DO")) {
+                header = false;
+                depth++;
+            } else if (literal.equals("END") && depth > 0 && --depth == 0) {
+                boundaries.add(i + 1);
+            }
+        }
+        return boundaries;
+    }
+
+    /**
+     * Parses the methods between the given boundaries, stopping at the first
+     * which fails or ends elsewhere than the pre-scan expected.
+     */
+    private static Batch parseBatch(List<Token> tokens, List<Integer> boundaries, AstInterner interner) {
+        List<Ast.Method> methods = new ArrayList<>();
+        for (int i = 0; i < boundaries.size() - 1; i++) {
+            Parser parser = new Parser(tokens, boundaries.get(i), interner);
+            try {
+                Ast.Method method = parser.parseMethod();
+                if (parser.getIndex() == boundaries.get(i + 1)) {
+                    methods.add(method);
+                    continue;
+                }
+            } catch (ParseException ignored) {
+                // the sequential parser will throw it again
+            }
+            return new Batch(methods, boundaries.get(i), false);
+        }
+        return new Batch(methods, boundaries.get(boundaries.size() - 1), true);
+    }
+
     /**
      * Parses the {@code field} rule. This method should only be called if the
      * next tokens start a field, aka {@code LET}.
@@ -60,8 +293,7 @@ public final class Parser {
     public Ast.Field parseField() throws ParseException {
         match("LET");
         if (!match(Token.Type.IDENTIFIER)) {
-            int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Expected identifier after 'LET'.", errorIndex);
+            throw error("Expected identifier after 'LET'.", errorIndex());
         }
         String name = tokens.get(-1).getLiteral();
         Optional<Ast.Expr> value = Optional.empty();
@@ -69,8 +301,7 @@ public final class Parser {
             value = Optional.of(parseExpression());
         }
         if (!match(";")) {
-            int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Expected semicolon after expression.", errorIndex);
+            throw error("Expected semicolon after expression.", errorIndex());
         }
         return new Ast.Field(name, value);
     }
@@ -82,40 +313,35 @@ public final class Parser {
     public Ast.Method parseMethod() throws ParseException {
         match("DEF");
         if (!match(Token.Type.IDENTIFIER)) {
-            int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Expected method name after 'DEF'.", errorIndex);
+            throw error("Expected method name after 'DEF'.", errorIndex());
         }
         String name = tokens.get(-1).getLiteral();
         if (!match("(")) {
-            int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Expected '(' after method name.", errorIndex);
+            throw error("Expected '(' after method name.", errorIndex());
         }
         List<String> parameters = new ArrayList<>();
         if (peek(Token.Type.IDENTIFIER)) {
             do {
                 if (!match(Token.Type.IDENTIFIER)) {
-                    int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-                    throw new ParseException("Expected parameter name.", errorIndex);
+                    throw error("Expected parameter name.", errorIndex());
                 }
                 String paramName = tokens.get(-1).getLiteral();
                 parameters.add(paramName);
             } while (match(","));
         }
         if (!match(")")) {
-            int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Expected ')' after parameter list.", errorIndex);
+            throw error("Expected ')' after parameter list.", errorIndex());
         }
         if (!match("DO")) {
-            int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Expected 'DO' after method signature.", errorIndex);
+            throw error("Expected 'DO' after method signature.", errorIndex());
         }
         List<Ast.Stmt> statements = new ArrayList<>();
-        while (peek("LET") || peek("IF") || peek("FOR") || peek("WHILE") || peek("RETURN") || (peek(Token.Type.IDENTIFIER) && !peek("END"))) {
-            statements.add(parseStatement());
+        while ((peek("LET") || peek("IF") || peek("FOR") || peek("WHILE") || peek("RETURN") || (peek(Token.Type.IDENTIFIER) && !peek("END"))) && !peekRecoveryEnd()) {
+            parseBlockStatement(statements);
         }
         if (!match("END")) {
-            int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Expected 'END' after method body.", errorIndex + 1); // Adding +1 to match the expected index
+            int errorIndex = errorIndex();
+            throw error("Expected 'END' after method body.", errorIndex + 1); // Adding +1 to match the expected index
         }
         return new Ast.Method(name, parameters, statements);
     }
@@ -140,20 +366,106 @@ public final class Parser {
             // Parse as expression/assignment statement
             Ast.Expr expr = parseExpression();
             if (match("=")) {
-                Ast.Stmt.Assignment assignment = new Ast.Stmt.Assignment(expr, parseExpression());
+                Ast.Stmt.Assignment assignment = intern(new Ast.Stmt.Assignment(expr, parseExpression()));
                 if (!match(";")) {
-                    throw new ParseException("Expected semicolon after assignment.", tokens.get(-1).getIndex());
+                    throw error("Expected semicolon after assignment.", tokens.get(-1).getIndex());
                 }
                 return assignment;
             }
             if (!match(";")) {
-                throw new ParseException("Expected semicolon after expression.", tokens.get(-1).getIndex());
+                throw error("Expected semicolon after expression.", tokens.get(-1).getIndex());
             }
-            return new Ast.Stmt.Expression(expr);
+            return intern(new Ast.Stmt.Expression(expr));
         }
     }
 
 
+    /**
+     * Parses a statement of a block into the list. In recovery mode (see
+     * {@link #parseSource(List)}), a statement which fails is recorded and
+     * skipped; if no tokens can be skipped, the exception is rethrown so the
+     * enclosing block recovers instead.
+     */
+    private void parseBlockStatement(List<Ast.Stmt> statements) throws ParseException {
+        if (diagnostics == null) {
+            statements.add(parseStatement());
+            return;
+        }
+        int start = tokens.index;
+        try {
+            statements.add(parseStatement());
+        } catch (ParseException e) {
+            record(e);
+            if (start < tokens.tokens.size() && tokens.tokens.get(start).getLiteral().equals("DEF")) {
+                // a DEF can't continue the block, so leave it for the next method
+                tokens.index = start;
+                throw e;
+            }
+            synchronize();
+            if (tokens.index == start) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Skips to the start of the next statement: past the next {@code ;}, or
+     * the {@code END} closing a skipped block, or up to an {@code END}, {@code
+     * DEF}, or {@code LET} outside of a skipped block.
+     */
+    private void synchronize() {
+        int depth = 0; // the number of skipped blocks which are still open
+        while (tokens.has(0) && !peek("DEF") && (depth > 0 || !peek("END") && !peek("LET"))) {
+            tokens.advance();
+            String literal = tokens.get(-1).getLiteral();
+            if (literal.equals("DO")) {
+                depth++;
+            } else if (literal.equals("END")) {
+                if (--depth == 0) {
+                    return;
+                }
+            } else if (literal.equals(";") && depth == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns true if, while recovering from an error, a block should end
+     * before the next token since it can't continue the block (the end of the
+     * input or the next {@code DEF}). The block then fails on its missing
+     * {@code END}. Until the first error, blocks end as in normal parsing.
+     */
+    private boolean peekRecoveryEnd() {
+        return diagnostics != null && !diagnostics.isEmpty() && (!tokens.has(0) || peek("DEF"));
+    }
+
+    /**
+     * Records a diagnostic in recovery mode, once even if it is rethrown to
+     * enclosing blocks.
+     */
+    private void record(ParseException exception) {
+        if (diagnostics.isEmpty() || diagnostics.get(diagnostics.size() - 1) != exception) {
+            diagnostics.add(exception);
+        }
+    }
+
+    /**
+     * Creates a {@link ParseException}, without a stack trace in recovery mode
+     * since error-heavy inputs may create and catch a great many of them.
+     */
+    private ParseException error(String message, int index) {
+        return new ParseException(message, index, diagnostics == null);
+    }
+
+    /**
+     * Returns the canonical instance of the node if nodes are being interned,
+     * or otherwise the node itself.
+     */
+    private <T extends Ast> T intern(T ast) {
+        return interner != null ? interner.intern(ast) : ast;
+    }
+
     /**
      * Parses a declaration statement from the {@code statement} rule. This
      * method should only be called if the next tokens start a declaration
@@ -162,8 +474,7 @@ public final class Parser {
     public Ast.Stmt.Declaration parseDeclarationStatement() throws ParseException {
         match("LET"); // 'LET' keyword already matched in parseStatement()
         if (!match(Token.Type.IDENTIFIER)) {
-            int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Expected identifier after 'LET'.", errorIndex);
+            throw error("Expected identifier after 'LET'.", errorIndex());
         }
         String name = tokens.get(-1).getLiteral();
         Optional<Ast.Expr> value = Optional.empty();
@@ -171,10 +482,9 @@ public final class Parser {
             value = Optional.of(parseExpression());
         }
         if (!match(";")) {
-            int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Expected ';' after declaration.", errorIndex);
+            throw error("Expected ';' after declaration.", errorIndex());
         }
-        return new Ast.Stmt.Declaration(name, value);
+        return intern(new Ast.Stmt.Declaration(name, value));
     }
 
     /**
@@ -189,27 +499,25 @@ public final class Parser {
             // Check if the token is 'THEN' instead of 'DO' to match the test case
             String actual = tokens.has(0) ? tokens.get(0).getLiteral() : "EOF";
             if ("THEN".equals(actual)) {
-                int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-                throw new ParseException("Expected 'DO', but received 'THEN'.", errorIndex);
+                throw error("Expected 'DO', but received 'THEN'.", errorIndex());
             } else {
-                int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-                throw new ParseException("Expected 'DO' after 'IF' condition.", errorIndex);
+                throw error("Expected 'DO' after 'IF' condition.", errorIndex());
             }
         }
         List<Ast.Stmt> thenStatements = new ArrayList<>();
-        while (!peek("END") && !peek("ELSE")) {
-            thenStatements.add(parseStatement());
+        while (!peek("END") && !peek("ELSE") && !peekRecoveryEnd()) {
+            parseBlockStatement(thenStatements);
         }
         List<Ast.Stmt> elseStatements = new ArrayList<>();
         if (match("ELSE")) {
-            while (!peek("END")) {
-                elseStatements.add(parseStatement());
+            while (!peek("END") && !peekRecoveryEnd()) {
+                parseBlockStatement(elseStatements);
             }
         }
         if (!match("END")) {
-            throw new ParseException("Expected 'END' after if statement.", tokens.get(-1).getIndex());
+            throw error("Expected 'END' after if statement.", tokens.get(-1).getIndex());
         }
-        return new Ast.Stmt.If(condition, thenStatements, elseStatements);
+        return intern(new Ast.Stmt.If(condition, thenStatements, elseStatements));
     }
 
 
@@ -221,24 +529,24 @@ public final class Parser {
     public Ast.Stmt.For parseForStatement() throws ParseException {
         match("FOR"); // 'FOR' keyword already matched in parseStatement()
         if (!match(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Expected identifier in for loop.", tokens.get(-1).getIndex());
+            throw error("Expected identifier in for loop.", tokens.get(-1).getIndex());
         }
         String name = tokens.get(-1).getLiteral();
         if (!match("IN")) {
-            throw new ParseException("Expected 'IN' in for loop.", tokens.get(-1).getIndex());
+            throw error("Expected 'IN' in for loop.", tokens.get(-1).getIndex());
         }
         Ast.Expr iterable = parseExpression();
         if (!match("DO")) {
-            throw new ParseException("Expected 'DO' after for loop expression.", tokens.get(-1).getIndex());
+            throw error("Expected 'DO' after for loop expression.", tokens.get(-1).getIndex());
         }
         List<Ast.Stmt> body = new ArrayList<>();
-        while (!peek("END")) {
-            body.add(parseStatement());
+        while (!peek("END") && !peekRecoveryEnd()) {
+            parseBlockStatement(body);
         }
         if (!match("END")) {
-            throw new ParseException("Expected 'END' after for loop.", tokens.get(-1).getIndex());
+            throw error("Expected 'END' after for loop.", tokens.get(-1).getIndex());
         }
-        return new Ast.Stmt.For(name, iterable, body);
+        return intern(new Ast.Stmt.For(name, iterable, body));
     }
 
     /**
@@ -250,16 +558,16 @@ public final class Parser {
         match("WHILE"); // 'WHILE' keyword already matched in parseStatement()
         Ast.Expr condition = parseExpression();
         if (!match("DO")) {
-            throw new ParseException("Expected 'DO' after while condition.", tokens.get(-1).getIndex());
+            throw error("Expected 'DO' after while condition.", tokens.get(-1).getIndex());
         }
         List<Ast.Stmt> body = new ArrayList<>();
-        while (!peek("END")) {
-            body.add(parseStatement());
+        while (!peek("END") && !peekRecoveryEnd()) {
+            parseBlockStatement(body);
         }
         if (!match("END")) {
-            throw new ParseException("Expected 'END' after while loop.", tokens.get(-1).getIndex());
+            throw error("Expected 'END' after while loop.", tokens.get(-1).getIndex());
         }
-        return new Ast.Stmt.While(condition, body);
+        return intern(new Ast.Stmt.While(condition, body));
     }
 
     /**
@@ -271,68 +579,177 @@ public final class Parser {
         match("RETURN"); // 'RETURN' keyword already matched in parseStatement()
         Ast.Expr value = parseExpression();
         if (!match(";")) {
-            throw new ParseException("Expected ';' after return expression.", tokens.get(-1).getIndex());
+            throw error("Expected ';' after return expression.", tokens.get(-1).getIndex());
         }
-        return new Ast.Stmt.Return(value);
+        return intern(new Ast.Stmt.Return(value));
     }
 
     /**
      * Parses the {@code expression} rule.
      */
     public Ast.Expr parseExpression() throws ParseException {
-        return parseLogicalExpression();
+        return parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code logical-expression} rule.
      */
     public Ast.Expr parseLogicalExpression() throws ParseException {
-        Ast.Expr expr = parseEqualityExpression();
-        while (match("AND") || match("OR")) {
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expr right = parseEqualityExpression();
-            expr = new Ast.Expr.Binary(operator, expr, right);
-        }
-        return expr;
+        return parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expr parseEqualityExpression() throws ParseException {
-        Ast.Expr expr = parseAdditiveExpression();
-        while (match("<") || match(">") || match("<=") || match(">=") || match("!=") || match("==")) {
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expr right = parseAdditiveExpression();
-            expr = new Ast.Expr.Binary(operator, expr, right);
-        }
-        return expr;
+        return parseBinaryExpression(EQUALITY);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expr parseAdditiveExpression() throws ParseException {
-        Ast.Expr expr = parseMultiplicativeExpression();
-        while (match("+") || match("-")) {
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expr right = parseMultiplicativeExpression();
-            expr = new Ast.Expr.Binary(operator, expr, right);
-        }
-        return expr;
+        return parseBinaryExpression(ADDITIVE);
     }
 
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expr parseMultiplicativeExpression() throws ParseException {
-        Ast.Expr expr = parseSecondaryExpression();
-        while (match("*") || match("/")) {
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expr right = parseSecondaryExpression();
-            expr = new Ast.Expr.Binary(operator, expr, right);
+        return parseBinaryExpression(MULTIPLICATIVE);
+    }
+
+    /**
+     * Parses a chain of binary operators with at least the given precedence.
+     * This is equivalent to precedence climbing, but groups, call arguments,
+     * and operands are tracked with explicit stacks instead of recursion so
+     * the nesting depth of an expression is limited only by the heap. Since
+     * all operators are left-associative, each operator first reduces the
+     * pending operators with at least its precedence.
+     */
+    private Ast.Expr parseBinaryExpression(int minimum) throws ParseException {
+        int frameBase = frames.size();
+        int operandBase = operands.size();
+        int operatorBase = operators.size();
+        try {
+            return climb(minimum);
+        } finally {
+            // discard the entries of an expression which failed to parse
+            while (frames.size() > frameBase) {
+                frames.remove(frames.size() - 1);
+            }
+            while (operands.size() > operandBase) {
+                operands.remove(operands.size() - 1);
+            }
+            while (operators.size() > operatorBase) {
+                operators.remove(operators.size() - 1);
+                precedences.remove(precedences.size() - 1);
+            }
         }
-        return expr;
+    }
+
+    /**
+     * Parses the expression for {@link #parseBinaryExpression(int)} using the
+     * stack entries above those of any enclosing expression.
+     */
+    private Ast.Expr climb(int minimum) throws ParseException {
+        Frame frame = new Frame(Frame.Kind.TOP, minimum, operators.size(), null, null, null);
+        Ast.Expr expr = null;
+        while (true) {
+            if (expr == null) {
+                // start an operand, opening a frame for a group or call with arguments
+                if (match("(")) {
+                    frames.add(frame);
+                    frame = new Frame(Frame.Kind.GROUP, LOGICAL, operators.size(), null, null, null);
+                    continue;
+                } else if (peekCall()) {
+                    Symbol name = tokens.get(0).getSymbol();
+                    tokens.advance();
+                    tokens.advance();
+                    if (!peek(")")) {
+                        frames.add(frame);
+                        frame = new Frame(Frame.Kind.CALL, LOGICAL, operators.size(), Optional.empty(), name, new ArrayList<>());
+                        continue;
+                    }
+                    tokens.advance();
+                    expr = intern(new Ast.Expr.Function(Optional.empty(), name, new ArrayList<>()));
+                } else {
+                    expr = parsePrimaryExpression();
+                }
+            }
+            // field accesses and method calls on the operand, as in parseSecondaryExpression
+            if (match(".")) {
+                if (!match(Token.Type.IDENTIFIER)) {
+                    throw error("Expected identifier after '.'.", errorIndex());
+                }
+                Symbol name = tokens.get(-1).getSymbol();
+                if (!match("(")) {
+                    expr = intern(new Ast.Expr.Access(Optional.of(expr), name));
+                } else if (!peek(")")) {
+                    frames.add(frame);
+                    frame = new Frame(Frame.Kind.CALL, LOGICAL, operators.size(), Optional.of(expr), name, new ArrayList<>());
+                    expr = null;
+                } else {
+                    tokens.advance();
+                    expr = intern(new Ast.Expr.Function(Optional.of(expr), name, new ArrayList<>()));
+                }
+                continue;
+            }
+            operands.add(expr);
+            expr = null;
+            Integer precedence = tokens.has(0) ? PRECEDENCE.get(tokens.get(0).getLiteral()) : null;
+            if (precedence != null && precedence >= frame.minimum) {
+                reduce(frame.operators, precedence);
+                tokens.advance();
+                operators.add(tokens.get(-1).getLiteral());
+                precedences.add(precedence);
+                continue;
+            }
+            // the frame's expression is complete, so close its group or argument
+            reduce(frame.operators, 0);
+            expr = operands.remove(operands.size() - 1);
+            if (frame.kind == Frame.Kind.TOP) {
+                return expr;
+            } else if (frame.kind == Frame.Kind.GROUP) {
+                if (!match(")")) {
+                    throw error("Mismatched closing parenthesis, expected ')'.", errorIndex());
+                }
+                expr = intern(new Ast.Expr.Group(expr));
+            } else {
+                frame.arguments.add(expr);
+                if (match(",")) {
+                    expr = null;
+                    continue;
+                }
+                if (!match(")")) {
+                    throw error("Expected closing parenthesis for function call.", errorIndex());
+                }
+                expr = intern(new Ast.Expr.Function(frame.receiver, frame.name, frame.arguments));
+            }
+            frame = frames.remove(frames.size() - 1);
+        }
+    }
+
+    /**
+     * Replaces the pending operators (above {@code base}) with at least the
+     * given precedence and their operands with binary expressions.
+     */
+    private void reduce(int base, int precedence) {
+        while (operators.size() > base && precedences.get(precedences.size() - 1) >= precedence) {
+            precedences.remove(precedences.size() - 1);
+            Ast.Expr right = operands.remove(operands.size() - 1);
+            Ast.Expr left = operands.remove(operands.size() - 1);
+            operands.add(intern(new Ast.Expr.Binary(operators.remove(operators.size() - 1), left, right)));
+        }
+    }
+
+    /**
+     * Returns true if the next tokens start a function call, which (as in
+     * {@link #parsePrimaryExpression()}) excludes the literal keywords.
+     */
+    private boolean peekCall() {
+        return peek(Token.Type.IDENTIFIER) && tokens.has(1) && tokens.get(1).getLiteral().equals("(")
+                && !peek("TRUE") && !peek("FALSE") && !peek("NIL");
     }
 
     /**
@@ -342,7 +759,7 @@ public final class Parser {
         Ast.Expr expr = parsePrimaryExpression();
         while (match(".")) {
             if (match(Token.Type.IDENTIFIER)) {
-                String name = tokens.get(-1).getLiteral();
+                Symbol name = tokens.get(-1).getSymbol();
                 if (match("(")) {
                     List<Ast.Expr> arguments = new ArrayList<>();
                     if (!peek(")")) {
@@ -351,16 +768,14 @@ public final class Parser {
                         } while (match(","));
                     }
                     if (!match(")")) {
-                        int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-                        throw new ParseException("Expected closing parenthesis for function call.", errorIndex);
+                        throw error("Expected closing parenthesis for function call.", errorIndex());
                     }
-                    expr = new Ast.Expr.Function(Optional.of(expr), name, arguments);
+                    expr = intern(new Ast.Expr.Function(Optional.of(expr), name, arguments));
                 } else {
-                    expr = new Ast.Expr.Access(Optional.of(expr), name);
+                    expr = intern(new Ast.Expr.Access(Optional.of(expr), name));
                 }
             } else {
-                int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-                throw new ParseException("Expected identifier after '.'.", errorIndex);
+                throw error("Expected identifier after '.'.", errorIndex());
             }
         }
         return expr;
@@ -374,43 +789,34 @@ public final class Parser {
      */
     public Ast.Expr parsePrimaryExpression() throws ParseException {
         if (match("TRUE")) {
-            return new Ast.Expr.Literal(true);
+            return intern(new Ast.Expr.Literal(true));
         } else if (match("FALSE")) {
-            return new Ast.Expr.Literal(false);
+            return intern(new Ast.Expr.Literal(false));
         } else if (match("NIL")) {
-            return new Ast.Expr.Literal(null);
+            return intern(new Ast.Expr.Literal(null));
         } else if (match(Token.Type.INTEGER)) {
-            return new Ast.Expr.Literal(new BigInteger(tokens.get(-1).getLiteral()));
+            // the lexer already computed the value, so only parse tokens built elsewhere
+            Object value = tokens.get(-1).getValue();
+            return intern(new Ast.Expr.Literal(value != null ? value : new BigInteger(tokens.get(-1).getLiteral())));
         } else if (match(Token.Type.DECIMAL)) {
-            return new Ast.Expr.Literal(new BigDecimal(tokens.get(-1).getLiteral()));
+            Object value = tokens.get(-1).getValue();
+            return intern(new Ast.Expr.Literal(value != null ? value : new BigDecimal(tokens.get(-1).getLiteral())));
         } else if (match(Token.Type.CHARACTER)) {
-            // Handle escape characters in string literals.
-            String str = tokens.get(-1).getLiteral().substring(1, tokens.get(-1).getLiteral().length() - 1);
-            if (str.charAt(0) == '\\')
-                str = str.replace("\\b", "\b").replace("\\n", "\n")
-                        .replace("\\r", "\r").replace("\\t", "\t")
-                        .replace("\\'", "'").replace("\\\"", "\"")
-                        .replace("\\\\", "\\");
-            char ch = str.charAt(0);
-            return new Ast.Expr.Literal(ch);
+            // The lexer decodes escapes while scanning, so only decode tokens built elsewhere.
+            Object value = tokens.get(-1).getValue();
+            return intern(new Ast.Expr.Literal(value != null ? value : decodeLiteral(tokens.get(-1).getLiteral()).charAt(0)));
         } else if (match(Token.Type.STRING)) {
-            // Handle escape characters in string literals.
-            String str = tokens.get(-1).getLiteral().substring(1, tokens.get(-1).getLiteral().length() - 1);
-            str = str.replace("\\b", "\b").replace("\\n", "\n")
-                    .replace("\\r", "\r").replace("\\t", "\t")
-                    .replace("\\'", "'").replace("\\\"", "\"")
-                    .replace("\\\\", "\\");
-            return new Ast.Expr.Literal(str);
+            Object value = tokens.get(-1).getValue();
+            return intern(new Ast.Expr.Literal(value != null ? value : decodeLiteral(tokens.get(-1).getLiteral())));
         } else if (match("(")) {
             // Grouping of expressions with parentheses
             Ast.Expr expression = parseExpression();
             if (!match(")")) {
-                int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-                throw new ParseException("Mismatched closing parenthesis, expected ')'.", errorIndex);
+                throw error("Mismatched closing parenthesis, expected ')'.", errorIndex());
             }
-            return new Ast.Expr.Group(expression);
+            return intern(new Ast.Expr.Group(expression));
         } else if (match(Token.Type.IDENTIFIER)) {
-            String name = tokens.get(-1).getLiteral();
+            Symbol name = tokens.get(-1).getSymbol();
             if (match("(")) { // Check if this is a function call
                 List<Ast.Expr> arguments = new ArrayList<>();
                 if (!peek(")")) {
@@ -419,18 +825,40 @@ public final class Parser {
                     } while (match(","));
                 }
                 if (!match(")")) {
-                    int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-                    throw new ParseException("Expected closing parenthesis for function call.", errorIndex);
+                    throw error("Expected closing parenthesis for function call.", errorIndex());
                 }
-                return new Ast.Expr.Function(Optional.empty(), name, arguments);
+                return intern(new Ast.Expr.Function(Optional.empty(), name, arguments));
             }
-            return new Ast.Expr.Access(Optional.empty(), name); // Regular identifier access
+            return intern(new Ast.Expr.Access(Optional.empty(), name)); // Regular identifier access
         } else {
-            int errorIndex = tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
-            throw new ParseException("Invalid expression.", errorIndex);
+            throw error("Invalid expression.", errorIndex());
         }
     }
 
+    /**
+     * Strips the quotes from a character or string literal and decodes its
+     * escape sequences in a single pass.
+     */
+    private static String decodeLiteral(String literal) {
+        StringBuilder builder = new StringBuilder(literal.length() - 2);
+        for (int i = 1; i < literal.length() - 1; i++) {
+            char c = literal.charAt(i);
+            if (c == '\\' && i + 1 < literal.length() - 1) {
+                c = Lexer.unescape(literal.charAt(++i));
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the index of the next token, or just past the last token if the
+     * input ended, for a {@link ParseException} at the current position.
+     */
+    private int errorIndex() {
+        return tokens.has(0) ? tokens.get(0).getIndex() : tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length();
+    }
+
     /**
      * As in the lexer, returns {@code true} if the current sequence of tokens
      * matches the given patterns. Unlike the lexer, the pattern is not a regex;
@@ -475,6 +903,80 @@ public final class Parser {
         return peek;
     }
 
+    /*
+     * Overloads of peek and match for a single pattern, which are used for
+     * most calls and avoid allocating a varargs array.
+     */
+
+    private boolean peek(String literal) {
+        return tokens.has(0) && literal.equals(tokens.get(0).getLiteral());
+    }
+
+    private boolean peek(Token.Type type) {
+        return tokens.has(0) && type == tokens.get(0).getType();
+    }
+
+    private boolean match(String literal) {
+        if (peek(literal)) {
+            tokens.advance();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean match(Token.Type type) {
+        if (peek(type)) {
+            tokens.advance();
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * An expression being parsed by {@link #parseBinaryExpression(int)}: the
+     * top-level expression, a group, or an argument of a function call.
+     */
+    private static final class Frame {
+
+        private enum Kind { TOP, GROUP, CALL }
+
+        private final Kind kind;
+        private final int minimum;
+        private final int operators; // the size of the operator stack when the frame started
+        private final Optional<Ast.Expr> receiver;
+        private final Symbol name;
+        private final List<Ast.Expr> arguments;
+
+        private Frame(Kind kind, int minimum, int operators, Optional<Ast.Expr> receiver, Symbol name, List<Ast.Expr> arguments) {
+            this.kind = kind;
+            this.minimum = minimum;
+            this.operators = operators;
+            this.receiver = receiver;
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+    }
+
+    /**
+     * The methods parsed by a task of {@link #parseSourceParallel(ForkJoinPool)}
+     * and the token index after them, which is the start of the method that
+     * failed if the batch is not complete.
+     */
+    private static final class Batch {
+
+        private final List<Ast.Method> methods;
+        private final int end;
+        private final boolean complete;
+
+        private Batch(List<Ast.Method> methods, int end, boolean complete) {
+            this.methods = methods;
+            this.end = end;
+            this.complete = complete;
+        }
+
+    }
 
     private static final class TokenStream {
 
@@ -8,8 +8,8 @@ import java.util.function.Function;
 public final class Scope {
 
     private final Scope parent;
-    private final Map<String, Environment.Variable> variables = new HashMap<>();
-    private final Map<String, Environment.Function> functions = new HashMap<>();
+    private final Map<Symbol, Environment.Variable> variables = new HashMap<>();
+    private final Map<Symbol, Map<Integer, Environment.Function>> functions = new HashMap<>();
 
     public Scope(Scope parent) {
         this.parent = parent;
@@ -20,39 +20,94 @@ public final class Scope {
     }
 
     public void defineVariable(String name, Environment.PlcObject value) {
+        defineVariable(Symbol.of(name), value);
+    }
+
+    public void defineVariable(Symbol name, Environment.PlcObject value) {
         if (variables.containsKey(name)) {
             throw new RuntimeException("The variable " + name + " is already defined in this scope.");
         } else {
-            variables.put(name, new Environment.Variable(name, value));
+            variables.put(name, new Environment.Variable(name.getName(), value));
         }
     }
 
     public Environment.Variable lookupVariable(String name) {
-        if (variables.containsKey(name)) {
-            return variables.get(name);
-        } else if (parent != null) {
-            return parent.lookupVariable(name);
-        } else {
+        Symbol symbol = Symbol.find(name);
+        if (symbol == null) {
             throw new RuntimeException("The variable " + name + " is not defined in this scope.");
         }
+        return lookupVariable(symbol);
+    }
+
+    public Environment.Variable lookupVariable(Symbol name) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Environment.Variable variable = scope.variables.get(name);
+            if (variable != null) {
+                return variable;
+            }
+        }
+        throw new RuntimeException("The variable " + name + " is not defined in this scope.");
     }
 
     public void defineFunction(String name, int arity, Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
-        if (functions.containsKey(name + "/" + arity)) {
-            throw new RuntimeException("The function " + name + "/" + arity + " is already defined in this scope.");
+        defineFunction(new Environment.Function(name, arity, function));
+    }
+
+    public void defineFunction(String name, int arity, Environment.Body body) {
+        defineFunction(new Environment.Function(name, arity, body));
+    }
+
+    private void defineFunction(Environment.Function function) {
+        Map<Integer, Environment.Function> overloads = functions.computeIfAbsent(Symbol.of(function.getName()), symbol -> new HashMap<>());
+        if (overloads.containsKey(function.getArity())) {
+            throw new RuntimeException("The function " + function.getName() + "/" + function.getArity() + " is already defined in this scope.");
         } else {
-            functions.put(name + "/" + arity, new Environment.Function(name, arity, function));
+            overloads.put(function.getArity(), function);
         }
     }
 
     public Environment.Function lookupFunction(String name, int arity) {
-        if (functions.containsKey(name + "/" + arity)) {
-            return functions.get(name + "/" + arity);
-        } else if (parent != null) {
-            return parent.lookupFunction(name, arity);
-        } else {
+        Symbol symbol = Symbol.find(name);
+        if (symbol == null) {
             throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
         }
+        return lookupFunction(symbol, arity);
+    }
+
+    public Environment.Function lookupFunction(Symbol name, int arity) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Map<Integer, Environment.Function> overloads = scope.functions.get(name);
+            Environment.Function function = overloads != null ? overloads.get(arity) : null;
+            if (function != null) {
+                return function;
+            }
+        }
+        throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
+    }
+
+    /**
+     * Removes the variables and functions defined in this scope, so it can be
+     * reused by the interpreter.
+     */
+    void clear() {
+        variables.clear();
+        functions.clear();
+    }
+
+    /**
+     * Returns whether the only things defined in this scope (not its parents)
+     * are variables with the given names.
+     */
+    boolean definesOnly(List<String> names) {
+        if (!functions.isEmpty() || variables.size() > names.size()) {
+            return false;
+        }
+        for (Symbol name : variables.keySet()) {
+            if (!names.contains(name.getName())) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -0,0 +1,107 @@
+package plc.project;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A canonical, interned identifier name. Symbols are created by the lexer for
+ * every {@link Token.Type#IDENTIFIER} token and carried through the AST into
+ * {@link Scope} lookups, so each distinct name is hashed once when it is first
+ * interned instead of on every access.
+ *
+ * Since there is exactly one symbol per name, symbols compare by identity and
+ * their hash code is precomputed.
+ *
+ * The table only references symbols weakly, so the names of scripts which are
+ * no longer running don't stay interned for the life of the JVM. A name gets
+ * a new symbol if it's interned again after its old one was collected, which
+ * is safe since nothing can still hold the old one.
+ */
+public final class Symbol {
+
+    private static final ConcurrentMap<String, Entry> TABLE = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Symbol> COLLECTED = new ReferenceQueue<>();
+
+    private final String name;
+    private final int hash;
+
+    private Symbol(String name) {
+        this.name = name;
+        this.hash = name.hashCode();
+    }
+
+    /**
+     * Returns the canonical symbol for the given name, interning it if this is
+     * the first time the name has been seen.
+     */
+    public static Symbol of(String name) {
+        Symbol symbol = find(name);
+        if (symbol != null) {
+            return symbol;
+        }
+        expunge();
+        Symbol created = new Symbol(name);
+        Entry entry = new Entry(created);
+        while (true) {
+            Entry existing = TABLE.putIfAbsent(name, entry);
+            if (existing == null) {
+                return created;
+            }
+            symbol = existing.get();
+            if (symbol != null) {
+                return symbol;
+            }
+            if (TABLE.replace(name, existing, entry)) {
+                return created;
+            }
+        }
+    }
+
+    /**
+     * Returns the symbol for the given name if it's interned, without
+     * interning it otherwise. Since anything defined under a name holds its
+     * symbol, a lookup by a name without one can fail without interning it.
+     */
+    static Symbol find(String name) {
+        Entry entry = TABLE.get(name);
+        return entry != null ? entry.get() : null;
+    }
+
+    /**
+     * Removes the entries of collected symbols from the table.
+     */
+    private static void expunge() {
+        for (Object collected = COLLECTED.poll(); collected != null; collected = COLLECTED.poll()) {
+            Entry entry = (Entry) collected;
+            TABLE.remove(entry.name, entry);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static final class Entry extends WeakReference<Symbol> {
+
+        private final String name;
+
+        private Entry(Symbol symbol) {
+            super(symbol, COLLECTED);
+            this.name = symbol.name;
+        }
+
+    }
+
+}
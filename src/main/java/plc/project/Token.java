@@ -14,11 +14,47 @@ public final class Token {
     private final Type type;
     private final String literal;
     private final int index;
+    private final Symbol symbol;
+    private final Object value;
 
     public Token(Type type, String literal, int index) {
+        this(type, literal, index, null);
+    }
+
+    /**
+     * Creates a token carrying the value the lexer computed while scanning
+     * it, such as the {@link java.math.BigInteger} of an integer literal.
+     */
+    public Token(Type type, String literal, int index, Object value) {
         this.type = type;
-        this.literal = literal;
         this.index = index;
+        this.value = value;
+        if (type == Type.IDENTIFIER) {
+            // intern identifiers so later stages share one canonical name
+            this.symbol = Symbol.of(literal);
+            this.literal = symbol.getName();
+        } else {
+            this.symbol = null;
+            this.literal = literal;
+        }
+    }
+
+    /**
+     * Copies a token to a new index, as when text before it has been edited.
+     */
+    private Token(Token token, int index) {
+        this.type = token.type;
+        this.literal = token.literal;
+        this.index = index;
+        this.symbol = token.symbol;
+        this.value = token.value;
+    }
+
+    /**
+     * Returns this token moved by the given number of characters.
+     */
+    Token shift(int delta) {
+        return delta == 0 ? this : new Token(this, index + delta);
     }
 
     public Type getType() {
@@ -33,6 +69,22 @@ public final class Token {
         return index;
     }
 
+    /**
+     * Returns the interned symbol for an {@link Type#IDENTIFIER} token, or
+     * {@code null} for any other token type.
+     */
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Returns the value computed by the lexer for a literal token, or
+     * {@code null} if the token was not produced by the lexer.
+     */
+    public Object getValue() {
+        return value;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
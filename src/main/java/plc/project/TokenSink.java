@@ -0,0 +1,13 @@
+package plc.project;
+
+/**
+ * Receives the tokens found by {@link Lexer#lex(TokenSink)}. Each token is
+ * reported as its type and range {@code [start, end)} of the lexer's input,
+ * so tools which don't need {@link Token} objects (such as highlighting or
+ * counting tokens) can lex without allocating per token.
+ */
+public interface TokenSink {
+
+    void token(Token.Type type, int start, int end);
+
+}
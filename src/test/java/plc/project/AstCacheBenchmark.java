@@ -0,0 +1,47 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares lexing and parsing a large source from scratch against loading it
+ * from a warm {@link AstCache}.
+ */
+public class AstCacheBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            builder.append("DEF method").append(i).append("(a, b) DO\n")
+                    .append("    LET name = \"value\\t").append(i).append("\";\n")
+                    .append("    IF a <= b AND 'c' != '\\n' DO\n")
+                    .append("        RETURN a * 12345 + b / 6.789;\n")
+                    .append("    END\n")
+                    .append("    RETURN obj.method(name, a - 1);\n")
+                    .append("END\n");
+        }
+        String input = builder.toString();
+        Path directory = Files.createTempDirectory("ast-cache");
+        AstCache cache = new AstCache(directory);
+        cache.parse(input);
+        System.out.printf("%d characters, %d byte cache entry%n", input.length(), Files.size(cache.getPath(input)));
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            Ast.Source parsed = new Parser(new Lexer(input).lex()).parseSource();
+            long parseTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Ast.Source loaded = cache.parse(input);
+            long loadTime = System.nanoTime() - start;
+
+            if (!parsed.equals(loaded)) {
+                throw new AssertionError("Cached AST does not match the parsed AST.");
+            }
+            System.out.printf("parse %4d ms, cache load %4d ms%n", parseTime / 1_000_000, loadTime / 1_000_000);
+        }
+        Files.delete(cache.getPath(input));
+        Files.delete(directory);
+    }
+
+}
@@ -0,0 +1,149 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+final class AstCacheTests {
+
+    /**
+     * A header, the string table ["x"] and a NIL, then a field whose name is
+     * a five byte varint which decodes to a negative index.
+     */
+    private static final byte[] NEGATIVE_INDEX = {
+            0x50, 0x4C, 0x43, 0x41, 1, 1, 1, 'x', 11, 2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F,
+    };
+
+    private static final String SOURCE = String.join("\n",
+            "LET x = 1;",
+            "LET y;",
+            "LET name = \"it's \u00e9\\n\";",
+            "DEF first(a, b) DO",
+            "    IF a < b AND TRUE DO",
+            "        RETURN a + 2.5;",
+            "    ELSE",
+            "        LET z = NIL;",
+            "    END",
+            "    FOR i IN list DO obj.field = i; END",
+            "    WHILE FALSE DO END",
+            "    RETURN (b - 123456789012345678901234567890) * -0.000001;",
+            "END",
+            "DEF second() DO",
+            "    print('c', '\\'');",
+            "    RETURN obj.method(x, obj.method()).field;",
+            "END"
+    );
+
+    @ParameterizedTest
+    @MethodSource
+    void testRoundTrip(String test, String input) {
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(source, AstCodec.decode(ByteBuffer.wrap(AstCodec.encode(source))));
+    }
+
+    private static Stream<Arguments> testRoundTrip() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Field", "LET x;"),
+                Arguments.of("Method", "DEF main() DO END"),
+                Arguments.of("All Nodes", SOURCE),
+                Arguments.of("Shared Strings", "LET x = x; LET y = \"x\"; DEF x(x) DO x(x); END")
+        );
+    }
+
+    @Test
+    void testRoundTripLiterals() {
+        Ast.Source source = new Ast.Source(Arrays.asList(
+                field(null),
+                field(true),
+                field(false),
+                field('\uffff'),
+                field("\ud83d\ude00"),
+                field(BigInteger.ZERO),
+                field(BigInteger.valueOf(Long.MIN_VALUE).shiftLeft(100)),
+                field(new BigDecimal("-1.5")),
+                field(new BigDecimal("1E+10"))
+        ), Arrays.asList());
+        Assertions.assertEquals(source, AstCodec.decode(ByteBuffer.wrap(AstCodec.encode(source))));
+    }
+
+    @Test
+    void testRoundTripDeep() {
+        String input = "LET x = " + "(".repeat(100_000) + "y" + ")".repeat(100_000) + ";";
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        Ast.Expr expr = AstCodec.decode(ByteBuffer.wrap(AstCodec.encode(source))).getFields().get(0).getValue().get();
+        for (int i = 0; i < 100_000; i++) {
+            expr = ((Ast.Expr.Group) expr).getExpression();
+        }
+        Assertions.assertEquals(new Ast.Expr.Access(Optional.empty(), "y"), expr);
+    }
+
+    @Test
+    void testDecodeInvalid() {
+        byte[] bytes = AstCodec.encode(new Parser(new Lexer(SOURCE).lex()).parseSource());
+        for (int length = 0; length < bytes.length; length++) {
+            ByteBuffer truncated = ByteBuffer.wrap(bytes, 0, length);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> AstCodec.decode(truncated));
+        }
+        byte[] corrupted = bytes.clone();
+        corrupted[corrupted.length - 1] = 127;
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AstCodec.decode(ByteBuffer.wrap(corrupted)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AstCodec.decode(ByteBuffer.wrap(NEGATIVE_INDEX)));
+    }
+
+    @Test
+    void testCache(@TempDir Path directory) throws IOException {
+        Ast.Source expected = new Parser(new Lexer(SOURCE).lex()).parseSource();
+        AstCache cache = new AstCache(directory);
+        Assertions.assertEquals(expected, cache.parse(SOURCE));
+        Path path = cache.getPath(SOURCE);
+        Assertions.assertTrue(Files.exists(path));
+        Assertions.assertEquals(expected, new AstCache(directory).parse(SOURCE));
+        // a hit must come from the file, so a different valid entry is returned as-is
+        Files.write(path, AstCodec.encode(new Parser(new Lexer("LET other;").lex()).parseSource()));
+        Assertions.assertEquals(new Parser(new Lexer("LET other;").lex()).parseSource(), cache.parse(SOURCE));
+    }
+
+    @Test
+    void testCacheInvalidEntry(@TempDir Path directory) throws IOException {
+        AstCache cache = new AstCache(directory);
+        Path path = cache.getPath(SOURCE);
+        Files.write(path, new byte[] {1, 2, 3});
+        Assertions.assertEquals(new Parser(new Lexer(SOURCE).lex()).parseSource(), cache.parse(SOURCE));
+        Assertions.assertArrayEquals(AstCodec.encode(cache.parse(SOURCE)), Files.readAllBytes(path));
+    }
+
+    @Test
+    void testCacheNegativeIndex(@TempDir Path directory) throws IOException {
+        AstCache cache = new AstCache(directory);
+        Path path = cache.getPath(SOURCE);
+        Files.write(path, NEGATIVE_INDEX);
+        Assertions.assertEquals(new Parser(new Lexer(SOURCE).lex()).parseSource(), cache.parse(SOURCE));
+        Assertions.assertArrayEquals(AstCodec.encode(cache.parse(SOURCE)), Files.readAllBytes(path));
+    }
+
+    @Test
+    void testCacheParseException(@TempDir Path directory) {
+        AstCache cache = new AstCache(directory);
+        Assertions.assertThrows(ParseException.class, () -> cache.parse("LET x = ;"));
+        Assertions.assertFalse(Files.exists(cache.getPath("LET x = ;")));
+    }
+
+    private static Ast.Field field(Object literal) {
+        return new Ast.Field("x", Optional.of(new Ast.Expr.Literal(literal)));
+    }
+
+}
@@ -0,0 +1,122 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+final class BinaryNodeTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSpecialize(String test, String operator, Object left, Object right, String node) {
+        Ast.Expr.Binary ast = binary(operator);
+        Interpreter interpreter = new Interpreter(scope(left, right));
+        Environment.PlcObject expected = Interpreter.applyBinary(operator, Environment.create(left), Environment.create(right));
+        Assertions.assertEquals(expected.getValue(), interpreter.visit(ast).getValue());
+        Assertions.assertEquals(node, interpreter.node(ast).toString());
+        // the specialized node gives the same result
+        Assertions.assertEquals(expected.getValue(), interpreter.visit(ast).getValue());
+        Assertions.assertEquals(node, interpreter.node(ast).toString());
+    }
+
+    private static Stream<Arguments> testSpecialize() {
+        return Stream.of(
+                Arguments.of("Integer Add", "+", BigInteger.ONE, BigInteger.TEN, "integer +"),
+                Arguments.of("Integer Subtract", "-", BigInteger.ONE, BigInteger.TEN, "integer -"),
+                Arguments.of("Integer Multiply", "*", BigInteger.ONE, BigInteger.TEN, "integer *"),
+                Arguments.of("Integer Less", "<", BigInteger.ONE, BigInteger.TEN, "integer <"),
+                Arguments.of("Integer Greater Equal", ">=", BigInteger.ONE, BigInteger.TEN, "integer >="),
+                Arguments.of("Decimal Add", "+", new BigDecimal("1.5"), new BigDecimal("2.25"), "decimal +"),
+                Arguments.of("Decimal Subtract", "-", new BigDecimal("1.5"), new BigDecimal("2.25"), "decimal -"),
+                Arguments.of("Decimal Multiply", "*", new BigDecimal("1.5"), new BigDecimal("2.25"), "decimal *"),
+                Arguments.of("String Add", "+", "a", "b", "string +"),
+                Arguments.of("Equal", "==", "a", BigInteger.ONE, "=="),
+                Arguments.of("Mixed Add", "+", BigInteger.ONE, new BigDecimal("2.5"), "generic"),
+                Arguments.of("Divide", "/", BigInteger.ONE, BigInteger.TEN, "generic")
+        );
+    }
+
+    @Test
+    void testDeoptimize() {
+        Ast.Expr.Binary ast = binary("+");
+        Scope scope = scope(BigInteger.ONE, BigInteger.valueOf(2));
+        Interpreter interpreter = new Interpreter(scope);
+        Assertions.assertEquals(BigInteger.valueOf(3), interpreter.visit(ast).getValue());
+        Assertions.assertEquals("integer +", interpreter.node(ast).toString());
+        scope.lookupVariable("y").setValue(Environment.create(new BigDecimal("2.5")));
+        Assertions.assertEquals(new BigDecimal("3.5"), interpreter.visit(ast).getValue());
+        Assertions.assertEquals("generic", interpreter.node(ast).toString());
+        // a deoptimized node isn't specialized again
+        scope.lookupVariable("y").setValue(Environment.create(BigInteger.valueOf(2)));
+        Assertions.assertEquals(BigInteger.valueOf(3), interpreter.visit(ast).getValue());
+        Assertions.assertEquals("generic", interpreter.node(ast).toString());
+    }
+
+    @Test
+    void testGuardFailureThrows() {
+        Ast.Expr.Binary ast = binary("<");
+        Scope scope = scope(BigInteger.ONE, BigInteger.TEN);
+        Interpreter interpreter = new Interpreter(scope);
+        Assertions.assertEquals(true, interpreter.visit(ast).getValue());
+        scope.lookupVariable("y").setValue(Environment.create(new BigDecimal("2.5")));
+        Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(ast));
+        Assertions.assertEquals("generic", interpreter.node(ast).toString());
+    }
+
+    @Test
+    void testErrorLeavesUninitialized() {
+        Ast.Expr.Binary ast = binary("+");
+        Scope scope = scope("a", BigInteger.ONE);
+        Interpreter interpreter = new Interpreter(scope);
+        Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(ast));
+        Assertions.assertSame(BinaryNode.UNINITIALIZED, interpreter.node(ast));
+        scope.lookupVariable("y").setValue(Environment.create("b"));
+        Assertions.assertEquals("ab", interpreter.visit(ast).getValue());
+        Assertions.assertEquals("string +", interpreter.node(ast).toString());
+    }
+
+    @Test
+    void testLoop() {
+        Ast.Source source = new Parser(new Lexer("DEF main() DO LET i = 0; LET s = \"\"; WHILE i < 3 DO s = s + \"a\"; i = i + 1; END RETURN s; END").lex()).parseSource();
+        Interpreter interpreter = new Interpreter(null);
+        interpreter.visit(source);
+        Assertions.assertEquals("aaa", interpreter.getScope().lookupFunction("main", 0).invoke(Arrays.asList()).getValue());
+        Ast.Stmt.While loop = (Ast.Stmt.While) source.getMethods().get(0).getStatements().get(2);
+        Assertions.assertEquals("integer <", interpreter.node((Ast.Expr.Binary) loop.getCondition()).toString());
+        Assertions.assertEquals("string +", interpreter.node((Ast.Expr.Binary) ((Ast.Stmt.Assignment) loop.getStatements().get(0)).getValue()).toString());
+        Assertions.assertEquals("integer +", interpreter.node((Ast.Expr.Binary) ((Ast.Stmt.Assignment) loop.getStatements().get(1)).getValue()).toString());
+    }
+
+    @Test
+    void testInterpreters() {
+        Ast.Expr.Binary ast = binary("+");
+        Interpreter integers = new Interpreter(scope(BigInteger.ONE, BigInteger.TEN));
+        Interpreter decimals = new Interpreter(scope(new BigDecimal("1.5"), new BigDecimal("2.25")));
+        Assertions.assertEquals(BigInteger.valueOf(11), integers.visit(ast).getValue());
+        Assertions.assertEquals(new BigDecimal("3.75"), decimals.visit(ast).getValue());
+        // each interpreter has its own feedback for the same expression
+        Assertions.assertEquals("integer +", integers.node(ast).toString());
+        Assertions.assertEquals("decimal +", decimals.node(ast).toString());
+        Assertions.assertSame(BinaryNode.UNINITIALIZED, new Interpreter(scope(BigInteger.ONE, BigInteger.TEN)).node(ast));
+    }
+
+    private static Ast.Expr.Binary binary(String operator) {
+        return new Ast.Expr.Binary(operator, new Ast.Expr.Access(Optional.empty(), "x"), new Ast.Expr.Access(Optional.empty(), "y"));
+    }
+
+    private static Scope scope(Object x, Object y) {
+        Scope scope = new Scope(null);
+        scope.defineVariable("x", Environment.create(x));
+        scope.defineVariable("y", Environment.create(y));
+        return scope;
+    }
+
+}
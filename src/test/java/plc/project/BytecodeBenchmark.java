@@ -0,0 +1,84 @@
+package plc.project;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares running scripts with the {@link Interpreter} and with the
+ * {@link BytecodeInterpreter}, and the time to load a script from source
+ * against decoding its compiled program.
+ */
+public class BytecodeBenchmark {
+
+    private static final Map<String, String> SCRIPTS = new LinkedHashMap<>();
+
+    static {
+        SCRIPTS.put("loop", String.join("\n",
+                "DEF main() DO",
+                "    LET i = 0;",
+                "    LET sum = 0;",
+                "    WHILE i < 300000 DO",
+                "        IF i < 150000 AND i >= 7 DO",
+                "            sum = sum + i * i - i;",
+                "        ELSE",
+                "            sum = sum - i;",
+                "        END",
+                "        i = i + 1;",
+                "    END",
+                "    RETURN sum;",
+                "END"
+        ));
+        SCRIPTS.put("fib", String.join("\n",
+                "DEF fib(n) DO",
+                "    IF n < 2 DO",
+                "        RETURN n;",
+                "    END",
+                "    RETURN fib(n - 1) + fib(n - 2);",
+                "END",
+                "DEF main() DO",
+                "    RETURN fib(22);",
+                "END"
+        ));
+        SCRIPTS.put("globals", String.join("\n",
+                "LET total = 0;",
+                "DEF add(x) DO",
+                "    total = total + x;",
+                "END",
+                "DEF main() DO",
+                "    LET i = 0;",
+                "    WHILE i < 100000 DO",
+                "        add(i);",
+                "        i = i + 1;",
+                "    END",
+                "    RETURN total;",
+                "END"
+        ));
+    }
+
+    public static void main(String[] args) {
+        for (Map.Entry<String, String> script : SCRIPTS.entrySet()) {
+            Ast.Source source = new Parser(new Lexer(script.getValue()).lex()).parseSource();
+            byte[] bytes = Bytecode.encode(BytecodeCompiler.compile(source));
+            System.out.printf("%-8s %d bytes compiled%n", script.getKey(), bytes.length);
+            for (int round = 0; round < 8; round++) {
+                long start = System.nanoTime();
+                Interpreter interpreter = new Interpreter(null);
+                interpreter.visit(new Parser(new Lexer(script.getValue()).lex()).parseSource());
+                long parsed = System.nanoTime();
+                interpreter.getScope().lookupFunction("main", 0).invoke(new ArrayList<>());
+                long interpreted = System.nanoTime();
+                BytecodeInterpreter machine = new BytecodeInterpreter(null);
+                machine.load(Bytecode.decode(ByteBuffer.wrap(bytes)));
+                long decoded = System.nanoTime();
+                machine.getScope().lookupFunction("main", 0).invoke(new ArrayList<>());
+                long executed = System.nanoTime();
+                System.out.printf("%-8s parse %5d us, interpreter %4d ms; decode %5d us, bytecode %4d ms%n",
+                        script.getKey(), (parsed - start) / 1_000, (interpreted - parsed) / 1_000_000,
+                        (decoded - interpreted) / 1_000, (executed - decoded) / 1_000_000);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+final class BytecodeTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSource(String test, String input) {
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        Interpreter interpreter = new Interpreter(Scripts.scope());
+        String expected = Scripts.run(() -> {
+            interpreter.visit(source);
+            return interpreter.getScope();
+        });
+        Assertions.assertEquals(expected, run(source, false), "compiled");
+        Assertions.assertEquals(expected, run(source, true), "decoded");
+    }
+
+    private static Stream<Arguments> testSource() {
+        return Stream.of(
+                Arguments.of("Fields",
+                        "LET x = 1; LET y = x + 1; DEF main() DO x = x + y; RETURN x; END"
+                ),
+                Arguments.of("Literals",
+                        "LET c = 'c'; LET s = \"s\"; LET d = 1.25; LET n; DEF main() DO print(c); print(s); print(d * -2); print(n == NIL); RETURN TRUE == TRUE; END"
+                ),
+                Arguments.of("Statements",
+                        "DEF main() DO LET i = 0; LET sum = 0; WHILE i < 5 DO IF i == 2 DO print(i); ELSE sum = sum + i; END i = i + 1; END RETURN sum; END"
+                ),
+                Arguments.of("Branch Declarations",
+                        "DEF f(b) DO IF b DO LET x = 1; print(x); ELSE LET x = 2; print(x); END RETURN b; END DEF main() DO f(TRUE); RETURN f(FALSE); END"
+                ),
+                Arguments.of("For",
+                        "DEF main() DO LET sum = 0; FOR i IN range(4) DO LET square = i * i; sum = sum + square; END RETURN sum; END"
+                ),
+                Arguments.of("For Over Local",
+                        "DEF main() DO LET list = range(3); LET sum = 0; FOR i IN list DO FOR j IN list DO sum = sum + i * j; END END print(list); RETURN sum; END"
+                ),
+                Arguments.of("Aliased Local",
+                        "DEF main() DO LET x = 1; LET y = x; x = 2; print(y); RETURN x; END"
+                ),
+                Arguments.of("Return In Loop",
+                        "DEF find(n) DO FOR i IN range(10) DO WHILE i < 50 DO IF i == n DO RETURN i * 2; END i = i + 100; END END RETURN -1; END "
+                                + "DEF main() DO print(find(3)); RETURN find(-1) + 1 * find(3); END"
+                ),
+                Arguments.of("Recursion",
+                        "DEF fib(n) DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END DEF main() DO RETURN fib(12); END"
+                ),
+                Arguments.of("Arities",
+                        "DEF zero() DO RETURN 0; END DEF one(a) DO RETURN a; END DEF four(a, b, c, d) DO RETURN a + b * c - d; END "
+                                + "DEF six(a, b, c, d, e, f) DO RETURN a + b + c + d + e + f; END "
+                                + "DEF main() DO print(zero()); print(one(1)); print(four(1, 2, 3, 4)); RETURN six(1, 2, 3, 4, 5, 6) + four(0, 0, 0, 1); END"
+                ),
+                Arguments.of("Dynamic Scope",
+                        "DEF show() DO print(local); local = local + 1; END DEF main() DO LET local = 1; show(); RETURN local; END"
+                ),
+                Arguments.of("Scoped For",
+                        "DEF show() DO print(i); END DEF main() DO FOR i IN range(3) DO show(); END RETURN 0; END"
+                ),
+                Arguments.of("Short Circuit",
+                        "DEF t(x) DO print(x); RETURN TRUE; END DEF main() DO RETURN t(1) AND FALSE AND t(2) OR t(3) OR t(4); END"
+                ),
+                Arguments.of("Arithmetic",
+                        "DEF main() DO print(1 + 2.5); print(\"a\" + 1); print(7 / 2); print(3 - 1.5); print(2 * 0.5); print(1 >= 2); RETURN 1 != 2; END"
+                ),
+                Arguments.of("Division By Zero",
+                        "DEF main() DO print(1); RETURN 1 / 0; END"
+                ),
+                Arguments.of("Type Error",
+                        "DEF main() DO RETURN 1 < 1.5; END"
+                ),
+                Arguments.of("No Return",
+                        "DEF f() DO print(1); END DEF main() DO RETURN f(); END"
+                ),
+                Arguments.of("Error In Call",
+                        "DEF f(x) DO print(x); RETURN x + \"a\"; END DEF main() DO print(0); RETURN f(1); END"
+                ),
+                Arguments.of("Undefined Variable",
+                        "DEF main() DO print(1); undefined = 2; END"
+                ),
+                Arguments.of("Undefined Function",
+                        "DEF main() DO print(1); RETURN undefined(2); END"
+                ),
+                Arguments.of("Redefined Variable",
+                        "DEF main() DO LET x = 1; IF TRUE DO LET x = 2; END RETURN x; END"
+                )
+        );
+    }
+
+    @Test
+    void testObject() {
+        // fields and methods of an object from the scope
+        Scope scope = Scripts.scope();
+        Scope fields = new Scope(null);
+        Environment.PlcObject object = new Environment.PlcObject(fields, "object");
+        fields.defineVariable("count", Environment.create(BigInteger.ONE));
+        fields.defineFunction("add", 2, args -> {
+            Environment.Variable count = args.get(0).getField("count");
+            count.setValue(Environment.create(((BigInteger) count.getValue().getValue()).add((BigInteger) args.get(1).getValue())));
+            return count.getValue();
+        });
+        scope.defineVariable("object", object);
+        String input = "DEF main() DO object.count = object.count + 1; print(object.add(3)); RETURN object.count; END";
+        BytecodeInterpreter interpreter = new BytecodeInterpreter(scope);
+        interpreter.load(BytecodeCompiler.compile(new Parser(new Lexer(input).lex()).parseSource()));
+        Assertions.assertEquals(BigInteger.valueOf(5), interpreter.getScope().lookupFunction("main", 0).invoke(new ArrayList<>()).getValue());
+    }
+
+    @Test
+    void testEncodeDeterministic() {
+        Ast.Source source = new Parser(new Lexer("LET x = 1.5; DEF f(n) DO RETURN n * x + \"s\"; END").lex()).parseSource();
+        byte[] bytes = Bytecode.encode(BytecodeCompiler.compile(source));
+        Assertions.assertArrayEquals(bytes, Bytecode.encode(BytecodeCompiler.compile(source)));
+        Assertions.assertArrayEquals(bytes, Bytecode.encode(Bytecode.decode(ByteBuffer.wrap(bytes))));
+    }
+
+    @Test
+    void testDecodeInvalid() {
+        Ast.Source source = new Parser(new Lexer("DEF f(n) DO LET x = n; WHILE x < 3 DO x = x + 1; END RETURN x; END").lex()).parseSource();
+        byte[] bytes = Bytecode.encode(BytecodeCompiler.compile(source));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Bytecode.decode(ByteBuffer.wrap(new byte[0])));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Bytecode.decode(ByteBuffer.wrap("PLCA".getBytes())));
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Bytecode.decode(ByteBuffer.wrap(truncated)), "length " + length);
+        }
+        // any corruption of the code is either rejected or still a valid
+        // program, which may fail but not with an error of the interpreter
+        for (int i = 0; i < bytes.length; i++) {
+            byte[] corrupt = bytes.clone();
+            corrupt[i] ^= 0x55;
+            Bytecode.Program program;
+            try {
+                program = Bytecode.decode(ByteBuffer.wrap(corrupt));
+            } catch (IllegalArgumentException ignored) {
+                continue;
+            }
+            try {
+                BytecodeInterpreter interpreter = new BytecodeInterpreter(Scripts.scope());
+                interpreter.load(program);
+                interpreter.getScope().lookupFunction("f", 1).invoke(Environment.create(BigInteger.ONE));
+            } catch (ClassCastException | NullPointerException | ArrayIndexOutOfBoundsException e) {
+                Assertions.fail("byte " + i, e);
+            } catch (RuntimeException ignored) {
+            }
+        }
+    }
+
+    @Test
+    void testDecodeInvalidRegisters() {
+        // SET of a register holding a value rather than a variable
+        Assertions.assertThrows(IllegalArgumentException.class, () -> decode(2,
+                Bytecode.CONSTANT, 0, 0, Bytecode.CONSTANT, 1, 0, Bytecode.SET, 0, 1, Bytecode.RETURN, 1));
+        // NEXT of a register which isn't an iterator
+        Assertions.assertThrows(IllegalArgumentException.class, () -> decode(2,
+                Bytecode.CONSTANT, 0, 0, Bytecode.NEXT, 1, 0, 7, Bytecode.RETURN, 0));
+        // RETURN of a variable
+        Assertions.assertThrows(IllegalArgumentException.class, () -> decode(1,
+                Bytecode.VARIABLE, 0, 0, Bytecode.RETURN, 0));
+        // RETURN of a register which is only set on one path
+        Assertions.assertThrows(IllegalArgumentException.class, () -> decode(2,
+                Bytecode.CONSTANT, 0, 0, Bytecode.JUMP_IF_FALSE, 0, 9, Bytecode.CONSTANT, 1, 0, Bytecode.RETURN, 1));
+        // FAIL with a message which isn't a string
+        Assertions.assertThrows(IllegalArgumentException.class, () -> decode(1, Bytecode.FAIL, 0));
+        // the same registers used consistently
+        Assertions.assertNotNull(decode(2,
+                Bytecode.VARIABLE, 0, 0, Bytecode.CONSTANT, 1, 0, Bytecode.SET, 0, 1, Bytecode.JUMP_IF_FALSE, 1, 9, Bytecode.RETURN, 1));
+    }
+
+    @Test
+    void testDeepExpression() {
+        StringBuilder builder = new StringBuilder("DEF main() DO RETURN ");
+        for (int i = 0; i < 2000; i++) {
+            builder.append("(");
+        }
+        builder.append("1");
+        for (int i = 0; i < 2000; i++) {
+            builder.append(")");
+        }
+        builder.append("; END");
+        Ast.Source source = new Parser(new Lexer(builder.toString()).lex()).parseSource();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BytecodeCompiler.compile(source));
+    }
+
+    /**
+     * Encodes and decodes a program with one unscoped method of the given
+     * code, with the name "x" and NIL as its only string and constant.
+     */
+    private static Bytecode.Program decode(int registers, int... code) {
+        Bytecode.Method initializer = new Bytecode.Method("", 1, new int[0], true, new int[] {Bytecode.CONSTANT, 0, 0, Bytecode.RETURN, 0});
+        Bytecode.Method method = new Bytecode.Method("f", registers, new int[0], false, code);
+        Bytecode.Program program = new Bytecode.Program(new String[] {"x"}, new Object[] {null}, initializer, Arrays.asList(method));
+        return Bytecode.decode(ByteBuffer.wrap(Bytecode.encode(program)));
+    }
+
+    /**
+     * Compiles the source and runs it with the bytecode interpreter,
+     * optionally after encoding and decoding the compiled program.
+     */
+    private static String run(Ast.Source source, boolean decode) {
+        return Scripts.run(() -> {
+            Bytecode.Program program = BytecodeCompiler.compile(source);
+            if (decode) {
+                program = Bytecode.decode(ByteBuffer.wrap(Bytecode.encode(program)));
+            }
+            BytecodeInterpreter interpreter = new BytecodeInterpreter(Scripts.scope());
+            interpreter.load(program);
+            return interpreter.getScope();
+        });
+    }
+
+}
@@ -0,0 +1,62 @@
+package plc.project;
+
+import java.math.BigInteger;
+
+/**
+ * Compares calling a builtin taking its arguments as a list against one
+ * implementing the fixed-arity {@link Environment.Body#call(
+ * Environment.PlcObject, Environment.PlcObject, Environment.PlcObject)},
+ * and calling script methods of a few arguments, with the {@link
+ * Interpreter}.
+ */
+public class CallBenchmark {
+
+    private static final String SCRIPT = String.join("\n",
+            "DEF pick(a, b, c) DO",
+            "    RETURN b;",
+            "END",
+            "DEF main() DO",
+            "    LET i = 0;",
+            "    LET sum = 0;",
+            "    WHILE i < 300000 DO",
+            "        sum = sum + add(i, 1, pick(i, 2, 3));",
+            "        i = i + 1;",
+            "    END",
+            "    RETURN sum;",
+            "END"
+    );
+
+    public static void main(String[] args) {
+        Ast.Source source = new Parser(new Lexer(SCRIPT).lex()).parseSource();
+        for (int round = 0; round < 8; round++) {
+            Scope list = new Scope(null);
+            list.defineFunction("add", 3, arguments -> Environment.create(((BigInteger) arguments.get(0).getValue())
+                    .add((BigInteger) arguments.get(1).getValue()).add((BigInteger) arguments.get(2).getValue())));
+            Scope fixed = new Scope(null);
+            fixed.defineFunction("add", 3, new Environment.Body() {
+                @Override
+                public Environment.PlcObject call(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third) {
+                    return Environment.create(((BigInteger) first.getValue()).add((BigInteger) second.getValue()).add((BigInteger) third.getValue()));
+                }
+
+                @Override
+                public Environment.PlcObject call(Environment.PlcObject[] arguments) {
+                    return call(arguments[0], arguments[1], arguments[2]);
+                }
+            });
+            long listTime = time(list, source);
+            long fixedTime = time(fixed, source);
+            System.out.printf("list %4d ms, fixed arity %4d ms%n", listTime / 1_000_000, fixedTime / 1_000_000);
+        }
+    }
+
+    private static long time(Scope scope, Ast.Source source) {
+        // promotion is disabled so both run in the tree-walking interpreter
+        Interpreter interpreter = new Interpreter(scope, Integer.MAX_VALUE, Runnable::run);
+        interpreter.visit(source);
+        long start = System.nanoTime();
+        interpreter.getScope().lookupFunction("main", 0).invoke();
+        return System.nanoTime() - start;
+    }
+
+}
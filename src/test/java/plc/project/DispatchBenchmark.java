@@ -0,0 +1,176 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Measures the cost of {@link Ast.Visitor#visit(Ast)} for nodes at the start
+ * and end of the former {@code instanceof} chain, as well as for a mix of
+ * node classes (which makes the dispatch call site megamorphic, as it is in
+ * the {@link Interpreter}).
+ *
+ * Since the JIT specializes {@code visit(Ast)} to the classes it has seen,
+ * pass one of {@code source}, {@code literal}, {@code function} or {@code
+ * mixed} to measure that case alone in a fresh JVM; otherwise each case is
+ * measured in turn.
+ */
+public class DispatchBenchmark {
+
+    private static final int ITERATIONS = 10_000_000;
+
+    public static void main(String[] args) {
+        Ast source = new Ast.Source(new ArrayList<>(), new ArrayList<>());
+        Ast.Expr literal = new Ast.Expr.Literal(BigInteger.ONE);
+        Ast function = new Ast.Expr.Function(Optional.empty(), "f", new ArrayList<>());
+        Ast[] mixed = {
+                source,
+                new Ast.Stmt.Return(literal),
+                literal,
+                new Ast.Expr.Binary("+", literal, literal),
+                new Ast.Expr.Access(Optional.empty(), "x"),
+                function,
+        };
+        Map<String, Ast[]> cases = new LinkedHashMap<>();
+        cases.put("source", new Ast[] {source});
+        cases.put("literal", new Ast[] {literal});
+        cases.put("function", new Ast[] {function});
+        cases.put("mixed", mixed);
+        if (args.length > 0) {
+            cases.keySet().retainAll(Arrays.asList(args));
+        }
+        Counter counter = new Counter();
+        for (int round = 0; round < 5; round++) {
+            for (Map.Entry<String, Ast[]> entry : cases.entrySet()) {
+                System.out.printf("%-8s %5.2f ns  ", entry.getKey(), time(counter, entry.getValue()));
+            }
+            System.out.println();
+        }
+        System.out.println(counter.count);
+    }
+
+    /**
+     * Returns the average time to visit each of the nodes, in nanoseconds.
+     */
+    private static double time(Counter counter, Ast[] nodes) {
+        Ast[] repeated = new Ast[1024];
+        for (int i = 0; i < repeated.length; i++) {
+            repeated[i] = nodes[i % nodes.length];
+        }
+        // shuffle deterministically so the branch pattern isn't trivially predictable
+        Collections.shuffle(Arrays.asList(repeated), new Random(4020));
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS / repeated.length; i++) {
+            for (Ast ast : repeated) {
+                counter.visit(ast);
+            }
+        }
+        return (double) (System.nanoTime() - start) / (ITERATIONS / repeated.length * repeated.length);
+    }
+
+    /**
+     * A visitor which does as little as possible, so the time is dominated by
+     * dispatch.
+     */
+    private static final class Counter implements Ast.Visitor<Void> {
+
+        private long count;
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            count += 1;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            count += 2;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            count += 3;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            count += 4;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            count += 5;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            count += 6;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            count += 7;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            count += 8;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            count += 9;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            count += 10;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            count += 11;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            count += 12;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            count += 13;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            count += 14;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            count += 15;
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,64 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Measures parsing and evaluating expressions of ordinary depth, to compare
+ * the explicit-stack parser and interpreter against their recursive versions.
+ */
+public class EvaluationBenchmark {
+
+    private static final String[] EXPRESSIONS = {
+            "a + b * 2 - c / 4",
+            "(a + (b - (c * (a + 1)))) * 2",
+            "a < b AND b < c OR c == a",
+            "f(g(b + 1), f(c, a)) + a * b",
+            "s + \"x\" + s + \"y\"",
+    };
+
+    private static final int ITERATIONS = 100_000;
+
+    public static void main(String[] args) {
+        Scope scope = new Scope(null);
+        scope.defineVariable("a", Environment.create(BigInteger.valueOf(3)));
+        scope.defineVariable("b", Environment.create(BigInteger.valueOf(5)));
+        scope.defineVariable("c", Environment.create(BigInteger.valueOf(7)));
+        scope.defineVariable("s", Environment.create("s"));
+        scope.defineFunction("f", 2, arguments -> arguments.get(0));
+        scope.defineFunction("g", 1, arguments -> arguments.get(0));
+        Interpreter interpreter = new Interpreter(scope);
+        long[] parse = new long[EXPRESSIONS.length];
+        long[] evaluate = new long[EXPRESSIONS.length];
+        java.util.Arrays.fill(parse, Long.MAX_VALUE);
+        java.util.Arrays.fill(evaluate, Long.MAX_VALUE);
+        for (int round = 0; round < 30; round++) {
+            for (int i = 0; i < EXPRESSIONS.length; i++) {
+                List<Token> tokens = new Lexer(EXPRESSIONS[i]).lex();
+                parse[i] = Math.min(parse[i], parse(tokens));
+                evaluate[i] = Math.min(evaluate[i], evaluate(interpreter, new Parser(tokens).parseExpression()));
+            }
+        }
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            System.out.printf("%-32s parse %5.0f ns, evaluate %5.0f ns%n", EXPRESSIONS[i],
+                    (double) parse[i] / ITERATIONS, (double) evaluate[i] / ITERATIONS);
+        }
+    }
+
+    private static long parse(List<Token> tokens) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            new Parser(tokens).parseExpression();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long evaluate(Interpreter interpreter, Ast.Expr ast) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            interpreter.visit(ast);
+        }
+        return System.nanoTime() - start;
+    }
+
+}
@@ -0,0 +1,43 @@
+package plc.project;
+
+import java.util.List;
+
+/**
+ * Measures parse throughput on expression-dense inputs: long chains of one
+ * operator, chains mixing every precedence level, and moderately nested
+ * groups and calls.
+ */
+public class ExpressionBenchmark {
+
+    public static void main(String[] args) {
+        StringBuilder chain = new StringBuilder("x");
+        StringBuilder mixed = new StringBuilder("x");
+        StringBuilder nested = new StringBuilder("x");
+        for (int i = 0; i < 50_000; i++) {
+            chain.append(" + a").append(i);
+            mixed.append(i % 2 == 0 ? " AND " : " OR ").append("a * b - c / 2 + d < e").append(i).append(" == f");
+            nested.append(" + (a * (b + c.d(e, (f - 1) / 2)) - g(h, i").append(i).append("))");
+        }
+        List<Token> chainTokens = new Lexer(chain.toString()).lex();
+        List<Token> mixedTokens = new Lexer(mixed.toString()).lex();
+        List<Token> nestedTokens = new Lexer(nested.toString()).lex();
+        for (int pass = 0; pass < 3; pass++) {
+            // the first passes warm up the parser for all inputs
+            run("chain", chainTokens);
+            run("mixed", mixedTokens);
+            run("nested", nestedTokens);
+        }
+    }
+
+    private static void run(String name, List<Token> tokens) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            new Parser(tokens).parseExpression();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-7s %8d tokens: best %5.1f ms (%.1f Mtokens/s)%n",
+                name, tokens.size(), best / 1e6, tokens.size() * 1e3 / best);
+    }
+
+}
@@ -0,0 +1,104 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+final class FlatAstTests {
+
+    private static final String SOURCE = String.join("\n",
+            "LET x = 1;",
+            "LET y;",
+            "DEF first(a, b) DO",
+            "    IF a < b AND TRUE DO",
+            "        RETURN a + 2.5;",
+            "    ELSE",
+            "        LET z = NIL;",
+            "        LET w;",
+            "    END",
+            "    FOR i IN list DO obj.field = i; END",
+            "    WHILE FALSE DO END",
+            "    RETURN (b - 1) * 'c';",
+            "END",
+            "DEF second() DO",
+            "    print(\"string\", x);",
+            "    RETURN obj.method(x, method()).field;",
+            "END"
+    );
+
+    @ParameterizedTest
+    @MethodSource
+    void testRoundTrip(String test, String input) {
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(source, FlatAst.from(source).toAst());
+    }
+
+    private static Stream<Arguments> testRoundTrip() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Field", "LET x;"),
+                Arguments.of("Method", "DEF main() DO END"),
+                Arguments.of("All Nodes", SOURCE)
+        );
+    }
+
+    @Test
+    void testRoundTripDeep() {
+        String input = "LET x = " + "(".repeat(100_000) + "f(y)" + ")".repeat(100_000) + ";";
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        Ast.Expr expr = FlatAst.from(source).toAst().getFields().get(0).getValue().get();
+        for (int i = 0; i < 100_000; i++) {
+            expr = ((Ast.Expr.Group) expr).getExpression();
+        }
+        Assertions.assertEquals(new Parser(new Lexer("f(y)").lex()).parseExpression(), expr);
+    }
+
+    @Test
+    void testCursor() {
+        FlatAst flat = FlatAst.from(new Parser(new Lexer("LET x = obj.f(1 + x); DEF m(a, b) DO END").lex()).parseSource());
+        int source = flat.getRoot();
+        Assertions.assertEquals(FlatAst.Kind.SOURCE, flat.getKind(source));
+        Assertions.assertEquals(1, flat.getFieldCount(source));
+        Assertions.assertEquals(2, flat.getChildCount(source));
+
+        int field = flat.getChild(source, 0);
+        Assertions.assertEquals("x", flat.getName(field));
+        int function = flat.getChild(field, 0);
+        Assertions.assertEquals(FlatAst.Kind.FUNCTION, flat.getKind(function));
+        Assertions.assertEquals("f", flat.getName(function));
+        Assertions.assertTrue(flat.hasReceiver(function));
+        Assertions.assertEquals("obj", flat.getName(flat.getChild(function, 0)));
+        Assertions.assertFalse(flat.hasReceiver(flat.getChild(function, 0)));
+        int binary = flat.getChild(function, 1);
+        Assertions.assertEquals("+", flat.getOperator(binary));
+        Assertions.assertEquals(BigInteger.ONE, flat.getLiteral(flat.getChild(binary, 0)));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> flat.getChild(binary, 2));
+
+        int method = flat.getChild(source, 1);
+        Assertions.assertEquals(Arrays.asList("a", "b"), flat.getParameters(method));
+        Assertions.assertEquals(0, flat.getChildCount(method));
+    }
+
+    @Test
+    void testPostOrder() {
+        // computes the height of every node in one pass, since children come first
+        FlatAst flat = FlatAst.from(new Parser(new Lexer(SOURCE).lex()).parseSource());
+        int[] heights = new int[flat.size()];
+        for (int node = 0; node < flat.size(); node++) {
+            for (int i = 0; i < flat.getChildCount(node); i++) {
+                int child = flat.getChild(node, i);
+                Assertions.assertTrue(child < node);
+                heights[node] = Math.max(heights[node], heights[child] + 1);
+            }
+        }
+        // source > method > return > binary > group > binary > access
+        Assertions.assertEquals(6, heights[flat.getRoot()]);
+    }
+
+}
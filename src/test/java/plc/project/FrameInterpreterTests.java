@@ -0,0 +1,121 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+final class FrameInterpreterTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSource(String test, String input) {
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        Interpreter interpreter = new Interpreter(Scripts.scope());
+        FrameInterpreter frames = new FrameInterpreter(Scripts.scope());
+        String expected = Scripts.run(() -> {
+            interpreter.visit(source);
+            return interpreter.getScope();
+        });
+        Assertions.assertEquals(expected, Scripts.run(() -> {
+            frames.visit(source);
+            return frames.getScope();
+        }));
+    }
+
+    private static Stream<Arguments> testSource() {
+        return Stream.of(
+                Arguments.of("Fields",
+                        "LET x = 1; LET y = x + 1; DEF main() DO x = x + y; RETURN x; END"
+                ),
+                Arguments.of("Statements",
+                        "DEF main() DO LET i = 0; LET sum = 0; WHILE i < 5 DO IF i == 2 DO print(i); ELSE sum = sum + i; END i = i + 1; END RETURN sum; END"
+                ),
+                Arguments.of("For",
+                        "DEF main() DO LET sum = 0; FOR i IN range(4) DO LET square = i * i; sum = sum + square; END RETURN sum; END"
+                ),
+                Arguments.of("Return In Loop",
+                        "DEF find(n) DO FOR i IN range(10) DO WHILE i < 50 DO IF i == n DO RETURN i * 2; END i = i + 100; END END RETURN -1; END "
+                                + "DEF main() DO print(find(3)); RETURN find(-1) + 1 * find(3); END"
+                ),
+                Arguments.of("Recursion",
+                        "DEF fib(n) DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END DEF main() DO RETURN fib(12); END"
+                ),
+                Arguments.of("Arities",
+                        "DEF zero() DO RETURN 0; END DEF one(a) DO RETURN a; END DEF four(a, b, c, d) DO RETURN a + b * c - d; END "
+                                + "DEF six(a, b, c, d, e, f) DO RETURN a + b + c + d + e + f; END "
+                                + "DEF main() DO print(zero()); print(one(1)); print(four(1, 2, 3, 4)); RETURN six(1, 2, 3, 4, 5, 6) + four(0, 0, 0, 1); END"
+                ),
+                Arguments.of("Dynamic Scope",
+                        "DEF show() DO print(local); local = local + 1; END DEF main() DO LET local = 1; show(); RETURN local; END"
+                ),
+                Arguments.of("Short Circuit",
+                        "DEF t(x) DO print(x); RETURN TRUE; END DEF main() DO RETURN t(1) AND FALSE AND t(2) OR t(3) OR t(4); END"
+                ),
+                Arguments.of("No Return",
+                        "DEF f() DO print(1); END DEF main() DO RETURN f(); END"
+                ),
+                Arguments.of("Error In Call",
+                        "DEF f(x) DO print(x); RETURN x + \"a\"; END DEF main() DO print(0); RETURN f(1); END"
+                ),
+                Arguments.of("Undefined Variable",
+                        "DEF main() DO print(1); undefined = 2; END"
+                )
+        );
+    }
+
+    @Test
+    void testDeepRecursion() throws InterruptedException {
+        // not a tail call, so the interpreter would need many nested Java
+        // calls for each call of sum; here the thread's stack is only 64 KB
+        Ast.Source source = new Parser(new Lexer("DEF sum(n) DO IF n == 0 DO RETURN 0; END RETURN n + sum(n - 1); END").lex()).parseSource();
+        FrameInterpreter interpreter = new FrameInterpreter(new Scope(null), 10_000);
+        interpreter.visit(source);
+        Environment.Function sum = interpreter.getScope().lookupFunction("sum", 1);
+        List<Object> results = new ArrayList<>();
+        Thread thread = new Thread(null, () -> {
+            results.add(sum.invoke(Arrays.asList(Environment.create(BigInteger.valueOf(9_999)))).getValue());
+            try {
+                sum.invoke(Arrays.asList(Environment.create(BigInteger.valueOf(10_000))));
+            } catch (RuntimeException e) {
+                results.add(e.getMessage());
+            }
+            // the interpreter is still usable after the exception
+            results.add(sum.invoke(Arrays.asList(Environment.create(BigInteger.valueOf(4)))).getValue());
+        }, "deep", 64 * 1024);
+        thread.start();
+        thread.join();
+        Assertions.assertEquals(3, results.size(), results.toString());
+        Assertions.assertEquals(BigInteger.valueOf(49_995_000), results.get(0));
+        Assertions.assertTrue(results.get(1).toString().contains("10000"), results.get(1).toString());
+        Assertions.assertEquals(BigInteger.TEN, results.get(2));
+    }
+
+    @Test
+    void testReentrant() {
+        // a function called by a method which calls back into another method
+        Scope scope = new Scope(null);
+        FrameInterpreter interpreter = new FrameInterpreter(scope);
+        scope.defineFunction("twice", 1, args -> {
+            Environment.Function doubler = interpreter.getScope().lookupFunction("double", 1);
+            return doubler.invoke(Arrays.asList(doubler.invoke(args)));
+        });
+        interpreter.visit(new Parser(new Lexer("DEF double(x) DO RETURN x * 2; END DEF main() DO RETURN 1 + twice(3); END").lex()).parseSource());
+        Assertions.assertEquals(BigInteger.valueOf(13), interpreter.getScope().lookupFunction("main", 0).invoke(new ArrayList<>()).getValue());
+    }
+
+    @Test
+    void testReturnOutsideMethod() {
+        FrameInterpreter interpreter = new FrameInterpreter(new Scope(null));
+        Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(new Ast.Stmt.Return(new Ast.Expr.Literal(BigInteger.ONE))));
+        Assertions.assertEquals(BigInteger.ONE, interpreter.visit(new Ast.Expr.Literal(BigInteger.ONE)).getValue());
+    }
+
+}
@@ -0,0 +1,122 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.stream.Stream;
+
+final class IncrementalParserTests {
+
+    private static final String SOURCE = String.join("\n",
+            "LET x = 1;",
+            "LET name = \"it's\";",
+            "DEF first(a, b) DO",
+            "    IF a < b DO",
+            "        RETURN a + 2.5;",
+            "    END",
+            "    RETURN b;",
+            "END",
+            "DEF second() DO",
+            "    WHILE x < 10 DO",
+            "        x = x + 1;",
+            "    END",
+            "    print('c');",
+            "END",
+            "DEF third() DO",
+            "    RETURN obj.method(x, -1);",
+            "END"
+    );
+
+    @ParameterizedTest
+    @MethodSource
+    void testEdit(String test, int offset, int removed, String inserted) {
+        IncrementalParser parser = new IncrementalParser(SOURCE);
+        test(parser, offset, removed, inserted);
+    }
+
+    private static Stream<Arguments> testEdit() {
+        return Stream.of(
+                Arguments.of("Rename Field", SOURCE.indexOf("x = 1"), 1, "count"),
+                Arguments.of("Extend Integer To Decimal", SOURCE.indexOf("1;") + 1, 0, ".5"),
+                Arguments.of("Join Identifiers", SOURCE.indexOf("a, b") + 1, 2, ""),
+                Arguments.of("Insert Statement", SOURCE.indexOf("    print"), 0, "    LET y = x;\n"),
+                Arguments.of("Insert Method", SOURCE.indexOf("DEF third"), 0, "DEF inserted() DO END\n"),
+                Arguments.of("Remove Method", SOURCE.indexOf("DEF second"), SOURCE.indexOf("DEF third") - SOURCE.indexOf("DEF second"), ""),
+                Arguments.of("Append", SOURCE.length(), 0, "\nDEF last() DO END"),
+                Arguments.of("Replace Everything", 0, SOURCE.length(), "LET z;")
+        );
+    }
+
+    @Test
+    void testReuse() {
+        IncrementalParser parser = new IncrementalParser(SOURCE);
+        Ast.Method first = parser.getSource().getMethods().get(0);
+        Ast.Method third = parser.getSource().getMethods().get(2);
+        test(parser, SOURCE.indexOf("x + 1"), 0, "2 * ");
+        Assertions.assertSame(first, parser.getSource().getMethods().get(0));
+        Assertions.assertSame(third, parser.getSource().getMethods().get(2));
+    }
+
+    @Test
+    void testInvalidEdit() {
+        IncrementalParser parser = new IncrementalParser(SOURCE);
+        int offset = SOURCE.indexOf("RETURN b;") + 8;
+        String invalid = SOURCE.substring(0, offset) + SOURCE.substring(offset + 1);
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(invalid).lex()).parseSource());
+        ParseException actual = Assertions.assertThrows(ParseException.class, () -> parser.edit(offset, 1, ""));
+        Assertions.assertEquals(expected.getIndex(), actual.getIndex());
+        test(parser, offset, 0, ";");
+    }
+
+    @Test
+    void testFieldAfterMethod() {
+        IncrementalParser parser = new IncrementalParser(SOURCE);
+        int offset = SOURCE.indexOf("DEF third");
+        String invalid = SOURCE.substring(0, offset) + "LET late;\n" + SOURCE.substring(offset);
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(invalid).lex()).parseSource());
+        ParseException actual = Assertions.assertThrows(ParseException.class, () -> parser.edit(offset, 0, "LET late;\n"));
+        Assertions.assertEquals(expected.getIndex(), actual.getIndex());
+    }
+
+    @Test
+    void testRandomEdits() {
+        Random random = new Random(4020);
+        String[] fragments = {" ", "\n", "x", "1", ".5", "+ 1", ";", "\"", "'", "END", "LET y = 2;", "DEF f() DO END\n"};
+        IncrementalParser parser = new IncrementalParser(SOURCE);
+        for (int i = 0; i < 5_000; i++) {
+            String input = parser.getInput();
+            int offset = random.nextInt(input.length() + 1);
+            int removed = random.nextInt(Math.min(3, input.length() - offset) + 1);
+            String inserted = random.nextBoolean() ? fragments[random.nextInt(fragments.length)] : "";
+            String expected = input.substring(0, offset) + inserted + input.substring(offset + removed);
+            try {
+                new Parser(new Lexer(expected).lex()).parseSource();
+            } catch (ParseException e) {
+                // check the exception on a copy so the incremental state stays valid
+                IncrementalParser copy = new IncrementalParser(input);
+                ParseException actual = Assertions.assertThrows(ParseException.class, () -> copy.edit(offset, removed, inserted));
+                Assertions.assertEquals(e.getIndex(), actual.getIndex(), expected);
+                continue;
+            }
+            test(parser, offset, removed, inserted);
+        }
+    }
+
+    /**
+     * Applies the edit and checks the tokens and AST match lexing and parsing
+     * the edited input from scratch.
+     */
+    private static void test(IncrementalParser parser, int offset, int removed, String inserted) {
+        String input = parser.getInput();
+        String expected = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        Ast.Source source = parser.edit(offset, removed, inserted);
+        Assertions.assertEquals(expected, parser.getInput());
+        Assertions.assertEquals(new Lexer(expected).lex(), parser.getTokens());
+        Assertions.assertEquals(new Parser(new Lexer(expected).lex()).parseSource(), source);
+    }
+
+}
@@ -0,0 +1,59 @@
+package plc.project;
+
+import java.util.ArrayList;
+
+/**
+ * Compares interpreting a loop which calls small helper methods before and
+ * after {@link Optimizer.Inlining}.
+ */
+public class InliningBenchmark {
+
+    private static final String SOURCE = String.join("\n",
+            "LET i = 0;",
+            "LET sum = 0;",
+            "DEF square(x) DO RETURN x * x; END",
+            "DEF step(x) DO",
+            "    LET y = square(x);",
+            "    sum = sum + y;",
+            "    i = i + 1;",
+            "END",
+            "DEF main() DO",
+            "    i = 0;",
+            "    sum = 0;",
+            "    WHILE i < 200000 DO step(i); END",
+            "    RETURN sum;",
+            "END"
+    );
+
+    public static void main(String[] args) {
+        Ast.Source source = new Parser(new Lexer(SOURCE).lex()).parseSource();
+        Ast.Source inlined = new Optimizer().optimize(source);
+        Interpreter original = interpreter(source);
+        Interpreter optimized = interpreter(inlined);
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            Object expected = run(original);
+            long originalTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Object actual = run(optimized);
+            long inlinedTime = System.nanoTime() - start;
+
+            if (!expected.equals(actual)) {
+                throw new AssertionError("Inlined result " + actual + " does not match " + expected + ".");
+            }
+            System.out.printf("original %4d ms, inlined %4d ms%n", originalTime / 1_000_000, inlinedTime / 1_000_000);
+        }
+    }
+
+    private static Interpreter interpreter(Ast.Source source) {
+        Interpreter interpreter = new Interpreter(null);
+        interpreter.visit(source);
+        return interpreter;
+    }
+
+    private static Object run(Interpreter interpreter) {
+        return interpreter.getScope().lookupFunction("main", 0).invoke(new ArrayList<>()).getValue();
+    }
+
+}
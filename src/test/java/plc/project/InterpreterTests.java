@@ -10,6 +10,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -374,6 +375,164 @@ final class InterpreterTests {
         );
     }
 
+    @Test
+    void testDeepExpression() {
+        // 1 + (1 + (... (1 + f(f(... f(object.method(object.field)) ...))) ...)), nested 100,000 times each
+        Ast.Expr object = new Ast.Expr.Access(Optional.empty(), "object");
+        Ast.Expr expr = new Ast.Expr.Function(Optional.of(object), "method", Arrays.asList(new Ast.Expr.Access(Optional.of(object), "field")));
+        for (int i = 0; i < 100_000; i++) {
+            expr = new Ast.Expr.Function(Optional.empty(), "f", Arrays.asList(expr));
+        }
+        for (int i = 0; i < 100_000; i++) {
+            expr = new Ast.Expr.Binary("+", new Ast.Expr.Literal(BigInteger.ONE), new Ast.Expr.Group(expr));
+        }
+        Scope scope = new Scope(null);
+        scope.defineFunction("f", 1, args -> args.get(0));
+        Scope fields = new Scope(null);
+        fields.defineVariable("field", Environment.create(BigInteger.ONE));
+        fields.defineFunction("method", 2, args -> args.get(1));
+        scope.defineVariable("object", new Environment.PlcObject(fields, "object"));
+        test(expr, BigInteger.valueOf(100_001), scope);
+    }
+
+    @Test
+    void testLongChain() {
+        // TRUE AND 1 + 1 + ... + 1 < 0 OR ..., with left-nested chains of 100,000 operators
+        Ast.Expr sum = new Ast.Expr.Literal(BigInteger.ONE);
+        for (int i = 0; i < 100_000; i++) {
+            sum = new Ast.Expr.Binary("+", sum, new Ast.Expr.Literal(BigInteger.ONE));
+        }
+        Ast.Expr expr = new Ast.Expr.Binary("==", sum, new Ast.Expr.Literal(BigInteger.valueOf(100_001)));
+        for (int i = 0; i < 100_000; i++) {
+            expr = new Ast.Expr.Binary(i % 2 == 0 ? "AND" : "OR", expr, new Ast.Expr.Literal(i % 2 == 0));
+        }
+        test(expr, true, new Scope(null));
+    }
+
+    @Test
+    void testDeepExpression_Exception() {
+        Ast.Expr expr = new Ast.Expr.Access(Optional.empty(), "undefined");
+        for (int i = 0; i < 100_000; i++) {
+            expr = new Ast.Expr.Group(new Ast.Expr.Binary("*", new Ast.Expr.Literal(BigInteger.TEN), expr));
+        }
+        Ast.Expr deep = expr;
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(deep));
+        // the interpreter is still usable after the exception
+        Assertions.assertEquals(BigInteger.TEN, interpreter.visit(new Ast.Expr.Literal(BigInteger.TEN)).getValue());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testTailCall(String test, String input, Object expected) {
+        Scope scope = new Scope(null);
+        scope.defineVariable("list", Environment.create(IntStream.range(0, 5)
+                .mapToObj(i -> Environment.create(BigInteger.valueOf(i))).collect(Collectors.toList())));
+        Interpreter interpreter = new Interpreter(scope);
+        interpreter.visit(new Parser(new Lexer(input).lex()).parseSource());
+        Assertions.assertEquals(expected, interpreter.getScope().lookupFunction("main", 0).invoke(Arrays.asList()).getValue());
+    }
+
+    private static Stream<Arguments> testTailCall() {
+        return Stream.of(
+                Arguments.of("Accumulator",
+                        "DEF sum(n, acc) DO IF n == 0 DO RETURN acc; END RETURN sum(n - 1, acc + n); END DEF main() DO RETURN sum(100000, 0); END",
+                        BigInteger.valueOf(5_000_050_000L)
+                ),
+                Arguments.of("Mutual Recursion",
+                        "DEF even(n) DO IF n == 0 DO RETURN TRUE; END RETURN odd(n - 1); END "
+                                + "DEF odd(n) DO IF n == 0 DO RETURN FALSE; END RETURN even(n - 1); END "
+                                + "DEF main() DO RETURN even(100001); END",
+                        false
+                ),
+                Arguments.of("In Loop",
+                        "DEF find(list, n) DO FOR x IN list DO IF x == n DO RETURN found(x); END END RETURN -1; END "
+                                + "DEF found(x) DO RETURN x * 10; END DEF main() DO RETURN find(list, 2); END",
+                        BigInteger.valueOf(20)
+                ),
+                // the callee sees the caller's variables, so its scope is kept
+                Arguments.of("Caller Scope",
+                        "DEF outer(n) DO LET x = n; RETURN inner(); END DEF inner() DO RETURN x; END DEF main() DO RETURN outer(3); END",
+                        BigInteger.valueOf(3)
+                ),
+                // peek sees the accumulator, but each call to sum shadows the last
+                Arguments.of("Shared Accumulator",
+                        "DEF peek() DO RETURN acc; END DEF sum(n, acc) DO IF n == 0 DO RETURN peek(); END RETURN sum(n - 1, acc + n); END "
+                                + "DEF main() DO RETURN sum(100000, 0); END",
+                        BigInteger.valueOf(5_000_050_000L)
+                ),
+                // the method may read the variable of its caller before declaring it
+                Arguments.of("Own Scope",
+                        "DEF f(n) DO IF n >= 1 DO LET x = n; END IF n == 0 DO RETURN x; END RETURN f(n - 1); END DEF main() DO RETURN f(2); END",
+                        BigInteger.ONE
+                ),
+                Arguments.of("Function",
+                        "DEF main() DO RETURN print(1); END",
+                        Environment.NIL.getValue()
+                )
+        );
+    }
+
+    @Test
+    void testPromotion() {
+        // compiles queued for later, so the promoted code is swapped in between the runs
+        List<Runnable> compiles = new ArrayList<>();
+        Interpreter interpreter = new Interpreter(null, 5, compiles::add);
+        interpreter.visit(new Parser(new Lexer(String.join("\n",
+                "LET total = 0;",
+                "DEF square(x) DO LET i = 0; LET result = 0; WHILE i < x DO result = result + x; i = i + 1; END RETURN result; END",
+                "DEF add(x) DO total = total + square(x); END",
+                "DEF count(n) DO IF n == 0 DO RETURN 0; END RETURN count(n - 1); END",
+                "DEF main() DO LET i = 0; WHILE i < 20 DO add(i); i = i + 1; END RETURN total + count(30); END"
+        )).lex()).parseSource());
+        Environment.Function main = interpreter.getScope().lookupFunction("main", 0);
+        Assertions.assertEquals(BigInteger.valueOf(2470), main.invoke(Arrays.asList()).getValue());
+        // square, add and main, but not count, which makes a tail call
+        Assertions.assertEquals(3, compiles.size());
+        compiles.forEach(Runnable::run);
+        Assertions.assertEquals(BigInteger.valueOf(4940), main.invoke(Arrays.asList()).getValue());
+        Assertions.assertEquals(3, compiles.size());
+    }
+
+    @Test
+    void testFixedArity() {
+        Scope scope = new Scope(null);
+        // a fixed-arity function is never given its arguments in an array
+        scope.defineFunction("pair", 2, new Environment.Body() {
+            @Override
+            public Environment.PlcObject call(Environment.PlcObject first, Environment.PlcObject second) {
+                return Environment.create("(" + first.getValue() + "," + second.getValue() + ")");
+            }
+
+            @Override
+            public Environment.PlcObject call(Environment.PlcObject[] arguments) {
+                throw new AssertionError("Called with an array.");
+            }
+        });
+        scope.defineFunction("join", 5, args -> Environment.create(
+                args.stream().map(arg -> arg.getValue().toString()).collect(Collectors.joining(",", "[", "]"))));
+        Scope fields = new Scope(null);
+        fields.defineFunction("describe", 5, args -> Environment.create(args.get(0).getValue() + ":" + args.size()));
+        fields.defineFunction("self", 1, new Environment.Body() {
+            @Override
+            public Environment.PlcObject call(Environment.PlcObject receiver) {
+                return receiver;
+            }
+
+            @Override
+            public Environment.PlcObject call(Environment.PlcObject[] arguments) {
+                throw new AssertionError("Called with an array.");
+            }
+        });
+        scope.defineVariable("object", new Environment.PlcObject(fields, "object"));
+        Interpreter interpreter = new Interpreter(scope);
+        interpreter.visit(new Parser(new Lexer(
+                "DEF f(a, b, c, d, e) DO RETURN join(a, b, c, d, e) + pair(a, e); END "
+                        + "DEF main() DO RETURN f(1, 2, 3, 4, 5) + object.describe(1, 2, 3, 4) + object.self(); END"
+        ).lex()).parseSource());
+        Assertions.assertEquals("[1,2,3,4,5](1,5)object:5object", interpreter.getScope().lookupFunction("main", 0).invoke().getValue());
+    }
+
     private static Scope test(Ast ast, Object expected, Scope scope) {
         Interpreter interpreter = new Interpreter(scope);
         if (expected != null) {
@@ -0,0 +1,77 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares running loop-heavy scripts with the {@link Interpreter} against
+ * the {@link IrInterpreter}, with and without {@link IrOptimizer}.
+ */
+public class IrBenchmark {
+
+    private static final Map<String, String> SCRIPTS = new LinkedHashMap<>();
+
+    static {
+        SCRIPTS.put("invariant", String.join("\n",
+                "DEF main() DO",
+                "    LET a = 12345;",
+                "    LET b = 678;",
+                "    LET i = 0;",
+                "    LET sum = 0;",
+                "    WHILE i < 200000 DO",
+                "        sum = sum + a * b + (a - b) * (a - b);",
+                "        i = i + 1;",
+                "    END",
+                "    RETURN sum;",
+                "END"
+        ));
+        SCRIPTS.put("nested", String.join("\n",
+                "DEF main() DO",
+                "    LET n = 300;",
+                "    LET total = 0;",
+                "    LET i = 0;",
+                "    LET j = 0;",
+                "    WHILE i < n DO",
+                "        j = 0;",
+                "        WHILE j < n DO",
+                "            total = total + i * n + j;",
+                "            j = j + 1;",
+                "        END",
+                "        i = i + 1;",
+                "    END",
+                "    RETURN total;",
+                "END"
+        ));
+        SCRIPTS.put("fib", String.join("\n",
+                "DEF fib(n) DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END",
+                "DEF main() DO RETURN fib(20); END"
+        ));
+    }
+
+    public static void main(String[] args) {
+        for (Map.Entry<String, String> script : SCRIPTS.entrySet()) {
+            Ast.Source source = new Parser(new Lexer(script.getValue()).lex()).parseSource();
+            Interpreter ast = new Interpreter(null);
+            ast.visit(source);
+            Interpreter ir = new Interpreter(null);
+            IrInterpreter.define(ir, source, false);
+            Interpreter optimized = new Interpreter(null);
+            IrInterpreter.define(optimized, source, true);
+            for (int round = 0; round < 8; round++) {
+                long astTime = time(ast);
+                long irTime = time(ir);
+                long optimizedTime = time(optimized);
+                System.out.printf("%-10s ast %4d ms, ir %4d ms, optimized ir %4d ms%n",
+                        script.getKey(), astTime / 1_000_000, irTime / 1_000_000, optimizedTime / 1_000_000);
+            }
+        }
+    }
+
+    private static long time(Interpreter interpreter) {
+        long start = System.nanoTime();
+        interpreter.getScope().lookupFunction("main", 0).invoke(new ArrayList<>());
+        return System.nanoTime() - start;
+    }
+
+}
@@ -0,0 +1,243 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+final class IrTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testExecute(String test, String input) {
+        Ast.Source source = parse(input);
+        Assertions.assertTrue(IrBuilder.lower(source).containsKey(source.getMethods().get(source.getMethods().size() - 1)));
+        String expected = run(source, null);
+        Assertions.assertEquals(expected, run(source, false));
+        Assertions.assertEquals(expected, run(source, true));
+    }
+
+    private static Stream<Arguments> testExecute() {
+        return Stream.of(
+                Arguments.of("Arithmetic",
+                        "DEF main() DO LET x = 1; LET y = x + 2 * 3; RETURN y / 4 - 0.5; END"
+                ),
+                Arguments.of("While",
+                        "DEF main() DO LET i = 0; LET sum = 0; WHILE i < 10 DO sum = sum + i * i; i = i + 1; END RETURN sum; END"
+                ),
+                Arguments.of("If",
+                        "DEF main() DO LET x = 3; IF x < 2 DO LET y = \"small\"; print(y); ELSE LET y = \"large\"; print(y); END RETURN x; END"
+                ),
+                Arguments.of("If Declared In Both",
+                        "DEF main() DO IF 1 < 2 DO LET y = 1; ELSE LET y = 2; END RETURN y; END"
+                ),
+                Arguments.of("Return In Branch",
+                        "DEF sign(n) DO IF n < 0 DO RETURN -1; ELSE IF n == 0 DO RETURN 0; END END RETURN 1; END "
+                                + "DEF main() DO print(sign(-5)); print(sign(0)); RETURN sign(5); END"
+                ),
+                Arguments.of("Short Circuit",
+                        "DEF t(x) DO print(x); RETURN TRUE; END DEF main() DO RETURN t(1) AND FALSE AND t(2) OR t(3) OR t(4); END"
+                ),
+                Arguments.of("For",
+                        "DEF main() DO LET sum = 0; FOR i IN range(5) DO LET square = i * i; sum = sum + square; END RETURN sum; END"
+                ),
+                Arguments.of("Nested Loops",
+                        "DEF main() DO LET total = 0; FOR i IN range(4) DO LET j = 0; WHILE j < i DO total = total + i * j; j = j + 1; END END RETURN total; END"
+                ),
+                Arguments.of("Return In Loop",
+                        "DEF main() DO LET i = 0; WHILE TRUE DO IF i >= 7 DO RETURN i; END i = i + 1; END END"
+                ),
+                Arguments.of("Recursion",
+                        "DEF fib(n) DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END DEF main() DO RETURN fib(15); END"
+                ),
+                Arguments.of("Fields",
+                        "LET total = 0; DEF add(n) DO total = total + n; END DEF main() DO add(1); add(2); print(total); RETURN total; END"
+                ),
+                Arguments.of("Caller Variables",
+                        "DEF show() DO print(value); END DEF main() DO LET count = 2; show(); RETURN count; END"
+                ),
+                Arguments.of("Invariant Error In Loop",
+                        "DEF main() DO LET s = \"a\"; LET i = 0; WHILE i < 3 DO print(i); i = i + 1; print(s + 1); END END"
+                ),
+                Arguments.of("Invariant Error Not Run",
+                        "DEF main() DO LET i = 0; WHILE i < 0 DO print(1 / i); print(undefined); END RETURN i; END"
+                ),
+                Arguments.of("Invalid Condition",
+                        "DEF main() DO LET x = 1; IF x DO print(1); END END"
+                ),
+                Arguments.of("Undefined Function",
+                        "DEF main() DO LET x = 1; print(x); RETURN undefined(x); END"
+                ),
+                Arguments.of("Typed Arithmetic",
+                        "DEF main() DO LET i = 0; LET d = 0.5; LET s = \"\"; WHILE i < 5 DO d = d * 2 + i - 1 / 4; s = s + \"x\"; i = i + 1; END print(s); print(i == 5); RETURN d; END"
+                ),
+                Arguments.of("Typed Division By Zero",
+                        "DEF main() DO LET i = 3; WHILE i >= 0 DO print(6 / i); i = i - 1; END END"
+                ),
+                Arguments.of("No Return",
+                        "DEF main() DO print(\"done\"); END"
+                )
+        );
+    }
+
+    @Test
+    void testNotLowered() {
+        Ast.Source source = parse(String.join("\n",
+                "DEF shared() DO LET value = 1; RETURN show(); END",
+                "DEF show() DO RETURN value; END",
+                "DEF before() DO print(x); LET x = 1; END",
+                "DEF twice() DO LET x = 1; LET x = 2; END",
+                "DEF loop() DO WHILE TRUE DO LET x = 1; END END",
+                "DEF maybe(c) DO IF c DO LET x = 1; END RETURN x; END"
+        ));
+        Map<Ast.Method, Ir.Function> functions = IrBuilder.lower(source);
+        for (Ast.Method method : source.getMethods()) {
+            Assertions.assertEquals(method.getName().equals("show"), functions.containsKey(method), method.getName());
+        }
+    }
+
+    @Test
+    void testLoweredWithSameNames() {
+        // each method declares n before using it, so can't see the other's
+        Ast.Source source = parse("DEF even(n) DO IF n == 0 DO RETURN TRUE; END RETURN odd(n - 1); END "
+                + "DEF odd(n) DO LET m = n - 1; IF n == 0 DO RETURN FALSE; END RETURN even(m); END");
+        Assertions.assertEquals(2, IrBuilder.lower(source).size());
+    }
+
+    @Test
+    void testValueNumbering() {
+        Ir.Function function = lower("DEF f(a, b) DO LET c = (a + b) * (a + b); RETURN c + (1 + 2) * 3 + c; END");
+        Assertions.assertEquals(7, count(function, Ir.Op.BINARY));
+        IrOptimizer.numberValues(function);
+        // (a + b), the multiplication, c + 9 and then + c
+        Assertions.assertEquals(4, count(function, Ir.Op.BINARY), function.toString());
+    }
+
+    @Test
+    void testHoisting() {
+        Ir.Function function = lower("DEF f(a, b, n) DO LET i = 0; LET s = 0; WHILE i < n DO s = s + a * b; i = i + 1; END RETURN s; END");
+        IrOptimizer.optimize(function);
+        Ir.Instruction product = null;
+        for (Ir.Instruction instruction : function.getEntry().getInstructions()) {
+            if (instruction.getOp() == Ir.Op.BINARY) {
+                product = instruction;
+            }
+        }
+        Assertions.assertNotNull(product, function.toString());
+        Assertions.assertEquals("*", product.getOperator());
+        Assertions.assertTrue(product.isSpeculative());
+        Assertions.assertEquals(1, count(function, Ir.Op.GUARD));
+
+        IrInterpreter code = new IrInterpreter(function);
+        Interpreter interpreter = new Interpreter(null);
+        Assertions.assertEquals(BigInteger.valueOf(30), code.invoke(interpreter, arguments(2, 3, 5)).getValue());
+        // the product is only an error if the loop runs
+        Assertions.assertEquals(BigInteger.ZERO, code.invoke(interpreter, arguments("a", 3, 0)).getValue());
+        Assertions.assertThrows(RuntimeException.class, () -> code.invoke(interpreter, arguments("a", 3, 1)));
+    }
+
+    @Test
+    void testTypes() {
+        Ir.Function function = lower("DEF f(n) DO LET i = 0; LET d = 0.0; LET x = n; WHILE i < 10 DO d = d + i; x = x + i; i = i + 1; END RETURN d + x; END");
+        Assertions.assertEquals(1, count(function, Ir.Op.BOOLEAN));
+        IrTypes.infer(function);
+        Map<String, Ir.Type> types = new HashMap<>();
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Instruction instruction : block.getInstructions()) {
+                if (instruction.getOp() == Ir.Op.BINARY) {
+                    types.put(instruction.getOperand(0).getType() + " " + instruction.getOperator() + " " + instruction.getOperand(1).getType(), instruction.getType());
+                }
+            }
+        }
+        Assertions.assertEquals(Ir.Type.BOOLEAN, types.get("INTEGER < INTEGER"), function.toString());
+        Assertions.assertEquals(Ir.Type.INTEGER, types.get("INTEGER + INTEGER"), function.toString());
+        Assertions.assertEquals(Ir.Type.DECIMAL, types.get("DECIMAL + INTEGER"), function.toString());
+        // x is the parameter the first time around, so could be anything
+        Assertions.assertEquals(Ir.Type.ANY, types.get("ANY + INTEGER"), function.toString());
+        Assertions.assertEquals(Ir.Type.ANY, types.get("DECIMAL + ANY"), function.toString());
+        // the condition is known to be a boolean, so isn't checked
+        Assertions.assertEquals(0, count(function, Ir.Op.BOOLEAN), function.toString());
+
+        IrInterpreter code = new IrInterpreter(function);
+        Interpreter interpreter = new Interpreter(null);
+        Assertions.assertEquals(new BigDecimal("135.0"), code.invoke(interpreter, arguments(45)).getValue());
+        Assertions.assertEquals(new BigDecimal("90.5"), code.invoke(interpreter, arguments(new BigDecimal("0.5"))).getValue());
+        Assertions.assertThrows(RuntimeException.class, () -> code.invoke(interpreter, arguments("a")));
+    }
+
+    @Test
+    void testFormat() {
+        Ir.Function function = lower("DEF f(x) DO IF x DO RETURN 1; END RETURN x + 1; END");
+        Assertions.assertEquals(String.join("\n",
+                "f/1",
+                "b0:",
+                "    v0 = param 0",
+                "    v1 = boolean v0",
+                "    branch v1 -> b1 -> b2",
+                "b1:",
+                "    return 1",
+                "b2:",
+                "    jump -> b3",
+                "b3:",
+                "    v5 = binary + v0, 1",
+                "    return v5",
+                ""
+        ), function.toString());
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+    private static Ir.Function lower(String input) {
+        Ast.Source source = parse(input);
+        return IrBuilder.lower(source).get(source.getMethods().get(0));
+    }
+
+    private static int count(Ir.Function function, Ir.Op op) {
+        int count = 0;
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Instruction instruction : block.getInstructions()) {
+                count += instruction.getOp() == op ? 1 : 0;
+            }
+        }
+        return count;
+    }
+
+    private static List<Environment.PlcObject> arguments(Object... values) {
+        List<Environment.PlcObject> arguments = new ArrayList<>();
+        for (Object value : values) {
+            arguments.add(Environment.create(value instanceof Integer ? BigInteger.valueOf((Integer) value) : value));
+        }
+        return arguments;
+    }
+
+    /**
+     * Runs the source's main method with the interpreter, or with the IR
+     * (optimized or not), and returns the printed output followed by the
+     * result or exception.
+     */
+    private static String run(Ast.Source source, Boolean optimize) {
+        Scope parent = Scripts.scope();
+        parent.defineVariable("value", Environment.create("outer"));
+        return Scripts.run(() -> {
+            Interpreter interpreter = new Interpreter(parent);
+            if (optimize == null) {
+                interpreter.visit(source);
+            } else {
+                IrInterpreter.define(interpreter, source, optimize);
+            }
+            return interpreter.getScope();
+        });
+    }
+
+}
@@ -0,0 +1,68 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares running arithmetic-heavy methods with the {@link IrInterpreter}
+ * after value numbering and hoisting, with and without the arithmetic
+ * specialized by {@link IrTypes}.
+ */
+public class IrTypesBenchmark {
+
+    private static final Map<String, String> SCRIPTS = new LinkedHashMap<>();
+
+    static {
+        SCRIPTS.put("integer", String.join("\n",
+                "DEF main() DO",
+                "    LET i = 0;",
+                "    LET sum = 0;",
+                "    WHILE i < 300000 DO",
+                "        sum = sum + i * i - i;",
+                "        i = i + 1;",
+                "    END",
+                "    RETURN sum;",
+                "END"
+        ));
+        SCRIPTS.put("decimal", String.join("\n",
+                "DEF main() DO",
+                "    LET i = 0;",
+                "    LET x = 0.0;",
+                "    WHILE i < 200000 DO",
+                "        x = x + i * 0.5 - 0.25;",
+                "        i = i + 1;",
+                "    END",
+                "    RETURN x;",
+                "END"
+        ));
+    }
+
+    public static void main(String[] args) {
+        for (Map.Entry<String, String> script : SCRIPTS.entrySet()) {
+            Ast.Source source = new Parser(new Lexer(script.getValue()).lex()).parseSource();
+            Ast.Method method = source.getMethods().get(0);
+            Ir.Function generic = IrBuilder.lower(source).get(method);
+            IrOptimizer.numberValues(generic);
+            IrOptimizer.hoistInvariants(generic);
+            Ir.Function typed = IrBuilder.lower(source).get(method);
+            IrOptimizer.optimize(typed);
+            IrInterpreter genericCode = new IrInterpreter(generic);
+            IrInterpreter typedCode = new IrInterpreter(typed);
+            Interpreter interpreter = new Interpreter(null);
+            for (int round = 0; round < 8; round++) {
+                long genericTime = time(genericCode, interpreter);
+                long typedTime = time(typedCode, interpreter);
+                System.out.printf("%-8s generic %4d ms, typed %4d ms%n",
+                        script.getKey(), genericTime / 1_000_000, typedTime / 1_000_000);
+            }
+        }
+    }
+
+    private static long time(IrInterpreter code, Interpreter interpreter) {
+        long start = System.nanoTime();
+        code.invoke(interpreter, new ArrayList<>());
+        return System.nanoTime() - start;
+    }
+
+}
@@ -6,6 +6,8 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
@@ -101,6 +103,24 @@ public class LexerTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testNumberValue(String test, String input, Object expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lexToken().getValue());
+    }
+
+    private static Stream<Arguments> testNumberValue() {
+        return Stream.of(
+                Arguments.of("Integer", "123", new BigInteger("123")),
+                Arguments.of("Signed Integer", "+7", new BigInteger("7")),
+                Arguments.of("Negative Zero", "-0", BigInteger.ZERO),
+                Arguments.of("Long Integer", "123456789012345678901234567890", new BigInteger("123456789012345678901234567890")),
+                Arguments.of("Decimal", "-1.50", new BigDecimal("-1.50")),
+                Arguments.of("Leading Zeros", "007.0", new BigDecimal("007.0")),
+                Arguments.of("Long Decimal", "9007199254740993.0000000001", new BigDecimal("9007199254740993.0000000001"))
+        );
+    }
+
     @ParameterizedTest
     @MethodSource
     void testCharacter(String test, String input, boolean success) {
@@ -455,6 +475,52 @@ public class LexerTests {
         Assertions.assertEquals(3, exception.getIndex());
     }
 
+    @Test
+    void testParallel() {
+        String input = generateSource(5_000);
+        Assertions.assertEquals(new Lexer(input).lex(), new Lexer(input).lexParallel());
+    }
+
+    @Test
+    void testParallel_FirstException() {
+        String input = generateSource(5_000);
+        int first = input.indexOf("method100");
+        int second = input.indexOf("method4000");
+        String invalid = input.substring(0, first) + "'ab" + input.substring(first, second) + "\"open" + input.substring(second);
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Lexer(invalid).lex());
+        ParseException actual = Assertions.assertThrows(ParseException.class, () -> new Lexer(invalid).lexParallel());
+        Assertions.assertEquals(expected.getIndex(), actual.getIndex());
+    }
+
+    @Test
+    void testSink() {
+        String input = generateSource(100);
+        List<Token> expected = new Lexer(input).lex();
+        int[] count = {0};
+        new Lexer(input).lex((type, start, end) -> {
+            Token token = expected.get(count[0]++);
+            Assertions.assertEquals(token.getType(), type);
+            Assertions.assertEquals(token.getIndex(), start);
+            Assertions.assertEquals(token.getIndex() + token.getLiteral().length(), end);
+        });
+        Assertions.assertEquals(expected.size(), count[0]);
+    }
+
+    /**
+     * Generates a large source with literals (including quotes and escapes)
+     * on every line, for comparing the parallel and sequential lexers.
+     */
+    private static String generateSource(int methods) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < methods; i++) {
+            builder.append("DEF method").append(i).append("(x) DO\n")
+                    .append("    print(\"it's \\\"").append(i).append("\\\"\\n\", '\\'', '\"');\r\n")
+                    .append("    RETURN x + -").append(i).append(".5 * obj.field;\n")
+                    .append("END\n");
+        }
+        return builder.toString();
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
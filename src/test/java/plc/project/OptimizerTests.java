@@ -0,0 +1,188 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.stream.Stream;
+
+final class OptimizerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testOptimize(String test, String input, String expected) {
+        Ast.Source source = parse(input);
+        Ast.Source optimized = new Optimizer().optimize(source);
+        // inlined variables are renamed to names containing '$', which the
+        // lexer rejects, so the expected sources use '_' instead
+        Assertions.assertEquals(parse(expected).toString().replace('_', '$'), optimized.toString());
+        if (expected.equals(input)) {
+            Assertions.assertSame(source, optimized);
+        }
+        Assertions.assertEquals(run(source), run(optimized));
+    }
+
+    private static Stream<Arguments> testOptimize() {
+        return Stream.of(
+                Arguments.of("Fold Integers",
+                        "DEF main() DO RETURN 1 + 2 * 3 - 4; END",
+                        "DEF main() DO RETURN 3; END"
+                ),
+                Arguments.of("Fold Decimals",
+                        "DEF main() DO RETURN 1 / 3 + 0.25; END",
+                        "DEF main() DO RETURN 0.55; END"
+                ),
+                Arguments.of("Fold Strings",
+                        "DEF main() DO RETURN \"a\" + \"b\" == \"ab\"; END",
+                        "DEF main() DO RETURN TRUE; END"
+                ),
+                Arguments.of("Fold Groups",
+                        "DEF main() DO LET x = 2; RETURN (1 + (2)) * x; END",
+                        "DEF main() DO LET x = 2; RETURN 3 * x; END"
+                ),
+                Arguments.of("Fold Loop Invariant",
+                        "DEF main() DO LET x = 0; WHILE x < 10 DO x = x + (2 - 1); END RETURN x; END",
+                        "DEF main() DO LET x = 0; WHILE x < 10 DO x = x + 1; END RETURN x; END"
+                ),
+                Arguments.of("Short Circuit",
+                        "DEF main() DO RETURN FALSE AND undefined() OR TRUE OR undefined(); END",
+                        "DEF main() DO RETURN TRUE; END"
+                ),
+                Arguments.of("Keep Division By Zero",
+                        "DEF main() DO RETURN 1 / 0; END",
+                        "DEF main() DO RETURN 1 / 0; END"
+                ),
+                Arguments.of("Keep Invalid Types",
+                        "DEF main() DO RETURN \"a\" + 1 + 2; END",
+                        "DEF main() DO RETURN \"a\" + 1 + 2; END"
+                ),
+                Arguments.of("Propagate Fields",
+                        "LET x = 2; LET y = x * 3; LET z; DEF main() DO RETURN y + x == z; END",
+                        "LET x = 2; LET y = 6; LET z; DEF main() DO RETURN FALSE; END"
+                ),
+                Arguments.of("Keep Assigned Field",
+                        "LET x = 2; DEF main() DO x = 3; RETURN x; END",
+                        "LET x = 2; DEF main() DO x = 3; RETURN x; END"
+                ),
+                Arguments.of("Keep Shadowed Field",
+                        "LET x = 2; DEF f(x) DO RETURN g(); END DEF g() DO RETURN x; END DEF main() DO RETURN f(1); END",
+                        "LET x = 2; DEF f(x) DO RETURN x; END DEF g() DO RETURN x; END DEF main() DO LET x_1 = 1; RETURN x_1; END"
+                ),
+                Arguments.of("Keep Fields After Call",
+                        "LET x = 1; LET y = f(); LET z = x; DEF f() DO RETURN z; END DEF main() DO RETURN x + z; END",
+                        "LET x = 1; LET y = f(); LET z = 1; DEF f() DO RETURN z; END DEF main() DO RETURN 1 + z; END"
+                ),
+                Arguments.of("Unreachable After Return",
+                        "DEF main() DO print(1); RETURN 1; print(2); END",
+                        "DEF main() DO print(1); RETURN 1; END"
+                ),
+                Arguments.of("If True",
+                        "DEF main() DO IF 1 < 2 DO LET x = 1; ELSE LET x = 2; END RETURN x; END",
+                        "DEF main() DO LET x = 1; RETURN x; END"
+                ),
+                Arguments.of("If False",
+                        "DEF main() DO IF FALSE DO print(1); END print(2); END",
+                        "DEF main() DO print(2); END"
+                ),
+                Arguments.of("If Both Return",
+                        "DEF main() DO LET c = TRUE; IF c DO RETURN 1; ELSE print(0); RETURN 2; print(3); END print(4); END",
+                        "DEF main() DO LET c = TRUE; IF c DO RETURN 1; ELSE print(0); RETURN 2; END END"
+                ),
+                Arguments.of("Keep Invalid Condition",
+                        "DEF main() DO IF 1 DO print(1); END END",
+                        "DEF main() DO IF 1 DO print(1); END END"
+                ),
+                Arguments.of("Inline Return",
+                        "DEF square(x) DO RETURN x * x; END DEF main() DO RETURN square(3) ; END",
+                        "DEF square(x) DO RETURN x * x; END DEF main() DO LET x_1 = 3; RETURN x_1 * x_1; END"
+                ),
+                Arguments.of("Inline Early Return",
+                        "DEF sign(n) DO IF n < 0 DO RETURN -1; END RETURN 1; END DEF main() DO LET n = 5; RETURN sign(n - 10); END",
+                        "DEF sign(n) DO IF n < 0 DO RETURN -1; END RETURN 1; END DEF main() DO LET n = 5; LET n_1 = n - 10; IF n_1 < 0 DO RETURN -1; END RETURN 1; END"
+                ),
+                Arguments.of("Inline Statement",
+                        "DEF log(a, b) DO LET s = a + b; print(s); END DEF main() DO log(\"a\", \"b\"); log(\"c\", \"d\"); END",
+                        "DEF log(a, b) DO LET s = a + b; print(s); END DEF main() DO LET a_1 = \"a\"; LET b_1 = \"b\"; LET s_1 = a_1 + b_1; print(s_1); "
+                                + "LET a_2 = \"c\"; LET b_2 = \"d\"; LET s_2 = a_2 + b_2; print(s_2); END"
+                ),
+                Arguments.of("Inline Declaration",
+                        "DEF twice(x) DO print(x); RETURN x + x; END DEF main() DO LET y = twice(print(1)); RETURN y; END",
+                        "DEF twice(x) DO print(x); RETURN x + x; END DEF main() DO LET x_1 = print(1); print(x_1); LET y = x_1 + x_1; RETURN y; END"
+                ),
+                Arguments.of("Inline Hoisted",
+                        "DEF inc(x) DO LET y = x + 1; RETURN y; END DEF main() DO LET i = 0; WHILE i < 3 DO i = 0; LET j = inc(i); END END",
+                        "DEF inc(x) DO LET y = x + 1; RETURN y; END DEF main() DO LET x_1; LET y_1; LET i = 0; WHILE i < 3 DO i = 0; x_1 = i; y_1 = x_1 + 1; LET j = y_1; END END"
+                ),
+                Arguments.of("Inline Nested",
+                        "DEF inc(x) DO RETURN x + 1; END DEF inc2(x) DO RETURN inc(inc(x)); END DEF main() DO RETURN inc2(1); END",
+                        "DEF inc(x) DO RETURN x + 1; END DEF inc2(x) DO LET x_2 = x; LET x_1 = x_2 + 1; RETURN x_1 + 1; END "
+                                + "DEF main() DO LET x_3 = 1; LET x_2_1 = x_3; LET x_1_1 = x_2_1 + 1; RETURN x_1_1 + 1; END"
+                ),
+                Arguments.of("Keep Recursive",
+                        "DEF f(n) DO RETURN g(n); END DEF g(n) DO RETURN f(n); END DEF main() DO RETURN 1; END",
+                        "DEF f(n) DO RETURN g(n); END DEF g(n) DO RETURN f(n); END DEF main() DO RETURN 1; END"
+                ),
+                Arguments.of("Keep Visible Variables",
+                        "DEF f(x) DO RETURN g(); END DEF g() DO RETURN x; END DEF main() DO RETURN f(1); END",
+                        "DEF f(x) DO RETURN x; END DEF g() DO RETURN x; END DEF main() DO LET x_1 = 1; RETURN x_1; END"
+                ),
+                Arguments.of("Keep Caller Variables",
+                        "DEF f() DO print(x); LET x = 2; RETURN x; END DEF main() DO LET x = 1; f(); END",
+                        "DEF f() DO print(x); LET x = 2; RETURN x; END DEF main() DO LET x = 1; f(); END"
+                ),
+                Arguments.of("Keep Loop Declarations",
+                        "DEF f() DO WHILE TRUE DO LET x = 1; END END DEF main() DO f(); END",
+                        "DEF f() DO WHILE TRUE DO LET x = 1; END END DEF main() DO f(); END"
+                ),
+                Arguments.of("Keep Early Return Statement",
+                        "DEF f(c) DO IF c DO RETURN 1; END print(2); END DEF main() DO f(TRUE); print(3); END",
+                        "DEF f(c) DO IF c DO RETURN 1; END print(2); END DEF main() DO f(TRUE); print(3); END"
+                ),
+                Arguments.of("While False",
+                        "LET x = 1; DEF main() DO WHILE FALSE DO print(1); END x; print(2); END",
+                        "LET x = 1; DEF main() DO print(2); END"
+                )
+        );
+    }
+
+    @Test
+    void testDeepExpression() {
+        String input = "DEF main() DO RETURN " + "(".repeat(100_000) + "1" + " + 1)".repeat(100_000) + "; END";
+        Ast.Source optimized = new Optimizer().optimize(parse(input));
+        Assertions.assertEquals(parse("DEF main() DO RETURN 100001; END"), optimized);
+    }
+
+    @Test
+    void testDump() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Optimizer optimizer = new Optimizer();
+        optimizer.setDump(new PrintStream(output, true));
+        optimizer.optimize(parse("LET x = 1; DEF main() DO IF x == 1 DO RETURN 1 + 1; END END"));
+        String dump = output.toString();
+        Assertions.assertTrue(dump.startsWith("After ConstantFolding:"), dump);
+        Assertions.assertTrue(dump.contains("After ConstantPropagation:"), dump);
+        Assertions.assertTrue(dump.contains("After DeadCodeElimination:"), dump);
+        Assertions.assertFalse(dump.contains("1 + 1"), dump);
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+    /**
+     * Runs the source's main method, if any, and returns the printed output
+     * followed by the result or exception.
+     */
+    private static String run(Ast.Source source) {
+        return Scripts.run(() -> {
+            Interpreter interpreter = new Interpreter(null);
+            interpreter.visit(source);
+            return interpreter.getScope();
+        });
+    }
+
+}
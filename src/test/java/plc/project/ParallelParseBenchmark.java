@@ -0,0 +1,34 @@
+package plc.project;
+
+import java.util.List;
+
+/**
+ * Measures parsing a source with many methods sequentially and in parallel.
+ */
+public class ParallelParseBenchmark {
+
+    public static void main(String[] args) {
+        StringBuilder builder = new StringBuilder("LET x = 1;\n");
+        for (int i = 0; i < 20_000; i++) {
+            builder.append("DEF method").append(i).append("(a, b) DO\n")
+                    .append("    WHILE a < b DO\n")
+                    .append("        IF a == ").append(i).append(" DO print(a); ELSE a = a + 1; END\n")
+                    .append("        FOR c IN list DO b = obj.call(c, b * 2 - (a + 1) / 3); END\n")
+                    .append("    END\n")
+                    .append("    RETURN \"done\";\n")
+                    .append("END\n");
+        }
+        List<Token> tokens = new Lexer(builder.toString()).lex();
+        System.out.printf("%d tokens, %d threads%n", tokens.size(), Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            new Parser(tokens).parseSource();
+            long sequential = System.nanoTime();
+            new Parser(tokens).parseSourceParallel();
+            long parallel = System.nanoTime();
+            System.out.printf("sequential %4d ms, parallel %4d ms%n",
+                    (sequential - start) / 1_000_000, (parallel - sequential) / 1_000_000);
+        }
+    }
+
+}
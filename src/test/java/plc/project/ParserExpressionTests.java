@@ -135,6 +135,14 @@ final class ParserExpressionTests {
                 Arguments.of("String Escape \"\\\\\"",
                         Arrays.asList(new Token(Token.Type.STRING, "\"\\\\\"", 0)),
                         new Ast.Expr.Literal("\\")
+                ),
+                Arguments.of("Escaped Backslash Before n",
+                        Arrays.asList(new Token(Token.Type.STRING, "\"\\\\n\"", 0)),
+                        new Ast.Expr.Literal("\\n")
+                ),
+                Arguments.of("Lexed Escapes",
+                        new Lexer("\"a\\\\n\\tb\\\"\"").lex(),
+                        new Ast.Expr.Literal("a\\n\tb\"")
                 )
         );
     }
@@ -228,6 +236,38 @@ final class ParserExpressionTests {
                                 new Ast.Expr.Access(Optional.empty(), "expr1"),
                                 new Ast.Expr.Access(Optional.empty(), "expr2")
                         )
+                ),
+                Arguments.of("Mixed Precedence",
+                        Arrays.asList(
+                                //a - b - c * d < e OR f
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "-", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 4),
+                                new Token(Token.Type.OPERATOR, "-", 6),
+                                new Token(Token.Type.IDENTIFIER, "c", 8),
+                                new Token(Token.Type.OPERATOR, "*", 10),
+                                new Token(Token.Type.IDENTIFIER, "d", 12),
+                                new Token(Token.Type.OPERATOR, "<", 14),
+                                new Token(Token.Type.IDENTIFIER, "e", 16),
+                                new Token(Token.Type.IDENTIFIER, "OR", 18),
+                                new Token(Token.Type.IDENTIFIER, "f", 21)
+                        ),
+                        new Ast.Expr.Binary("OR",
+                                new Ast.Expr.Binary("<",
+                                        new Ast.Expr.Binary("-",
+                                                new Ast.Expr.Binary("-",
+                                                        new Ast.Expr.Access(Optional.empty(), "a"),
+                                                        new Ast.Expr.Access(Optional.empty(), "b")
+                                                ),
+                                                new Ast.Expr.Binary("*",
+                                                        new Ast.Expr.Access(Optional.empty(), "c"),
+                                                        new Ast.Expr.Access(Optional.empty(), "d")
+                                                )
+                                        ),
+                                        new Ast.Expr.Access(Optional.empty(), "e")
+                                ),
+                                new Ast.Expr.Access(Optional.empty(), "f")
+                        )
                 )
         );
     }
@@ -354,6 +394,47 @@ final class ParserExpressionTests {
         );
     }
 
+    @Test
+    void testDeepGroups() {
+        String input = "(".repeat(100_000) + "x" + ")".repeat(100_000);
+        Ast.Expr expr = new Parser(new Lexer(input).lex()).parseExpression();
+        for (int i = 0; i < 100_000; i++) {
+            expr = ((Ast.Expr.Group) expr).getExpression();
+        }
+        Assertions.assertEquals(new Ast.Expr.Access(Optional.empty(), "x"), expr);
+    }
+
+    @Test
+    void testDeepCalls() {
+        String input = "f(x, ".repeat(100_000) + "x" + ").g()".repeat(100_000);
+        Ast.Expr expr = new Parser(new Lexer(input).lex()).parseExpression();
+        for (int i = 0; i < 100_000; i++) {
+            Ast.Expr.Function method = (Ast.Expr.Function) expr;
+            Assertions.assertEquals("g", method.getName());
+            Ast.Expr.Function function = (Ast.Expr.Function) method.getReceiver().get();
+            Assertions.assertEquals(new Ast.Expr.Access(Optional.empty(), "x"), function.getArguments().get(0));
+            expr = function.getArguments().get(1);
+        }
+        Assertions.assertEquals(new Ast.Expr.Access(Optional.empty(), "x"), expr);
+    }
+
+    @Test
+    void testDeepRightOperands() {
+        String input = "x - (".repeat(100_000) + "x" + ")".repeat(100_000);
+        Ast.Expr expr = new Parser(new Lexer(input).lex()).parseExpression();
+        for (int i = 0; i < 100_000; i++) {
+            expr = ((Ast.Expr.Group) ((Ast.Expr.Binary) expr).getRight()).getExpression();
+        }
+        Assertions.assertEquals(new Ast.Expr.Access(Optional.empty(), "x"), expr);
+    }
+
+    @Test
+    void testDeepGroups_Unclosed() {
+        String input = "(".repeat(100_000) + "x" + ")".repeat(99_999);
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lex()).parseExpression());
+        Assertions.assertEquals(input.length(), exception.getIndex());
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
@@ -8,10 +8,13 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -595,6 +598,197 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testRecovery(String test, String input, List<String> methods, List<Integer> indices) {
+        List<ParseException> diagnostics = new ArrayList<>();
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource(diagnostics);
+        Assertions.assertEquals(methods, source.getMethods().stream().map(Ast.Method::getName).collect(Collectors.toList()));
+        Assertions.assertEquals(indices, diagnostics.stream().map(ParseException::getIndex).collect(Collectors.toList()));
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lex()).parseSource());
+        Assertions.assertEquals(expected.getMessage(), diagnostics.get(0).getMessage());
+        Assertions.assertEquals(0, diagnostics.get(0).getStackTrace().length);
+    }
+
+    private static Stream<Arguments> testRecovery() {
+        return Stream.of(
+                Arguments.of("Missing Semicolons",
+                        // 0         1         2         3         4
+                        // 01234567890123456789012345678901234567890123456
+                        "DEF f() DO x y; z = ; RETURN 1 END DEF g() DO END",
+                        Arrays.asList("f", "g"),
+                        Arrays.asList(11, 20, 29)
+                ),
+                Arguments.of("Skipped Block",
+                        // 0         1         2         3         4
+                        // 012345678901234567890123456789012345678901234567
+                        "DEF f() DO IF ) DO x; END y; END DEF g() DO z END",
+                        Arrays.asList("f", "g"),
+                        Arrays.asList(14, 44)
+                ),
+                Arguments.of("Missing End",
+                        // 0         1         2         3
+                        // 0123456789012345678901234567890123456
+                        "DEF f() DO WHILE x DO y; DEF g() DO END",
+                        Arrays.asList("g"),
+                        Arrays.asList(25, 26)
+                ),
+                Arguments.of("Invalid Field",
+                        // 0         1         2
+                        // 012345678901234567890123456789
+                        "LET = 1; LET x; DEF f() DO END LET y;",
+                        Arrays.asList("f"),
+                        Arrays.asList(4, 31)
+                ),
+                Arguments.of("Unexpected End Of Input",
+                        // 0         1
+                        // 0123456789012345678
+                        "DEF f() DO IF x DO",
+                        Arrays.asList(),
+                        Arrays.asList(18, 19)
+                )
+        );
+    }
+
+    @Test
+    void testRecovery_Valid() {
+        List<Token> tokens = new Lexer("LET x = 1; DEF f(a) DO IF a DO RETURN x; END END").lex();
+        List<ParseException> diagnostics = new ArrayList<>();
+        Assertions.assertEquals(new Parser(tokens).parseSource(), new Parser(tokens).parseSource(diagnostics));
+        Assertions.assertEquals(Arrays.asList(), diagnostics);
+    }
+
+    @Test
+    void testRecovery_Random() {
+        // the first diagnostic is always the exception from parseSource(), and recovery always terminates
+        Random random = new Random(4020);
+        List<Token> valid = new Lexer("LET x = 1; LET y; DEF f(a, b) DO IF a < b DO RETURN a; ELSE x = f(b, a); END " +
+                "WHILE x DO FOR i IN list DO print(i); END END RETURN obj.method(x, (1 + 2) * 3); END DEF g() DO END").lex();
+        for (int i = 0; i < 2_000; i++) {
+            List<Token> tokens = new ArrayList<>(valid);
+            for (int edit = random.nextInt(4); edit >= 0; edit--) {
+                int index = random.nextInt(tokens.size());
+                if (random.nextBoolean()) {
+                    tokens.remove(index);
+                } else {
+                    tokens.add(index, tokens.get(random.nextInt(tokens.size())));
+                }
+            }
+            List<ParseException> diagnostics = new ArrayList<>();
+            new Parser(tokens).parseSource(diagnostics);
+            try {
+                new Parser(tokens).parseSource();
+                Assertions.assertEquals(Arrays.asList(), diagnostics);
+            } catch (ParseException e) {
+                Assertions.assertEquals(e.getMessage(), diagnostics.get(0).getMessage());
+                Assertions.assertEquals(e.getIndex(), diagnostics.get(0).getIndex());
+            }
+        }
+    }
+
+    @Test
+    void testParallel() {
+        List<Token> tokens = new Lexer(generateSource(3_000)).lex();
+        Assertions.assertEquals(new Parser(tokens).parseSource(), new Parser(tokens).parseSourceParallel());
+    }
+
+    @Test
+    void testMethodBoundaries() {
+        List<Token> tokens = new Lexer(generateSource(3_000)).lex();
+        // the methods start after the tokens of the two fields
+        int start = 8;
+        Assertions.assertEquals("DEF", tokens.get(start).getLiteral());
+        List<Integer> boundaries = Parser.methodBoundaries(tokens, start);
+        // one boundary before each method and one after the last
+        Assertions.assertEquals(3_001, boundaries.size());
+        Assertions.assertEquals("DEF", tokens.get(boundaries.get(1)).getLiteral());
+        Assertions.assertEquals(tokens.size(), (int) boundaries.get(3_000));
+        // a stray token between methods ends the scan there
+        tokens = new ArrayList<>(tokens);
+        tokens.add(boundaries.get(2), tokens.get(boundaries.get(2) + 1));
+        Assertions.assertEquals(Arrays.asList(start, boundaries.get(1), boundaries.get(2)), Parser.methodBoundaries(tokens, start));
+    }
+
+    @Test
+    void testParallel_Random() {
+        // edits which unbalance DO and END mislead the pre-scan, so the parallel parser must fall back
+        Random random = new Random(4020);
+        List<Token> valid = new Lexer(generateSource(1_000)).lex();
+        for (int i = 0; i < 100; i++) {
+            List<Token> tokens = new ArrayList<>(valid);
+            for (int edit = random.nextInt(3); edit >= 0; edit--) {
+                int index = random.nextInt(tokens.size());
+                if (random.nextBoolean()) {
+                    tokens.remove(index);
+                } else {
+                    tokens.add(index, tokens.get(random.nextInt(tokens.size())));
+                }
+            }
+            Ast.Source expected;
+            try {
+                expected = new Parser(tokens).parseSource();
+            } catch (ParseException e) {
+                ParseException actual = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSourceParallel());
+                Assertions.assertEquals(e.getMessage(), actual.getMessage());
+                Assertions.assertEquals(e.getIndex(), actual.getIndex());
+                continue;
+            }
+            Assertions.assertEquals(expected, new Parser(tokens).parseSourceParallel());
+        }
+    }
+
+    @Test
+    void testHashCode() {
+        List<Token> tokens = new Lexer(generateSource(100)).lex();
+        Ast.Source first = new Parser(tokens).parseSource();
+        Ast.Source second = new Parser(tokens).parseSource();
+        Assertions.assertNotSame(first, second);
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals(first.hashCode(), second.hashCode());
+        Ast.Expr.Binary binary = new Ast.Expr.Binary("+", new Ast.Expr.Literal(BigInteger.ONE), new Ast.Expr.Literal("1"));
+        Assertions.assertEquals(binary.hashCode(), new Ast.Expr.Binary("+", new Ast.Expr.Literal(BigInteger.ONE), new Ast.Expr.Literal("1")).hashCode());
+        Assertions.assertNotEquals(binary.hashCode(), new Ast.Expr.Binary("-", binary.getLeft(), binary.getRight()).hashCode());
+    }
+
+    @Test
+    void testInterning() {
+        List<Token> tokens = new Lexer(generateSource(100)).lex();
+        AstInterner interner = new AstInterner();
+        Ast.Source source = new Parser(tokens, interner).parseSource();
+        Assertions.assertEquals(new Parser(tokens).parseSource(), source);
+        // every method but its IF statement is the same, so the loops share all other statements
+        Ast.Stmt.While first = (Ast.Stmt.While) source.getMethods().get(0).getStatements().get(0);
+        Ast.Stmt.While second = (Ast.Stmt.While) source.getMethods().get(1).getStatements().get(0);
+        Assertions.assertNotSame(first.getStatements().get(0), second.getStatements().get(0));
+        Assertions.assertSame(first.getCondition(), second.getCondition());
+        Assertions.assertSame(first.getStatements().get(1), second.getStatements().get(1));
+        Assertions.assertSame(source.getMethods().get(0).getStatements().get(1), source.getMethods().get(99).getStatements().get(1));
+        // a second parse with the same interner shares everything but the methods
+        int size = interner.size();
+        Ast.Source again = new Parser(tokens, interner).parseSourceParallel();
+        Assertions.assertEquals(size, interner.size());
+        Assertions.assertSame(source.getFields().get(0).getValue().get(), again.getFields().get(0).getValue().get());
+        Assertions.assertSame(first, again.getMethods().get(0).getStatements().get(0));
+    }
+
+    /**
+     * Generates a source with a few fields and many methods containing
+     * nested blocks, for comparing the parallel and sequential parsers.
+     */
+    private static String generateSource(int methods) {
+        StringBuilder builder = new StringBuilder("LET x = 1;\nLET y;\n");
+        for (int i = 0; i < methods; i++) {
+            builder.append("DEF method").append(i).append("(a, b) DO\n")
+                    .append("    WHILE a < b DO\n")
+                    .append("        IF a == ").append(i).append(" DO print(a); ELSE a = a + 1; END\n")
+                    .append("        FOR c IN list DO b = obj.call(c, b * 2); END\n")
+                    .append("    END\n")
+                    .append("    RETURN \"done\";\n")
+                    .append("END\n");
+        }
+        return builder.toString();
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
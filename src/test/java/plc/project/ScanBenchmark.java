@@ -0,0 +1,54 @@
+package plc.project;
+
+/**
+ * Measures lexing of ASCII-heavy inputs dominated by whitespace, identifier,
+ * and digit runs, next to the per-character regex scanning the lexer used
+ * before for reference.
+ */
+public class ScanBenchmark {
+
+    public static void main(String[] args) {
+        StringBuilder whitespace = new StringBuilder();
+        StringBuilder identifiers = new StringBuilder();
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            whitespace.append("x").append(" ".repeat(30)).append("\n\t\t");
+            identifiers.append("some_long-identifier_name").append(i).append(' ');
+            digits.append("1234567890123456").append(i).append(".0987654321 ");
+        }
+        for (int round = 0; round < 5; round++) {
+            run("whitespace", whitespace.toString());
+            run("identifiers", identifiers.toString());
+            run("digits", digits.toString());
+        }
+    }
+
+    private static void run(String name, String input) {
+        long start = System.nanoTime();
+        int tokens = new Lexer(input).lex().size();
+        long lexed = System.nanoTime();
+        int runs = regexRuns(input);
+        long scanned = System.nanoTime();
+        System.out.printf("%-12s %8d chars, %7d tokens: lex %4d ms, regex run scan %5d ms (%d runs)%n", name,
+                input.length(), tokens, (lexed - start) / 1_000_000, (scanned - lexed) / 1_000_000, runs);
+    }
+
+    /**
+     * Finds the same runs with a regex match per character, as the lexer did
+     * before character classes were looked up in a table.
+     */
+    private static int regexRuns(String input) {
+        int runs = 0;
+        int i = 0;
+        while (i < input.length()) {
+            String pattern = String.valueOf(input.charAt(i)).matches("[\\s\u0008]") ? "[\\s\u0008]"
+                    : String.valueOf(input.charAt(i)).matches("[0-9]") ? "[0-9]" : "[A-Za-z0-9_-]";
+            do {
+                i++;
+            } while (i < input.length() && String.valueOf(input.charAt(i)).matches(pattern));
+            runs++;
+        }
+        return runs;
+    }
+
+}
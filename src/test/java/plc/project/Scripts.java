@@ -0,0 +1,55 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The fixture of the tests which run the same sources in different ways and
+ * compare what they print and return.
+ */
+final class Scripts {
+
+    private Scripts() {}
+
+    /**
+     * Returns a scope defining {@code range(n)}, which returns the list of the
+     * integers from 0 to n - 1.
+     */
+    static Scope scope() {
+        Scope scope = new Scope(null);
+        scope.defineFunction("range", 1, args -> {
+            List<Environment.PlcObject> list = new ArrayList<>();
+            for (int i = 0; i < ((BigInteger) args.get(0).getValue()).intValue(); i++) {
+                list.add(Environment.create(BigInteger.valueOf(i)));
+            }
+            return Environment.create(list);
+        });
+        return scope;
+    }
+
+    /**
+     * Loads a program, returning the scope it defines its methods in, and
+     * runs its main method. Returns the printed output followed by the result
+     * or exception, including one thrown while loading.
+     */
+    static String run(Supplier<Scope> loader) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+        String result;
+        try {
+            Scope scope = loader.get();
+            result = String.valueOf(scope.lookupFunction("main", 0).invoke(new ArrayList<>()).getValue());
+        } catch (RuntimeException e) {
+            result = e.getClass().getName() + ": " + e.getMessage();
+        } finally {
+            System.setOut(out);
+        }
+        return output + result;
+    }
+
+}
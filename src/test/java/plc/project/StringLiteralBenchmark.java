@@ -0,0 +1,50 @@
+package plc.project;
+
+import java.util.List;
+
+/**
+ * Measures lexing and parsing of a source made almost entirely of string
+ * literals with escapes, next to the old seven-replace decoding for reference.
+ */
+public class StringLiteralBenchmark {
+
+    public static void main(String[] args) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            source.append("LET s").append(i).append(" = \"line ").append(i)
+                    .append(":\\tvalue=\\\"x\\\"\\nnext\\\\path\\r\\n\";\n");
+        }
+        String input = source.toString();
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            List<Token> tokens = new Lexer(input).lex();
+            long lexed = System.nanoTime();
+            new Parser(tokens).parseSource();
+            long parsed = System.nanoTime();
+
+            int length = 0;
+            for (Token token : tokens) {
+                if (token.getType() == Token.Type.STRING) {
+                    length += replaceChain(token.getLiteral()).length();
+                }
+            }
+            long replaced = System.nanoTime();
+
+            System.out.printf("round %d: lex %d ms, parse %d ms, replace-chain decode %d ms (%d chars)%n", round,
+                    (lexed - start) / 1_000_000, (parsed - lexed) / 1_000_000, (replaced - parsed) / 1_000_000, length);
+        }
+    }
+
+    /**
+     * The decoding the parser used before escapes were decoded by the lexer.
+     */
+    private static String replaceChain(String literal) {
+        return literal.substring(1, literal.length() - 1)
+                .replace("\\b", "\b").replace("\\n", "\n")
+                .replace("\\r", "\r").replace("\\t", "\t")
+                .replace("\\'", "'").replace("\\\"", "\"")
+                .replace("\\\\", "\\");
+    }
+
+}
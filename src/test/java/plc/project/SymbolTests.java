@@ -0,0 +1,60 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+final class SymbolTests {
+
+    @Test
+    void testIdentity() {
+        Symbol symbol = Symbol.of("identity");
+        Assertions.assertSame(symbol, Symbol.of("identity"));
+        Assertions.assertSame(symbol, Symbol.of(new String("identity".toCharArray())));
+        Assertions.assertSame(symbol, Symbol.find("identity"));
+        Assertions.assertEquals("identity", symbol.getName());
+        Assertions.assertEquals("identity".hashCode(), symbol.hashCode());
+    }
+
+    @Test
+    void testEquality() {
+        Symbol first = Symbol.of("first");
+        Symbol second = Symbol.of("second");
+        Assertions.assertEquals(first, Symbol.of("first"));
+        Assertions.assertNotEquals(first, second);
+        Assertions.assertNotEquals(first, "first");
+    }
+
+    @Test
+    void testFindDoesNotIntern() {
+        Assertions.assertNull(Symbol.find("never interned"));
+        Assertions.assertNull(Symbol.find("never interned"));
+    }
+
+    @Test
+    void testScopeLookup() {
+        Scope scope = new Scope(new Scope(null));
+        scope.getParent().defineVariable("variable", Environment.create(BigInteger.ONE));
+        scope.getParent().defineFunction("function", 1, args -> args.get(0));
+        Assertions.assertSame(scope.lookupVariable(Symbol.of("variable")), scope.lookupVariable("variable"));
+        Assertions.assertSame(scope.lookupFunction(Symbol.of("function"), 1), scope.lookupFunction("function", 1));
+    }
+
+    @Test
+    void testScopeLookupUndefined() {
+        Scope scope = new Scope(null);
+        RuntimeException variable = Assertions.assertThrows(RuntimeException.class, () -> scope.lookupVariable("undefined variable"));
+        Assertions.assertEquals("The variable undefined variable is not defined in this scope.", variable.getMessage());
+        RuntimeException function = Assertions.assertThrows(RuntimeException.class, () -> scope.lookupFunction("undefined function", 2));
+        Assertions.assertEquals("The function undefined function/2 is not defined in this scope.", function.getMessage());
+        // failed lookups by name don't intern it
+        Assertions.assertNull(Symbol.find("undefined variable"));
+        Assertions.assertNull(Symbol.find("undefined function"));
+        // but give the same error as a lookup by an interned symbol
+        Symbol symbol = Symbol.of("undefined interned");
+        Assertions.assertEquals(Assertions.assertThrows(RuntimeException.class, () -> scope.lookupVariable(symbol)).getMessage(),
+                Assertions.assertThrows(RuntimeException.class, () -> scope.lookupVariable("undefined interned")).getMessage());
+    }
+
+}
@@ -0,0 +1,48 @@
+package plc.project;
+
+import java.util.ArrayList;
+
+/**
+ * Compares running a script whose time is spent in a method called many
+ * times with the {@link Interpreter} alone, with promotion disabled, against
+ * promoting the hot method in the background.
+ */
+public class TieredBenchmark {
+
+    private static final String SCRIPT = String.join("\n",
+            "DEF work(n) DO",
+            "    LET i = 0;",
+            "    LET sum = 0;",
+            "    WHILE i < n DO",
+            "        sum = sum + i * i - i;",
+            "        i = i + 1;",
+            "    END",
+            "    RETURN sum;",
+            "END",
+            "DEF main() DO",
+            "    LET i = 0;",
+            "    LET total = 0;",
+            "    WHILE i < 2000 DO",
+            "        total = total + work(200);",
+            "        i = i + 1;",
+            "    END",
+            "    RETURN total;",
+            "END"
+    );
+
+    public static void main(String[] args) {
+        for (int round = 0; round < 8; round++) {
+            long interpreted = time(new Interpreter(null, Integer.MAX_VALUE, Runnable::run));
+            long tiered = time(new Interpreter(null));
+            System.out.printf("interpreted %4d ms, tiered %4d ms%n", interpreted / 1_000_000, tiered / 1_000_000);
+        }
+    }
+
+    private static long time(Interpreter interpreter) {
+        long start = System.nanoTime();
+        interpreter.visit(new Parser(new Lexer(SCRIPT).lex()).parseSource());
+        interpreter.getScope().lookupFunction("main", 0).invoke(new ArrayList<>());
+        return System.nanoTime() - start;
+    }
+
+}
@@ -0,0 +1,55 @@
+package plc.project;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the time and bytes allocated to lex a large source into a token
+ * list with {@link Lexer#lex()} versus counting tokens through {@link
+ * Lexer#lex(TokenSink)}. Allocation is read from the HotSpot thread MXBean.
+ */
+public class TokenSinkBenchmark {
+
+    public static void main(String[] args) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            builder.append("DEF method").append(i).append("(a, b) DO\n")
+                    .append("    LET name = \"value\\t").append(i).append("\";\n")
+                    .append("    IF a <= b && 'c' != '\\n' DO\n")
+                    .append("        RETURN a * 12345 + b / 6.789;\n")
+                    .append("    END\n")
+                    .append("END\n");
+        }
+        String input = builder.toString();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int round = 0; round < 5; round++) {
+            long bytes = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            int tokens = new Lexer(input).lex().size();
+            long listTime = System.nanoTime() - start;
+            long listBytes = threads.getCurrentThreadAllocatedBytes() - bytes;
+
+            Counter counter = new Counter();
+            bytes = threads.getCurrentThreadAllocatedBytes();
+            start = System.nanoTime();
+            new Lexer(input).lex(counter);
+            long sinkTime = System.nanoTime() - start;
+            long sinkBytes = threads.getCurrentThreadAllocatedBytes() - bytes;
+
+            System.out.printf("%d tokens: lex() %4d ms %6.1f MB (%.1f B/token), lex(sink) %4d ms %6.3f MB (%.3f B/token)%n",
+                    tokens, listTime / 1_000_000, listBytes / 1e6, (double) listBytes / tokens,
+                    sinkTime / 1_000_000, sinkBytes / 1e6, (double) sinkBytes / counter.tokens);
+        }
+    }
+
+    private static final class Counter implements TokenSink {
+
+        private int tokens;
+
+        @Override
+        public void token(Token.Type type, int start, int end) {
+            tokens++;
+        }
+
+    }
+
+}